@@ -0,0 +1,102 @@
+package org.opencds.cqf.tooling.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.measure.MeasureBundler;
+import org.opencds.cqf.tooling.processor.IGProcessor;
+import org.opencds.cqf.tooling.utilities.BundleUtils;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * Measure bundling (AbstractBundler.bundleResources) over a synthetic IG of N measures with their test cases, and
+ * assembly of the resulting transaction bundle (BundleUtils.bundleR4Artifacts)
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BundleBenchmark {
+
+    @Param({ "10", "50" })
+    public int measureCount;
+
+    @Param({ "5" })
+    public int patientsPerMeasure;
+
+    private final FhirContext fhirContext = FhirContext.forR4Cached();
+    private Path root;
+    private List<IBaseResource> artifacts;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = new SyntheticIgGenerator().withMeasureCount(measureCount).withPatientsPerMeasure(patientsPerMeasure)
+                .generate(Files.createTempDirectory("bundle-benchmark"));
+
+        IOUtils.cleanUp();
+        IOUtils.resourceDirectories.clear();
+        IOUtils.resourceDirectories.add(SyntheticIgGenerator.getResourcesPath(root).toString());
+        IOUtils.resourceDirectories.add(SyntheticIgGenerator.getVocabularyPath(root).toString());
+
+        artifacts = new ArrayList<>();
+        artifacts.addAll(IOUtils.getMeasures(fhirContext).values());
+        artifacts.addAll(IOUtils.getLibraries(fhirContext).values());
+        for (String path : IOUtils.getFilePaths(SyntheticIgGenerator.getTestsPath(root).toString(), true)) {
+            IBaseResource resource = IOUtils.readResource(path, fhirContext, true);
+            if (resource != null) {
+                artifacts.add(resource);
+            }
+        }
+    }
+
+    // IGProcessor.ensure creates the bundle output directories before bundling in a real refresh
+    @Setup(Level.Iteration)
+    public void clearBundles() throws IOException {
+        Path bundles = root.resolve(IGProcessor.BUNDLE_PATH_ELEMENT);
+        FileUtils.deleteDirectory(bundles.toFile());
+        Files.createDirectories(bundles.resolve("measure"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        IOUtils.cleanUp();
+        IOUtils.resourceDirectories.clear();
+        FileUtils.deleteDirectory(root.toFile());
+    }
+
+    @Benchmark
+    public void bundleMeasures() {
+        new MeasureBundler().bundleResources(Collections.emptyList(), root.toString(),
+                Collections.singletonList(SyntheticIgGenerator.getCqlPath(root).toString()),
+                false, false, true, false, false, fhirContext, null, IOUtils.Encoding.JSON, false);
+    }
+
+    @Benchmark
+    public org.hl7.fhir.r4.model.Bundle bundleR4Artifacts() {
+        return BundleUtils.bundleR4Artifacts("synthetic", artifacts, null, false);
+    }
+}
@@ -0,0 +1,67 @@
+package org.opencds.cqf.tooling.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.opencds.cqf.tooling.operation.ig.IGLoggingService;
+import org.opencds.cqf.tooling.processor.CqlProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CqlProcessor translation of the CQL folder of a synthetic IG (one library per measure plus a shared library that
+ * every measure includes), serially and on a worker pool
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CqlTranslationBenchmark {
+
+    @Param({ "10", "50" })
+    public int measureCount;
+
+    @Param({ "1", "4" })
+    public int threads;
+
+    private Path root;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = new SyntheticIgGenerator().withMeasureCount(measureCount).withPatientsPerMeasure(0)
+                .generate(Files.createTempDirectory("translation-benchmark"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(root.toFile());
+    }
+
+    @Benchmark
+    public int translate() {
+        CqlProcessor processor = new CqlProcessor(null,
+                Collections.singletonList(SyntheticIgGenerator.getCqlPath(root).toString()), null,
+                new IGLoggingService(LoggerFactory.getLogger(CqlTranslationBenchmark.class)), null, null, null, false);
+        processor.setTranslationThreads(threads);
+        processor.execute();
+        return processor.getAllFileInformation().size();
+    }
+}
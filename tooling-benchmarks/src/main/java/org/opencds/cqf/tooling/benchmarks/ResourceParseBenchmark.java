@@ -0,0 +1,92 @@
+package org.opencds.cqf.tooling.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * IOUtils.readResource for the same content encoded as JSON and XML, either parsed from disk every time (cold) or
+ * served from the resource cache (warm)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResourceParseBenchmark {
+
+    @Param({ "json", "xml" })
+    public String encoding;
+
+    @Param({ "cold", "warm" })
+    public String cache;
+
+    @Param({ "100" })
+    public int entries;
+
+    private final FhirContext fhirContext = FhirContext.forR4Cached();
+    private Path directory;
+    private String path;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SyntheticIgGenerator generator = new SyntheticIgGenerator();
+        Bundle bundle = new Bundle().setType(Bundle.BundleType.COLLECTION);
+        bundle.setId("parse-benchmark");
+        for (int i = 0; i < entries; i++) {
+            for (IBaseResource resource : generator.createTestCase(i, i)) {
+                bundle.addEntry().setResource((org.hl7.fhir.r4.model.Resource) resource);
+            }
+        }
+
+        directory = Files.createTempDirectory("parse-benchmark");
+        Path file = directory.resolve("bundle-parse-benchmark." + encoding);
+        String content = "xml".equals(encoding)
+                ? fhirContext.newXmlParser().encodeResourceToString(bundle)
+                : fhirContext.newJsonParser().encodeResourceToString(bundle);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        path = file.toString();
+        IOUtils.cleanUp();
+    }
+
+    @Setup(Level.Invocation)
+    public void clearCache() {
+        if ("cold".equals(cache)) {
+            IOUtils.cleanUp();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        IOUtils.cleanUp();
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Benchmark
+    public IBaseResource readResource() {
+        return IOUtils.readResource(path, fhirContext);
+    }
+}
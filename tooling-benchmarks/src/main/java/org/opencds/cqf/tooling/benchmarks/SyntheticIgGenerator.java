@@ -0,0 +1,357 @@
+package org.opencds.cqf.tooling.benchmarks;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Attachment;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.Duration;
+import org.hl7.fhir.r4.model.Encounter;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.Expression;
+import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.r4.model.ImplementationGuide;
+import org.hl7.fhir.r4.model.Library;
+import org.hl7.fhir.r4.model.Measure;
+import org.hl7.fhir.r4.model.MeasureReport;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Period;
+import org.hl7.fhir.r4.model.Quantity;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.ValueSet;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+
+/**
+ * Generates a synthetic R4 measure IG of configurable size, following the conventional IG layout used by the
+ * refresh and bundle operations:
+ *
+ * <pre>
+ * ig.ini
+ * input/synthetic.json                                       ImplementationGuide
+ * input/cql/SyntheticCommon.cql, SyntheticMeasureNNNN.cql
+ * input/resources/library/library-*.json
+ * input/resources/measure/measure-SyntheticMeasureNNNN.json
+ * input/vocabulary/valueset/valueset-synthetic-N.json
+ * input/tests/measure/SyntheticMeasureNNNN/patient-NNNN-N/    Patient, Encounter and MeasureReport per test case
+ * </pre>
+ *
+ * Every measure includes the common library and references the shared value sets, so the generated IG exercises
+ * dependency resolution the same way real content does. Test data carries the dataDateRoller extension.
+ *
+ * Usage: SyntheticIgGenerator &lt;outputDirectory&gt; [measureCount] [patientsPerMeasure]
+ */
+public class SyntheticIgGenerator {
+
+    public static final String CANONICAL_BASE = "http://example.org/fhir/synthetic";
+    public static final String VERSION = "1.0.0";
+    public static final String COMMON_LIBRARY = "SyntheticCommon";
+    public static final String DATA_DATE_ROLLER_URL = "http://fhir.org/guides/cdc/opioid-cds/StructureDefinition/dataDateRoller";
+
+    private static final String CODE_SYSTEM = "http://example.org/fhir/synthetic/CodeSystem/codes";
+
+    private final FhirContext fhirContext = FhirContext.forR4Cached();
+    private int measureCount = 10;
+    private int patientsPerMeasure = 5;
+    private int valueSetCount = 5;
+    private int codesPerValueSet = 20;
+
+    public SyntheticIgGenerator withMeasureCount(int measureCount) {
+        this.measureCount = measureCount;
+        return this;
+    }
+
+    public SyntheticIgGenerator withPatientsPerMeasure(int patientsPerMeasure) {
+        this.patientsPerMeasure = patientsPerMeasure;
+        return this;
+    }
+
+    public SyntheticIgGenerator withValueSetCount(int valueSetCount) {
+        this.valueSetCount = Math.max(1, valueSetCount);
+        return this;
+    }
+
+    public SyntheticIgGenerator withCodesPerValueSet(int codesPerValueSet) {
+        this.codesPerValueSet = codesPerValueSet;
+        return this;
+    }
+
+    public static String getMeasureName(int index) {
+        return String.format("SyntheticMeasure%04d", index);
+    }
+
+    public static Path getCqlPath(Path root) {
+        return root.resolve("input/cql");
+    }
+
+    public static Path getResourcesPath(Path root) {
+        return root.resolve("input/resources");
+    }
+
+    public static Path getVocabularyPath(Path root) {
+        return root.resolve("input/vocabulary");
+    }
+
+    public static Path getTestsPath(Path root) {
+        return root.resolve("input/tests");
+    }
+
+    /**
+     * Writes the IG under the given root directory (which is created if needed)
+     * @return the root directory
+     */
+    public Path generate(Path root) throws IOException {
+        IParser parser = fhirContext.newJsonParser().setPrettyPrint(true);
+
+        write(root.resolve("ig.ini"), "[IG]\nig = input/synthetic.json\ntemplate = cqf.fhir.template\nfhir-version=4.0.1\n");
+        writeResource(parser, root.resolve("input/synthetic.json"), createImplementationGuide());
+
+        for (int v = 0; v < valueSetCount; v++) {
+            writeResource(parser, getVocabularyPath(root).resolve("valueset/valueset-synthetic-" + v + ".json"), createValueSet(v));
+        }
+
+        String commonCql = createCommonCql();
+        write(getCqlPath(root).resolve(COMMON_LIBRARY + ".cql"), commonCql);
+        writeResource(parser, getResourcesPath(root).resolve("library/library-" + COMMON_LIBRARY + ".json"),
+                createLibrary(COMMON_LIBRARY, commonCql));
+
+        for (int m = 0; m < measureCount; m++) {
+            String name = getMeasureName(m);
+            String cql = createMeasureCql(m);
+            write(getCqlPath(root).resolve(name + ".cql"), cql);
+            writeResource(parser, getResourcesPath(root).resolve("library/library-" + name + ".json"), createLibrary(name, cql));
+            writeResource(parser, getResourcesPath(root).resolve("measure/measure-" + name + ".json"), createMeasure(m));
+
+            for (int p = 0; p < patientsPerMeasure; p++) {
+                Path testCase = getTestsPath(root).resolve("measure/" + name + "/" + getPatientId(m, p));
+                for (IBaseResource resource : createTestCase(m, p)) {
+                    writeResource(parser, testCase.resolve(resource.fhirType().toLowerCase() + "-"
+                            + resource.getIdElement().getIdPart() + ".json"), resource);
+                }
+            }
+        }
+
+        return root;
+    }
+
+    public ImplementationGuide createImplementationGuide() {
+        ImplementationGuide ig = new ImplementationGuide();
+        ig.setId("synthetic");
+        ig.setUrl(CANONICAL_BASE + "/ImplementationGuide/synthetic");
+        ig.setVersion(VERSION);
+        ig.setName("Synthetic");
+        ig.setPackageId("example.fhir.synthetic");
+        ig.setStatus(Enumerations.PublicationStatus.DRAFT);
+        ig.addFhirVersion(Enumerations.FHIRVersion._4_0_1);
+        return ig;
+    }
+
+    public ValueSet createValueSet(int index) {
+        ValueSet valueSet = new ValueSet();
+        valueSet.setId("synthetic-" + index);
+        valueSet.setUrl(getValueSetUrl(index));
+        valueSet.setVersion(VERSION);
+        valueSet.setName("Synthetic" + index);
+        valueSet.setStatus(Enumerations.PublicationStatus.ACTIVE);
+        ValueSet.ConceptSetComponent include = valueSet.getCompose().addInclude().setSystem(CODE_SYSTEM);
+        ValueSet.ValueSetExpansionComponent expansion = valueSet.getExpansion().setTimestamp(new Date());
+        for (int c = 0; c < codesPerValueSet; c++) {
+            String code = getCode(index, c);
+            include.addConcept().setCode(code).setDisplay("Code " + code);
+            expansion.addContains().setSystem(CODE_SYSTEM).setCode(code).setDisplay("Code " + code);
+        }
+        return valueSet;
+    }
+
+    public Library createLibrary(String name, String cql) {
+        Library library = new Library();
+        library.setId(name);
+        library.setUrl(CANONICAL_BASE + "/Library/" + name);
+        library.setVersion(VERSION);
+        library.setName(name);
+        library.setStatus(Enumerations.PublicationStatus.ACTIVE);
+        library.setType(new CodeableConcept(new Coding("http://terminology.hl7.org/CodeSystem/library-type", "logic-library", null)));
+        library.addContent(new Attachment().setContentType("text/cql").setData(cql.getBytes(StandardCharsets.UTF_8)));
+        return library;
+    }
+
+    public Measure createMeasure(int index) {
+        String name = getMeasureName(index);
+        Measure measure = new Measure();
+        measure.setId(name);
+        measure.setUrl(CANONICAL_BASE + "/Measure/" + name);
+        measure.setVersion(VERSION);
+        measure.setName(name);
+        measure.setStatus(Enumerations.PublicationStatus.ACTIVE);
+        measure.addLibrary(CANONICAL_BASE + "/Library/" + name);
+        measure.setScoring(new CodeableConcept(new Coding("http://terminology.hl7.org/CodeSystem/measure-scoring", "proportion", null)));
+        Measure.MeasureGroupComponent group = measure.addGroup();
+        group.setId("group-1");
+        addPopulation(group, "initial-population", "Initial Population");
+        addPopulation(group, "denominator", "Denominator");
+        addPopulation(group, "numerator", "Numerator");
+        return measure;
+    }
+
+    private void addPopulation(Measure.MeasureGroupComponent group, String code, String expression) {
+        group.addPopulation()
+                .setCode(new CodeableConcept(new Coding("http://terminology.hl7.org/CodeSystem/measure-population", code, null)))
+                .setCriteria(new Expression().setLanguage("text/cql-identifier").setExpression(expression));
+    }
+
+    /**
+     * @return the Patient, Encounter and expected individual MeasureReport of one test case
+     */
+    public List<IBaseResource> createTestCase(int measureIndex, int patientIndex) {
+        String patientId = getPatientId(measureIndex, patientIndex);
+        Calendar start = new GregorianCalendar(2022, Calendar.MARCH, 1 + patientIndex % 28);
+        Calendar end = (Calendar) start.clone();
+        end.add(Calendar.DAY_OF_MONTH, 1);
+
+        Patient patient = new Patient();
+        patient.setId(patientId);
+        patient.addExtension(createDataDateRollerExtension());
+        patient.setGender(patientIndex % 2 == 0 ? Enumerations.AdministrativeGender.FEMALE : Enumerations.AdministrativeGender.MALE);
+        patient.setBirthDate(new GregorianCalendar(1960 + patientIndex % 40, Calendar.JANUARY, 1).getTime());
+        patient.addName().setFamily("Synthetic").addGiven(patientId);
+
+        Encounter encounter = new Encounter();
+        encounter.setId(patientId + "-encounter");
+        encounter.addExtension(createDataDateRollerExtension());
+        encounter.setStatus(Encounter.EncounterStatus.FINISHED);
+        encounter.setClass_(new Coding("http://terminology.hl7.org/CodeSystem/v3-ActCode", "AMB", "ambulatory"));
+        encounter.addType(new CodeableConcept(new Coding(CODE_SYSTEM, getCode(measureIndex % valueSetCount, patientIndex % Math.max(1, codesPerValueSet)), null)));
+        encounter.setSubject(new Reference("Patient/" + patientId));
+        encounter.setPeriod(new Period().setStart(start.getTime()).setEnd(end.getTime()));
+
+        MeasureReport report = createMeasureReport(measureIndex, patientId, 1, patientIndex % 2 == 0 ? BigDecimal.ONE : BigDecimal.ZERO);
+        return List.of(patient, encounter, report);
+    }
+
+    /**
+     * @return a Bundle of the test case resources, as rolled by the date roller and evaluated by the test processor
+     */
+    public Bundle createTestCaseBundle(int measureIndex, int patientIndex) {
+        Bundle bundle = new Bundle().setType(Bundle.BundleType.COLLECTION);
+        bundle.setId(getPatientId(measureIndex, patientIndex) + "-bundle");
+        for (IBaseResource resource : createTestCase(measureIndex, patientIndex)) {
+            bundle.addEntry().setResource((org.hl7.fhir.r4.model.Resource) resource);
+        }
+        return bundle;
+    }
+
+    public MeasureReport createMeasureReport(int measureIndex, String patientId, int groupCount, BigDecimal score) {
+        MeasureReport report = new MeasureReport();
+        report.setId(patientId + "-report");
+        report.addExtension(createDataDateRollerExtension());
+        report.setStatus(MeasureReport.MeasureReportStatus.COMPLETE);
+        report.setType(MeasureReport.MeasureReportType.INDIVIDUAL);
+        report.setMeasure(CANONICAL_BASE + "/Measure/" + getMeasureName(measureIndex));
+        report.setSubject(new Reference("Patient/" + patientId));
+        report.setPeriod(new Period()
+                .setStart(new GregorianCalendar(2022, Calendar.JANUARY, 1).getTime())
+                .setEnd(new GregorianCalendar(2022, Calendar.DECEMBER, 31).getTime()));
+        for (int g = 0; g < groupCount; g++) {
+            MeasureReport.MeasureReportGroupComponent group = report.addGroup().setMeasureScore(new Quantity().setValue(score));
+            group.setId("group-" + (g + 1));
+        }
+        return report;
+    }
+
+    private Extension createDataDateRollerExtension() {
+        Extension extension = new Extension(DATA_DATE_ROLLER_URL);
+        extension.addExtension(new Extension("dateLastUpdated", new DateTimeType("2022-04-28")));
+        Duration frequency = new Duration();
+        frequency.setValue(1).setUnit("days").setSystem("http://unitsofmeasure.org").setCode("d");
+        extension.addExtension(new Extension("frequency", frequency));
+        return extension;
+    }
+
+    private String createCommonCql() {
+        StringBuilder cql = new StringBuilder()
+                .append("library ").append(COMMON_LIBRARY).append(" version '").append(VERSION).append("'\n\n")
+                .append("using FHIR version '4.0.1'\n\n")
+                .append("include FHIRHelpers version '4.0.1' called FHIRHelpers\n\n");
+        for (int v = 0; v < valueSetCount; v++) {
+            cql.append("valueset \"Synthetic ").append(v).append("\": '").append(getValueSetUrl(v)).append("'\n");
+        }
+        cql.append("\nparameter \"Measurement Period\" Interval<DateTime>\n\n")
+                .append("context Patient\n\n")
+                .append("define \"Qualifying Encounters\":\n")
+                .append("  [Encounter] E\n")
+                .append("    where E.status = 'finished'\n")
+                .append("      and E.period during \"Measurement Period\"\n\n");
+        for (int v = 0; v < valueSetCount; v++) {
+            cql.append("define \"Encounters ").append(v).append("\":\n")
+                    .append("  \"Qualifying Encounters\" E\n")
+                    .append("    where exists (E.type T where T in \"Synthetic ").append(v).append("\")\n\n");
+        }
+        return cql.toString();
+    }
+
+    private String createMeasureCql(int index) {
+        int valueSet = index % valueSetCount;
+        return "library " + getMeasureName(index) + " version '" + VERSION + "'\n\n"
+                + "using FHIR version '4.0.1'\n\n"
+                + "include FHIRHelpers version '4.0.1' called FHIRHelpers\n"
+                + "include " + COMMON_LIBRARY + " version '" + VERSION + "' called Common\n\n"
+                + "parameter \"Measurement Period\" Interval<DateTime>\n\n"
+                + "context Patient\n\n"
+                + "define \"Initial Population\":\n"
+                + "  AgeInYearsAt(start of \"Measurement Period\") >= 18\n\n"
+                + "define \"Denominator\":\n"
+                + "  \"Initial Population\"\n\n"
+                + "define \"Numerator\":\n"
+                + "  exists Common.\"Encounters " + valueSet + "\"\n";
+    }
+
+    private static String getValueSetUrl(int index) {
+        return CANONICAL_BASE + "/ValueSet/synthetic-" + index;
+    }
+
+    private static String getCode(int valueSetIndex, int codeIndex) {
+        return valueSetIndex + "-" + codeIndex;
+    }
+
+    private static String getPatientId(int measureIndex, int patientIndex) {
+        return String.format("patient-%04d-%d", measureIndex, patientIndex);
+    }
+
+    private void writeResource(IParser parser, Path path, IBaseResource resource) throws IOException {
+        write(path, parser.encodeResourceToString(resource));
+    }
+
+    private static void write(Path path, String content) throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: SyntheticIgGenerator <outputDirectory> [measureCount] [patientsPerMeasure]");
+            System.exit(1);
+        }
+        SyntheticIgGenerator generator = new SyntheticIgGenerator();
+        if (args.length > 1) {
+            generator.withMeasureCount(Integer.parseInt(args[1]));
+        }
+        if (args.length > 2) {
+            generator.withPatientsPerMeasure(Integer.parseInt(args[2]));
+        }
+        Path root = generator.generate(Paths.get(args[0]).toAbsolutePath());
+        System.out.println("Synthetic IG written to " + root);
+    }
+}
@@ -0,0 +1,92 @@
+package org.opencds.cqf.tooling.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.hl7.fhir.Parameters;
+import org.hl7.fhir.r4.model.Bundle;
+import org.opencds.cqf.tooling.dateroller.ResourceDataDateRoller;
+import org.opencds.cqf.tooling.measure.adapters.R4MeasureReportAdapter;
+import org.opencds.cqf.tooling.measure.comparer.MeasureReportComparer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * Test data hot paths: rolling the dates of a test case bundle (ResourceDataDateRoller.rollBundleDates) and
+ * comparing actual and expected measure reports (MeasureReportComparer.compare)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TestDataBenchmark {
+
+    private static final FhirContext fhirContext = FhirContext.forR4Cached();
+
+    @State(Scope.Thread)
+    public static class RollState {
+        @Param({ "10", "100" })
+        public int testCases;
+
+        private Bundle template;
+        private Bundle bundle;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            SyntheticIgGenerator generator = new SyntheticIgGenerator();
+            template = new Bundle().setType(Bundle.BundleType.COLLECTION);
+            template.setId("test-data-benchmark");
+            for (int i = 0; i < testCases; i++) {
+                template.getEntry().addAll(generator.createTestCaseBundle(i, i).getEntry());
+            }
+        }
+
+        // Rolling updates the resources in place, so every invocation starts from a fresh copy
+        @Setup(Level.Invocation)
+        public void copyBundle() {
+            bundle = template.copy();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class CompareState {
+        @Param({ "1", "10" })
+        public int groups;
+
+        private R4MeasureReportAdapter actual;
+        private R4MeasureReportAdapter expected;
+        private MeasureReportComparer comparer;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            SyntheticIgGenerator generator = new SyntheticIgGenerator();
+            actual = new R4MeasureReportAdapter(generator.createMeasureReport(0, "patient-0", groups, BigDecimal.ONE));
+            expected = new R4MeasureReportAdapter(generator.createMeasureReport(0, "patient-0", groups, BigDecimal.ONE));
+            comparer = new MeasureReportComparer(fhirContext);
+        }
+    }
+
+    @Benchmark
+    public Bundle rollBundleDates(RollState state) {
+        ResourceDataDateRoller.rollBundleDates(fhirContext, state.bundle);
+        return state.bundle;
+    }
+
+    @Benchmark
+    public Parameters compareMeasureReports(CompareState state) {
+        return state.comparer.compare(state.actual, state.expected);
+    }
+}
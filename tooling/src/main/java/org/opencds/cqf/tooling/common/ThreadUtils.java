@@ -4,80 +4,396 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Shared execution service for the concurrent phases of the tooling (bundling, dependency gathering, extraction).
+ * <p>
+ * Tasks run on a single process-wide pool with a fixed number of threads (by default one per available processor)
+ * and a bounded work queue; when the queue is full the submitting thread runs the task itself, so producers slow
+ * down instead of piling up work in memory. I/O-bound phases may instead run each task on its own virtual thread
+ * (Java 21+), with the number of tasks in flight bounded by the same queue capacity.
+ * <p>
+ * The defaults can be overridden with the system properties {@value #PARALLELISM_PROPERTY},
+ * {@value #QUEUE_CAPACITY_PROPERTY} and {@value #VIRTUAL_THREADS_PROPERTY}, or with {@link #configure}.
+ * Tasks submitted from within a running task are executed inline on the calling worker, so nested phases can not
+ * exhaust the pool. Every call records the timing of its phase; see {@link #getTimingSummary()}.
+ */
 public class ThreadUtils {
     protected static final Logger logger = LoggerFactory.getLogger(ThreadUtils.class);
 
-    private static List<ExecutorService> runningExecutors = new ArrayList<>();
+    public static final String PARALLELISM_PROPERTY = "cqf-tooling.threads";
+    public static final String QUEUE_CAPACITY_PROPERTY = "cqf-tooling.taskQueueSize";
+    public static final String VIRTUAL_THREADS_PROPERTY = "cqf-tooling.virtualThreads";
+
+    private static final String DEFAULT_PHASE = "tasks";
+
+    private static final List<ExecutorService> runningExecutors = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<Boolean> isWorker = ThreadLocal.withInitial(() -> false);
+    private static final Map<String, PhaseTiming> phaseTimings = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    private static int parallelism = Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors());
+    private static int queueCapacity = Integer.getInteger(QUEUE_CAPACITY_PROPERTY, 1000);
+    private static boolean virtualThreads = Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY);
+
+    private static ThreadPoolExecutor sharedExecutor;
+
+    /**
+     * Replaces the execution settings. The shared pool is recreated on next use; tasks already running are not affected.
+     *
+     * @param parallelism    The number of worker threads for CPU-bound phases (at least 1).
+     * @param queueCapacity  The number of tasks that may wait for a worker before submitters run tasks themselves.
+     * @param virtualThreads Whether I/O-bound phases run each task on a virtual thread (ignored before Java 21).
+     */
+    public static synchronized void configure(int parallelism, int queueCapacity, boolean virtualThreads) {
+        if (parallelism < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Thread parallelism and task queue capacity must be at least 1");
+        }
+        ThreadUtils.parallelism = parallelism;
+        ThreadUtils.queueCapacity = queueCapacity;
+        ThreadUtils.virtualThreads = virtualThreads;
+        if (sharedExecutor != null) {
+            sharedExecutor.shutdown();
+            runningExecutors.remove(sharedExecutor);
+            sharedExecutor = null;
+        }
+    }
+
+    public static int getParallelism() {
+        return parallelism;
+    }
+
+    public static int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public static boolean isVirtualThreads() {
+        return virtualThreads;
+    }
 
     /**
-     * Executes a list of tasks concurrently using a thread pool.
-     * <p>
-     * This method takes a list of Callable tasks and executes them concurrently using a thread pool. It utilizes
-     * an ExecutorService with a cached thread pool configuration to manage the execution of the tasks.
-     * The method waits for all tasks to complete before returning.
+     * Executes a list of CPU-bound tasks on the shared pool and waits for all of them to complete.
+     * Failures are logged and do not stop the remaining tasks.
      *
+     * @param phase A name for the work, used to report its timing.
      * @param tasks A list of Callable tasks to execute concurrently.
      */
-    public static void executeTasks(List<Callable<Void>> tasks, ExecutorService executor) {
+    public static void executeTasks(String phase, List<Callable<Void>> tasks) {
         if (tasks == null || tasks.isEmpty()) {
             return;
         }
+        executeTasks(phase, tasks.iterator());
+    }
 
-        runningExecutors.add(executor);
+    /**
+     * Executes CPU-bound tasks on the shared pool as they are produced by the iterator and waits for all of them to
+     * complete. The iterator is only advanced as workers become available, so a large (or lazily computed) sequence of
+     * tasks is never held in memory at once.
+     *
+     * @param phase A name for the work, used to report its timing.
+     * @param tasks The tasks to execute concurrently.
+     */
+    public static void executeTasks(String phase, Iterator<Callable<Void>> tasks) {
+        if (tasks == null || !tasks.hasNext()) {
+            return;
+        }
+        if (isWorker.get()) {
+            runInline(phase, tasks);
+            return;
+        }
+        run(phase, tasks, getSharedExecutor(), null);
+    }
 
-        List<Callable<Void>> retryTasks = new ArrayList<>();
+    /**
+     * Executes a list of I/O-bound tasks (file or network access) and waits for all of them to complete. When virtual
+     * threads are enabled and supported, each task runs on its own virtual thread; otherwise this is the same as
+     * {@link #executeTasks(String, List)}.
+     *
+     * @param phase A name for the work, used to report its timing.
+     * @param tasks A list of Callable tasks to execute concurrently.
+     */
+    public static void executeIoTasks(String phase, List<Callable<Void>> tasks) {
+        if (tasks == null || tasks.isEmpty()) {
+            return;
+        }
+        executeIoTasks(phase, tasks.iterator());
+    }
 
-        //let OS handle threading:
+    /**
+     * Executes I/O-bound tasks as they are produced by the iterator and waits for all of them to complete; see
+     * {@link #executeIoTasks(String, List)} and {@link #executeTasks(String, Iterator)}.
+     *
+     * @param phase A name for the work, used to report its timing.
+     * @param tasks The tasks to execute concurrently.
+     */
+    public static void executeIoTasks(String phase, Iterator<Callable<Void>> tasks) {
+        if (tasks == null || !tasks.hasNext()) {
+            return;
+        }
+        if (isWorker.get()) {
+            runInline(phase, tasks);
+            return;
+        }
+        ExecutorService virtualThreadExecutor = virtualThreads ? newVirtualThreadPerTaskExecutor() : null;
+        if (virtualThreadExecutor == null) {
+            run(phase, tasks, getSharedExecutor(), null);
+            return;
+        }
+        runningExecutors.add(virtualThreadExecutor);
         try {
-            List<Future<Void>> futures = new ArrayList<>();
-            for (Callable<Void> task : tasks) {
-                try {
-                    futures.add(executor.submit(task));
-                } catch (OutOfMemoryError e) {
-                    retryTasks.add(task);
-                }
-            }
+            run(phase, tasks, virtualThreadExecutor, new Semaphore(queueCapacity));
+        } finally {
+            runningExecutors.remove(virtualThreadExecutor);
+            virtualThreadExecutor.shutdown();
+        }
+    }
 
-            // Wait for all tasks to complete
-            for (Future<Void> future : futures) {
-                future.get();
-            }
-        } catch (Exception e) {
-            logger.error("ThreadUtils.executeTasks: ", e);
+    /**
+     * Executes a list of tasks on the given executor, waits for all of them to complete and shuts the executor down.
+     *
+     * @param tasks    A list of Callable tasks to execute concurrently.
+     * @param executor The executor to run the tasks on.
+     */
+    public static void executeTasks(List<Callable<Void>> tasks, ExecutorService executor) {
+        if (tasks == null || tasks.isEmpty()) {
+            return;
+        }
+        runningExecutors.add(executor);
+        try {
+            run(DEFAULT_PHASE, tasks.iterator(), executor, null);
         } finally {
-            if (retryTasks.isEmpty()) {
-                runningExecutors.remove(executor);
-                executor.shutdown();
-            }else{
-                executeTasks(retryTasks, executor);
-            }
+            runningExecutors.remove(executor);
+            executor.shutdown();
         }
     }
 
     public static void executeTasks(List<Callable<Void>> tasks) {
-        executeTasks(tasks, Executors.newCachedThreadPool());
+        executeTasks(DEFAULT_PHASE, tasks);
     }
 
     public static void executeTasks(Queue<Callable<Void>> callables) {
-        executeTasks(new ArrayList<>(callables), Executors.newCachedThreadPool());
+        executeTasks(DEFAULT_PHASE, new ArrayList<>(callables));
     }
 
     public static void shutdownRunningExecutors() {
         try {
-            if (runningExecutors.isEmpty()) return;
+            synchronized (ThreadUtils.class) {
+                sharedExecutor = null;
+            }
             for (ExecutorService es : runningExecutors) {
                 es.shutdownNow();
             }
-            runningExecutors = new ArrayList<>();
-        }catch (Exception e){
+            runningExecutors.clear();
+        } catch (Exception e) {
             //fail silently, shutting down anyways
         }
     }
+
+    private static void run(String phase, Iterator<Callable<Void>> tasks, ExecutorService executor, Semaphore inFlight) {
+        PhaseTiming timing = phaseTimings.computeIfAbsent(phase, PhaseTiming::new);
+        long start = System.nanoTime();
+        List<Future<Void>> futures = new ArrayList<>();
+        // completed futures are dropped once this many are outstanding, so long task sequences do not accumulate them
+        int pruneThreshold = 2 * (parallelism + queueCapacity);
+        try {
+            while (tasks.hasNext()) {
+                Callable<Void> task = tasks.next();
+                if (inFlight != null) {
+                    inFlight.acquire();
+                }
+                futures.add(executor.submit(() -> {
+                    try {
+                        return runTask(timing, task);
+                    } finally {
+                        if (inFlight != null) {
+                            inFlight.release();
+                        }
+                    }
+                }));
+                if (futures.size() >= pruneThreshold) {
+                    futures.removeIf(future -> future.isDone() && logFailure(phase, future));
+                }
+            }
+
+            // Wait for all tasks to complete
+            for (Future<Void> future : futures) {
+                awaitTask(phase, future);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            logger.error("ThreadUtils.executeTasks ({}) was interrupted", phase);
+        } finally {
+            timing.recordPhase(System.nanoTime() - start);
+            logger.debug(timing.toString());
+        }
+    }
+
+    // Waits for the task and logs its failure, if any
+    private static void awaitTask(String phase, Future<Void> future) throws InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            logger.error("ThreadUtils.executeTasks ({}): ", phase, e.getCause());
+        }
+    }
+
+    private static boolean logFailure(String phase, Future<Void> completed) {
+        try {
+            awaitTask(phase, completed);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return true;
+    }
+
+    private static void runInline(String phase, Iterator<Callable<Void>> tasks) {
+        PhaseTiming timing = phaseTimings.computeIfAbsent(phase, PhaseTiming::new);
+        long start = System.nanoTime();
+        while (tasks.hasNext()) {
+            try {
+                runTask(timing, tasks.next());
+            } catch (Exception e) {
+                logger.error("ThreadUtils.executeTasks ({}): ", phase, e);
+            }
+        }
+        timing.recordPhase(System.nanoTime() - start);
+    }
+
+    private static Void runTask(PhaseTiming timing, Callable<Void> task) throws Exception {
+        boolean nested = isWorker.get();
+        isWorker.set(true);
+        long start = System.nanoTime();
+        try {
+            return task.call();
+        } finally {
+            timing.recordTask(System.nanoTime() - start);
+            isWorker.set(nested);
+        }
+    }
+
+    private static synchronized ExecutorService getSharedExecutor() {
+        if (sharedExecutor == null || sharedExecutor.isShutdown()) {
+            AtomicInteger threadCount = new AtomicInteger();
+            ThreadFactory threadFactory = runnable -> {
+                Thread thread = new Thread(runnable, "cqf-tooling-worker-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            sharedExecutor = new ThreadPoolExecutor(parallelism, parallelism, 30, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+            sharedExecutor.allowCoreThreadTimeOut(true);
+            runningExecutors.add(sharedExecutor);
+        }
+        return sharedExecutor;
+    }
+
+    // The release target predates virtual threads, so they are created reflectively when the runtime supports them
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Virtual threads are not supported by this Java runtime, using the shared thread pool");
+            virtualThreads = false;
+            return null;
+        }
+    }
+
+    /**
+     * @return the timing of every phase executed so far, in the order the phases were first run
+     */
+    public static List<PhaseTiming> getPhaseTimings() {
+        synchronized (phaseTimings) {
+            return new ArrayList<>(phaseTimings.values());
+        }
+    }
+
+    public static String getTimingSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (PhaseTiming timing : getPhaseTimings()) {
+            summary.append(System.lineSeparator()).append("  ").append(timing);
+        }
+        return summary.toString();
+    }
+
+    public static void resetTimings() {
+        phaseTimings.clear();
+    }
+
+    /**
+     * Accumulated timing of the tasks run for one phase
+     */
+    public static class PhaseTiming {
+        private final String phase;
+        private final AtomicLong runs = new AtomicLong();
+        private final AtomicLong tasks = new AtomicLong();
+        private final AtomicLong elapsedNanos = new AtomicLong();
+        private final AtomicLong taskNanos = new AtomicLong();
+        private final AtomicLong maxTaskNanos = new AtomicLong();
+
+        private PhaseTiming(String phase) {
+            this.phase = phase;
+        }
+
+        private void recordTask(long nanos) {
+            tasks.incrementAndGet();
+            taskNanos.addAndGet(nanos);
+            maxTaskNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        private void recordPhase(long nanos) {
+            runs.incrementAndGet();
+            elapsedNanos.addAndGet(nanos);
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public long getRuns() {
+            return runs.get();
+        }
+
+        public long getTasks() {
+            return tasks.get();
+        }
+
+        public long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsedNanos.get());
+        }
+
+        public long getTaskMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(taskNanos.get());
+        }
+
+        public long getMaxTaskMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxTaskNanos.get());
+        }
+
+        @Override
+        public String toString() {
+            long taskCount = getTasks();
+            return String.format("%s: %d task(s) in %d run(s), %d ms elapsed, %d ms task time (avg %d ms, max %d ms)",
+                    phase, taskCount, getRuns(), getElapsedMillis(), getTaskMillis(),
+                    taskCount == 0 ? 0 : getTaskMillis() / taskCount, getMaxTaskMillis());
+        }
+    }
 }
@@ -0,0 +1,271 @@
+package org.opencds.cqf.tooling.cql;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.codec.binary.Hex;
+import org.cqframework.cql.cql2elm.CqlCompilerOptions;
+import org.cqframework.cql.cql2elm.CqlTranslator;
+import org.cqframework.cql.cql2elm.CqlTranslatorOptions;
+import org.cqframework.cql.cql2elm.CqlTranslatorOptionsMapper;
+import org.cqframework.cql.cql2elm.DefaultLibrarySourceProvider;
+import org.cqframework.cql.cql2elm.LibraryManager;
+import org.cqframework.cql.cql2elm.LibrarySourceLoader;
+import org.cqframework.cql.cql2elm.LibrarySourceProvider;
+import org.cqframework.cql.cql2elm.ModelManager;
+import org.cqframework.cql.cql2elm.model.CompiledLibrary;
+import org.cqframework.cql.cql2elm.model.Model;
+import org.cqframework.cql.cql2elm.quick.FhirLibrarySourceProvider;
+import org.fhir.ucum.UcumService;
+import org.hl7.cql.model.ModelIdentifier;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.opencds.cqf.tooling.cql.exception.CqlTranslatorException;
+import org.opencds.cqf.tooling.processor.CqlSourceHeader;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.opencds.cqf.tooling.utilities.ResourceUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process-wide CQL translation, for the places that translate a .cql file (or a handful of them) outside of the
+ * CqlProcessor of an IG refresh.
+ * <p>
+ * For every options profile (the compiler options the libraries are translated with) the service keeps one model
+ * cache, so ModelInfo (FHIR, QICore, ...) is loaded once per run rather than once per translation. Libraries compiled
+ * while resolving includes are kept in a pool keyed by the profile, the library identifier and a hash of its source and
+ * the sources of the libraries it includes, so a library included by many others is compiled once, and a library whose
+ * source (or the source of one of its includes) changed is compiled again.
+ * <p>
+ * The library managers handed out are cheap and not shared: use one per thread.
+ */
+public class CqlTranslationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CqlTranslationService.class);
+
+    private static final CqlTranslationService instance = new CqlTranslationService();
+
+    public static CqlTranslationService getInstance() {
+        return instance;
+    }
+
+    private final Map<String, Map<ModelIdentifier, Model>> modelCaches = new ConcurrentHashMap<>();
+    private final Map<PoolKey, CompiledLibrary> compiledLibraries = new ConcurrentHashMap<>();
+    private volatile UcumService ucumService;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a library manager that translates with the given options, resolving models from the warmed model cache
+     * of the options profile, and included libraries from the given source providers (in order) or the compiled
+     * library pool.
+     *
+     * @param options         The compiler options.
+     * @param sourceProviders The providers of the library sources.
+     * @return The library manager.
+     */
+    public LibraryManager createLibraryManager(CqlCompilerOptions options, LibrarySourceProvider... sourceProviders) {
+        String profile = getProfile(options);
+        ModelManager modelManager = new ModelManager(modelCaches.computeIfAbsent(profile, p -> new ConcurrentHashMap<>()));
+        PooledLibraries libraries = new PooledLibraries(profile);
+        LibraryManager libraryManager = new LibraryManager(modelManager, options, libraries);
+        libraries.sourceLoader = libraryManager.getLibrarySourceLoader();
+        for (LibrarySourceProvider sourceProvider : sourceProviders) {
+            libraryManager.getLibrarySourceLoader().registerProvider(sourceProvider);
+        }
+        if (options.getValidateUnits()) {
+            if (ucumService == null) {
+                ucumService = libraryManager.getUcumService();
+            }
+            else {
+                libraryManager.setUcumService(ucumService);
+            }
+        }
+        return libraryManager;
+    }
+
+    /**
+     * Translates a .cql file with the options of its folder (see {@link ResourceUtils#getTranslatorOptions(String)}),
+     * resolving included libraries from the same folder and the FHIR libraries of the translator.
+     *
+     * @param cqlFile The .cql file.
+     * @return The translator.
+     * @throws CqlTranslatorException If the file could not be read or translated without severe errors.
+     */
+    public CqlTranslator translate(File cqlFile) throws CqlTranslatorException {
+        String folder = IOUtils.getParentDirectoryPath(cqlFile.getPath());
+        CqlTranslatorOptions options = ResourceUtils.getTranslatorOptions(folder);
+        LibraryManager libraryManager = createLibraryManager(options.getCqlCompilerOptions(),
+                new FhirLibrarySourceProvider(), new DefaultLibrarySourceProvider(Path.of(folder)));
+        return IOUtils.translate(cqlFile, libraryManager);
+    }
+
+    public void clear() {
+        modelCaches.clear();
+        compiledLibraries.clear();
+    }
+
+    public String getSummary() {
+        return String.format("compiled libraries: %d model profiles, %d libraries, %d hits, %d misses",
+                modelCaches.size(), compiledLibraries.size(), hits.sum(), misses.sum());
+    }
+
+    private static String getProfile(CqlCompilerOptions options) {
+        StringWriter writer = new StringWriter();
+        CqlTranslatorOptionsMapper.toWriter(writer, new CqlTranslatorOptions().withCqlCompilerOptions(options));
+        return writer.toString();
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            return Hex.encodeHexString(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The compiled libraries of one library manager, backed by the pool: a library found in the pool is only used if
+     * its source, as resolved by this manager, is the one it was compiled from.
+     */
+    private class PooledLibraries extends AbstractMap<VersionedIdentifier, CompiledLibrary> {
+        private final String profile;
+        private final Map<VersionedIdentifier, CompiledLibrary> libraries = new HashMap<>();
+        // Source hashes of the libraries resolved by this manager, which reads every source once
+        private final Map<String, String> sourceHashes = new HashMap<>();
+        private LibrarySourceLoader sourceLoader;
+
+        PooledLibraries(String profile) {
+            this.profile = profile;
+        }
+
+        @Override
+        public CompiledLibrary get(Object key) {
+            CompiledLibrary library = libraries.get(key);
+            if (library == null && key instanceof VersionedIdentifier) {
+                PoolKey poolKey = getPoolKey((VersionedIdentifier) key);
+                library = poolKey == null ? null : compiledLibraries.get(poolKey);
+                if (library != null) {
+                    hits.increment();
+                    libraries.put((VersionedIdentifier) key, library);
+                }
+                else {
+                    misses.increment();
+                }
+            }
+            return library;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public CompiledLibrary put(VersionedIdentifier key, CompiledLibrary value) {
+            PoolKey poolKey = getPoolKey(key);
+            if (poolKey != null) {
+                compiledLibraries.putIfAbsent(poolKey, value);
+            }
+            return libraries.put(key, value);
+        }
+
+        @Override
+        public Set<Entry<VersionedIdentifier, CompiledLibrary>> entrySet() {
+            return libraries.entrySet();
+        }
+
+        private PoolKey getPoolKey(VersionedIdentifier identifier) {
+            String sourceHash = getSourceHash(identifier, new HashSet<>());
+            return sourceHash == null ? null : new PoolKey(profile, identifier, sourceHash);
+        }
+
+        /**
+         * The hash of the source of a library and, transitively, of the libraries it includes: a compiled library
+         * holds the types and signatures resolved from its includes, so it is stale when any of them changes.
+         */
+        private String getSourceHash(VersionedIdentifier identifier, Set<String> visiting) {
+            String key = identifier.getSystem() + "|" + identifier.getId() + "|" + identifier.getVersion();
+            String cached = sourceHashes.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            if (!visiting.add(key)) {
+                // Circular includes are a translation error, the library is not compiled
+                return key;
+            }
+
+            byte[] source = null;
+            try (InputStream in = sourceLoader == null ? null : sourceLoader.getLibrarySource(identifier)) {
+                if (in != null) {
+                    source = in.readAllBytes();
+                }
+            } catch (Exception e) {
+                logger.debug("Unable to read the source of library {}: {}", identifier.getId(), e.getMessage());
+            }
+            if (source == null) {
+                visiting.remove(key);
+                return null;
+            }
+
+            StringBuilder parts = new StringBuilder(hash(source));
+            for (CqlSourceHeader.Include include : CqlSourceHeader.parse(new String(source, StandardCharsets.UTF_8)).getIncludes()) {
+                String includeHash = getSourceHash(
+                        new VersionedIdentifier().withId(include.getName()).withVersion(include.getVersion()), visiting);
+                // Unresolved includes fail the translation, there is nothing more to account for
+                parts.append('|').append(includeHash == null ? include.toString() : includeHash);
+            }
+            visiting.remove(key);
+            String hash = hash(parts.toString().getBytes(StandardCharsets.UTF_8));
+            sourceHashes.put(key, hash);
+            return hash;
+        }
+    }
+
+    private static class PoolKey {
+        private final String profile;
+        private final String system;
+        private final String id;
+        private final String version;
+        private final String sourceHash;
+
+        PoolKey(String profile, VersionedIdentifier identifier, String sourceHash) {
+            this.profile = profile;
+            this.system = identifier.getSystem();
+            this.id = identifier.getId();
+            this.version = identifier.getVersion();
+            this.sourceHash = sourceHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PoolKey)) {
+                return false;
+            }
+            PoolKey other = (PoolKey) o;
+            return profile.equals(other.profile) && Objects.equals(system, other.system) && Objects.equals(id, other.id)
+                    && Objects.equals(version, other.version) && sourceHash.equals(other.sourceHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(system, id, version, sourceHash);
+        }
+    }
+}
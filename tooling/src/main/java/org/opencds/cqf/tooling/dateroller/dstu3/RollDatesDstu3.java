@@ -6,76 +6,35 @@ import org.opencds.cqf.tooling.dateroller.DataDateRollerUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Field;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class RollDatesDstu3 {
     private static Logger logger = LoggerFactory.getLogger(RollDatesDstu3.class);
+
+    private static final Set<String> DATE_TYPE_CODES = Set.of("date", "dateTime", "instant", "Period", "Timing");
+
+    // The date paths of each resource type, built the first time the type is seen
+    private static final Map<Class<? extends Resource>, List<DatePath>> datePathPlans = new ConcurrentHashMap<>();
+
     public static void rollDatesInResource(IBaseResource resource) {
         Resource dstu3Resource = (Resource) resource;
-        logger.info("resource having date rolled:  " + dstu3Resource.getNamedProperty("id").getValues().get(0));
+        logger.info("resource having date rolled:  " + dstu3Resource.getIdElement().getIdPart());
         DataDateRollerSettingsDstu3 dataDateRollerSettings = new DataDateRollerSettingsDstu3();
         if (dataDateRollerSettings.populateDataDateRollerSettings(dstu3Resource)) {
             if (DataDateRollerUtilsDstu3.isCurrentDateGreaterThanInterval(dataDateRollerSettings)) {
-                Field[] fields = dstu3Resource.getClass().getDeclaredFields();
-                for (Field field : fields) {
+                for (DatePath datePath : getDatePathPlan(dstu3Resource)) {
                     try {
-                        Property resourceProperty = dstu3Resource.getNamedProperty(field.getName());
-                        if (null != resourceProperty) {
-                            String propertyTypeCode = resourceProperty.getTypeCode();
-                            if (null != propertyTypeCode && !propertyTypeCode.isEmpty()) {
-                                if (propertyTypeCode.toLowerCase().contains("datetime") ||
-                                        propertyTypeCode.toLowerCase().contains("date") ||
-                                        propertyTypeCode.toLowerCase().contains("dateType") ||
-                                        propertyTypeCode.toLowerCase().contains("period") ||
-                                        propertyTypeCode.toLowerCase().contains("timing") ||
-                                        propertyTypeCode.toLowerCase().contains("instant")) {
-                                    if (!resourceProperty.getValues().isEmpty() &&
-                                            !resourceProperty.getValues().get(0).fhirType().equalsIgnoreCase("period")) {
-                                        LocalDate dateToRole = DataDateRollerUtilsDstu3.getOldDateFromResource(dstu3Resource, field);
-                                        if(null == dateToRole){
-                                            continue;
-                                        }
-                                        LocalDate newLocalDate = DataDateRollerUtilsDstu3.rollDate(dateToRole, dataDateRollerSettings);
-                                        DateTimeType ddType = new DateTimeType();
-                                        ZoneId defaultZoneId = ZoneId.systemDefault();
-                                        ddType.setValue(Date.from(newLocalDate.atStartOfDay(defaultZoneId).toInstant()));
-                                        Property oldProperty = dstu3Resource.getNamedProperty(field.getName());
-                                        List<Base> values = new ArrayList<>();
-                                        values.add(0, ddType);
-                                        Property newProperty = new Property(oldProperty.getName(), oldProperty.getTypeCode(), oldProperty.getDefinition(), oldProperty.getMinCardinality(), oldProperty.getMaxCardinality(), values);
-                                        Base newBase = dstu3Resource.makeProperty(newProperty.getName().hashCode(), newProperty.getName());
-                                        if (newProperty.getTypeCode().contains("dateTime")) {
-                                            ((DateTimeType) newBase).setValue(Date.from(newLocalDate.atStartOfDay(defaultZoneId).toInstant()));
-                                        } else if (newProperty.getTypeCode().contains("date")) {
-                                            ((DateType) newBase).setValue(Date.from(newLocalDate.atStartOfDay(defaultZoneId).toInstant()));
-                                        }
-                                    } else if (null != resourceProperty.getValues() &&
-                                            resourceProperty.getValues().size() > 0 &&
-                                            resourceProperty.getValues().get(0).fhirType().equalsIgnoreCase("period")) {
-                                        handlePeriod(dstu3Resource, dataDateRollerSettings, field.getName());
-                                    }
-                                }
-                            }
-                            if (field.getName().contains("dispenseRequest")) {
-                                if(null != dstu3Resource.getNamedProperty(field.getName()).getValues() &&
-                                        dstu3Resource.getNamedProperty(field.getName()).getValues().size() > 0 &&
-                                        null != dstu3Resource.getNamedProperty(field.getName()).getValues().get(0).getNamedProperty("validityPeriod") &&
-                                        null != dstu3Resource.getNamedProperty(field.getName()).getValues().get(0).getNamedProperty("validityPeriod").getValues() &&
-                                        dstu3Resource.getNamedProperty(field.getName()).getValues().get(0).getNamedProperty("validityPeriod").getValues().size() > 0) {
-                                    Period newPeriod = rollPeriodDates(dstu3Resource.getNamedProperty(field.getName()).getValues().get(0).getNamedProperty("validityPeriod"), dataDateRollerSettings);
-                                    MedicationRequest medReq = (MedicationRequest) dstu3Resource;
-                                    medReq.getDispenseRequest().setValidityPeriod(newPeriod);
-                                }
-                            }
-                        }
+                        rollPath(dstu3Resource, datePath, 0, dataDateRollerSettings);
                     } catch (Exception ex) {
-                        logger.debug(ex.getMessage());
-                        ex.printStackTrace();
+                        logger.debug("Unable to roll {}.{}: {}", dstu3Resource.fhirType(), datePath, ex.getMessage());
                     }
                 }
                 DataDateRollerUtilsDstu3.incrementLastUpdated(dstu3Resource);
@@ -83,25 +42,99 @@ public class RollDatesDstu3 {
         }
     }
 
-    private static void handlePeriod(Resource resource, DataDateRollerSettingsDstu3 dataDateRollerSettings, String fieldName) {
-        Property oldPeriodProperty = resource.getNamedProperty(fieldName);
-        Period newPeriod = rollPeriodDates(oldPeriodProperty, dataDateRollerSettings);
-        Base newBase = resource.makeProperty(fieldName.hashCode(), fieldName);
-        ((Period) newBase).setEnd(newPeriod.getEnd());
-        ((Period) newBase).setStart(newPeriod.getStart());
+    public static List<DatePath> getDatePathPlan(Resource resource) {
+        return datePathPlans.computeIfAbsent(resource.getClass(), type -> buildDatePathPlan(resource));
+    }
+
+    private static List<DatePath> buildDatePathPlan(Resource resource) {
+        List<DatePath> plan = new ArrayList<>();
+        for (Property property : resource.children()) {
+            String name = property.getName().replace("[x]", "");
+            if (isDateTypeCode(property.getTypeCode())) {
+                plan.add(new DatePath(name));
+            } else if (name.equals("dispenseRequest")) {
+                plan.add(new DatePath(name, "validityPeriod"));
+            }
+        }
+        return Collections.unmodifiableList(plan);
+    }
+
+    private static boolean isDateTypeCode(String typeCode) {
+        if (typeCode == null) {
+            return false;
+        }
+        for (String code : typeCode.split("\\|")) {
+            if (DATE_TYPE_CODES.contains(code.trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void rollPath(Base base, DatePath datePath, int index, DataDateRollerSettingsDstu3 dataDateRollerSettings) {
+        Base[] values = base.getProperty(datePath.hashes[index], datePath.names[index], false);
+        if (values == null) {
+            return;
+        }
+        for (Base value : values) {
+            if (index < datePath.names.length - 1) {
+                rollPath(value, datePath, index + 1, dataDateRollerSettings);
+            } else {
+                rollValue(value, dataDateRollerSettings);
+            }
+        }
+    }
+
+    private static void rollValue(Base value, DataDateRollerSettingsDstu3 dataDateRollerSettings) {
+        if (value instanceof Period) {
+            rollPeriodDates((Period) value, dataDateRollerSettings);
+        } else if (value instanceof Timing) {
+            Timing timing = (Timing) value;
+            timing.getEvent().forEach(event -> rollDate(event, dataDateRollerSettings));
+            if (timing.hasRepeat() && timing.getRepeat().hasBoundsPeriod()) {
+                rollPeriodDates(timing.getRepeat().getBoundsPeriod(), dataDateRollerSettings);
+            }
+        } else if (value instanceof BaseDateTimeType) {
+            rollDate((BaseDateTimeType) value, dataDateRollerSettings);
+        }
+    }
+
+    private static void rollPeriodDates(Period period, DataDateRollerSettingsDstu3 dataDateRollerSettings) {
+        if (period.hasStart()) {
+            rollDate(period.getStartElement(), dataDateRollerSettings);
+        }
+        if (period.hasEnd()) {
+            rollDate(period.getEndElement(), dataDateRollerSettings);
+        }
     }
 
-    private static Period rollPeriodDates(Property period, DataDateRollerSettingsDstu3 dataDateRollerSettings) {
-        LocalDate startLocalDate = DataDateRollerUtilsDstu3.getLocalDateFromPeriod(period, "start");
-        LocalDate endLocalDate = DataDateRollerUtilsDstu3.getLocalDateFromPeriod(period, "end");
-        startLocalDate = DataDateRollerUtilsDstu3.rollDate(startLocalDate, dataDateRollerSettings);
-        endLocalDate = DataDateRollerUtilsDstu3.rollDate(endLocalDate, dataDateRollerSettings);
-        ZoneId defaultZoneId = ZoneId.systemDefault();
-        Period newPeriod = new Period();
-        newPeriod.setStart(Date.from(startLocalDate.atStartOfDay(defaultZoneId).toInstant()));
-        newPeriod.setEnd(Date.from(endLocalDate.atStartOfDay(defaultZoneId).toInstant()));
-        return newPeriod;
+    private static void rollDate(BaseDateTimeType date, DataDateRollerSettingsDstu3 dataDateRollerSettings) {
+        if (!date.hasValue()) {
+            return;
+        }
+        LocalDate dateToRoll = DataDateRollerUtils.stringDateFromResourceToLocalDate(date.getValueAsString());
+        if (null == dateToRoll) {
+            return;
+        }
+        LocalDate newLocalDate = DataDateRollerUtilsDstu3.rollDate(dateToRoll, dataDateRollerSettings);
+        date.setValue(Date.from(newLocalDate.atStartOfDay(ZoneId.systemDefault()).toInstant()));
     }
 
+    public static class DatePath {
+        private final String[] names;
+        private final int[] hashes;
+
+        DatePath(String... names) {
+            this.names = names;
+            this.hashes = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                hashes[i] = names[i].hashCode();
+            }
+        }
 
+        @Override
+        public String toString() {
+            return String.join(".", names);
+        }
+    }
 }
@@ -6,76 +6,35 @@ import org.opencds.cqf.tooling.dateroller.DataDateRollerUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Field;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class RollDatesR4 {
     private static Logger logger = LoggerFactory.getLogger(RollDatesR4.class);
+
+    private static final Set<String> DATE_TYPE_CODES = Set.of("date", "dateTime", "instant", "Period", "Timing");
+
+    // The date paths of each resource type, built the first time the type is seen
+    private static final Map<Class<? extends Resource>, List<DatePath>> datePathPlans = new ConcurrentHashMap<>();
+
     public static void rollDatesInResource(IBaseResource resource) {
         Resource r4Resource = (Resource) resource;
-        logger.info("resource having date rolled:  " + r4Resource.getNamedProperty("id").getValues().get(0));
+        logger.info("resource having date rolled:  " + r4Resource.getIdElement().getIdPart());
         DataDateRollerSettingsR4 dataDateRollerSettings = new DataDateRollerSettingsR4();
         if (dataDateRollerSettings.populateDataDateRollerSettings(r4Resource)) {
             if (DataDateRollerUtilsR4.isCurrentDateGreaterThanInterval(dataDateRollerSettings)) {
-                Field[] fields = r4Resource.getClass().getDeclaredFields();
-                for (Field field : fields) {
+                for (DatePath datePath : getDatePathPlan(r4Resource)) {
                     try {
-                        Property resourceProperty = r4Resource.getNamedProperty(field.getName());
-                        if (null != resourceProperty) {
-                            String propertyTypeCode = resourceProperty.getTypeCode();
-                            if (null != propertyTypeCode && !propertyTypeCode.isEmpty()) {
-                                if (propertyTypeCode.toLowerCase().contains("datetime") ||
-                                        propertyTypeCode.toLowerCase().contains("date") ||
-                                        propertyTypeCode.toLowerCase().contains("dateType") ||
-                                        propertyTypeCode.toLowerCase().contains("period") ||
-                                        propertyTypeCode.toLowerCase().contains("timing") ||
-                                        propertyTypeCode.toLowerCase().contains("instant")) {
-                                    if (!resourceProperty.getValues().isEmpty() &&
-                                            !resourceProperty.getValues().get(0).fhirType().equalsIgnoreCase("period")) {
-                                        LocalDate dateToRole = DataDateRollerUtilsR4.getOldDateFromResource(r4Resource, field);
-                                        if(null == dateToRole){
-                                            continue;
-                                        }
-                                        LocalDate newLocalDate = DataDateRollerUtilsR4.rollDate(dateToRole, dataDateRollerSettings);
-                                        DateTimeType ddType = new DateTimeType();
-                                        ZoneId defaultZoneId = ZoneId.systemDefault();
-                                        ddType.setValue(Date.from(newLocalDate.atStartOfDay(defaultZoneId).toInstant()));
-                                        Property oldProperty = r4Resource.getNamedProperty(field.getName());
-                                        List<Base> values = new ArrayList<>();
-                                        values.add(0, ddType);
-                                        Property newProperty = new Property(oldProperty.getName(), oldProperty.getTypeCode(), oldProperty.getDefinition(), oldProperty.getMinCardinality(), oldProperty.getMaxCardinality(), values);
-                                        Base newBase = r4Resource.makeProperty(newProperty.getName().hashCode(), newProperty.getName());
-                                        if (newProperty.getTypeCode().contains("dateTime")) {
-                                            ((DateTimeType) newBase).setValue(Date.from(newLocalDate.atStartOfDay(defaultZoneId).toInstant()));
-                                        } else if (newProperty.getTypeCode().contains("date")) {
-                                            ((DateType) newBase).setValue(Date.from(newLocalDate.atStartOfDay(defaultZoneId).toInstant()));
-                                        }
-                                    } else if (null != resourceProperty.getValues() &&
-                                            resourceProperty.getValues().size() > 0 &&
-                                            resourceProperty.getValues().get(0).fhirType().equalsIgnoreCase("period")) {
-                                        handlePeriod(r4Resource, dataDateRollerSettings, field.getName());
-                                    }
-                                }
-                            }
-                            if (field.getName().contains("dispenseRequest")) {
-                                if(null != r4Resource.getNamedProperty(field.getName()).getValues() &&
-                                        r4Resource.getNamedProperty(field.getName()).getValues().size() > 0 &&
-                                        null != r4Resource.getNamedProperty(field.getName()).getValues().get(0).getNamedProperty("validityPeriod") &&
-                                        null != r4Resource.getNamedProperty(field.getName()).getValues().get(0).getNamedProperty("validityPeriod").getValues() &&
-                                        r4Resource.getNamedProperty(field.getName()).getValues().get(0).getNamedProperty("validityPeriod").getValues().size() > 0) {
-                                    Period newPeriod = rollPeriodDates(r4Resource.getNamedProperty(field.getName()).getValues().get(0).getNamedProperty("validityPeriod"), dataDateRollerSettings);
-                                    MedicationRequest medReq = (MedicationRequest) r4Resource;
-                                    medReq.getDispenseRequest().setValidityPeriod(newPeriod);
-                                }
-                            }
-                        }
+                        rollPath(r4Resource, datePath, 0, dataDateRollerSettings);
                     } catch (Exception ex) {
-                        logger.debug(ex.getMessage());
-                        ex.printStackTrace();
+                        logger.debug("Unable to roll {}.{}: {}", r4Resource.fhirType(), datePath, ex.getMessage());
                     }
                 }
                 DataDateRollerUtilsR4.incrementLastUpdated(r4Resource);
@@ -83,23 +42,99 @@ public class RollDatesR4 {
         }
     }
 
-    private static void handlePeriod(Resource r4Resource, DataDateRollerSettingsR4 dataDateRollerSettings, String fieldName) {
-        Property oldPeriodProperty = r4Resource.getNamedProperty(fieldName);
-        Period newPeriod = rollPeriodDates(oldPeriodProperty, dataDateRollerSettings);
-        Base newBase = r4Resource.makeProperty(fieldName.hashCode(), fieldName);
-        ((Period) newBase).setEnd(newPeriod.getEnd());
-        ((Period) newBase).setStart(newPeriod.getStart());
+    public static List<DatePath> getDatePathPlan(Resource resource) {
+        return datePathPlans.computeIfAbsent(resource.getClass(), type -> buildDatePathPlan(resource));
+    }
+
+    private static List<DatePath> buildDatePathPlan(Resource resource) {
+        List<DatePath> plan = new ArrayList<>();
+        for (Property property : resource.children()) {
+            String name = property.getName().replace("[x]", "");
+            if (isDateTypeCode(property.getTypeCode())) {
+                plan.add(new DatePath(name));
+            } else if (name.equals("dispenseRequest")) {
+                plan.add(new DatePath(name, "validityPeriod"));
+            }
+        }
+        return Collections.unmodifiableList(plan);
+    }
+
+    private static boolean isDateTypeCode(String typeCode) {
+        if (typeCode == null) {
+            return false;
+        }
+        for (String code : typeCode.split("\\|")) {
+            if (DATE_TYPE_CODES.contains(code.trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void rollPath(Base base, DatePath datePath, int index, DataDateRollerSettingsR4 dataDateRollerSettings) {
+        Base[] values = base.getProperty(datePath.hashes[index], datePath.names[index], false);
+        if (values == null) {
+            return;
+        }
+        for (Base value : values) {
+            if (index < datePath.names.length - 1) {
+                rollPath(value, datePath, index + 1, dataDateRollerSettings);
+            } else {
+                rollValue(value, dataDateRollerSettings);
+            }
+        }
+    }
+
+    private static void rollValue(Base value, DataDateRollerSettingsR4 dataDateRollerSettings) {
+        if (value instanceof Period) {
+            rollPeriodDates((Period) value, dataDateRollerSettings);
+        } else if (value instanceof Timing) {
+            Timing timing = (Timing) value;
+            timing.getEvent().forEach(event -> rollDate(event, dataDateRollerSettings));
+            if (timing.hasRepeat() && timing.getRepeat().hasBoundsPeriod()) {
+                rollPeriodDates(timing.getRepeat().getBoundsPeriod(), dataDateRollerSettings);
+            }
+        } else if (value instanceof BaseDateTimeType) {
+            rollDate((BaseDateTimeType) value, dataDateRollerSettings);
+        }
     }
 
-    private static Period rollPeriodDates(Property period, DataDateRollerSettingsR4 dataDateRollerSettings) {
-        LocalDate startLocalDate = DataDateRollerUtilsR4.getLocalDateFromPeriod(period, "start");
-        LocalDate endLocalDate = DataDateRollerUtilsR4.getLocalDateFromPeriod(period, "end");
-        startLocalDate = DataDateRollerUtilsR4.rollDate(startLocalDate, dataDateRollerSettings);
-        endLocalDate = DataDateRollerUtilsR4.rollDate(endLocalDate, dataDateRollerSettings);
-        ZoneId defaultZoneId = ZoneId.systemDefault();
-        Period newPeriod = new Period();
-        newPeriod.setStart(Date.from(startLocalDate.atStartOfDay(defaultZoneId).toInstant()));
-        newPeriod.setEnd(Date.from(endLocalDate.atStartOfDay(defaultZoneId).toInstant()));
-        return newPeriod;
+    private static void rollPeriodDates(Period period, DataDateRollerSettingsR4 dataDateRollerSettings) {
+        if (period.hasStart()) {
+            rollDate(period.getStartElement(), dataDateRollerSettings);
+        }
+        if (period.hasEnd()) {
+            rollDate(period.getEndElement(), dataDateRollerSettings);
+        }
+    }
+
+    private static void rollDate(BaseDateTimeType date, DataDateRollerSettingsR4 dataDateRollerSettings) {
+        if (!date.hasValue()) {
+            return;
+        }
+        LocalDate dateToRoll = DataDateRollerUtils.stringDateFromResourceToLocalDate(date.getValueAsString());
+        if (null == dateToRoll) {
+            return;
+        }
+        LocalDate newLocalDate = DataDateRollerUtilsR4.rollDate(dateToRoll, dataDateRollerSettings);
+        date.setValue(Date.from(newLocalDate.atStartOfDay(ZoneId.systemDefault()).toInstant()));
+    }
+
+    public static class DatePath {
+        private final String[] names;
+        private final int[] hashes;
+
+        DatePath(String... names) {
+            this.names = names;
+            this.hashes = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                hashes[i] = names[i].hashCode();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.join(".", names);
+        }
     }
 }
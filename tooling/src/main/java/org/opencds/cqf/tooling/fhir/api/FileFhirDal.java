@@ -13,31 +13,51 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IIdType;
 import org.opencds.cqf.tooling.parameter.FileFhirPlatformParameters;
 import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.opencds.cqf.tooling.utilities.ResourceCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.model.api.IQueryParameterType;
 import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.util.BundleBuilder;
+import ca.uhn.fhir.util.BundleUtil;
 
+/**
+ * A FhirDal over a directory of resource files laid out as [resourceDir]/[type]/[id].[encoding].
+ *
+ * Reads and searches are served from an index of the directory (see {@link FileFhirIndex}) that is built on first use
+ * and kept up to date by create, update and delete; parsed resources are cached until their file changes, and each
+ * read returns a copy so callers are free to modify it. Files changed by other means are picked up by
+ * {@link #reindex()}.
+ */
 public class FileFhirDal implements FhirDal {
   protected final String resourceDir;
   protected final EncodingEnum encoding;
   protected final FhirContext fhirContext;
   private static final Logger logger = LoggerFactory.getLogger(FileFhirDal.class);
 
+  public static final String RESOURCE_CACHE_SIZE_PROPERTY = "cqf-tooling.fileFhirDal.cacheSize";
+
+  private final boolean persistIndex;
+  private final ResourceCache<String, IBaseResource> cachedResources =
+          new ResourceCache<>("file-fhir-dal", Long.getLong(RESOURCE_CACHE_SIZE_PROPERTY, 10000));
+  private FileFhirIndex index;
 
   public FileFhirDal(String resourceDir){
     this.resourceDir = resourceDir;
     this.encoding = EncodingEnum.JSON;
     this.fhirContext = FhirContext.forR4();
+    this.persistIndex = false;
   }
 
   public FileFhirDal(FileFhirPlatformParameters params){
     this.resourceDir = params.resourceDir;
     this.encoding = params.encoding;
     this.fhirContext = params.fhirContext;
+    this.persistIndex = params.persistIndex;
   }
 
   @Override
@@ -54,12 +74,31 @@ public class FileFhirDal implements FhirDal {
       }
 
       writeResource(path, resource);
+      indexResource(resource, path);
     }
   }
 
   @Override
   public IBaseResource read(IIdType id){
-    return resourceTypeDefined(id) ? readResource(getPath(id)) : null;
+    if (!resourceTypeDefined(id)) {
+      return null;
+    }
+    File file = getIndex().getFile(id.getResourceType(), id.getIdPart());
+    String path = file == null ? getPath(id) : file.getPath();
+    String key = id.getResourceType() + "/" + id.getIdPart();
+    IBaseResource resource = cachedResources.get(key, new File(path));
+    if (resource == null) {
+      resource = readResource(path);
+      if (resource != null) {
+        cachedResources.put(key, resource, new File(path));
+        if (file == null) {
+          // written to the directory since the index was built
+          getIndex().put(resource, new File(path));
+        }
+      }
+    }
+    // the cached instance is shared between reads
+    return resource == null ? null : fhirContext.newTerser().clone(resource);
   }
 
   @Override
@@ -70,6 +109,7 @@ public class FileFhirDal implements FhirDal {
 
       if (file.exists()){
         writeResource(getPath(resource), resource);
+        indexResource(resource, getPath(resource));
       } else {
         create(resource);
       }
@@ -86,6 +126,40 @@ public class FileFhirDal implements FhirDal {
           logger.warn("Could not delete {} :", id.getIdPart());
         }
       }
+      cachedResources.invalidate(id.getResourceType() + "/" + id.getIdPart());
+      if (index != null) {
+        index.remove(id.getResourceType(), id.getIdPart());
+      }
+    }
+  }
+
+  /**
+   * Rebuilds the index from the files in the resource directory
+   */
+  public synchronized void reindex() {
+    if (index == null) {
+      index = new FileFhirIndex(fhirContext, encoding, resourceDir, persistIndex);
+    }
+    index.build();
+  }
+
+  private synchronized FileFhirIndex getIndex() {
+    if (index == null) {
+      reindex();
+    }
+    return index;
+  }
+
+  // an index that has not been built yet picks the file up when it is
+  private void indexResource(IBaseResource resource, String path) {
+    String key = resource.getIdElement().getResourceType() + "/" + resource.getIdElement().getIdPart();
+    cachedResources.invalidate(key);
+    FileFhirIndex builtIndex;
+    synchronized (this) {
+      builtIndex = index;
+    }
+    if (builtIndex != null) {
+      builtIndex.put(resource, new File(path));
     }
   }
 
@@ -155,9 +229,28 @@ public class FileFhirDal implements FhirDal {
     }
   }
 
-  // TODO: search resource directory / package cache
+  /**
+   * Searches the indexed resources of the type. The token, reference, date, uri and string search parameters defined
+   * for the resource type are supported, as well as _id; all resources of the type are returned when no parameters
+   * are given.
+   *
+   * @return a searchset Bundle of the matching resources, ordered by id
+   * @throws IllegalArgumentException if a search parameter or modifier is not supported
+   */
   @Override
   public IBaseBundle search(String resourceType, Map<String, List<List<IQueryParameterType>>> searchParameters){
-    return null;
-  };
+    BundleBuilder builder = new BundleBuilder(this.fhirContext);
+    int total = 0;
+    for (String id : getIndex().search(resourceType, searchParameters)) {
+      IBaseResource resource = read(new IdDt(resourceType, id));
+      if (resource != null) {
+        builder.addCollectionEntry(resource);
+        total++;
+      }
+    }
+    builder.setType("searchset");
+    IBaseBundle bundle = builder.getBundle();
+    BundleUtil.setTotal(this.fhirContext, bundle, total);
+    return bundle;
+  }
 }
@@ -0,0 +1,518 @@
+package org.opencds.cqf.tooling.fhir.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiPredicate;
+
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.common.ThreadUtils;
+import org.opencds.cqf.tooling.processor.IGBuildCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.model.api.IQueryParameterType;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.param.DateParam;
+import ca.uhn.fhir.rest.param.ParamPrefixEnum;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.rest.param.UriParam;
+
+/**
+ * In-memory index of the resources stored by a {@link FileFhirDal}, laid out as [resourceDir]/[type]/[id].[encoding].
+ * <p>
+ * The index maps each resource id to its file and each indexed search parameter value (see
+ * {@link SearchParameterExtractor}) to the ids of the resources having it: tokens, references, uris and exact strings
+ * are hashed, strings are kept sorted for prefix matching and dates are kept sorted by both ends of their range.
+ * <p>
+ * When persisted, the extracted values are stored at [resourceDir]/.cqf-tooling/fhir-index.json together with the
+ * modification time and size of each file, so that only new or changed files are parsed when the index is rebuilt.
+ */
+class FileFhirIndex {
+  private static final Logger logger = LoggerFactory.getLogger(FileFhirIndex.class);
+
+  static final String INDEX_FILE = "fhir-index.json";
+  private static final int FORMAT_VERSION = 1;
+
+  private static class Snapshot {
+    int formatVersion;
+    String fhirVersion;
+    String encoding;
+    Map<String, IndexedResource> resources = new TreeMap<>();
+  }
+
+  private final FhirContext fhirContext;
+  private final EncodingEnum encoding;
+  private final File resourceDir;
+  private final File indexFile;
+  private final boolean persist;
+  private final SearchParameterExtractor extractor;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Map<String, Map<String, IndexedResource>> resources = new HashMap<>();
+  private final Map<String, Map<String, ParameterIndex>> parameters = new HashMap<>();
+
+  FileFhirIndex(FhirContext fhirContext, EncodingEnum encoding, String resourceDir, boolean persist) {
+    this.fhirContext = fhirContext;
+    this.encoding = encoding;
+    this.resourceDir = new File(resourceDir);
+    this.indexFile = new File(new File(this.resourceDir, IGBuildCache.CACHE_DIRECTORY), INDEX_FILE);
+    this.persist = persist;
+    this.extractor = new SearchParameterExtractor(fhirContext);
+  }
+
+  /**
+   * Scans the resource directory and (re)builds the index, parsing the files in parallel
+   */
+  void build() {
+    Map<String, IndexedResource> previous = persist ? load() : Collections.emptyMap();
+    Map<String, IndexedResource> current = new ConcurrentHashMap<>();
+    AtomicInteger parsed = new AtomicInteger();
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (File file : listResourceFiles()) {
+      String key = getKey(file);
+      IndexedResource indexed = previous.get(key);
+      if (indexed != null && indexed.lastModified == file.lastModified() && indexed.size == file.length()) {
+        current.put(key, indexed);
+        continue;
+      }
+      tasks.add(() -> {
+        IBaseResource resource = parse(file);
+        if (resource != null) {
+          current.put(key, extract(resource, file));
+          parsed.incrementAndGet();
+        }
+        return null;
+      });
+    }
+    ThreadUtils.executeIoTasks("index FHIR resources", tasks);
+
+    lock.writeLock().lock();
+    try {
+      resources.clear();
+      parameters.clear();
+      current.values().forEach(this::add);
+    } finally {
+      lock.writeLock().unlock();
+    }
+    logger.info("Indexed {} resource(s) in {} ({} parsed)", current.size(), resourceDir, parsed.get());
+
+    if (persist && (parsed.get() > 0 || previous.size() != current.size())) {
+      save(current);
+    }
+  }
+
+  /**
+   * @return the file of the resource, or null if it is not indexed
+   */
+  File getFile(String resourceType, String id) {
+    lock.readLock().lock();
+    try {
+      return resources.getOrDefault(resourceType, Collections.emptyMap()).containsKey(id)
+              ? getResourceFile(resourceType, id) : null;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Indexes (or re-indexes) a resource that was just written to the file
+   */
+  void put(IBaseResource resource, File file) {
+    IndexedResource indexed = extract(resource, file);
+    lock.writeLock().lock();
+    try {
+      removeIndexed(indexed.resourceType, indexed.id);
+      add(indexed);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  void remove(String resourceType, String id) {
+    lock.writeLock().lock();
+    try {
+      removeIndexed(resourceType, id);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  int size() {
+    lock.readLock().lock();
+    try {
+      return resources.values().stream().mapToInt(Map::size).sum();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Finds the resources of the type matching all of the search parameters; the values of each inner list are
+   * alternatives (OR) and the lists are combined with AND.
+   *
+   * @return the ids of the matching resources, in order
+   * @throws IllegalArgumentException if a search parameter or modifier is not supported by the index
+   */
+  Set<String> search(String resourceType, Map<String, List<List<IQueryParameterType>>> searchParameters) {
+    lock.readLock().lock();
+    try {
+      Map<String, IndexedResource> ofType = resources.getOrDefault(resourceType, Collections.emptyMap());
+      Set<String> result = null;
+      if (searchParameters != null) {
+        for (Map.Entry<String, List<List<IQueryParameterType>>> parameter : searchParameters.entrySet()) {
+          for (List<IQueryParameterType> alternatives : parameter.getValue()) {
+            Set<String> matches = new HashSet<>();
+            for (IQueryParameterType value : alternatives) {
+              matches.addAll(match(resourceType, ofType, parameter.getKey(), value));
+            }
+            if (result == null) {
+              result = matches;
+            } else {
+              result.retainAll(matches);
+            }
+          }
+        }
+      }
+      return new TreeSet<>(result == null ? ofType.keySet() : result);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private Set<String> match(String resourceType, Map<String, IndexedResource> ofType, String name, IQueryParameterType value) {
+    if (name.equals("_id")) {
+      String id = toParam(name, value, TokenParam.class).getValue();
+      id = id.contains("/") ? id.substring(id.lastIndexOf('/') + 1) : id;
+      return ofType.containsKey(id) ? Set.of(id) : Collections.emptySet();
+    }
+    RuntimeSearchParam definition = extractor.getIndexedParameters(resourceType).get(name);
+    if (definition == null) {
+      throw new IllegalArgumentException(String.format("Search parameter %s of %s is not supported by the file index", name, resourceType));
+    }
+    ParameterIndex index = parameters.getOrDefault(resourceType, Collections.emptyMap()).get(name);
+    if (index == null) {
+      return Collections.emptySet();
+    }
+    switch (definition.getParamType()) {
+      case TOKEN:
+        TokenParam token = toParam(name, value, TokenParam.class);
+        if (token.getModifier() != null) {
+          throw new IllegalArgumentException(String.format("Modifier %s of %s is not supported by the file index", token.getModifier().getValue(), name));
+        }
+        return index.lookup(getTokenKey(token));
+      case REFERENCE:
+        ReferenceParam reference = toParam(name, value, ReferenceParam.class);
+        if (StringUtils.isNotBlank(reference.getChain())) {
+          throw new IllegalArgumentException(String.format("Chained search %s.%s is not supported by the file index", name, reference.getChain()));
+        }
+        return index.lookup(reference.getResourceType() != null
+                ? reference.getResourceType() + "/" + reference.getIdPart() : reference.getValue());
+      case URI:
+        UriParam uri = toParam(name, value, UriParam.class);
+        if (uri.getQualifier() != null) {
+          throw new IllegalArgumentException(String.format("Modifier %s of %s is not supported by the file index", uri.getQualifier().getValue(), name));
+        }
+        return index.lookup(uri.getValue());
+      case STRING:
+        StringParam string = toParam(name, value, StringParam.class);
+        if (string.isExact()) {
+          return index.lookup(string.getValue());
+        }
+        return string.isContains()
+                ? index.lookupContaining(SearchParameterExtractor.normalize(string.getValue()))
+                : index.lookupPrefix(SearchParameterExtractor.normalize(string.getValue()));
+      case DATE:
+        return matchDate(ofType, name, index, toParam(name, value, DateParam.class));
+      default:
+        throw new IllegalArgumentException(String.format("Search parameter %s of %s is not supported by the file index", name, resourceType));
+    }
+  }
+
+  private static String getTokenKey(TokenParam token) {
+    if (token.getSystem() == null) {
+      return token.getValue();
+    }
+    return token.getValue() == null ? token.getSystem() + "|" : token.getSystem() + "|" + token.getValue();
+  }
+
+  private Set<String> matchDate(Map<String, IndexedResource> ofType, String name, ParameterIndex index, DateParam date) {
+    long[] range = SearchParameterExtractor.toRange(date.getValueAsString());
+    if (range == null) {
+      throw new IllegalArgumentException(String.format("Invalid date for %s: %s", name, date.getValueAsString()));
+    }
+    long start = range[0];
+    long end = range[1];
+    ParamPrefixEnum prefix = date.getPrefix() == null ? ParamPrefixEnum.EQUAL : date.getPrefix();
+    // the sorted ends narrow down the candidates, which are then checked against their full ranges
+    Set<String> candidates;
+    BiPredicate<Long, Long> matches;
+    switch (prefix) {
+      case EQUAL:
+        candidates = ParameterIndex.ids(index.starts.subMap(start, true, end, true));
+        matches = (s, e) -> s >= start && e <= end;
+        break;
+      case NOT_EQUAL:
+        candidates = ofType.keySet();
+        matches = (s, e) -> s < start || e > end;
+        break;
+      case GREATERTHAN:
+        candidates = ParameterIndex.ids(index.ends.tailMap(end, false));
+        matches = (s, e) -> e > end;
+        break;
+      case GREATERTHAN_OR_EQUALS:
+        candidates = ParameterIndex.ids(index.ends.tailMap(start, true));
+        matches = (s, e) -> e >= start;
+        break;
+      case LESSTHAN:
+        candidates = ParameterIndex.ids(index.starts.headMap(start, false));
+        matches = (s, e) -> s < start;
+        break;
+      case LESSTHAN_OR_EQUALS:
+        candidates = ParameterIndex.ids(index.starts.headMap(end, true));
+        matches = (s, e) -> s <= end;
+        break;
+      case STARTS_AFTER:
+        candidates = ParameterIndex.ids(index.starts.tailMap(end, false));
+        matches = (s, e) -> s > end;
+        break;
+      case ENDS_BEFORE:
+        candidates = ParameterIndex.ids(index.ends.headMap(start, false));
+        matches = (s, e) -> e < start;
+        break;
+      case APPROXIMATE:
+        candidates = ParameterIndex.ids(index.starts.headMap(end, true));
+        matches = (s, e) -> s <= end && e >= start;
+        break;
+      default:
+        throw new IllegalArgumentException(String.format("Prefix %s of %s is not supported by the file index", prefix.getValue(), name));
+    }
+
+    Set<String> result = new HashSet<>();
+    for (String id : candidates) {
+      IndexedResource indexed = ofType.get(id);
+      List<long[]> dates = indexed == null ? null : indexed.dates.get(name);
+      if (dates != null && dates.stream().anyMatch(d -> matches.test(d[0], d[1]))) {
+        result.add(id);
+      }
+    }
+    return result;
+  }
+
+  // Search parameters may be given as any parameter type; they are converted through their query string form
+  private <T extends IQueryParameterType> T toParam(String name, IQueryParameterType value, Class<T> type) {
+    if (type.isInstance(value)) {
+      return type.cast(value);
+    }
+    try {
+      T param = type.getDeclaredConstructor().newInstance();
+      param.setValueAsQueryToken(fhirContext, name, value.getQueryParameterQualifier(), value.getValueAsQueryToken(fhirContext));
+      return param;
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalArgumentException(String.format("Unable to convert the value of %s to a %s", name, type.getSimpleName()), e);
+    }
+  }
+
+  private IndexedResource extract(IBaseResource resource, File file) {
+    String resourceType = file.getParentFile().getName();
+    IndexedResource indexed = extractor.extract(resource, resourceType, getId(file));
+    indexed.lastModified = file.lastModified();
+    indexed.size = file.length();
+    return indexed;
+  }
+
+  private void add(IndexedResource indexed) {
+    resources.computeIfAbsent(indexed.resourceType, t -> new HashMap<>()).put(indexed.id, indexed);
+    Map<String, ParameterIndex> ofType = parameters.computeIfAbsent(indexed.resourceType, t -> new HashMap<>());
+    indexed.keys.forEach((name, keys) -> ofType.computeIfAbsent(name, n -> new ParameterIndex()).addKeys(indexed.id, keys));
+    indexed.strings.forEach((name, strings) -> ofType.computeIfAbsent(name, n -> new ParameterIndex()).addStrings(indexed.id, strings));
+    indexed.dates.forEach((name, dates) -> ofType.computeIfAbsent(name, n -> new ParameterIndex()).addDates(indexed.id, dates));
+  }
+
+  private void removeIndexed(String resourceType, String id) {
+    IndexedResource indexed = resources.getOrDefault(resourceType, Collections.emptyMap()).remove(id);
+    if (indexed == null) {
+      return;
+    }
+    Map<String, ParameterIndex> ofType = parameters.get(resourceType);
+    indexed.keys.forEach((name, keys) -> ofType.get(name).removeKeys(id, keys));
+    indexed.strings.forEach((name, strings) -> ofType.get(name).removeStrings(id, strings));
+    indexed.dates.forEach((name, dates) -> ofType.get(name).removeDates(id, dates));
+  }
+
+  private List<File> listResourceFiles() {
+    List<File> files = new ArrayList<>();
+    File[] typeDirectories = resourceDir.listFiles(File::isDirectory);
+    if (typeDirectories == null) {
+      return files;
+    }
+    String extension = "." + encoding.toString();
+    for (File typeDirectory : typeDirectories) {
+      if (!fhirContext.getResourceTypes().contains(typeDirectory.getName())) {
+        continue;
+      }
+      File[] resourceFiles = typeDirectory.listFiles(file -> file.isFile() && file.getName().endsWith(extension));
+      if (resourceFiles != null) {
+        Collections.addAll(files, resourceFiles);
+      }
+    }
+    return files;
+  }
+
+  private IBaseResource parse(File file) {
+    try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      return encoding.newParser(fhirContext).parseResource(reader);
+    } catch (Exception e) {
+      logger.warn("Unable to index {}: {}", file, e.getMessage());
+      return null;
+    }
+  }
+
+  private File getResourceFile(String resourceType, String id) {
+    return new File(new File(resourceDir, resourceType), id + "." + encoding.toString());
+  }
+
+  private String getId(File file) {
+    String name = file.getName();
+    return name.substring(0, name.length() - encoding.toString().length() - 1);
+  }
+
+  private String getKey(File file) {
+    return file.getParentFile().getName() + "/" + file.getName();
+  }
+
+  private Map<String, IndexedResource> load() {
+    if (!indexFile.exists()) {
+      return Collections.emptyMap();
+    }
+    try (Reader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+      Snapshot snapshot = new Gson().fromJson(reader, Snapshot.class);
+      if (snapshot != null && snapshot.formatVersion == FORMAT_VERSION && snapshot.resources != null
+              && fhirContext.getVersion().getVersion().name().equals(snapshot.fhirVersion)
+              && encoding.name().equals(snapshot.encoding)) {
+        return snapshot.resources;
+      }
+      logger.info("Index at {} was produced for a different FHIR version or encoding, rebuilding", indexFile);
+    } catch (IOException | JsonParseException e) {
+      logger.warn("Unable to read index at {}, rebuilding: {}", indexFile, e.getMessage());
+    }
+    return Collections.emptyMap();
+  }
+
+  private void save(Map<String, IndexedResource> current) {
+    Snapshot snapshot = new Snapshot();
+    snapshot.formatVersion = FORMAT_VERSION;
+    snapshot.fhirVersion = fhirContext.getVersion().getVersion().name();
+    snapshot.encoding = encoding.name();
+    snapshot.resources.putAll(current);
+    try {
+      Files.createDirectories(indexFile.getParentFile().toPath());
+      File tempFile = new File(indexFile.getParentFile(), INDEX_FILE + ".tmp");
+      try (Writer writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+        new Gson().toJson(snapshot, writer);
+      }
+      Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      logger.warn("Unable to write index to {}: {}", indexFile, e.getMessage());
+    }
+  }
+
+  private static class ParameterIndex {
+    private final Map<String, Set<String>> keys = new HashMap<>();
+    private final NavigableMap<String, Set<String>> strings = new TreeMap<>();
+    private final NavigableMap<Long, Set<String>> starts = new TreeMap<>();
+    private final NavigableMap<Long, Set<String>> ends = new TreeMap<>();
+
+    private Set<String> lookup(String key) {
+      return key == null ? Collections.emptySet() : keys.getOrDefault(key, Collections.emptySet());
+    }
+
+    private Set<String> lookupPrefix(String prefix) {
+      return ids(strings.subMap(prefix, true, prefix + Character.MAX_VALUE, true));
+    }
+
+    private Set<String> lookupContaining(String text) {
+      Set<String> ids = new HashSet<>();
+      strings.forEach((value, valueIds) -> {
+        if (value.contains(text)) {
+          ids.addAll(valueIds);
+        }
+      });
+      return ids;
+    }
+
+    private static Set<String> ids(Map<?, Set<String>> values) {
+      Set<String> ids = new HashSet<>();
+      values.values().forEach(ids::addAll);
+      return ids;
+    }
+
+    private void addKeys(String id, List<String> values) {
+      values.forEach(value -> add(keys, value, id));
+    }
+
+    private void addStrings(String id, List<String> values) {
+      values.forEach(value -> add(strings, value, id));
+    }
+
+    private void addDates(String id, List<long[]> values) {
+      for (long[] value : values) {
+        add(starts, value[0], id);
+        add(ends, value[1], id);
+      }
+    }
+
+    private void removeKeys(String id, List<String> values) {
+      values.forEach(value -> remove(keys, value, id));
+    }
+
+    private void removeStrings(String id, List<String> values) {
+      values.forEach(value -> remove(strings, value, id));
+    }
+
+    private void removeDates(String id, List<long[]> values) {
+      for (long[] value : values) {
+        remove(starts, value[0], id);
+        remove(ends, value[1], id);
+      }
+    }
+
+    private static <K> void add(Map<K, Set<String>> index, K value, String id) {
+      index.computeIfAbsent(value, v -> new HashSet<>()).add(id);
+    }
+
+    private static <K> void remove(Map<K, Set<String>> index, K value, String id) {
+      Set<String> ids = index.get(value);
+      if (ids != null && ids.remove(id) && ids.isEmpty()) {
+        index.remove(value);
+      }
+    }
+  }
+}
@@ -8,14 +8,19 @@ import org.opencds.cqf.tooling.parameter.FileFhirPlatformParameters;
 
 public class FileFhirPlatform implements FhirPlatform{
   private FileFhirPlatformParameters platformParams;
+  private FileFhirDal dal;
 
   public FileFhirPlatform(FileFhirPlatformParameters platformParams){
     this.platformParams = platformParams;
   }
 
+  // a single dal, so that its index is built once for the platform
   @Override
-  public FileFhirDal dal(){
-    return new FileFhirDal(this.platformParams);
+  public synchronized FileFhirDal dal(){
+    if (this.dal == null) {
+      this.dal = new FileFhirDal(this.platformParams);
+    }
+    return this.dal;
   }
 
   @Override
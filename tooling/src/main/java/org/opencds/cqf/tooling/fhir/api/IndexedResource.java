@@ -0,0 +1,43 @@
+package org.opencds.cqf.tooling.fhir.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The search parameter values of a single resource file, as recorded in (and persisted with) the {@link FileFhirIndex}.
+ */
+class IndexedResource {
+  String resourceType;
+  String id;
+  // the state of the file the values were extracted from, to detect changes between runs
+  long lastModified;
+  long size;
+  // exact lookup keys (tokens, references, uris and string values), by search parameter
+  Map<String, List<String>> keys = new TreeMap<>();
+  // normalized string values, by search parameter
+  Map<String, List<String>> strings = new TreeMap<>();
+  // date ranges as {first, last} millisecond, by search parameter
+  Map<String, List<long[]>> dates = new TreeMap<>();
+
+  IndexedResource(String resourceType, String id) {
+    this.resourceType = resourceType;
+    this.id = id;
+  }
+
+  void addKey(String parameter, String key) {
+    List<String> values = keys.computeIfAbsent(parameter, p -> new ArrayList<>());
+    if (!values.contains(key)) {
+      values.add(key);
+    }
+  }
+
+  void addString(String parameter, String normalized) {
+    strings.computeIfAbsent(parameter, p -> new ArrayList<>()).add(normalized);
+  }
+
+  void addDate(String parameter, long start, long end) {
+    dates.computeIfAbsent(parameter, p -> new ArrayList<>()).add(new long[] { start, end });
+  }
+}
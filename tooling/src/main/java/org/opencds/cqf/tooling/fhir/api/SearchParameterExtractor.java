@@ -0,0 +1,275 @@
+package org.opencds.cqf.tooling.fhir.api;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseReference;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.BaseRuntimeElementCompositeDefinition;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeSearchParam;
+import ca.uhn.fhir.fhirpath.IFhirPath;
+import ca.uhn.fhir.model.primitive.DateTimeDt;
+import ca.uhn.fhir.rest.api.RestSearchParameterTypeEnum;
+import ca.uhn.fhir.util.FhirTerser;
+import ca.uhn.fhir.util.StringUtil;
+
+/**
+ * Extracts the values of the token, reference, date, uri and string search parameters of a resource, as defined by
+ * the FHIRPath expressions of the search parameters HAPI knows for the FHIR version.
+ * <p>
+ * Token, reference and uri values (and the exact value of strings) are recorded as the lookup keys a search matches
+ * on; string values are additionally normalized for prefix matching and dates are recorded as millisecond ranges.
+ */
+class SearchParameterExtractor {
+  private static final Logger logger = LoggerFactory.getLogger(SearchParameterExtractor.class);
+
+  static final Set<RestSearchParameterTypeEnum> INDEXED_TYPES = EnumSet.of(RestSearchParameterTypeEnum.TOKEN,
+          RestSearchParameterTypeEnum.REFERENCE, RestSearchParameterTypeEnum.DATE, RestSearchParameterTypeEnum.URI,
+          RestSearchParameterTypeEnum.STRING);
+
+  // resolve() needs a resolver, so reference paths restricted by target type are evaluated without the restriction
+  // and the references are filtered by type instead
+  private static final Pattern RESOLVE_IS = Pattern.compile("\\.where\\(resolve\\(\\) is (\\w+)\\)");
+
+  private final FhirContext fhirContext;
+  private final FhirTerser terser;
+  // the FHIRPath engines are not thread safe
+  private final ThreadLocal<Evaluator> evaluators;
+  private final Map<String, Map<String, RuntimeSearchParam>> indexedParameters = new ConcurrentHashMap<>();
+
+  SearchParameterExtractor(FhirContext fhirContext) {
+    this.fhirContext = fhirContext;
+    this.terser = fhirContext.newTerser();
+    this.evaluators = ThreadLocal.withInitial(Evaluator::new);
+  }
+
+  /**
+   * @return the search parameters of the resource type that are indexed, by name
+   */
+  Map<String, RuntimeSearchParam> getIndexedParameters(String resourceType) {
+    return indexedParameters.computeIfAbsent(resourceType, type -> {
+      Map<String, RuntimeSearchParam> parameters = new HashMap<>();
+      for (RuntimeSearchParam parameter : fhirContext.getResourceDefinition(type).getSearchParams()) {
+        if (INDEXED_TYPES.contains(parameter.getParamType()) && parameter.getPath() != null
+                && !parameter.getPath().isEmpty() && !parameter.getName().equals("_id")) {
+          parameters.put(parameter.getName(), parameter);
+        }
+      }
+      return parameters;
+    });
+  }
+
+  IndexedResource extract(IBaseResource resource, String resourceType, String id) {
+    IndexedResource indexed = new IndexedResource(resourceType, id);
+    for (RuntimeSearchParam parameter : getIndexedParameters(resourceType).values()) {
+      List<IBase> values;
+      List<String> targetTypes = new ArrayList<>();
+      try {
+        values = evaluate(resource, parameter.getPath(), targetTypes);
+      } catch (Exception e) {
+        logger.debug("Unable to evaluate search parameter {} of {}: {}", parameter.getName(), resourceType, e.getMessage());
+        continue;
+      }
+      for (IBase value : values) {
+        switch (parameter.getParamType()) {
+          case TOKEN:
+            addTokens(indexed, parameter.getName(), value);
+            break;
+          case REFERENCE:
+            addReferences(indexed, parameter.getName(), value, targetTypes);
+            break;
+          case URI:
+            if (value instanceof IPrimitiveType && ((IPrimitiveType<?>) value).getValueAsString() != null) {
+              indexed.addKey(parameter.getName(), ((IPrimitiveType<?>) value).getValueAsString());
+            }
+            break;
+          case STRING:
+            addStrings(indexed, parameter.getName(), value);
+            break;
+          case DATE:
+            addDates(indexed, parameter.getName(), value);
+            break;
+          default:
+            break;
+        }
+      }
+    }
+    return indexed;
+  }
+
+  private List<IBase> evaluate(IBaseResource resource, String path, List<String> targetTypes) throws Exception {
+    Matcher matcher = RESOLVE_IS.matcher(path);
+    while (matcher.find()) {
+      targetTypes.add(matcher.group(1));
+    }
+    return evaluators.get().evaluate(resource, matcher.replaceAll(""));
+  }
+
+  private void addTokens(IndexedResource indexed, String name, IBase value) {
+    switch (value.fhirType()) {
+      case "CodeableConcept":
+        for (IBase coding : terser.getValues(value, "coding")) {
+          addTokens(indexed, name, coding);
+        }
+        break;
+      case "Coding":
+        addToken(indexed, name, getString(value, "system"), getString(value, "code"));
+        break;
+      case "Identifier":
+        addToken(indexed, name, getString(value, "system"), getString(value, "value"));
+        break;
+      case "ContactPoint":
+        addToken(indexed, name, null, getString(value, "value"));
+        break;
+      default:
+        if (value instanceof IPrimitiveType) {
+          addToken(indexed, name, null, ((IPrimitiveType<?>) value).getValueAsString());
+        }
+    }
+  }
+
+  private void addToken(IndexedResource indexed, String name, String system, String code) {
+    if (code == null && system == null) {
+      return;
+    }
+    for (String key : tokenKeys(system, code)) {
+      indexed.addKey(name, key);
+    }
+  }
+
+  /**
+   * @return the keys under which a token is found: the code alone, with its system, the system alone, and (for codes
+   * without a system) with an explicitly empty system
+   */
+  static Set<String> tokenKeys(String system, String code) {
+    Set<String> keys = new LinkedHashSet<>();
+    if (code != null) {
+      keys.add(code);
+      keys.add(system == null ? "|" + code : system + "|" + code);
+    }
+    if (system != null) {
+      keys.add(system + "|");
+    }
+    return keys;
+  }
+
+  private void addReferences(IndexedResource indexed, String name, IBase value, List<String> targetTypes) {
+    if (value instanceof IBaseReference) {
+      IIdType reference = ((IBaseReference) value).getReferenceElement();
+      if (reference == null || reference.isEmpty() || reference.isLocal()
+              || (!targetTypes.isEmpty() && !targetTypes.contains(reference.getResourceType()))) {
+        return;
+      }
+      indexed.addKey(name, reference.getValue());
+      if (reference.hasIdPart()) {
+        indexed.addKey(name, reference.getIdPart());
+        if (reference.hasResourceType()) {
+          indexed.addKey(name, reference.getResourceType() + "/" + reference.getIdPart());
+        }
+      }
+    } else if (value instanceof IPrimitiveType && ((IPrimitiveType<?>) value).getValueAsString() != null) {
+      // canonical references, matched with or without their version
+      String canonical = ((IPrimitiveType<?>) value).getValueAsString();
+      indexed.addKey(name, canonical);
+      if (canonical.contains("|")) {
+        indexed.addKey(name, canonical.substring(0, canonical.indexOf('|')));
+      }
+    }
+  }
+
+  private void addStrings(IndexedResource indexed, String name, IBase value) {
+    List<IBase> strings = new ArrayList<>();
+    if (value instanceof IPrimitiveType) {
+      strings.add(value);
+    } else if (fhirContext.getElementDefinition(value.getClass()) instanceof BaseRuntimeElementCompositeDefinition) {
+      // the string parts of composites such as HumanName and Address
+      for (BaseRuntimeChildDefinition child : ((BaseRuntimeElementCompositeDefinition<?>) fhirContext.getElementDefinition(value.getClass())).getChildren()) {
+        strings.addAll(child.getAccessor().getValues(value));
+      }
+    }
+    for (IBase string : strings) {
+      if (!(string instanceof IPrimitiveType)) {
+        continue;
+      }
+      String text = ((IPrimitiveType<?>) string).getValueAsString();
+      if (text != null && !text.isEmpty()) {
+        indexed.addKey(name, text);
+        indexed.addString(name, normalize(text));
+      }
+    }
+  }
+
+  static String normalize(String value) {
+    return StringUtil.normalizeStringForSearchIndexing(value);
+  }
+
+  private void addDates(IndexedResource indexed, String name, IBase value) {
+    if (value instanceof IPrimitiveType) {
+      long[] range = toRange(((IPrimitiveType<?>) value).getValueAsString());
+      if (range != null) {
+        indexed.addDate(name, range[0], range[1]);
+      }
+    } else if (value.fhirType().equals("Period")) {
+      long[] start = toRange(getString(value, "start"));
+      long[] end = toRange(getString(value, "end"));
+      if (start != null || end != null) {
+        indexed.addDate(name, start == null ? Long.MIN_VALUE : start[0], end == null ? Long.MAX_VALUE : end[1]);
+      }
+    }
+  }
+
+  /**
+   * @return the first and last millisecond covered by the date, given its precision, or null if it is not a date
+   */
+  static long[] toRange(String date) {
+    if (date == null || date.isEmpty()) {
+      return null;
+    }
+    try {
+      DateTimeDt dateTime = new DateTimeDt(date);
+      Date start = dateTime.getValue();
+      if (start == null) {
+        return null;
+      }
+      return new long[] { start.getTime(), dateTime.getPrecision().add(start, 1).getTime() - 1 };
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private String getString(IBase element, String child) {
+    IPrimitiveType<?> value = terser.getSingleValueOrNull(element, child, IPrimitiveType.class);
+    return value == null ? null : value.getValueAsString();
+  }
+
+  private class Evaluator {
+    private final IFhirPath fhirPath = fhirContext.newFhirPath();
+    private final Map<String, IFhirPath.IParsedExpression> expressions = new HashMap<>();
+
+    private List<IBase> evaluate(IBaseResource resource, String path) throws Exception {
+      IFhirPath.IParsedExpression expression = expressions.get(path);
+      if (expression == null) {
+        expression = fhirPath.parse(path);
+        expressions.put(path, expression);
+      }
+      return fhirPath.evaluate(resource, expression, IBase.class);
+    }
+  }
+}
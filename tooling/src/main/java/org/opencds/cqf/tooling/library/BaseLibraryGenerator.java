@@ -9,6 +9,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.cqframework.cql.cql2elm.CqlCompilerException;
+import org.cqframework.cql.cql2elm.CqlCompilerOptions;
 import org.cqframework.cql.cql2elm.CqlTranslator;
 import org.cqframework.cql.cql2elm.CqlTranslatorOptions;
 import org.cqframework.cql.cql2elm.DefaultLibrarySourceProvider;
@@ -19,6 +20,7 @@ import org.cqframework.cql.elm.tracking.TrackBack;
 import org.hl7.elm.r1.ValueSetDef;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.opencds.cqf.tooling.Operation;
+import org.opencds.cqf.tooling.cql.CqlTranslationService;
 
 import ca.uhn.fhir.context.FhirContext;
 import org.slf4j.Logger;
@@ -57,11 +59,10 @@ public abstract class BaseLibraryGenerator<L extends IBaseResource, T extends Ba
         buildArgs(args);
         setRelevantCqlFiles();
         
-        modelManager = new ModelManager();
         sourceProvider = new DefaultLibrarySourceProvider(new File(pathToCQLContent).getParentFile().toPath());
         //sourceProvider = new GenericLibrarySourceProvider(pathToCqlContentDir);
-        libraryManager = new LibraryManager(modelManager);
-        libraryManager.getLibrarySourceLoader().registerProvider(sourceProvider);
+        libraryManager = CqlTranslationService.getInstance().createLibraryManager(CqlCompilerOptions.defaultOptions(), sourceProvider);
+        modelManager = libraryManager.getModelManager();
 
         translateCqlFiles();
 
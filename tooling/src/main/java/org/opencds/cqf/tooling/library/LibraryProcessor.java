@@ -17,6 +17,7 @@ import org.opencds.cqf.tooling.library.stu3.STU3LibraryProcessor;
 import org.opencds.cqf.tooling.parameter.RefreshLibraryParameters;
 import org.opencds.cqf.tooling.processor.BaseProcessor;
 import org.opencds.cqf.tooling.processor.CqlProcessor;
+import org.opencds.cqf.tooling.processor.IGBuildCache;
 import org.opencds.cqf.tooling.processor.IGProcessor;
 import org.opencds.cqf.tooling.utilities.IOUtils.Encoding;
 import org.opencds.cqf.tooling.utilities.ResourceUtils;
@@ -111,7 +112,7 @@ public class LibraryProcessor extends BaseProcessor {
     public void bundleLibraryDependencies(IBaseResource library, FhirContext fhirContext, Map<String, IBaseResource> resources,
                                           Encoding encoding, boolean versioned) throws Exception {
         Queue<Callable<Void>> bundleLibraryDependenciesTasks = bundleLibraryDependenciesTasks(library, fhirContext, resources, encoding, versioned);
-        ThreadUtils.executeTasks(bundleLibraryDependenciesTasks);
+        ThreadUtils.executeTasks("bundle library dependencies", new ArrayList<>(bundleLibraryDependenciesTasks));
     }
 
     /**
@@ -148,6 +149,16 @@ public class LibraryProcessor extends BaseProcessor {
 
     protected boolean versioned;
 
+    /**
+     * Libraries whose CQL source was unchanged since the previous build (see IGBuildCache) and were not refreshed
+     */
+    protected final List<Library> unchangedLibraries = new ArrayList<>();
+
+    /**
+     * CQL source files that were translated without severe errors during this refresh
+     */
+    private final Set<String> translatedCqlPaths = new HashSet<>();
+
 
     // TODO: use this approach once the package operation is separated from the refresh operation
 //    protected Library refreshGeneratedContent(Library sourceLibrary) {
@@ -235,7 +246,8 @@ public class LibraryProcessor extends BaseProcessor {
 
             var translatorOptions = getCqlProcessor().getCqlTranslatorOptions();
             var formats = translatorOptions.getFormats();
-            CqlProcessor.CqlSourceFileInformation info = getCqlProcessor().getFileInformation(attachment.getUrl());
+            String cqlSourcePath = attachment.getUrl();
+            CqlProcessor.CqlSourceFileInformation info = getCqlProcessor().getFileInformation(cqlSourcePath);
             if (this.parentContext != null && this.parentContext.getCanonicalBase() != null) {
                 attachment.setUrl(this.parentContext.getCanonicalBase() + "/" + fileName);
             }
@@ -254,6 +266,9 @@ public class LibraryProcessor extends BaseProcessor {
                 sourceLibrary.getParameter().addAll(info.getParameters());
                 getCqlProcessor().getCqlTranslatorOptions();
                 setTranslatorOptions(sourceLibrary, translatorOptions);
+                if (info.getElm() != null) {
+                    translatedCqlPaths.add(cqlSourcePath);
+                }
             } else {
                 logMessage(String.format("No cql info found for %s", fileName));
             }
@@ -370,11 +385,56 @@ public class LibraryProcessor extends BaseProcessor {
 
         List<Library> resources = new ArrayList<Library>();
         for (Library library : sourceLibraries) {
+            if (getCqlProcessor().isUnchanged(getCqlSourcePath(library))) {
+                unchangedLibraries.add(library);
+                continue;
+            }
             resources.add(refreshGeneratedContent(library));
         }
+        if (!unchangedLibraries.isEmpty()) {
+            logger.info("{} Library resource(s) skipped, CQL source unchanged since the previous build", unchangedLibraries.size());
+        }
         return resources;
     }
 
+    /*
+    Returns the fully qualified path of the CQL source for the given library (filename = <name>[-<version>].cql),
+    or null if the source is not found in the binary paths
+     */
+    protected String getCqlSourcePath(Library library) {
+        String fileName = library.getName() + (versioned ? "-" + library.getVersion() : "") + ".cql";
+        for (String dir : getBinaryPaths()) {
+            File f = new File(dir, fileName);
+            if (f.exists()) {
+                return f.getAbsolutePath();
+            }
+        }
+        return null;
+    }
+
+    protected List<String> getUnchangedLibraryNames() {
+        List<String> names = new ArrayList<>();
+        for (Library library : unchangedLibraries) {
+            names.add(versioned && library.getVersion() != null ? library.getName() + "-" + library.getVersion() : library.getName());
+        }
+        return names;
+    }
+
+    /*
+    Records the refreshed library in the build cache (if any), keyed by its CQL source, so that the next refresh
+    can skip it while the CQL, its includes and the written library file are unchanged.
+    Libraries whose CQL failed to translate are never recorded so their errors are reported again.
+     */
+    protected void recordBuildCacheEntry(Library library, String outputPath) {
+        IGBuildCache cache = getCqlProcessor().getBuildCache();
+        String cqlSourcePath = getCqlSourcePath(library);
+        if (cache == null || cqlSourcePath == null || !translatedCqlPaths.contains(cqlSourcePath)) {
+            return;
+        }
+        cache.record(IGBuildCache.CQL, cqlSourcePath, cache.getCqlFingerprint(new File(cqlSourcePath)),
+                Collections.singletonList(outputPath));
+    }
+
     private Attachment loadFile(String fn) throws IOException {
         for (String dir : getBinaryPaths()) {
             File f = new File(Utilities.path(dir, fn));
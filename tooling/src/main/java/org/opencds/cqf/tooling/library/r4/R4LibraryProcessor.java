@@ -102,6 +102,7 @@ public class R4LibraryProcessor extends LibraryProcessor {
                 }
                 IOUtils.writeResource(library, outputPath, fileEncoding, fhirContext, this.versioned, true);
                 IOUtils.updateCachedResource(library, outputPath);
+                recordBuildCacheEntry(refreshedLibrary, outputPath);
 
                 String refreshedLibraryName;
                 if (this.versioned && refreshedLibrary.getVersion() != null) {
@@ -113,6 +114,8 @@ public class R4LibraryProcessor extends LibraryProcessor {
             }
         }
 
+        refreshedLibraryNames.addAll(getUnchangedLibraryNames());
+
         return refreshedLibraryNames;
     }
 
@@ -70,6 +70,7 @@ public class STU3LibraryProcessor extends LibraryProcessor {
                 }
                 IOUtils.writeResource(library, outputPath, IOUtils.getEncoding(outputPath), fhirContext);
                 IOUtils.updateCachedResource(library, outputPath);
+                recordBuildCacheEntry(refreshedLibrary, outputPath);
 
                 String refreshedLibraryName;
                 if (this.versioned && refreshedLibrary.getVersion() != null) {
@@ -81,6 +82,8 @@ public class STU3LibraryProcessor extends LibraryProcessor {
             }
         }
 
+        refreshedLibraryNames.addAll(getUnchangedLibraryNames());
+
         return refreshedLibraryNames;
     }
 
@@ -3,6 +3,7 @@ package org.opencds.cqf.tooling.measure;
 import java.io.File;
 import java.util.Objects;
 
+import org.cqframework.cql.cql2elm.CqlCompilerOptions;
 import org.hl7.fhir.Parameters;
 import org.hl7.fhir.ParametersParameter;
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -27,10 +28,18 @@ public class MeasureTestProcessor implements ITestProcessor {
     public static final String TestPassedKey  = "Test Passed";
 
     private FhirContext fhirContext;
+    // the options libraries are compiled with when a test is evaluated locally, null for the defaults
+    private CqlCompilerOptions cqlCompilerOptions;
 
     public MeasureTestProcessor(FhirContext fhirContext)
+    {
+        this(fhirContext, null);
+    }
+
+    public MeasureTestProcessor(FhirContext fhirContext, CqlCompilerOptions cqlCompilerOptions)
     {
         this.fhirContext = fhirContext;
+        this.cqlCompilerOptions = cqlCompilerOptions;
     }
 
     public Parameters executeTest(String testPath, String contentBundlePath, String fhirServer)
@@ -89,7 +98,7 @@ public class MeasureTestProcessor implements ITestProcessor {
         }
 
         if (fhirServer == null) {
-            return new CqlEvaluatorMeasureTestAdapter(this.fhirContext, testBundle, contentBundle);
+            return new CqlEvaluatorMeasureTestAdapter(this.fhirContext, testBundle, contentBundle, this.cqlCompilerOptions);
         }
 
         IGenericClient fhirClient = this.fhirContext.newRestfulGenericClient(fhirServer);
@@ -116,7 +125,7 @@ public class MeasureTestProcessor implements ITestProcessor {
         }
 
         if (fhirServer == null) {
-            return new CqlEvaluatorMeasureTestAdapter(this.fhirContext, testPath, contentBundlePath);
+            return new CqlEvaluatorMeasureTestAdapter(this.fhirContext, testPath, contentBundlePath, this.cqlCompilerOptions);
         }
 
         IGenericClient fhirClient = this.fhirContext.newRestfulGenericClient(fhirServer);
@@ -1,7 +1,12 @@
 package org.opencds.cqf.tooling.measure.adapters;
 
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -13,6 +18,9 @@ import ca.uhn.fhir.util.BundleUtil;
 
 public class ContentLoadingFhirServerMeasureTestAdapter extends FhirServerMeasureTestAdapter {
 
+    // Servers each content bundle has already been loaded to, so the test cases sharing it only post it once
+    private static final Map<IBaseResource, Set<String>> loadedContent = Collections.synchronizedMap(new WeakHashMap<>());
+
     private IBaseResource contentBundle;
 
     public ContentLoadingFhirServerMeasureTestAdapter(FhirContext fhirContext, IGenericClient fhirServer, IBaseResource testBundle, String contentPath) {
@@ -78,7 +86,14 @@ public class ContentLoadingFhirServerMeasureTestAdapter extends FhirServerMeasur
     }
 
     private void ensureContentAndData() {
-        this.postBundle((IBaseBundle)this.contentBundle);
+        // Test cases of the same content bundle may run concurrently, the first one loads the content
+        synchronized (this.contentBundle) {
+            Set<String> servers = loadedContent.computeIfAbsent(this.contentBundle, bundle -> new HashSet<>());
+            if (!servers.contains(this.fhirServer.getServerBase())) {
+                this.postBundle((IBaseBundle)this.contentBundle);
+                servers.add(this.fhirServer.getServerBase());
+            }
+        }
         this.postBundle((IBaseBundle)this.testBundle);
     }
 }
\ No newline at end of file
@@ -1,38 +1,74 @@
 package org.opencds.cqf.tooling.measure.adapters;
 
-import org.apache.commons.lang3.NotImplementedException;
+import java.util.Objects;
+
+import org.cqframework.cql.cql2elm.CqlCompilerOptions;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.measure.evaluation.LocalMeasureEvaluator;
+import org.opencds.cqf.tooling.utilities.IOUtils;
 
 import ca.uhn.fhir.context.FhirContext;
 
+/**
+ * Evaluates the Measure under test in process with the CQL engine, against the data of the test bundle and the
+ * libraries and terminology of the content bundle, without a FHIR server.
+ */
 public class CqlEvaluatorMeasureTestAdapter extends MeasureTestAdapter {
 
-    // private String contentPath;
-    // private IBaseResource contentBundle;
+    private IBaseResource contentBundle;
+    private CqlCompilerOptions compilerOptions;
 
-    /// This guy will eventually run the the cql-evaluator to get the results...
     public CqlEvaluatorMeasureTestAdapter(FhirContext fhirContext, IBaseResource testBundle, IBaseResource contentBundle) {
+        this(fhirContext, testBundle, contentBundle, null);
+    }
+
+    public CqlEvaluatorMeasureTestAdapter(FhirContext fhirContext, IBaseResource testBundle, IBaseResource contentBundle,
+            CqlCompilerOptions compilerOptions) {
         super(fhirContext, testBundle);
 
-        // this.contentBundle = contentBundle;
+        this.compilerOptions = compilerOptions;
+        this.contentBundle = Objects.requireNonNull(contentBundle, "contentBundle can not be null");
+        validateContentBundle();
     }
 
     public CqlEvaluatorMeasureTestAdapter(FhirContext fhirContext, String testPath, String contentPath) {
+        this(fhirContext, testPath, contentPath, null);
+    }
+
+    public CqlEvaluatorMeasureTestAdapter(FhirContext fhirContext, String testPath, String contentPath,
+            CqlCompilerOptions compilerOptions) {
         super(fhirContext, testPath);
 
-        // this.contentPath = contentPath;
+        this.compilerOptions = compilerOptions;
+        Objects.requireNonNull(contentPath, "contentPath can not be null");
+        this.contentBundle = IOUtils.readResource(contentPath, fhirContext);
+
+        if (contentBundle == null) {
+            throw new IllegalArgumentException(String.format("FHIR Resource does not exist at %s", contentPath));
+        }
+
+        validateContentBundle();
+    }
+
+    private void validateContentBundle() {
+        if (!this.contentBundle.fhirType().equals("Bundle") || !(this.contentBundle instanceof IBaseBundle)) {
+            throw new IllegalArgumentException("contentBundle is not a Bundle Resource");
+        }
     }
 
     @Override
     public IMeasureReportAdapter getActualMeasureReportAdapter() {
-        // 1. Get Measure and Patient Ids from Expected
-        // 2. Run evaluator with Measure, Patient, Content context
-        // 3. Parse the result
-        throw new NotImplementedException();
+        return this.evaluate();
     }
 
     @Override
     protected IMeasureReportAdapter evaluate() {
-        throw new NotImplementedException();
+        // The evaluator (compiled libraries, terminology) is shared by all the test cases of the content bundle
+        LocalMeasureEvaluator evaluator = LocalMeasureEvaluator.forContentBundle(this.fhirContext,
+                (IBaseBundle)this.contentBundle, this.compilerOptions);
+        IBaseResource measureReport = evaluator.evaluate(this.getMeasureId(), this.getPatientId(), this.getPeriodStart(),
+                this.getPeriodEnd(), (IBaseBundle)this.testBundle);
+        return getMeasureReportAdapter(this.fhirContext, measureReport);
     }
-}
\ No newline at end of file
+}
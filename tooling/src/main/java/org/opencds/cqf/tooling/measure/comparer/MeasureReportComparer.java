@@ -41,7 +41,10 @@ public class MeasureReportComparer {
             boolean foundMatch = false;
             for (IMeasureReportAdapter.Group actualGroup : actualGroups) {
                 if (actualGroup.getName().equals(expectedGroup.getName())) {
-                    if (actualGroup.getScore().compareTo(expectedGroup.getScore()) == 0) {
+                    // A group without a score (e.g. an empty denominator) only matches another one without a score
+                    if (actualGroup.getScore() == null || expectedGroup.getScore() == null
+                            ? actualGroup.getScore() == expectedGroup.getScore()
+                            : actualGroup.getScore().compareTo(expectedGroup.getScore()) == 0) {
                         foundMatch = true;
                         break;
                     }
@@ -0,0 +1,62 @@
+package org.opencds.cqf.tooling.measure.evaluation;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.cqframework.cql.cql2elm.LibrarySourceProvider;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.FhirTerser;
+
+/**
+ * Provides the CQL source of the Library resources of a content bundle, by library name and version.
+ */
+public class BundleLibrarySourceProvider implements LibrarySourceProvider {
+
+    private final Map<String, TreeMap<String, byte[]>> sources = new HashMap<>();
+
+    public BundleLibrarySourceProvider(FhirContext fhirContext, Iterable<? extends IBaseResource> libraries) {
+        FhirTerser terser = fhirContext.newTerser();
+        for (IBaseResource library : libraries) {
+            String name = terser.getSinglePrimitiveValueOrNull(library, "name");
+            byte[] cql = getCql(terser, library);
+            if (name != null && cql != null) {
+                String version = terser.getSinglePrimitiveValueOrNull(library, "version");
+                sources.computeIfAbsent(name, n -> new TreeMap<>())
+                        .put(version == null ? "" : version, cql);
+            }
+        }
+    }
+
+    private static byte[] getCql(FhirTerser terser, IBaseResource library) {
+        for (IBase content : terser.getValues(library, "content")) {
+            String contentType = terser.getSinglePrimitiveValueOrNull(content, "contentType");
+            IPrimitiveType<?> data = terser.getSingleValueOrNull(content, "data", IPrimitiveType.class);
+            if ("text/cql".equals(contentType) && data != null && data.getValue() instanceof byte[]) {
+                return (byte[]) data.getValue();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public InputStream getLibrarySource(VersionedIdentifier libraryIdentifier) {
+        TreeMap<String, byte[]> versions = sources.get(libraryIdentifier.getId());
+        if (versions == null || versions.isEmpty()) {
+            return null;
+        }
+
+        // An unversioned include resolves to the last version in the bundle
+        byte[] cql = libraryIdentifier.getVersion() == null
+                ? versions.lastEntry().getValue()
+                : versions.get(libraryIdentifier.getVersion());
+        return cql == null ? null : new ByteArrayInputStream(cql);
+    }
+}
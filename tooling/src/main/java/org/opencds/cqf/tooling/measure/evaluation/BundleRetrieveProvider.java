@@ -0,0 +1,128 @@
+package org.opencds.cqf.tooling.measure.evaluation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseCoding;
+import org.hl7.fhir.instance.model.api.IBaseReference;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.opencds.cqf.cql.engine.model.ModelResolver;
+import org.opencds.cqf.cql.engine.retrieve.TerminologyAwareRetrieveProvider;
+import org.opencds.cqf.cql.engine.runtime.Code;
+import org.opencds.cqf.cql.engine.runtime.Interval;
+import org.opencds.cqf.cql.engine.terminology.ValueSetInfo;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.FhirTerser;
+
+/**
+ * Retrieves the resources of a test case bundle, filtered by context (the patient under test) and by code or value
+ * set. Date ranges are not applied here: they are only an optimization, the CQL still applies its own date criteria
+ * to the retrieved resources.
+ */
+public class BundleRetrieveProvider extends TerminologyAwareRetrieveProvider {
+
+    private final ModelResolver modelResolver;
+    private final FhirTerser terser;
+    private final Map<String, List<IBaseResource>> resourcesByType = new HashMap<>();
+
+    public BundleRetrieveProvider(FhirContext fhirContext, ModelResolver modelResolver, Iterable<? extends IBaseResource> resources) {
+        this.modelResolver = modelResolver;
+        this.terser = fhirContext.newTerser();
+        for (IBaseResource resource : resources) {
+            resourcesByType.computeIfAbsent(resource.fhirType(), type -> new ArrayList<>()).add(resource);
+        }
+    }
+
+    @Override
+    public Iterable<Object> retrieve(String context, String contextPath, Object contextValue, String dataType,
+            String templateId, String codePath, Iterable<Code> codes, String valueSet, String datePath,
+            String dateLowPath, String dateHighPath, Interval dateRange) {
+        List<Object> results = new ArrayList<>();
+        for (IBaseResource resource : resourcesByType.getOrDefault(dataType, Collections.emptyList())) {
+            if (contextPath != null && contextValue != null
+                    && !matchesContext(modelResolver.resolvePath(resource, contextPath), lastSegment(contextValue.toString()))) {
+                continue;
+            }
+            if (codePath != null && (codes != null || valueSet != null)
+                    && !matchesCodes(codesOf(modelResolver.resolvePath(resource, codePath)), codes, valueSet)) {
+                continue;
+            }
+            results.add(resource);
+        }
+        return results;
+    }
+
+    private boolean matchesContext(Object value, String contextId) {
+        if (value instanceof Iterable) {
+            for (Object element : (Iterable<?>) value) {
+                if (matchesContext(element, contextId)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        String id;
+        if (value instanceof IBaseReference) {
+            id = ((IBaseReference) value).getReferenceElement().getIdPart();
+        } else if (value instanceof IIdType) {
+            id = ((IIdType) value).getIdPart();
+        } else if (value instanceof IPrimitiveType) {
+            id = ((IPrimitiveType<?>) value).getValueAsString();
+        } else {
+            id = value == null ? null : value.toString();
+        }
+        return id != null && lastSegment(id).equals(contextId);
+    }
+
+    private static String lastSegment(String id) {
+        return id.substring(id.lastIndexOf('/') + 1);
+    }
+
+    private boolean matchesCodes(List<Code> resourceCodes, Iterable<Code> codes, String valueSet) {
+        for (Code resourceCode : resourceCodes) {
+            if (codes != null) {
+                for (Code code : codes) {
+                    if (code.getCode() != null && code.getCode().equals(resourceCode.getCode())
+                            && (code.getSystem() == null || resourceCode.getSystem() == null
+                                    || code.getSystem().equals(resourceCode.getSystem()))) {
+                        return true;
+                    }
+                }
+            }
+            if (valueSet != null && getTerminologyProvider().in(resourceCode, new ValueSetInfo().withId(valueSet))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<Code> codesOf(Object value) {
+        List<Code> codes = new ArrayList<>();
+        if (value instanceof Iterable) {
+            for (Object element : (Iterable<?>) value) {
+                codes.addAll(codesOf(element));
+            }
+        } else if (value instanceof IBaseCoding) {
+            IBaseCoding coding = (IBaseCoding) value;
+            if (coding.getCode() != null) {
+                codes.add(new Code().withSystem(coding.getSystem()).withCode(coding.getCode()));
+            }
+        } else if (value instanceof IPrimitiveType) {
+            String code = ((IPrimitiveType<?>) value).getValueAsString();
+            if (code != null) {
+                codes.add(new Code().withCode(code));
+            }
+        } else if (value instanceof IBase && "CodeableConcept".equals(((IBase) value).fhirType())) {
+            codes.addAll(codesOf(terser.getValues((IBase) value, "coding")));
+        }
+        return codes;
+    }
+}
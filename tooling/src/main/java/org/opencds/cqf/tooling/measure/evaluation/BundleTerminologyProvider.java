@@ -0,0 +1,134 @@
+package org.opencds.cqf.tooling.measure.evaluation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.cql.engine.runtime.Code;
+import org.opencds.cqf.cql.engine.terminology.CodeSystemInfo;
+import org.opencds.cqf.cql.engine.terminology.TerminologyProvider;
+import org.opencds.cqf.cql.engine.terminology.ValueSetInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.FhirTerser;
+
+/**
+ * Answers membership and expansion requests from the ValueSet resources of a content bundle, without a terminology
+ * server. A ValueSet is expanded from its expansion if it has one, otherwise from the concepts enumerated in its
+ * compose; intensional (filter based) definitions are not supported.
+ */
+public class BundleTerminologyProvider implements TerminologyProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(BundleTerminologyProvider.class);
+
+    private final Map<String, ValueSetCodes> valueSets = new HashMap<>();
+
+    public BundleTerminologyProvider(FhirContext fhirContext, Iterable<? extends IBaseResource> valueSetResources) {
+        FhirTerser terser = fhirContext.newTerser();
+        for (IBaseResource valueSet : valueSetResources) {
+            ValueSetCodes codes = new ValueSetCodes();
+            List<IBase> contains = terser.getValues(valueSet, "expansion.contains");
+            if (!contains.isEmpty()) {
+                addContains(terser, contains, codes);
+            } else {
+                for (IBase include : terser.getValues(valueSet, "compose.include")) {
+                    String system = terser.getSinglePrimitiveValueOrNull(include, "system");
+                    String version = terser.getSinglePrimitiveValueOrNull(include, "version");
+                    if (!terser.getValues(include, "filter").isEmpty()) {
+                        logger.warn("ValueSet {} uses filters, only its enumerated concepts are available for local evaluation",
+                                valueSet.getIdElement().getIdPart());
+                    }
+                    for (IBase concept : terser.getValues(include, "concept")) {
+                        codes.add(new Code().withSystem(system).withVersion(version)
+                                .withCode(terser.getSinglePrimitiveValueOrNull(concept, "code"))
+                                .withDisplay(terser.getSinglePrimitiveValueOrNull(concept, "display")));
+                    }
+                }
+            }
+
+            String url = terser.getSinglePrimitiveValueOrNull(valueSet, "url");
+            if (url != null) {
+                valueSets.put(url, codes);
+            }
+            if (valueSet.getIdElement().hasIdPart()) {
+                valueSets.putIfAbsent(valueSet.getIdElement().getIdPart(), codes);
+            }
+        }
+    }
+
+    private static void addContains(FhirTerser terser, List<IBase> contains, ValueSetCodes codes) {
+        for (IBase entry : contains) {
+            String code = terser.getSinglePrimitiveValueOrNull(entry, "code");
+            if (code != null) {
+                codes.add(new Code().withSystem(terser.getSinglePrimitiveValueOrNull(entry, "system"))
+                        .withVersion(terser.getSinglePrimitiveValueOrNull(entry, "version"))
+                        .withCode(code).withDisplay(terser.getSinglePrimitiveValueOrNull(entry, "display")));
+            }
+            addContains(terser, terser.getValues(entry, "contains"), codes);
+        }
+    }
+
+    @Override
+    public boolean in(Code code, ValueSetInfo valueSet) {
+        ValueSetCodes codes = resolve(valueSet);
+        return code.getSystem() == null
+                ? codes.codes.contains(code.getCode())
+                : codes.systemCodes.contains(code.getSystem() + "|" + code.getCode());
+    }
+
+    @Override
+    public Iterable<Code> expand(ValueSetInfo valueSet) {
+        return resolve(valueSet).expansion;
+    }
+
+    @Override
+    public Code lookup(Code code, CodeSystemInfo codeSystem) {
+        for (ValueSetCodes codes : valueSets.values()) {
+            for (Code candidate : codes.expansion) {
+                if (candidate.getCode().equals(code.getCode()) && candidate.getSystem() != null
+                        && candidate.getSystem().equals(codeSystem.getId())) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    private ValueSetCodes resolve(ValueSetInfo valueSet) {
+        String id = valueSet.getId();
+        if (id.contains("|")) {
+            id = id.substring(0, id.indexOf('|'));
+        }
+        ValueSetCodes codes = valueSets.get(id);
+        if (codes == null) {
+            // Fall back to the logical id for references such as urn:oid:<oid> or a differently based url
+            codes = valueSets.get(id.substring(Math.max(id.lastIndexOf('/'), id.lastIndexOf(':')) + 1));
+        }
+        if (codes == null) {
+            throw new IllegalArgumentException(String.format("ValueSet %s is not included in the content bundle", valueSet.getId()));
+        }
+        return codes;
+    }
+
+    private static class ValueSetCodes {
+        private final List<Code> expansion = new ArrayList<>();
+        private final Set<String> codes = new HashSet<>();
+        private final Set<String> systemCodes = new HashSet<>();
+
+        private void add(Code code) {
+            if (code.getCode() == null) {
+                return;
+            }
+            expansion.add(code);
+            codes.add(code.getCode());
+            systemCodes.add(code.getSystem() + "|" + code.getCode());
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package org.opencds.cqf.tooling.measure.evaluation;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.cqframework.cql.cql2elm.CqlCompilerException;
+import org.cqframework.cql.cql2elm.CqlCompilerOptions;
+import org.cqframework.cql.cql2elm.LibraryManager;
+import org.cqframework.cql.cql2elm.ModelManager;
+import org.cqframework.cql.cql2elm.quick.FhirLibrarySourceProvider;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.instance.model.api.IBaseElement;
+import org.hl7.fhir.instance.model.api.IBaseReference;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.opencds.cqf.cql.engine.data.CompositeDataProvider;
+import org.opencds.cqf.cql.engine.data.DataProvider;
+import org.opencds.cqf.cql.engine.execution.CqlEngine;
+import org.opencds.cqf.cql.engine.execution.EvaluationResult;
+import org.opencds.cqf.cql.engine.execution.Environment;
+import org.opencds.cqf.cql.engine.execution.ExpressionResult;
+import org.opencds.cqf.cql.engine.fhir.model.Dstu3FhirModelResolver;
+import org.opencds.cqf.cql.engine.fhir.model.R4FhirModelResolver;
+import org.opencds.cqf.cql.engine.model.CachingModelResolverDecorator;
+import org.opencds.cqf.cql.engine.model.ModelResolver;
+import org.opencds.cqf.cql.engine.runtime.DateTime;
+import org.opencds.cqf.cql.engine.runtime.Interval;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
+import ca.uhn.fhir.util.BundleUtil;
+import ca.uhn.fhir.util.FhirTerser;
+
+/**
+ * Evaluates the Measures of a content bundle for a single patient with the CQL engine, against the resources of a
+ * test case bundle, producing an individual MeasureReport.
+ * <p>
+ * Everything derived from the content bundle (the compiled libraries, the terminology and the measure definitions)
+ * is built once per content bundle and shared by all the test cases evaluated against it, see
+ * {@link #forContentBundle(FhirContext, IBaseBundle)}. Only the data provider is specific to a test case.
+ */
+public class LocalMeasureEvaluator {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalMeasureEvaluator.class);
+
+    public static final String FHIR_MODEL_URI = "http://hl7.org/fhir";
+    public static final String MEASUREMENT_PERIOD = "Measurement Period";
+    public static final String MEASURE_POPULATION_SYSTEM = "http://terminology.hl7.org/CodeSystem/measure-population";
+
+    public static final String INITIAL_POPULATION = "initial-population";
+    public static final String NUMERATOR = "numerator";
+    public static final String NUMERATOR_EXCLUSION = "numerator-exclusion";
+    public static final String DENOMINATOR = "denominator";
+    public static final String DENOMINATOR_EXCLUSION = "denominator-exclusion";
+    public static final String DENOMINATOR_EXCEPTION = "denominator-exception";
+    public static final String MEASURE_POPULATION = "measure-population";
+    public static final String MEASURE_POPULATION_EXCLUSION = "measure-population-exclusion";
+    public static final String MEASURE_OBSERVATION = "measure-observation";
+
+    // Content bundles are compared by identity, so an evaluator lives as long as the bundle it was built from
+    private static final Map<IBaseBundle, LocalMeasureEvaluator> evaluators = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final FhirContext fhirContext;
+    private final ModelResolver modelResolver;
+    private final LibraryManager libraryManager;
+    private final BundleTerminologyProvider terminologyProvider;
+    private final List<MeasureDefinition> measures = new ArrayList<>();
+
+    /**
+     * @return the evaluator for the content bundle, built on first use and reused for every later test case of the
+     * same content bundle
+     */
+    public static LocalMeasureEvaluator forContentBundle(FhirContext fhirContext, IBaseBundle contentBundle) {
+        return forContentBundle(fhirContext, contentBundle, null);
+    }
+
+    /**
+     * @param compilerOptions the options the libraries of the content bundle are compiled with (the cql-options of
+     * the IG), or null for the default options
+     * @return the evaluator for the content bundle, built on first use and reused for every later test case of the
+     * same content bundle
+     */
+    public static LocalMeasureEvaluator forContentBundle(FhirContext fhirContext, IBaseBundle contentBundle,
+            CqlCompilerOptions compilerOptions) {
+        return evaluators.computeIfAbsent(contentBundle, bundle -> new LocalMeasureEvaluator(fhirContext, bundle, compilerOptions));
+    }
+
+    public LocalMeasureEvaluator(FhirContext fhirContext, IBaseBundle contentBundle, CqlCompilerOptions compilerOptions) {
+        this.fhirContext = fhirContext;
+        if (fhirContext.getVersion().getVersion() == FhirVersionEnum.DSTU3) {
+            this.modelResolver = new CachingModelResolverDecorator(new Dstu3FhirModelResolver());
+        } else if (fhirContext.getVersion().getVersion() == FhirVersionEnum.R4) {
+            this.modelResolver = new CachingModelResolverDecorator(new R4FhirModelResolver());
+        } else {
+            throw new IllegalArgumentException("Unsupported or unknown fhir version: " + fhirContext.getVersion().getVersion().getFhirVersionString());
+        }
+
+        List<IBaseResource> libraries = resourcesOfType(contentBundle, "Library");
+        this.terminologyProvider = new BundleTerminologyProvider(fhirContext, resourcesOfType(contentBundle, "ValueSet"));
+
+        // The compiled library cache is read by concurrent evaluations while other libraries are being compiled
+        this.libraryManager = new LibraryManager(new ModelManager(),
+                compilerOptions == null ? CqlCompilerOptions.defaultOptions() : compilerOptions, new ConcurrentHashMap<>());
+        this.libraryManager.getLibrarySourceLoader().registerProvider(new BundleLibrarySourceProvider(fhirContext, libraries));
+        this.libraryManager.getLibrarySourceLoader().registerProvider(new FhirLibrarySourceProvider());
+
+        FhirTerser terser = fhirContext.newTerser();
+        for (IBaseResource measure : resourcesOfType(contentBundle, "Measure")) {
+            measures.add(new MeasureDefinition(terser, measure, libraries));
+        }
+    }
+
+    private List<IBaseResource> resourcesOfType(IBaseBundle bundle, String resourceType) {
+        return new ArrayList<>(BundleUtil.toListOfResourcesOfType(fhirContext, bundle,
+                fhirContext.getResourceDefinition(resourceType).getImplementingClass()));
+    }
+
+    /**
+     * Evaluates a Measure of the content bundle for a patient of the test bundle.
+     *
+     * @param measureId the id of the Measure, or the tail of its url
+     * @param patientId the id of the patient the report is for
+     * @param periodStart the start of the measurement period, or null to use the default of the library
+     * @param periodEnd the end of the measurement period
+     * @param testBundle the bundle holding the data of the patient
+     * @return an individual MeasureReport of the FHIR version of the context
+     */
+    public IBaseResource evaluate(String measureId, String patientId, Date periodStart, Date periodEnd, IBaseBundle testBundle) {
+        MeasureDefinition measure = getMeasure(measureId);
+        if (measure.library == null) {
+            throw new IllegalArgumentException(String.format("The library of Measure %s is not included in the content bundle", measure.id));
+        }
+        ensureCompiled(measure.library);
+
+        BundleRetrieveProvider retrieveProvider = new BundleRetrieveProvider(fhirContext, modelResolver,
+                BundleUtil.toListOfResources(fhirContext, testBundle));
+        retrieveProvider.setTerminologyProvider(terminologyProvider);
+        Map<String, DataProvider> dataProviders = new HashMap<>();
+        dataProviders.put(FHIR_MODEL_URI, new CompositeDataProvider(modelResolver, retrieveProvider));
+        CqlEngine engine = new CqlEngine(new Environment(libraryManager, dataProviders, terminologyProvider));
+
+        Map<String, Object> parameters = new HashMap<>();
+        if (periodStart != null && periodEnd != null) {
+            parameters.put(MEASUREMENT_PERIOD, new Interval(toDateTime(periodStart), true, toDateTime(periodEnd), true));
+        }
+
+        Set<String> expressions = new HashSet<>();
+        for (GroupDefinition group : measure.groups) {
+            expressions.addAll(group.populations.values());
+        }
+
+        logger.debug("Evaluating Measure '{}' for Patient '{}'", measure.id, patientId);
+        EvaluationResult result = engine.evaluate(measure.library, expressions, Pair.<String, Object>of("Patient", patientId), parameters, null);
+
+        List<GroupResult> groups = new ArrayList<>();
+        for (GroupDefinition group : measure.groups) {
+            Map<String, Set<String>> members = new LinkedHashMap<>();
+            for (Map.Entry<String, String> population : group.populations.entrySet()) {
+                ExpressionResult expressionResult = result.forExpression(population.getValue());
+                members.put(population.getKey(), toMembers(expressionResult == null ? null : expressionResult.value(), patientId));
+            }
+            groups.add(new GroupResult(group.id, members, measure.scoring));
+        }
+
+        return fhirContext.getVersion().getVersion() == FhirVersionEnum.DSTU3
+                ? toDstu3Report(measure.id, patientId, periodStart, periodEnd, groups)
+                : toR4Report(measure.id, patientId, periodStart, periodEnd, groups);
+    }
+
+    private MeasureDefinition getMeasure(String measureId) {
+        for (MeasureDefinition measure : measures) {
+            if (measureId.equals(measure.id) || (measure.url != null && measure.url.endsWith("/" + measureId))) {
+                return measure;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Measure %s is not included in the content bundle", measureId));
+    }
+
+    private void ensureCompiled(VersionedIdentifier library) {
+        // Compiling also compiles (and caches) the included libraries, so evaluation only reads the cache
+        synchronized (libraryManager) {
+            if (libraryManager.getCompiledLibraries().containsKey(library)) {
+                return;
+            }
+            List<CqlCompilerException> errors = new ArrayList<>();
+            libraryManager.resolveLibrary(library, errors);
+            List<String> messages = errors.stream()
+                    .filter(e -> e.getSeverity() == CqlCompilerException.ErrorSeverity.Error)
+                    .map(Throwable::getMessage)
+                    .collect(Collectors.toList());
+            if (!messages.isEmpty()) {
+                libraryManager.getCompiledLibraries().remove(library);
+                throw new IllegalArgumentException(String.format("Library %s failed to compile: %s", library.getId(), String.join("; ", messages)));
+            }
+        }
+    }
+
+    private static DateTime toDateTime(Date date) {
+        return new DateTime(OffsetDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault()));
+    }
+
+    /**
+     * @return the members of a population: the subject for a boolean criteria that is met, or the (resource) elements
+     * of a list criteria
+     */
+    private static Set<String> toMembers(Object value, String patientId) {
+        Set<String> members = new LinkedHashSet<>();
+        if (value instanceof Boolean) {
+            if ((Boolean) value) {
+                members.add("Patient/" + patientId);
+            }
+        } else if (value instanceof Iterable) {
+            for (Object element : (Iterable<?>) value) {
+                if (element instanceof IBaseResource) {
+                    members.add(((IBaseResource) element).getIdElement().toUnqualifiedVersionless().getValue());
+                } else if (element != null) {
+                    members.add(element.toString());
+                }
+            }
+        } else if (value != null) {
+            members.add(value.toString());
+        }
+        return members;
+    }
+
+    private org.hl7.fhir.r4.model.MeasureReport toR4Report(String measureId, String patientId, Date periodStart,
+            Date periodEnd, List<GroupResult> groups) {
+        org.hl7.fhir.r4.model.MeasureReport report = new org.hl7.fhir.r4.model.MeasureReport();
+        report.setStatus(org.hl7.fhir.r4.model.MeasureReport.MeasureReportStatus.COMPLETE);
+        report.setType(org.hl7.fhir.r4.model.MeasureReport.MeasureReportType.INDIVIDUAL);
+        report.setMeasure("Measure/" + measureId);
+        report.setSubject(new org.hl7.fhir.r4.model.Reference("Patient/" + patientId));
+        report.setPeriod(new org.hl7.fhir.r4.model.Period().setStart(periodStart).setEnd(periodEnd));
+        for (GroupResult group : groups) {
+            org.hl7.fhir.r4.model.MeasureReport.MeasureReportGroupComponent reportGroup = report.addGroup();
+            reportGroup.setId(group.id);
+            for (Map.Entry<String, Integer> count : group.counts.entrySet()) {
+                reportGroup.addPopulation()
+                        .setCode(new org.hl7.fhir.r4.model.CodeableConcept().addCoding(
+                                new org.hl7.fhir.r4.model.Coding(MEASURE_POPULATION_SYSTEM, count.getKey(), null)))
+                        .setCount(count.getValue());
+            }
+            if (group.score != null) {
+                reportGroup.setMeasureScore(new org.hl7.fhir.r4.model.Quantity().setValue(group.score));
+            }
+        }
+        return report;
+    }
+
+    private org.hl7.fhir.dstu3.model.MeasureReport toDstu3Report(String measureId, String patientId, Date periodStart,
+            Date periodEnd, List<GroupResult> groups) {
+        org.hl7.fhir.dstu3.model.MeasureReport report = new org.hl7.fhir.dstu3.model.MeasureReport();
+        report.setStatus(org.hl7.fhir.dstu3.model.MeasureReport.MeasureReportStatus.COMPLETE);
+        report.setType(org.hl7.fhir.dstu3.model.MeasureReport.MeasureReportType.INDIVIDUAL);
+        report.setMeasure(new org.hl7.fhir.dstu3.model.Reference("Measure/" + measureId));
+        report.setPatient(new org.hl7.fhir.dstu3.model.Reference("Patient/" + patientId));
+        report.setPeriod(new org.hl7.fhir.dstu3.model.Period().setStart(periodStart).setEnd(periodEnd));
+        for (GroupResult group : groups) {
+            org.hl7.fhir.dstu3.model.MeasureReport.MeasureReportGroupComponent reportGroup = report.addGroup();
+            reportGroup.setId(group.id);
+            for (Map.Entry<String, Integer> count : group.counts.entrySet()) {
+                reportGroup.addPopulation()
+                        .setCode(new org.hl7.fhir.dstu3.model.CodeableConcept().addCoding(
+                                new org.hl7.fhir.dstu3.model.Coding().setSystem(MEASURE_POPULATION_SYSTEM).setCode(count.getKey())))
+                        .setCount(count.getValue());
+            }
+            reportGroup.setMeasureScore(group.score);
+        }
+        return report;
+    }
+
+    /**
+     * The parts of a Measure needed to evaluate it, read once from the Measure resource.
+     */
+    private static class MeasureDefinition {
+        private final String id;
+        private final String url;
+        private final String scoring;
+        private final VersionedIdentifier library;
+        private final List<GroupDefinition> groups = new ArrayList<>();
+
+        private MeasureDefinition(FhirTerser terser, IBaseResource measure, List<IBaseResource> libraries) {
+            this.id = measure.getIdElement().getIdPart();
+            this.url = terser.getSinglePrimitiveValueOrNull(measure, "url");
+            this.scoring = terser.getSinglePrimitiveValueOrNull(measure, "scoring.coding.code");
+            this.library = resolveLibrary(terser, measure, libraries);
+
+            boolean dstu3 = measure.getStructureFhirVersionEnum() == FhirVersionEnum.DSTU3;
+            int index = 0;
+            for (IBase group : terser.getValues(measure, "group")) {
+                String groupId = ((IBaseElement) group).getId();
+                GroupDefinition definition = new GroupDefinition(groupId == null ? "group-" + (++index) : groupId);
+                for (IBase population : terser.getValues(group, "population")) {
+                    String code = terser.getSinglePrimitiveValueOrNull(population, "code.coding.code");
+                    String expression = terser.getSinglePrimitiveValueOrNull(population, dstu3 ? "criteria" : "criteria.expression");
+                    // Measure observations are functions of the population members rather than criteria
+                    if (code != null && expression != null && !code.equals(MEASURE_OBSERVATION)) {
+                        definition.populations.put(code, expression);
+                    }
+                }
+                groups.add(definition);
+            }
+        }
+
+        private VersionedIdentifier resolveLibrary(FhirTerser terser, IBaseResource measure, List<IBaseResource> libraries) {
+            for (IBase reference : terser.getValues(measure, "library")) {
+                String target = reference instanceof IBaseReference
+                        ? ((IBaseReference) reference).getReferenceElement().getValue()
+                        : ((IPrimitiveType<?>) reference).getValueAsString();
+                if (target == null) {
+                    continue;
+                }
+                String canonical = target.contains("|") ? target.substring(0, target.indexOf('|')) : target;
+                String logicalId = canonical.substring(canonical.lastIndexOf('/') + 1);
+                for (IBaseResource library : libraries) {
+                    if (canonical.equals(terser.getSinglePrimitiveValueOrNull(library, "url"))
+                            || logicalId.equals(library.getIdElement().getIdPart())) {
+                        return new VersionedIdentifier()
+                                .withId(terser.getSinglePrimitiveValueOrNull(library, "name"))
+                                .withVersion(terser.getSinglePrimitiveValueOrNull(library, "version"));
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class GroupDefinition {
+        private final String id;
+        // criteria expression by population code
+        private final Map<String, String> populations = new LinkedHashMap<>();
+
+        private GroupDefinition(String id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * The population counts and score of a group, after restricting each population to the populations it is a
+     * subset of.
+     */
+    private static class GroupResult {
+        private final String id;
+        private final Map<String, Integer> counts = new LinkedHashMap<>();
+        private BigDecimal score;
+
+        private GroupResult(String id, Map<String, Set<String>> members, String scoring) {
+            this.id = id;
+
+            Set<String> initialPopulation = members.getOrDefault(INITIAL_POPULATION, Collections.emptySet());
+            Set<String> denominator = restrict(members.get(DENOMINATOR), initialPopulation);
+            Set<String> denominatorExclusion = restrict(members.get(DENOMINATOR_EXCLUSION), denominator);
+            Set<String> numerator;
+            Set<String> denominatorException;
+            if ("ratio".equals(scoring)) {
+                numerator = restrict(members.get(NUMERATOR), initialPopulation);
+                denominatorException = new HashSet<>();
+            } else {
+                Set<String> eligible = new HashSet<>(denominator);
+                eligible.removeAll(denominatorExclusion);
+                numerator = restrict(members.get(NUMERATOR), eligible);
+                eligible.removeAll(numerator);
+                denominatorException = restrict(members.get(DENOMINATOR_EXCEPTION), eligible);
+            }
+            Set<String> numeratorExclusion = restrict(members.get(NUMERATOR_EXCLUSION), numerator);
+            Set<String> measurePopulation = restrict(members.get(MEASURE_POPULATION), initialPopulation);
+            Set<String> measurePopulationExclusion = restrict(members.get(MEASURE_POPULATION_EXCLUSION), measurePopulation);
+
+            Map<String, Set<String>> restricted = new HashMap<>();
+            restricted.put(INITIAL_POPULATION, initialPopulation);
+            restricted.put(DENOMINATOR, denominator);
+            restricted.put(DENOMINATOR_EXCLUSION, denominatorExclusion);
+            restricted.put(DENOMINATOR_EXCEPTION, denominatorException);
+            restricted.put(NUMERATOR, numerator);
+            restricted.put(NUMERATOR_EXCLUSION, numeratorExclusion);
+            restricted.put(MEASURE_POPULATION, measurePopulation);
+            restricted.put(MEASURE_POPULATION_EXCLUSION, measurePopulationExclusion);
+            for (String population : members.keySet()) {
+                counts.put(population, restricted.getOrDefault(population, members.get(population)).size());
+            }
+
+            if ("proportion".equals(scoring) || "ratio".equals(scoring)) {
+                int divisor = denominator.size() - denominatorExclusion.size() - denominatorException.size();
+                if (divisor > 0) {
+                    score = BigDecimal.valueOf(numerator.size() - numeratorExclusion.size())
+                            .divide(BigDecimal.valueOf(divisor), MathContext.DECIMAL64);
+                }
+            }
+        }
+
+        private static Set<String> restrict(Set<String> population, Set<String> superset) {
+            Set<String> restricted = new LinkedHashSet<>();
+            if (population != null) {
+                for (String member : population) {
+                    if (superset.contains(member)) {
+                        restricted.add(member);
+                    }
+                }
+            }
+            return restricted;
+        }
+    }
+}
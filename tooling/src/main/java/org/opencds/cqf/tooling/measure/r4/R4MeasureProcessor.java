@@ -12,6 +12,7 @@ import org.opencds.cqf.tooling.measure.MeasureProcessor;
 import org.opencds.cqf.tooling.measure.MeasureRefreshProcessor;
 import org.opencds.cqf.tooling.parameter.RefreshMeasureParameters;
 import org.opencds.cqf.tooling.processor.CqlProcessor;
+import org.opencds.cqf.tooling.processor.IGBuildCache;
 import org.opencds.cqf.tooling.utilities.CanonicalUtils;
 import org.opencds.cqf.tooling.utilities.IOUtils;
 import org.opencds.cqf.tooling.utilities.ResourceUtils;
@@ -24,6 +25,7 @@ public class R4MeasureProcessor extends MeasureProcessor {
 
     private RefreshMeasureParameters params;
     private static SoftwareSystemHelper cqfmHelper;
+    private final Set<String> refreshFailures = new HashSet<>();
 
     private String getMeasurePath(String measurePath) {
         var f = new File(measurePath);
@@ -67,6 +69,24 @@ public class R4MeasureProcessor extends MeasureProcessor {
             loadMeasure(fileMap, measures, file);
         }
 
+        // Skip measures whose primary library logic and measure file are unchanged since the previous build
+        var fingerprints = new HashMap<String, String>();
+        var unchangedMeasures = new ArrayList<org.hl7.fhir.r5.model.Measure>();
+        if (getBuildCache() != null) {
+            for (var measure : measures) {
+                var fingerprint = measure.hasLibrary() && measure.getLibrary().size() == 1
+                        ? getPrimaryLibraryFingerprint(measure.getLibrary().get(0).getValue()) : null;
+                var measureFile = fileMap.get(measure.getId());
+                if (fingerprint != null && measureFile != null) {
+                    fingerprints.put(measure.getId(), fingerprint);
+                    if (getBuildCache().isUpToDate(IGBuildCache.MEASURE, measureFile, fingerprint)) {
+                        unchangedMeasures.add(measure);
+                    }
+                }
+            }
+            measures.removeAll(unchangedMeasures);
+        }
+
         var refreshedMeasureNames = new ArrayList<String>();
         var refreshedMeasures = refreshGeneratedContent(measures);
         VersionConvertor_40_50 versionConvertor = new VersionConvertor_40_50(new BaseAdvisor_40_50());
@@ -104,6 +124,10 @@ public class R4MeasureProcessor extends MeasureProcessor {
                     }
                 }
                 IOUtils.writeResource(measure, outputPath, fileEncoding, params.fhirContext, this.versioned, true);
+                if (getBuildCache() != null && !refreshFailures.contains(refreshedMeasure.getId())) {
+                    getBuildCache().record(IGBuildCache.MEASURE, filePath,
+                            fingerprints.get(refreshedMeasure.getId()), Collections.singletonList(outputPath));
+                }
                 String refreshedMeasureName;
                 if (this.versioned && refreshedMeasure.getVersion() != null) {
                     refreshedMeasureName = refreshedMeasure.getName() + "-" + refreshedMeasure.getVersion();
@@ -114,6 +138,18 @@ public class R4MeasureProcessor extends MeasureProcessor {
             }
         }
 
+        for (var unchangedMeasure : unchangedMeasures) {
+            if (unchangedMeasure.hasIdentifier()) {
+                var measure = (org.hl7.fhir.r4.model.Measure) versionConvertor.convertResource(unchangedMeasure);
+                this.getIdentifiers().addAll(measure.getIdentifier());
+            }
+            refreshedMeasureNames.add(this.versioned && unchangedMeasure.getVersion() != null
+                    ? unchangedMeasure.getName() + "-" + unchangedMeasure.getVersion() : unchangedMeasure.getName());
+        }
+        if (!unchangedMeasures.isEmpty()) {
+            logger.info("{} Measure resource(s) skipped, unchanged since the previous build", unchangedMeasures.size());
+        }
+
         return refreshedMeasureNames;
     }
 
@@ -172,6 +208,7 @@ public class R4MeasureProcessor extends MeasureProcessor {
             return processor.refreshMeasure(measure, libraryManager, compiledLibrary, cqlTranslatorOptions.getCqlCompilerOptions());
         }
 
+        refreshFailures.add(measure.getId());
         return measure;
     }
 
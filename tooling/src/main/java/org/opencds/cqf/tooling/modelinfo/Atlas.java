@@ -3,13 +3,16 @@ package org.opencds.cqf.tooling.modelinfo;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Callable;
 
 import com.google.common.io.Files;
 
@@ -17,6 +20,7 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.*;
+import org.opencds.cqf.tooling.common.ThreadUtils;
 import org.opencds.cqf.tooling.utilities.CanonicalUtils;
 
 import ca.uhn.fhir.context.FhirContext;
@@ -111,12 +115,73 @@ public class Atlas {
         return parameters;
     }
 
+    private static final String SNAPSHOT_GROUP = "resources";
+
+    // The resources indexed by the current load, in order, to be written to a snapshot
+    private List<IBaseResource> loaded;
+
     public void loadPaths(String basePath, String resourcePaths) {
-        String[] paths = resourcePaths.split(";");
-        for (String path : paths) {
-            logger.info("Reading {} Conformance Resources", path);
-            readConformanceResourcesFromFolder(Paths.get(basePath, path).toString());
+        loadPaths(basePath, resourcePaths, null);
+    }
+
+    /**
+     * Loads the conformance resources in the given folders, using a snapshot of them if one is given and the files
+     * in the folders are unchanged since it was written. Otherwise the resources are read from the folders, and the
+     * snapshot is (re)written.
+     *
+     * @param basePath      The folder the resource paths are relative to.
+     * @param resourcePaths The ';' separated folders to load.
+     * @param snapshotFile  The snapshot file to use, or null to always read the folders.
+     */
+    public void loadPaths(String basePath, String resourcePaths, Path snapshotFile) {
+        Map<String, Collection<File>> filesByPath = new LinkedHashMap<>();
+        List<Path> sources = new ArrayList<>();
+        for (String path : resourcePaths.split(";")) {
+            Collection<File> files = getFiles(Paths.get(basePath, path).toString());
+            filesByPath.put(path, files);
+            files.forEach(f -> sources.add(f.toPath()));
+        }
+
+        if (snapshotFile != null) {
+            ConformanceSnapshot snapshot = ConformanceSnapshot.read(FhirContext.forR4Cached(), snapshotFile, sources);
+            if (snapshot != null) {
+                logger.info("Reading Conformance Resources from snapshot {}", snapshotFile);
+                snapshot.getResources(SNAPSHOT_GROUP).forEach(this::indexResource);
+                return;
+            }
+            loaded = new ArrayList<>();
+        }
+
+        try {
+            for (Map.Entry<String, Collection<File>> entry : filesByPath.entrySet()) {
+                logger.info("Reading {} Conformance Resources", entry.getKey());
+                readConformanceResourcesFromFolder(entry.getValue());
+            }
+
+            if (snapshotFile != null) {
+                ConformanceSnapshot snapshot = new ConformanceSnapshot(FhirContext.forR4Cached());
+                loaded.forEach(r -> snapshot.add(SNAPSHOT_GROUP, r));
+                try {
+                    snapshot.write(snapshotFile, sources);
+                    logger.info("Wrote Conformance Resources snapshot {}", snapshotFile);
+                } catch (IOException e) {
+                    logger.warn("Unable to write snapshot {}: {}", snapshotFile, e.getMessage());
+                }
+            }
+        } finally {
+            loaded = null;
+        }
+    }
+
+    /**
+     * Returns the default snapshot file for the given folders, in {@link ConformanceSnapshot#DEFAULT_DIRECTORY}.
+     */
+    public static Path getDefaultSnapshotPath(String basePath, String resourcePaths) {
+        List<Path> folders = new ArrayList<>();
+        for (String path : resourcePaths.split(";")) {
+            folders.add(Paths.get(basePath, path));
         }
+        return ConformanceSnapshot.getDefaultPath("atlas", folders);
     }
 
     private String urlToId(String url) {
@@ -350,32 +415,49 @@ public class Atlas {
         }
         else {
             logger.info("Resource with id {} skipped", resource.getIdElement());
+            return;
+        }
+
+        if (loaded != null) {
+            loaded.add(resource);
+        }
+    }
+
+    private void readConformanceResourcesFromFolder(Collection<File> files) {
+        // Files are read and parsed concurrently, then indexed in order so duplicates resolve as in a serial load
+        List<File> fileList = new ArrayList<>(files);
+        IBaseResource[] parsed = new IBaseResource[fileList.size()];
+        RuntimeException[] failures = new RuntimeException[fileList.size()];
+        ThreadLocal<IParser> parsers = ThreadLocal.withInitial(() -> FhirContext.forR4Cached().newJsonParser());
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < parsed.length; i++) {
+            int index = i;
+            tasks.add(() -> {
+                try {
+                    String content = Files.asCharSource(fileList.get(index), Charset.forName("UTF-8")).read();
+                    parsed[index] = parsers.get().parseResource(content);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } catch (RuntimeException e) {
+                    failures[index] = e;
+                }
+                return null;
+            });
         }
-    }
-
-    private void readConformanceResourcesFromFolder(String path) {
-        Collection<File> files = getFiles(path);
-
-        IParser parser = FhirContext.forR4Cached().newJsonParser();
-
-        // List<StructureDefinition> objects = new ArrayList<StructureDefinition>();
-
-        for (File f : files) {
+        ThreadUtils.executeTasks("ReadConformanceResources", tasks);
 
-            try {
-                String content = Files.asCharSource(f, Charset.forName("UTF-8")).read();
-                IBaseResource resource = parser.parseResource(content);
-
-                if (resource instanceof Bundle) {
-                    for (IBaseResource R : unrollBundles((Bundle)resource)) {
-                        indexResource(R);
-                    }
-                }
-                else {
-                    indexResource(resource);
+        for (int i = 0; i < parsed.length; i++) {
+            if (failures[i] != null) {
+                throw failures[i];
+            }
+            IBaseResource resource = parsed[i];
+            if (resource instanceof Bundle) {
+                for (IBaseResource R : unrollBundles((Bundle)resource)) {
+                    indexResource(R);
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
+            }
+            else if (resource != null) {
+                indexResource(resource);
             }
         }
     }
@@ -1,6 +1,7 @@
 package org.opencds.cqf.tooling.modelinfo;
 
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
@@ -17,6 +18,7 @@ import org.hl7.fhir.r4.model.Extension;
 import org.hl7.fhir.r4.model.StringType;
 import org.hl7.fhir.r4.model.StructureDefinition;
 import org.hl7.fhir.r4.model.StructureDefinition.StructureDefinitionKind;
+import org.opencds.cqf.tooling.common.ThreadUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,6 +31,17 @@ public abstract class ClassInfoBuilder {
     protected Set<String> requiredBindingTypeNames = new HashSet<String>();
     protected ClassInfoSettings settings;
 
+    // Type name resolution only depends on the settings and the structure definitions, so it is resolved once per url
+    // (or structure definition) rather than once per element referencing it
+    private final Map<String, String> modelNames = new ConcurrentHashMap<>();
+    private final Map<String, String> resolvedTypeNames = new ConcurrentHashMap<>();
+    private final Map<String, String> baseTypeNames = new ConcurrentHashMap<>();
+    private final Map<String, String> mappedTypeNames = new ConcurrentHashMap<>();
+    private final Map<StructureDefinition, String> structureDefinitionTypeNames = new ConcurrentHashMap<>();
+
+    // The profile build running on the current thread, if any; see buildFor(String, List)
+    private final ThreadLocal<ProfileBuild> currentBuild = new ThreadLocal<>();
+
     public ClassInfoBuilder(ClassInfoSettings settings, Map<String, StructureDefinition> structureDefinitions) {
         this.structureDefinitions = structureDefinitions;
         this.settings = settings;
@@ -83,20 +96,34 @@ public abstract class ClassInfoBuilder {
     }
 
     private String resolveModelName(String url) {
-        // Strips off the identifier and type name
-        String model = getHead(getHead(url));
-        if (this.settings.urlToModel.containsKey(model)) {
-            return this.settings.urlToModel.get(model);
+        String modelName = modelNames.get(url);
+        if (modelName == null) {
+            // Strips off the identifier and type name
+            String model = getHead(getHead(url));
+            if (!this.settings.urlToModel.containsKey(model)) {
+                throw new IllegalArgumentException("Couldn't resolve model name for url: " + url);
+            }
+            modelName = this.settings.urlToModel.get(model);
+            if (modelName != null) {
+                modelNames.put(url, modelName);
+            }
         }
 
-        throw new IllegalArgumentException("Couldn't resolve model name for url: " + url);
+        return modelName;
     }
 
     private String resolveTypeName(String url) throws Exception {
         if (url != null) {
-            String modelName = resolveModelName(url);
-            String typeName = getTypeNameFromUrl(url);
-            return getTypeName(modelName, typeName);
+            String qualifiedTypeName = resolvedTypeNames.get(url);
+            if (qualifiedTypeName == null) {
+                String modelName = resolveModelName(url);
+                String typeName = getTypeNameFromUrl(url);
+                qualifiedTypeName = getTypeName(modelName, typeName);
+                if (qualifiedTypeName != null) {
+                    resolvedTypeNames.put(url, qualifiedTypeName);
+                }
+            }
+            return qualifiedTypeName;
         }
 
         return null;
@@ -105,8 +132,15 @@ public abstract class ClassInfoBuilder {
     // Resolves the base type name for the given type
     private String resolveBaseTypeName(String typeId) throws Exception {
         if (typeId != null) {
-            StructureDefinition sd = structureDefinitions.get(typeId);
-            return resolveTypeName(sd.getBaseDefinition());
+            String baseTypeName = baseTypeNames.get(typeId);
+            if (baseTypeName == null) {
+                StructureDefinition sd = structureDefinitions.get(typeId);
+                baseTypeName = resolveTypeName(sd.getBaseDefinition());
+                if (baseTypeName != null) {
+                    baseTypeNames.put(typeId, baseTypeName);
+                }
+            }
+            return baseTypeName;
         }
 
         return null;
@@ -139,6 +173,11 @@ public abstract class ClassInfoBuilder {
     }
 
     protected String getTypeName(StructureDefinition sd) {
+        String cachedTypeName = structureDefinitionTypeNames.get(sd);
+        if (cachedTypeName != null) {
+            return cachedTypeName;
+        }
+
         String typeId = getTail(sd.getId());
         String typeName = sd.getName() == null ? capitalizePath(typeId) : sd.getName();
         if (this.settings.modelPrefix != null && typeName.startsWith(this.settings.modelPrefix)) {
@@ -151,6 +190,9 @@ public abstract class ClassInfoBuilder {
             }
         }
         typeName = mapTypeName(typeName);
+        if (typeName != null) {
+            structureDefinitionTypeNames.put(sd, typeName);
+        }
         return typeName;
     }
 
@@ -172,9 +214,104 @@ public abstract class ClassInfoBuilder {
     }
 
     protected TypeInfo resolveType(String name) {
+        ProfileBuild build = currentBuild.get();
+        if (build != null && build.speculative) {
+            TypeInfo typeInfo = build.typeInfos.get(name);
+            if (typeInfo != null) {
+                return typeInfo;
+            }
+            build.reads.add(name);
+        }
         return this.typeInfos.get(name);
     }
 
+    // Returns whether the given type has been built, for the callers that build the type when it has not. As building
+    // a type gives the same result in any build, a speculative build that builds such a type itself is only in conflict
+    // with another build of the type if the results differ.
+    private boolean hasTypeInfo(String name) {
+        ProfileBuild build = currentBuild.get();
+        if (build != null && build.speculative) {
+            if (build.typeInfos.containsKey(name)) {
+                return true;
+            }
+            if (!this.typeInfos.containsKey(name)) {
+                build.ensured.add(name);
+                return false;
+            }
+            return true;
+        }
+        return this.typeInfos.containsKey(name);
+    }
+
+    private void putTypeInfo(String name, TypeInfo typeInfo) {
+        ProfileBuild build = currentBuild.get();
+        if (build != null) {
+            build.writes.add(name);
+            if (build.speculative) {
+                build.typeInfos.put(name, typeInfo);
+                return;
+            }
+        }
+        this.typeInfos.put(name, typeInfo);
+    }
+
+    // Called before changing a type that has already been built; a speculative build can only change its own types
+    private void ensureUpdatable(String name) {
+        ProfileBuild build = currentBuild.get();
+        if (build != null) {
+            build.writes.add(name);
+            if (build.speculative && !build.typeInfos.containsKey(name)) {
+                throw ProfileBuild.CONFLICT;
+            }
+        }
+    }
+
+    private String getTypeTarget(String name) {
+        ProfileBuild build = currentBuild.get();
+        if (build != null && build.speculative) {
+            if (build.typeTargets.containsKey(name)) {
+                return build.typeTargets.get(name);
+            }
+            build.reads.add(ProfileBuild.TARGET + name);
+        }
+        return this.typeTargets.get(name);
+    }
+
+    private void putTypeTarget(String name, String target) {
+        ProfileBuild build = currentBuild.get();
+        if (build != null) {
+            build.writes.add(ProfileBuild.TARGET + name);
+            if (build.speculative) {
+                build.typeTargets.put(name, target);
+                return;
+            }
+        }
+        this.typeTargets.put(name, target);
+    }
+
+    private boolean hasRequiredBindingTypeName(String name) {
+        ProfileBuild build = currentBuild.get();
+        if (build != null && build.speculative) {
+            if (build.requiredBindingTypeNames.contains(name)) {
+                return true;
+            }
+            build.reads.add(ProfileBuild.BINDING + name);
+        }
+        return this.requiredBindingTypeNames.contains(name);
+    }
+
+    private void addRequiredBindingTypeName(String name) {
+        ProfileBuild build = currentBuild.get();
+        if (build != null) {
+            build.writes.add(ProfileBuild.BINDING + name);
+            if (build.speculative) {
+                build.requiredBindingTypeNames.add(name);
+                return;
+            }
+        }
+        this.requiredBindingTypeNames.add(name);
+    }
+
     private TypeInfo resolveType(TypeSpecifier typeSpecifier) {
         if (typeSpecifier instanceof NamedTypeSpecifier) {
             return this.resolveType(((NamedTypeSpecifier) typeSpecifier).getName());
@@ -532,7 +669,7 @@ public abstract class ClassInfoBuilder {
     private void ensureClassInfo(String modelName, String typeName) {
         String qualifiedTypeName = getTypeName(modelName, typeName);
         try {
-            if (!this.typeInfos.containsKey(qualifiedTypeName) && !this.settings.primitiveTypeMappings.containsKey(qualifiedTypeName) && !modelName.equals("System")) {
+            if (!hasTypeInfo(qualifiedTypeName) && !this.settings.primitiveTypeMappings.containsKey(qualifiedTypeName) && !modelName.equals("System")) {
                 buildClassInfo(modelName, structureDefinitions.get(typeName));
             }
         }
@@ -564,9 +701,16 @@ public abstract class ClassInfoBuilder {
 
     private String resolveMappedTypeName(String url) {
         if (url != null) {
-            String modelName = resolveModelName(url);
-            String typeName = getTypeNameFromUrl(url);
-            return resolveMappedTypeName(modelName, typeName);
+            String mappedTypeName = mappedTypeNames.get(url);
+            if (mappedTypeName == null) {
+                String modelName = resolveModelName(url);
+                String typeName = getTypeNameFromUrl(url);
+                mappedTypeName = resolveMappedTypeName(modelName, typeName);
+                if (mappedTypeName != null) {
+                    mappedTypeNames.put(url, mappedTypeName);
+                }
+            }
+            return mappedTypeName;
         }
 
         return null;
@@ -617,7 +761,7 @@ public abstract class ClassInfoBuilder {
         String qualifiedTypeName = getTypeName(modelName, typeName);
         return this.settings.useCQLPrimitives &&
                 (this.settings.primitiveTypeMappings.values().contains(qualifiedTypeName) ||
-                        this.requiredBindingTypeNames.contains(qualifiedTypeName));
+                        hasRequiredBindingTypeName(qualifiedTypeName));
     }
 
     private String resolveMappedTypeName(String modelName, String typeName) {
@@ -809,7 +953,7 @@ public abstract class ClassInfoBuilder {
                     StructureDefinition sd = this.structureDefinitions.get(typeId);
                     typeName = getTypeName(sd);
                     String qualifiedTypeName = this.getTypeName(modelName, typeName);
-                    if (!this.typeInfos.containsKey(qualifiedTypeName)) {
+                    if (!hasTypeInfo(qualifiedTypeName)) {
                         buildClassInfo(modelName, sd);
                     }
 
@@ -842,9 +986,9 @@ public abstract class ClassInfoBuilder {
                 String qualifiedBaseTypeName = getTypeName(modelName, baseTypeName);
                 typeName = capitalizePath(ed.getPath()) + "." + ed.getSliceName();
                 String qualifiedTypeName = getTypeName(modelName, typeName);
-                if (!this.typeInfos.containsKey(qualifiedTypeName)) {
+                if (!hasTypeInfo(qualifiedTypeName)) {
                     ClassInfo sliceType = new ClassInfo().withNamespace(modelName).withName(typeName).withBaseType(qualifiedBaseTypeName).withRetrievable(false);
-                    this.typeInfos.put(qualifiedTypeName, sliceType);
+                    putTypeInfo(qualifiedTypeName, sliceType);
                 }
 
                 NamedTypeSpecifier nts = new NamedTypeSpecifier();
@@ -860,9 +1004,7 @@ public abstract class ClassInfoBuilder {
                     // NOTE: Always use FHIR as the model name here, since they are base specification defined
                     modelName = "FHIR";
                     requiredBindingName = getTypeName(modelName, typeName);
-                    if (!requiredBindingTypeNames.contains(requiredBindingName)) {
-                        requiredBindingTypeNames.add(requiredBindingName);
-                    }
+                    addRequiredBindingTypeName(requiredBindingName);
                 }
                 else {
                     TypeSpecifier ts = this.buildTypeSpecifier(modelName, ed.hasType() ? ed.getType() : null);
@@ -877,7 +1019,7 @@ public abstract class ClassInfoBuilder {
                     return ts;
                 }
 
-                if (!this.typeInfos.containsKey(this.getTypeName(modelName, typeName))) {
+                if (!hasTypeInfo(this.getTypeName(modelName, typeName))) {
                     if (!this.settings.useCQLPrimitives) {
                         List<ClassInfoElement> elements = new ArrayList<>();
                         ClassInfoElement cie = new ClassInfoElement();
@@ -891,13 +1033,13 @@ public abstract class ClassInfoBuilder {
                         ClassInfo info = new ClassInfo().withName(typeName).withNamespace(modelName).withLabel(null).withBaseType(modelName + ".Element")
                                 .withRetrievable(false).withElement(elements).withPrimaryCodePath(null);
 
-                        this.typeInfos.put(this.getTypeName(modelName, typeName), info);
+                        putTypeInfo(this.getTypeName(modelName, typeName), info);
                     }
                     else {
                         ClassInfo info = new ClassInfo().withName(typeName).withNamespace(modelName).withBaseType("System.String")
                                 .withRetrievable(false);
 
-                        this.typeInfos.put(this.getTypeName(modelName, typeName), info);
+                        putTypeInfo(this.getTypeName(modelName, typeName), info);
                     }
                 }
 
@@ -956,8 +1098,9 @@ public abstract class ClassInfoBuilder {
                     }
                 }
                 else {
-                    if (typeTargets.containsKey(qualifiedTypeName)) {
-                        return typeTargets.get(qualifiedTypeName);
+                    String target = getTypeTarget(qualifiedTypeName);
+                    if (target != null) {
+                        return target;
                     }
                 }
             }
@@ -1025,7 +1168,7 @@ public abstract class ClassInfoBuilder {
             typeSpecifier = nts;
         }
 
-        logger.info(String.format("Building ClassInfoElement for element %s", ed.getId()));
+        logger.info("Building ClassInfoElement for element {}", ed.getId());
 
         // If the base is different than the path, it indicates the element is a restatement (or constraint) on an element
         // defined in a base class. If the path and id are different, it indicates a slice definition, which should only
@@ -1033,7 +1176,7 @@ public abstract class ClassInfoBuilder {
         if (ed.hasBase() && ed.getBase().hasPath() && !ed.getBase().getPath().startsWith(root)
                 || !ed.getId().equals(ed.getPath())) {
             if (ed.getSliceName() == null && !(ed.getBase() != null && ed.getPath().endsWith("[x]") && ed.getType() != null && ed.getType().size() == 1)) {
-                logger.info(String.format("Element %s is a restatement (and not a choice constraint) of a base element, no ClassInfoElement created.", ed.getId()));
+                logger.info("Element {} is a restatement (and not a choice constraint) of a base element, no ClassInfoElement created.", ed.getId());
                 return null;
             }
         }
@@ -1050,7 +1193,7 @@ public abstract class ClassInfoBuilder {
                 typeSpecifier = lts;
             }
             else if (this.asInteger(ed.getMax()) == 0) {
-                logger.info(String.format("Element %s has max cardinality 0, no ClassInfoElement created", ed.getId()));
+                logger.info("Element {} has max cardinality 0, no ClassInfoElement created", ed.getId());
                 return null;
             }
         }
@@ -1117,7 +1260,7 @@ public abstract class ClassInfoBuilder {
             }
         }
 
-        logger.info(String.format("Done building ClassInfoElement %s: %s", cie.getName(), cie.toString()));
+        logger.info("Done building ClassInfoElement {}: {}", cie.getName(), cie);
 
         return cie;
     }
@@ -1176,7 +1319,7 @@ public abstract class ClassInfoBuilder {
 
         String id = ed.getId();
         String path = ed.getPath();
-        logger.info(String.format("Visiting element %s, path %s", id, path));
+        logger.info("Visiting element {}, path {}", id, path);
 
         if (settings.createSliceElements) {
             if (ed.getSlicing() != null && !ed.getSlicing().isEmpty()) {
@@ -1186,10 +1329,10 @@ public abstract class ClassInfoBuilder {
 
             if (ed.hasSliceName()) {
                 if (sliceInfo == null) {
-                    logger.warn(String.format("WARNING: Slice %s is not defined as part of a valid slicing", ed.getSliceName()));
+                    logger.warn("WARNING: Slice {} is not defined as part of a valid slicing", ed.getSliceName());
                 } else {
                     sliceInfo.setSliceName(ed.getSliceName());
-                    logger.info(String.format("Started slice %s of slicing root %s", sliceInfo.getSliceName(), sliceInfo.getSliceRoot().getId()));
+                    logger.info("Started slice {} of slicing root {}", sliceInfo.getSliceName(), sliceInfo.getSliceRoot().getId());
                 }
             }
 
@@ -1225,7 +1368,7 @@ public abstract class ClassInfoBuilder {
 
                 for (ClassInfoElement slice : elementSlices.getSlices()) {
                     // Slices other than type slices are reported to the containing element (or class)
-                    logger.info(String.format("Adding slice %s to slice list of element %s", slice.getName(), ed.getId()));
+                    logger.info("Adding slice {} to slice list of element {}", slice.getName(), ed.getId());
                     if (elementSlices.getSliceInfo() != null) {
                         // The slices have been collected at the discriminator, so bubbling them past this point means they need to be qualified
                         // by the path of the current element
@@ -1253,7 +1396,7 @@ public abstract class ClassInfoBuilder {
                                 : this.getTypeName(baseModelName, typeName))
                         .withRetrievable(false).withElement(elements).withPrimaryCodePath(null);
 
-                this.typeInfos.put(this.getTypeName(modelName, typeName), componentClassInfo);
+                putTypeInfo(this.getTypeName(modelName, typeName), componentClassInfo);
 
                 typeSpecifier = this.buildTypeSpecifier(modelName, typeName);
                 // Elements have been added to the type of the element
@@ -1268,9 +1411,10 @@ public abstract class ClassInfoBuilder {
             if (typeSpecifier instanceof NamedTypeSpecifier && !isSystemTypeName(getTypeName((NamedTypeSpecifier)typeSpecifier))) {
                 TypeInfo elementTypeInfo = resolveType(getTypeName((NamedTypeSpecifier)typeSpecifier));
                 if (elementTypeInfo instanceof ClassInfo) {
+                    ensureUpdatable(getTypeName((NamedTypeSpecifier)typeSpecifier));
                     ClassInfo elementClassInfo = (ClassInfo)elementTypeInfo;
                     for (ClassInfoElement slice : slices.getSlices()) {
-                        logger.info(String.format("Adding slice %s to constructed type %s.", slice.getName(), elementClassInfo.getName()));
+                        logger.info("Adding slice {} to constructed type {}.", slice.getName(), elementClassInfo.getName());
                         elementClassInfo.getElement().add(slice);
                     }
                     slices.getSlices().clear();
@@ -1283,7 +1427,7 @@ public abstract class ClassInfoBuilder {
         // If this element is a slice, set the target map for the element
         if (ed.hasSliceName() && sliceInfo != null) {
             if (elements.size() == 1) {
-                logger.info(String.format("Element %s is the only element for slice %s, collapsing into the slice.", elements.get(0).getName(), ed.getSliceName()));
+                logger.info("Element {} is the only element for slice {}, collapsing into the slice.", elements.get(0).getName(), ed.getSliceName());
                 cie = mergeElements(cie, elements.remove(0));
             }
             else if (elements.size() > 1) {
@@ -1305,7 +1449,7 @@ public abstract class ClassInfoBuilder {
             }
 
             if (!sliceInfo.isTypeSlicing()) {
-                logger.info(String.format("Element %s is a slice of element %s, adding to slice list.", cie.getName(), sliceInfo.getSliceRoot().getId()));
+                logger.info("Element {} is a slice of element {}, adding to slice list.", cie.getName(), sliceInfo.getSliceRoot().getId());
                 slices.getSlices().add(cie);
                 cie = null;
             }
@@ -1318,7 +1462,7 @@ public abstract class ClassInfoBuilder {
                     if (elements.size() > 1) {
                         throw new IllegalArgumentException("Multiple type slices encountered");
                     }
-                    logger.info(String.format("Element %s is the only element of a type-discriminated slicing of element %s, collapsing into the element.", elements.get(0).getName(), ed.getId()));
+                    logger.info("Element {} is the only element of a type-discriminated slicing of element {}, collapsing into the element.", elements.get(0).getName(), ed.getId());
                     cie = mergeElements(cie, elements.remove(0));
                 }
             }
@@ -1333,11 +1477,11 @@ public abstract class ClassInfoBuilder {
         if (!ed.hasSliceName() && !(sliceInfo != null && sliceInfo.getSliceRoot().getId().equals(ed.getId())) && (slices.getSlices().size() > 0)) {
 
             if (!(typeSpecifier instanceof NamedTypeSpecifier)) {
-                logger.warn(String.format("WARNING: Derived type for slicing support only support for named types. Ignoring slices of element %s", ed.getId()));
+                logger.warn("WARNING: Derived type for slicing support only support for named types. Ignoring slices of element {}", ed.getId());
                 slices.getSlices().clear();
             }
             else if (!(isClassType(getTypeName((NamedTypeSpecifier)typeSpecifier)))) {
-                logger.warn(String.format("WARNING: Derived type for slicing support on primitives not implemented. Ignoring slices of element %s", ed.getId()));
+                logger.warn("WARNING: Derived type for slicing support on primitives not implemented. Ignoring slices of element {}", ed.getId());
                 slices.getSlices().clear();
             }
             else if (isSystemTypeName(getTypeName((NamedTypeSpecifier)typeSpecifier)) && slices.getSlices().size() == 1 && slices.getSlices().get(0).getElementType() != null && slices.getSlices().get(0).getElementType().equals("QICore.NotDoneValueSet") && cie != null) {
@@ -1363,20 +1507,21 @@ public abstract class ClassInfoBuilder {
                     String typeName = capitalizePath(ed.getId().replace(':', '.'));
                     String qualifiedTypeName = getTypeName(modelName, typeName);
                     ClassInfo elementType = null;
-                    if (this.typeInfos.containsKey(qualifiedTypeName)) {
-                        logger.warn(String.format("WARNING: Adding slices to existing type %s.", qualifiedTypeName));
-                        elementType = (ClassInfo) typeInfos.get(qualifiedTypeName);
+                    if (resolveType(qualifiedTypeName) != null) {
+                        logger.warn("WARNING: Adding slices to existing type {}.", qualifiedTypeName);
+                        ensureUpdatable(qualifiedTypeName);
+                        elementType = (ClassInfo) resolveType(qualifiedTypeName);
                     } else {
                         elementType = new ClassInfo().withNamespace(modelName).withName(typeName).withBaseTypeSpecifier(typeSpecifier).withRetrievable(false);
-                        this.typeInfos.put(qualifiedTypeName, elementType);
+                        putTypeInfo(qualifiedTypeName, elementType);
                     }
 
                     for (ClassInfoElement slice : slices.getSlices()) {
-                        logger.info(String.format("Adding slice %s to derived type %s", slice.getName(), qualifiedTypeName));
+                        logger.info("Adding slice {} to derived type {}", slice.getName(), qualifiedTypeName);
                         if (elementType.getElement().stream().noneMatch(x -> x.getName().equals(slice.getName()))) {
                             elementType.getElement().add(slice);
                         } else {
-                            logger.warn(String.format("WARNING: Duplicate element %s not added to derived type %s", slice.getName(), qualifiedTypeName));
+                            logger.warn("WARNING: Duplicate element {} not added to derived type {}", slice.getName(), qualifiedTypeName);
                         }
                     }
                     //this.typeInfos.put(qualifiedTypeName, elementType);
@@ -1406,7 +1551,7 @@ public abstract class ClassInfoBuilder {
         }
 
         for (ClassInfoElement slice : elements) {
-            logger.warn(String.format("WARNING: Element %s ignored", slice.getName()));
+            logger.warn("WARNING: Element {} ignored", slice.getName());
         }
 
         return cie;
@@ -1433,7 +1578,7 @@ public abstract class ClassInfoBuilder {
             }
         }
 
-        this.typeInfos.put(qualifiedTypeName, info);
+        putTypeInfo(qualifiedTypeName, info);
 
         AtomicReference<Integer> index = new AtomicReference<Integer>(1);
         List<ClassInfoElement> elements = new ArrayList<>();
@@ -1457,7 +1602,7 @@ public abstract class ClassInfoBuilder {
 
                 // Slices of the element, if any
                 for (ClassInfoElement slice : elementSlices.getSlices()) {
-                    logger.info(String.format("Adding slice %s to elements for %s", slice.getName(), typeName));
+                    logger.info("Adding slice {} to elements for {}", slice.getName(), typeName);
                     elements.add(slice);
                 }
             }
@@ -1466,7 +1611,7 @@ public abstract class ClassInfoBuilder {
             }
         }
 
-        if (baseTypeName != null && !this.typeInfos.containsKey(baseTypeName)) {
+        if (baseTypeName != null && !hasTypeInfo(baseTypeName)) {
             StructureDefinition baseSd = this.structureDefinitions.get(getTail(baseDefinition));
             buildClassInfo(modelName, baseSd);
         }
@@ -1481,7 +1626,7 @@ public abstract class ClassInfoBuilder {
             }
 
             // Set up target type map
-            typeTargets.put(qualifiedTypeName, elements.get(1).getTarget());
+            putTypeTarget(qualifiedTypeName, elements.get(1).getTarget());
         }
         else {
             // Set base type, elements, and primary code path
@@ -1490,7 +1635,7 @@ public abstract class ClassInfoBuilder {
                     .withPrimaryCodePath(this.primaryCodePath(elements, typeName));
         }
 
-        logger.info(String.format("Done building ClassInfo for %s", typeName));
+        logger.info("Done building ClassInfo for {}", typeName);
         return info;
     }
 
@@ -1526,17 +1671,144 @@ public abstract class ClassInfoBuilder {
         }
     }
 
+    protected void buildFor(String model, String... ids) {
+        this.buildFor(model, Arrays.asList(ids));
+    }
+
     protected void buildFor(String model, Predicate<StructureDefinition> predicate) {
-        for (StructureDefinition sd : structureDefinitions.values()) {
-            if (predicate.test(sd)) {
+        List<String> ids = new ArrayList<>();
+        for (Map.Entry<String, StructureDefinition> entry : structureDefinitions.entrySet()) {
+            if (predicate.test(entry.getValue())) {
+                ids.add(entry.getKey());
+            }
+        }
+        this.buildFor(model, ids);
+    }
+
+    // Builds the ClassInfos for the given profiles, with the same result as building them one after the other.
+    // The profiles are first built concurrently, each against the types built before this call and collecting the
+    // types it builds itself. These builds are then merged in the given order; a build that looked up a type that an
+    // earlier profile (re)built in the meantime (other than building the same type itself), or that had to change an
+    // existing type, is discarded and that profile is built again at that point.
+    protected void buildFor(String model, List<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        // The first profile usually builds the base types shared by the others
+        this.buildFor(model, ids.get(0));
+        if (ids.size() < 3 || ThreadUtils.getParallelism() < 2) {
+            for (String id : ids.subList(1, ids.size())) {
+                this.buildFor(model, id);
+            }
+            return;
+        }
+
+        List<String> remaining = ids.subList(1, ids.size());
+        ProfileBuild[] builds = new ProfileBuild[remaining.size()];
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < remaining.size(); i++) {
+            int index = i;
+            tasks.add(() -> {
+                ProfileBuild build = new ProfileBuild(true);
+                currentBuild.set(build);
+                try {
+                    this.buildClassInfo(model, structureDefinitions.get(remaining.get(index)));
+                }
+                catch (Exception | ProfileBuild.Conflict e) {
+                    build.conflicted = true;
+                }
+                finally {
+                    currentBuild.remove();
+                }
+                builds[index] = build;
+                return null;
+            });
+        }
+        ThreadUtils.executeTasks("BuildClassInfos", tasks);
+
+        Set<String> changed = new HashSet<>();
+        int rebuilt = 0;
+        for (int i = 0; i < remaining.size(); i++) {
+            ProfileBuild build = builds[i];
+            if (build == null || build.conflicted || !isConsistent(build, changed)) {
+                ProfileBuild rebuild = new ProfileBuild(false);
+                currentBuild.set(rebuild);
                 try {
-                    this.buildClassInfo(model, sd);
+                    this.buildFor(model, remaining.get(i));
+                }
+                finally {
+                    currentBuild.remove();
                 }
-                catch (Exception e) {
-                    logger.error("Error building ClassInfo for: {} - {}", sd.getId(), e.getMessage());
-                    e.printStackTrace();
+                changed.addAll(rebuild.writes);
+                rebuilt++;
+            }
+            else {
+                this.typeInfos.putAll(build.typeInfos);
+                this.typeTargets.putAll(build.typeTargets);
+                this.requiredBindingTypeNames.addAll(build.requiredBindingTypeNames);
+                changed.addAll(build.writes);
+            }
+        }
+        logger.debug("Built {} profiles, {} of them after a conflicting concurrent build", ids.size(), rebuilt);
+    }
+
+    // Returns whether the given speculative build has the same result as building the profile now, given the types
+    // that were (re)built since the speculative build started
+    private boolean isConsistent(ProfileBuild build, Set<String> changed) {
+        if (!Collections.disjoint(build.reads, changed)) {
+            return false;
+        }
+        Set<String> overlap = new HashSet<>(build.ensured);
+        overlap.addAll(build.writes);
+        overlap.retainAll(changed);
+        for (String key : overlap) {
+            if (key.startsWith(ProfileBuild.BINDING)) {
+                continue;
+            }
+            if (key.startsWith(ProfileBuild.TARGET)) {
+                String name = key.substring(ProfileBuild.TARGET.length());
+                if (!build.typeTargets.containsKey(name)
+                        || !Objects.equals(build.typeTargets.get(name), this.typeTargets.get(name))) {
+                    return false;
                 }
             }
+            else if (!build.typeInfos.containsKey(key) || !build.typeInfos.get(key).equals(this.typeInfos.get(key))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The types built by a single profile. A speculative build only reads the types of the builder, and keeps the types
+    // it builds to itself; otherwise the build changes the builder directly and the build only records what it changed.
+    // Type targets and required binding names are tracked by the name of their type, with a prefix.
+    private static class ProfileBuild {
+        private static final String TARGET = "target:";
+        private static final String BINDING = "binding:";
+
+        // Thrown when a speculative build would have to change a type it did not build itself
+        private static class Conflict extends Error {
+            private Conflict() {
+                super(null, null, false, false);
+            }
+        }
+
+        private static final Conflict CONFLICT = new Conflict();
+
+        private final boolean speculative;
+        private final Map<String, TypeInfo> typeInfos = new LinkedHashMap<>();
+        private final Map<String, String> typeTargets = new LinkedHashMap<>();
+        private final Set<String> requiredBindingTypeNames = new LinkedHashSet<>();
+        // The types looked up outside the build itself
+        private final Set<String> reads = new HashSet<>();
+        // The types looked up, not found, and then (normally) built by the build itself
+        private final Set<String> ensured = new HashSet<>();
+        private final Set<String> writes = new HashSet<>();
+        private boolean conflicted;
+
+        private ProfileBuild(boolean speculative) {
+            this.speculative = speculative;
         }
     }
 
@@ -1649,7 +1921,7 @@ public abstract class ClassInfoBuilder {
             }
         }
         catch (Exception e) {
-            logger.error(String.format("Error fixing up contentreferencetypespecifier %s.%s: %s", modelName, element.getName(), e.getMessage()));
+            logger.error("Error fixing up contentreferencetypespecifier {}.{}: {}", modelName, element.getName(), e.getMessage());
         }
 
         return result;
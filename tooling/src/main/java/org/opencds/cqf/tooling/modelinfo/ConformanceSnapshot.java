@@ -0,0 +1,263 @@
+package org.opencds.cqf.tooling.modelinfo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.codec.binary.Hex;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.common.ThreadUtils;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.util.VersionUtil;
+
+/**
+ * A snapshot of the conformance resources loaded from a set of source files, so that a run against unchanged inputs
+ * reads one file instead of every source file.
+ * <p>
+ * The snapshot records a fingerprint (path, size and modification time) of every source file, together with the FHIR
+ * and HAPI versions, and is only used when all of them are unchanged; the source folders are still listed and every
+ * file is still stat'ed to check this. The resources are kept in load order, in named groups, as compact JSON in a GZIP
+ * stream, and are parsed again on reload (concurrently, on the shared {@link ThreadUtils} pool). Java serialization of
+ * the resources was measured to be no faster than parsing the JSON, so the gain is limited to reading one compressed
+ * file: about 8% of the load time of the R4 specification (1869 resources) on a cold JVM.
+ * <p>
+ * Snapshots are written under ~/.cqf-tooling/atlas-snapshots, and only used when enabled, by the
+ * {@value #SNAPSHOT_PROPERTY} system property or the option of the operation.
+ */
+public class ConformanceSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConformanceSnapshot.class);
+
+    public static final String SNAPSHOT_PROPERTY = "cqf-tooling.conformanceSnapshots";
+    public static final Path DEFAULT_DIRECTORY = Paths.get(System.getProperty("user.home"), ".cqf-tooling", "atlas-snapshots");
+
+    private static final int MAGIC = 0x43514653; // CQFS
+    private static final int FORMAT_VERSION = 1;
+
+    private final FhirContext fhirContext;
+    private final Map<String, List<IBaseResource>> groups = new LinkedHashMap<>();
+
+    /**
+     * @return whether snapshots are enabled by the {@value #SNAPSHOT_PROPERTY} system property
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(SNAPSHOT_PROPERTY);
+    }
+
+    public ConformanceSnapshot(FhirContext fhirContext) {
+        this.fhirContext = fhirContext;
+    }
+
+    public ConformanceSnapshot add(String group, IBaseResource resource) {
+        groups.computeIfAbsent(group, x -> new ArrayList<>()).add(resource);
+        return this;
+    }
+
+    public List<IBaseResource> getResources(String group) {
+        return groups.getOrDefault(group, Collections.emptyList());
+    }
+
+    /**
+     * Returns the default location of the snapshot of the given source folders (or files), in {@link #DEFAULT_DIRECTORY}.
+     *
+     * @param name    A name for the kind of snapshot, used as the file name prefix.
+     * @param sources The folders or files the snapshot is loaded from.
+     * @return The snapshot file path.
+     */
+    public static Path getDefaultPath(String name, Collection<Path> sources) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Path source : sources) {
+                digest.update(source.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return DEFAULT_DIRECTORY.resolve(name + "-" + Hex.encodeHexString(digest.digest()).substring(0, 16) + ".bin");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the file a class path resource is loaded from, i.e. the resource file itself or the jar that contains it.
+     *
+     * @param resource The class path resource.
+     * @return The file, or null if the resource does not exist or is not loaded from the file system.
+     */
+    public static Path getSourcePath(URL resource) {
+        if (resource == null) {
+            return null;
+        }
+        try {
+            if (resource.getProtocol().equals("file")) {
+                return Paths.get(resource.toURI());
+            }
+            if (resource.getProtocol().equals("jar")) {
+                return Paths.get(((JarURLConnection) resource.openConnection()).getJarFileURL().toURI());
+            }
+        } catch (IOException | URISyntaxException e) {
+            logger.debug("Unable to resolve the source of {}: {}", resource, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Writes the snapshot, replacing the given file atomically.
+     *
+     * @param file    The snapshot file.
+     * @param sources The files the resources were loaded from.
+     * @throws IOException If a source file can not be read or the snapshot can not be written.
+     */
+    public void write(Path file, Collection<Path> sources) throws IOException {
+        List<String> fingerprints = fingerprints(sources);
+        IParser parser = fhirContext.newJsonParser();
+        IOUtils.writeAtomically(file, stream -> {
+            try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(
+                    new BufferedOutputStream(stream), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(fhirContext.getVersion().getVersion().name());
+                out.writeUTF(VersionUtil.getVersion());
+                out.writeInt(fingerprints.size());
+                for (String fingerprint : fingerprints) {
+                    out.writeUTF(fingerprint);
+                }
+                out.writeInt(groups.size());
+                for (Map.Entry<String, List<IBaseResource>> group : groups.entrySet()) {
+                    out.writeUTF(group.getKey());
+                    out.writeInt(group.getValue().size());
+                    for (IBaseResource resource : group.getValue()) {
+                        // The id element may hold more than the encoded id, e.g. the full url of a bundle entry
+                        String id = resource.getIdElement().getValue();
+                        out.writeBoolean(id != null);
+                        if (id != null) {
+                            out.writeUTF(id);
+                        }
+                        byte[] json = parser.encodeResourceToString(resource).getBytes(StandardCharsets.UTF_8);
+                        out.writeInt(json.length);
+                        out.write(json);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads a snapshot that was written for the given, unchanged, source files.
+     *
+     * @param fhirContext The FHIR context to parse the resources with.
+     * @param file        The snapshot file.
+     * @param sources     The files the resources would otherwise be loaded from.
+     * @return The snapshot, or null if there is no snapshot or it is out of date or unreadable.
+     */
+    public static ConformanceSnapshot read(FhirContext fhirContext, Path file, Collection<Path> sources) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        Map<String, List<String>> ids = new LinkedHashMap<>();
+        Map<String, List<byte[]>> contents = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file), 1 << 16), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                    || !in.readUTF().equals(fhirContext.getVersion().getVersion().name())
+                    || !in.readUTF().equals(VersionUtil.getVersion())) {
+                logger.info("Snapshot {} was written by a different version, ignoring it", file);
+                return null;
+            }
+            List<String> fingerprints = new ArrayList<>();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                fingerprints.add(in.readUTF());
+            }
+            if (!fingerprints.equals(fingerprints(sources))) {
+                logger.info("The sources of snapshot {} have changed, ignoring it", file);
+                return null;
+            }
+            int groupCount = in.readInt();
+            for (int i = 0; i < groupCount; i++) {
+                String group = in.readUTF();
+                int resourceCount = in.readInt();
+                List<String> groupIds = new ArrayList<>(resourceCount);
+                List<byte[]> groupContents = new ArrayList<>(resourceCount);
+                for (int j = 0; j < resourceCount; j++) {
+                    groupIds.add(in.readBoolean() ? in.readUTF() : null);
+                    byte[] json = new byte[in.readInt()];
+                    in.readFully(json);
+                    groupContents.add(json);
+                }
+                ids.put(group, groupIds);
+                contents.put(group, groupContents);
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to read snapshot {}: {}", file, e.getMessage());
+            return null;
+        }
+
+        ConformanceSnapshot snapshot = new ConformanceSnapshot(fhirContext);
+        ThreadLocal<IParser> parsers = ThreadLocal.withInitial(fhirContext::newJsonParser);
+        for (Map.Entry<String, List<byte[]>> group : contents.entrySet()) {
+            List<String> groupIds = ids.get(group.getKey());
+            List<byte[]> groupContents = group.getValue();
+            IBaseResource[] resources = new IBaseResource[groupContents.size()];
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < resources.length; i++) {
+                int index = i;
+                tasks.add(() -> {
+                    IBaseResource resource = parsers.get().parseResource(new String(groupContents.get(index), StandardCharsets.UTF_8));
+                    if (groupIds.get(index) != null) {
+                        resource.setId(groupIds.get(index));
+                    }
+                    resources[index] = resource;
+                    return null;
+                });
+            }
+            ThreadUtils.executeTasks("ReadConformanceSnapshot", tasks);
+            for (IBaseResource resource : resources) {
+                if (resource == null) {
+                    logger.warn("Unable to parse snapshot {}, ignoring it", file);
+                    return null;
+                }
+                snapshot.add(group.getKey(), resource);
+            }
+        }
+
+        return snapshot;
+    }
+
+    private static List<String> fingerprints(Collection<Path> sources) throws IOException {
+        List<String> fingerprints = new ArrayList<>();
+        for (Path source : sources) {
+            BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+            fingerprints.add(source.toAbsolutePath().normalize() + "|" + attributes.size() + "|"
+                    + attributes.lastModifiedTime().toMillis());
+        }
+        Collections.sort(fingerprints);
+        return fingerprints;
+    }
+}
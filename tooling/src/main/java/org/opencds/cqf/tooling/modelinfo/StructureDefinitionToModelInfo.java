@@ -47,6 +47,8 @@ public class StructureDefinitionToModelInfo extends Operation {
 
     private boolean buildSettings = false;
 
+    private boolean useSnapshot = ConformanceSnapshot.isEnabled();
+
     /*
     // NOTE: This documentation is present in the Main.java class for the tooling as well, keep these in sync
 
@@ -61,6 +63,7 @@ public class StructureDefinitionToModelInfo extends Operation {
           (-createSliceElements | -cse)
           (-flatten | -f)
           (-buildSettings | -bs)
+          (-useSnapshot | -us)
           (-outputpath | -op)
         "
 
@@ -82,6 +85,8 @@ public class StructureDefinitionToModelInfo extends Operation {
         modelVersion: The version of the model being generated
         useCqlPrimitives: Determines whether the generated structures should use Cql primitives for "primitive types"
         includeMetadata: Determines whether to include additional (non-structural) information such as definitions, comments, bindings, and constraints
+        useSnapshot: Determines whether the loaded resources are cached in a snapshot (in ~/.cqf-tooling/atlas-snapshots) and reloaded from it
+            when the files in the resource paths are unchanged, defaults to false (or the cqf-tooling.conformanceSnapshots system property)
         outputPath: Specifies the output directory for the resulting ModelInfo
 
         Arguments for producing FHIR Model Info
@@ -166,13 +171,15 @@ public class StructureDefinitionToModelInfo extends Operation {
                 case "createsliceelements": case "cse": createSliceElements = value.equalsIgnoreCase("true"); break;
                 case "flatten": case "f": flatten = value.equalsIgnoreCase("true"); break;
                 case "buildsettings": case "bs": buildSettings = value.equalsIgnoreCase("true"); break;
+                case "usesnapshot": case "us": useSnapshot = value.equalsIgnoreCase("true"); break;
                 default: throw new IllegalArgumentException("Unknown flag: " + flag);
             }
         }
 
         // TODO: Need to load from NPMPackages, not directories...
         Atlas atlas = new Atlas();
-        atlas.loadPaths(inputPath, resourcePaths);
+        atlas.loadPaths(inputPath, resourcePaths,
+                useSnapshot ? Atlas.getDefaultSnapshotPath(inputPath, resourcePaths) : null);
 
         File outputPath = new File(getOutputPath());
         if (!outputPath.exists()) {
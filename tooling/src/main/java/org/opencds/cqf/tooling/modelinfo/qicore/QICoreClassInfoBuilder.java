@@ -200,70 +200,71 @@ public class QICoreClassInfoBuilder extends ClassInfoBuilder {
         */
 
         // v7.0.0
-        this.buildFor("QICore", "qicore-adverseevent");
-        this.buildFor("QICore", "qicore-allergyintolerance");
-        this.buildFor("QICore", "qicore-bodystructure");
-        this.buildFor("QICore", "qicore-claim");
-        this.buildFor("QICore", "qicore-claimresponse");
-        this.buildFor("QICore", "qicore-careplan");
-        this.buildFor("QICore", "qicore-careteam");
-        this.buildFor("QICore", "qicore-communication");
-        this.buildFor("QICore", "qicore-communicationdone");
-        this.buildFor("QICore", "qicore-communicationnotdone");
-        this.buildFor("QICore", "qicore-communicationrequest");
-        this.buildFor("QICore", "qicore-condition-encounter-diagnosis");
-        this.buildFor("QICore", "qicore-condition-problems-health-concerns");
-        this.buildFor("QICore", "qicore-coverage");
-        this.buildFor("QICore", "qicore-device");
-        this.buildFor("QICore", "qicore-devicerequest");
-        this.buildFor("QICore", "qicore-devicerequested");
-        this.buildFor("QICore", "qicore-deviceprohibited");
-        this.buildFor("QICore", "qicore-deviceusestatement");
-        this.buildFor("QICore", "qicore-diagnosticreport-lab");
-        this.buildFor("QICore", "qicore-diagnosticreport-note");
-        this.buildFor("QICore", "qicore-encounter");
-        this.buildFor("QICore", "qicore-familymemberhistory");
-        this.buildFor("QICore", "qicore-flag");
-        this.buildFor("QICore", "qicore-goal");
-        this.buildFor("QICore", "qicore-imagingstudy");
-        this.buildFor("QICore", "qicore-immunization");
-        this.buildFor("QICore", "qicore-immunizationdone");
-        this.buildFor("QICore", "qicore-immunizationnotdone");
-        this.buildFor("QICore", "qicore-immunizationevaluation");
-        this.buildFor("QICore", "qicore-immunizationrecommendation");
-        this.buildFor("QICore", "qicore-location");
-        this.buildFor("QICore", "qicore-medication");
-        this.buildFor("QICore", "qicore-medicationadministration");
-        this.buildFor("QICore", "qicore-medicationadministrationdone");
-        this.buildFor("QICore", "qicore-medicationadministrationnotdone");
-        this.buildFor("QICore", "qicore-medicationdispense");
-        this.buildFor("QICore", "qicore-medicationdispensedone");
-        this.buildFor("QICore", "qicore-medicationdispensedeclined");
-        this.buildFor("QICore", "qicore-medicationrequest");
-        this.buildFor("QICore", "qicore-medicationrequested");
-        this.buildFor("QICore", "qicore-medicationprohibited");
-        this.buildFor("QICore", "qicore-medicationstatement");
-        this.buildFor("QICore", "qicore-nutritionorder");
-        this.buildFor("QICore", "qicore-simple-observation");
-        this.buildFor("QICore", "qicore-nonpatient-observation");
-        this.buildFor("QICore", "qicore-observation-lab");
-        this.buildFor("QICore", "qicore-observation-clinical-result");
-        this.buildFor("QICore", "qicore-observation-screening-assessment");
-        this.buildFor("QICore", "qicore-organization");
-        this.buildFor("QICore", "qicore-patient");
-        this.buildFor("QICore", "qicore-practitioner");
-        this.buildFor("QICore", "qicore-practitionerrole");
-        this.buildFor("QICore", "qicore-procedure");
-        this.buildFor("QICore", "qicore-proceduredone");
-        this.buildFor("QICore", "qicore-procedurenotdone");
-        this.buildFor("QICore", "qicore-questionnaireresponse");
-        this.buildFor("QICore", "qicore-relatedperson");
-        this.buildFor("QICore", "qicore-servicerequest");
-        this.buildFor("QICore", "qicore-servicerequested");
-        this.buildFor("QICore", "qicore-serviceprohibited");
-        this.buildFor("QICore", "qicore-substance");
-        this.buildFor("QICore", "qicore-task");
-        this.buildFor("QICore", "qicore-taskdone");
-        this.buildFor("QICore", "qicore-taskrejected");
+        this.buildFor("QICore",
+                "qicore-adverseevent",
+                "qicore-allergyintolerance",
+                "qicore-bodystructure",
+                "qicore-claim",
+                "qicore-claimresponse",
+                "qicore-careplan",
+                "qicore-careteam",
+                "qicore-communication",
+                "qicore-communicationdone",
+                "qicore-communicationnotdone",
+                "qicore-communicationrequest",
+                "qicore-condition-encounter-diagnosis",
+                "qicore-condition-problems-health-concerns",
+                "qicore-coverage",
+                "qicore-device",
+                "qicore-devicerequest",
+                "qicore-devicerequested",
+                "qicore-deviceprohibited",
+                "qicore-deviceusestatement",
+                "qicore-diagnosticreport-lab",
+                "qicore-diagnosticreport-note",
+                "qicore-encounter",
+                "qicore-familymemberhistory",
+                "qicore-flag",
+                "qicore-goal",
+                "qicore-imagingstudy",
+                "qicore-immunization",
+                "qicore-immunizationdone",
+                "qicore-immunizationnotdone",
+                "qicore-immunizationevaluation",
+                "qicore-immunizationrecommendation",
+                "qicore-location",
+                "qicore-medication",
+                "qicore-medicationadministration",
+                "qicore-medicationadministrationdone",
+                "qicore-medicationadministrationnotdone",
+                "qicore-medicationdispense",
+                "qicore-medicationdispensedone",
+                "qicore-medicationdispensedeclined",
+                "qicore-medicationrequest",
+                "qicore-medicationrequested",
+                "qicore-medicationprohibited",
+                "qicore-medicationstatement",
+                "qicore-nutritionorder",
+                "qicore-simple-observation",
+                "qicore-nonpatient-observation",
+                "qicore-observation-lab",
+                "qicore-observation-clinical-result",
+                "qicore-observation-screening-assessment",
+                "qicore-organization",
+                "qicore-patient",
+                "qicore-practitioner",
+                "qicore-practitionerrole",
+                "qicore-procedure",
+                "qicore-proceduredone",
+                "qicore-procedurenotdone",
+                "qicore-questionnaireresponse",
+                "qicore-relatedperson",
+                "qicore-servicerequest",
+                "qicore-servicerequested",
+                "qicore-serviceprohibited",
+                "qicore-substance",
+                "qicore-task",
+                "qicore-taskdone",
+                "qicore-taskrejected");
     }
 }
\ No newline at end of file
@@ -110,60 +110,61 @@ public class USCoreClassInfoBuilder extends ClassInfoBuilder {
          */
 
         // 8.0.0
-        this.buildFor("USCore", "us-core-adi-documentreference");
-        this.buildFor("USCore", "us-core-allergyintolerance");
-        this.buildFor("USCore", "us-core-average-blood-pressure");
-        this.buildFor("USCore", "us-core-bmi");
-        this.buildFor("USCore", "us-core-blood-pressure");
-        this.buildFor("USCore", "us-core-body-height");
-        this.buildFor("USCore", "us-core-body-temperature");
-        this.buildFor("USCore", "us-core-body-weight");
-        this.buildFor("USCore", "us-core-care-experience-preference");
-        this.buildFor("USCore", "us-core-careplan");
-        this.buildFor("USCore", "us-core-careteam");
-        this.buildFor("USCore", "us-core-condition-encounter-diagnosis");
-        this.buildFor("USCore", "us-core-condition-problems-health-concerns");
-        this.buildFor("USCore", "us-core-coverage");
-        this.buildFor("USCore", "us-core-diagnosticreport-lab");
-        this.buildFor("USCore", "us-core-diagnosticreport-note");
-        this.buildFor("USCore", "us-core-documentreference");
-        this.buildFor("USCore", "us-core-encounter");
-        this.buildFor("USCore", "us-core-goal");
-        this.buildFor("USCore", "us-core-head-circumference");
-        this.buildFor("USCore", "us-core-heart-rate");
-        this.buildFor("USCore", "us-core-immunization");
-        this.buildFor("USCore", "us-core-implantable-device");
-        this.buildFor("USCore", "us-core-observation-lab");
-        this.buildFor("USCore", "us-core-location");
-        this.buildFor("USCore", "us-core-medication");
-        this.buildFor("USCore", "us-core-medicationdispense");
-        this.buildFor("USCore", "us-core-medicationrequest");
-        this.buildFor("USCore", "us-core-observation-adi-documentation");
-        this.buildFor("USCore", "us-core-observation-clinical-result");
-        this.buildFor("USCore", "us-core-observation-occupation");
-        this.buildFor("USCore", "us-core-observation-pregnancyintent");
-        this.buildFor("USCore", "us-core-observation-pregnancystatus");
-        this.buildFor("USCore", "us-core-observation-screening-assessment");
-        this.buildFor("USCore", "us-core-observation-sexual-orientation");
-        this.buildFor("USCore", "us-core-organization");
-        this.buildFor("USCore", "us-core-patient");
-        this.buildFor("USCore", "pediatric-bmi-for-age");
-        this.buildFor("USCore", "head-occipital-frontal-circumference-percentile");
-        this.buildFor("USCore", "pediatric-weight-for-height");
-        this.buildFor("USCore", "us-core-practitioner");
-        this.buildFor("USCore", "us-core-practitionerrole");
-        this.buildFor("USCore", "us-core-procedure");
-        this.buildFor("USCore", "us-core-provenance");
-        this.buildFor("USCore", "us-core-pulse-oximetry");
-        this.buildFor("USCore", "us-core-questionnaireresponse");
-        this.buildFor("USCore", "us-core-relatedperson");
-        this.buildFor("USCore", "us-core-respiratory-rate");
-        this.buildFor("USCore", "us-core-servicerequest");
-        this.buildFor("USCore", "us-core-simple-observation");
-        this.buildFor("USCore", "us-core-smokingstatus");
-        this.buildFor("USCore", "us-core-specimen");
-        this.buildFor("USCore", "us-core-treatment-intervention-preference");
-        this.buildFor("USCore", "us-core-vital-signs");
+        this.buildFor("USCore",
+                "us-core-adi-documentreference",
+                "us-core-allergyintolerance",
+                "us-core-average-blood-pressure",
+                "us-core-bmi",
+                "us-core-blood-pressure",
+                "us-core-body-height",
+                "us-core-body-temperature",
+                "us-core-body-weight",
+                "us-core-care-experience-preference",
+                "us-core-careplan",
+                "us-core-careteam",
+                "us-core-condition-encounter-diagnosis",
+                "us-core-condition-problems-health-concerns",
+                "us-core-coverage",
+                "us-core-diagnosticreport-lab",
+                "us-core-diagnosticreport-note",
+                "us-core-documentreference",
+                "us-core-encounter",
+                "us-core-goal",
+                "us-core-head-circumference",
+                "us-core-heart-rate",
+                "us-core-immunization",
+                "us-core-implantable-device",
+                "us-core-observation-lab",
+                "us-core-location",
+                "us-core-medication",
+                "us-core-medicationdispense",
+                "us-core-medicationrequest",
+                "us-core-observation-adi-documentation",
+                "us-core-observation-clinical-result",
+                "us-core-observation-occupation",
+                "us-core-observation-pregnancyintent",
+                "us-core-observation-pregnancystatus",
+                "us-core-observation-screening-assessment",
+                "us-core-observation-sexual-orientation",
+                "us-core-organization",
+                "us-core-patient",
+                "pediatric-bmi-for-age",
+                "head-occipital-frontal-circumference-percentile",
+                "pediatric-weight-for-height",
+                "us-core-practitioner",
+                "us-core-practitionerrole",
+                "us-core-procedure",
+                "us-core-provenance",
+                "us-core-pulse-oximetry",
+                "us-core-questionnaireresponse",
+                "us-core-relatedperson",
+                "us-core-respiratory-rate",
+                "us-core-servicerequest",
+                "us-core-simple-observation",
+                "us-core-smokingstatus",
+                "us-core-specimen",
+                "us-core-treatment-intervention-preference",
+                "us-core-vital-signs");
     }
 
     @Override
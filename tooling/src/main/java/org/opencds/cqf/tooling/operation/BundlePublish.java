@@ -5,6 +5,7 @@ import ca.uhn.fhir.rest.client.api.IGenericClient;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.opencds.cqf.tooling.Operation;
+import org.opencds.cqf.tooling.utilities.BatchBundleUploader;
 import org.opencds.cqf.tooling.utilities.IOUtils;
 
 import java.util.UUID;
@@ -14,7 +15,8 @@ public class BundlePublish extends Operation {
     private String bundleId; // -bundleid (-bid)
     private String version; // -version (-v) Can be stu3, r4, or r5
     private String fhirServer; // -fhirserver (-fs)
-    private String postType; // -posttype (-pt) This can be transaction (default) or "resource" to post the Bundle resource itself
+    private String postType; // -posttype (-pt) This can be transaction (default), batch or "resource" to post the Bundle resource itself
+    private Integer chunkSize; // -chunksize (-cs) Splits the entries into dependency-ordered bundles of this many entries, posted concurrently
     private FhirContext context;
 
     // TODO: Authentication
@@ -51,6 +53,17 @@ public class BundlePublish extends Operation {
                 case "pt":
                     postType = value;
                     break;
+                case "chunksize":
+                case "cs":
+                    try {
+                        chunkSize = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid chunk size: " + value);
+                    }
+                    if (chunkSize < 1) {
+                        throw new IllegalArgumentException("The chunk size must be at least 1");
+                    }
+                    break;
                 default: throw new IllegalArgumentException("Unknown flag: " + flag);
             }
 
@@ -83,6 +96,14 @@ public class BundlePublish extends Operation {
     }
 
     public void postBundle(IBaseBundle bundle) {
+        if ("batch".equals(postType) || (chunkSize != null && (postType == null || postType.equals("transaction")))) {
+            BatchBundleUploader uploader = new BatchBundleUploader(context, IOUtils.Encoding.JSON,
+                    postType == null ? "transaction" : postType,
+                    chunkSize != null ? chunkSize : BatchBundleUploader.DEFAULT_MAX_ENTRIES, BatchBundleUploader.DEFAULT_MAX_BYTES);
+            uploader.add(bundle);
+            uploader.upload(fhirServer);
+            return;
+        }
         IGenericClient client = context.newRestfulGenericClient(fhirServer);
         if (bundleId != null) {
             bundle.setId(bundleId);
@@ -7,6 +7,7 @@ import org.hl7.fhir.dstu3.model.Bundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.opencds.cqf.tooling.Operation;
 import org.opencds.cqf.tooling.common.ThreadUtils;
+import org.opencds.cqf.tooling.utilities.StreamingBundleReader;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -16,12 +17,14 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class BundleToResources extends Operation {
 
     private String encoding; // -encoding (-e)
     private String path; // -path (-p)
     private String version; // -version (-v) Can be dstu2, stu3, or r4
+    private boolean streaming; // -streaming (-s) Read JSON bundles one entry at a time
     private FhirContext context;
 
 
@@ -29,6 +32,7 @@ public class BundleToResources extends Operation {
     private final List<Callable<Void>> discoverBundleTasks = new CopyOnWriteArrayList<>();
     private final List<StringBuilder> outputReportList = new CopyOnWriteArrayList<>();
     private final List<File> bundleFiles = new CopyOnWriteArrayList<>();
+    private final List<File> streamingFiles = new ArrayList<>();
 
     private int totalBundleCount = 0;
     private int processedBundleCount = 0;
@@ -91,6 +95,10 @@ public class BundleToResources extends Operation {
                         deleteBundles = true;
                     }
                     break;
+                case "streaming":
+                case "s":
+                    streaming = value.equalsIgnoreCase("true");
+                    break;
                 default:
                     throw new IllegalArgumentException("Unknown flag: " + flag);
             }
@@ -143,11 +151,16 @@ public class BundleToResources extends Operation {
             discoverBundles(bundles, outputPathLocation);
 
 
-            if (!outputTasks.isEmpty()) {
+            if (!outputTasks.isEmpty() || !streamingFiles.isEmpty()) {
                 System.out.println("\n\rExtracting resources from bundles...");
 
                 //outputTasks has been built up by discoverBundles
-                ThreadUtils.executeTasks(outputTasks);
+                ThreadUtils.executeIoTasks("write bundle resources", outputTasks);
+
+                // streamed bundles are read one at a time, each fanning its entries out to parallel writers
+                for (File bundleFile : streamingFiles) {
+                    streamFiles(bundleFile);
+                }
 
 
                 if (deleteBundles) {
@@ -212,7 +225,7 @@ public class BundleToResources extends Operation {
     public void discoverBundles(File[] resources, String outputPathLocation) {
         List<Pair<IBaseResource, File>> bundleResourceList = new CopyOnWriteArrayList<>();
         discoverBundlesRecursively(resources, outputPathLocation, bundleResourceList);
-        ThreadUtils.executeTasks(discoverBundleTasks);
+        ThreadUtils.executeTasks("discover bundles", discoverBundleTasks);
     }
 
     private void discoverBundlesRecursively(File[] resources, String outputPathLocation, List<Pair<IBaseResource, File>> bundleResourceList) {
@@ -236,6 +249,11 @@ public class BundleToResources extends Operation {
                 continue;
             }
 
+            if (streaming && resourceFile.getPath().endsWith(".json")) {
+                streamingFiles.add(resourceFile);
+                continue;
+            }
+
             // Submit file processing as a task
             discoverBundleTasks.add(() -> {
                 try (FileReader reader = new FileReader(resourceFile)) {
@@ -286,33 +304,65 @@ public class BundleToResources extends Operation {
         }
 
         if (!listOfResources.isEmpty()) {
-            String directoryName = bundleResourceFile.getAbsolutePath().replace(path, "").replace(bundleResourceFile.getName(), "");
+            String directoryName = getDirectoryName(bundleResourceFile);
             int extractionCount = 0;
             for (IBaseResource thisResource : listOfResources) {
                 if (output(thisResource, context, directoryName) != null) {
                     extractionCount++;
                 }
             }
-            //give user information on resources extracted
-            synchronized (outputReportList) {
-                String extractionCountStr = "" + extractionCount;
-
-                //try to format to the thousandth
-                if (extractionCountStr.length() == 1) {
-                    extractionCountStr = "   " + extractionCountStr;
-                } else if (extractionCountStr.length() == 2) {
-                    extractionCountStr = "  " + extractionCountStr;
-                } else if (extractionCountStr.length() == 3) {
-                    extractionCountStr = " " + extractionCountStr;
+            reportExtraction(bundleResourceFile, extractionCount);
+        }
+    }
+
+    private void streamFiles(File bundleResourceFile) {
+        String directoryName = getDirectoryName(bundleResourceFile);
+        AtomicInteger extractionCount = new AtomicInteger();
+        try (StreamingBundleReader reader = new StreamingBundleReader(bundleResourceFile, context)) {
+            reader.forEachEntry("write bundle resources", resource -> {
+                if (output(resource, context, directoryName) != null) {
+                    extractionCount.incrementAndGet();
                 }
+            });
+        } catch (IllegalArgumentException e) {
+            // not a bundle
+            return;
+        } catch (Exception e) {
+            System.out.println("\n\rError extracting resources from " + bundleResourceFile.getAbsolutePath() + ": " + e.getMessage());
+            return;
+        }
+
+        if (extractionCount.get() > 0) {
+            synchronized (outputReportList) {
+                increaseBundleDiscoveredProgress();
+            }
+            reportExtraction(bundleResourceFile, extractionCount.get());
+        }
+    }
+
+    private String getDirectoryName(File bundleResourceFile) {
+        return bundleResourceFile.getAbsolutePath().replace(path, "").replace(bundleResourceFile.getName(), "");
+    }
 
-                outputReportList.add(new StringBuilder("\n\r").append(extractionCountStr)
-                        .append(" resources extracted from: ")
-                        .append(bundleResourceFile.getAbsolutePath().replace(path, "")));
-                bundleFiles.add(bundleResourceFile);
-                reportProgress();
+    private void reportExtraction(File bundleResourceFile, int extractionCount) {
+        //give user information on resources extracted
+        synchronized (outputReportList) {
+            String extractionCountStr = "" + extractionCount;
+
+            //try to format to the thousandth
+            if (extractionCountStr.length() == 1) {
+                extractionCountStr = "   " + extractionCountStr;
+            } else if (extractionCountStr.length() == 2) {
+                extractionCountStr = "  " + extractionCountStr;
+            } else if (extractionCountStr.length() == 3) {
+                extractionCountStr = " " + extractionCountStr;
             }
 
+            outputReportList.add(new StringBuilder("\n\r").append(extractionCountStr)
+                    .append(" resources extracted from: ")
+                    .append(bundleResourceFile.getAbsolutePath().replace(path, "")));
+            bundleFiles.add(bundleResourceFile);
+            reportProgress();
         }
     }
 
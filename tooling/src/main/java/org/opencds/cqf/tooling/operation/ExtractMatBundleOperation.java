@@ -135,7 +135,7 @@ public class ExtractMatBundleOperation extends Operation {
             File[] filesInDir = new File(inputLocation).listFiles();
             if (filesInDir != null && filesInDir.length > 0) {
                 //use recursive calls to build up task list:
-                ThreadUtils.executeTasks(processFilesInDir(filesInDir, version, suppressNarrative));
+                ThreadUtils.executeIoTasks("extract MAT bundles", processFilesInDir(filesInDir, version, suppressNarrative));
             } else {
                 logger.info(ERROR_DIR_IS_EMPTY);
                 return;
@@ -33,6 +33,9 @@ public class StripGeneratedContentOperation extends Operation {
                 case "cql":
                     params.cqlExportDirectory(value);
                     break;
+                case "parallel":
+                    params.parallel(Boolean.parseBoolean(value));
+                    break;
                 default:
                     throw new IllegalArgumentException("Unknown flag: " + flag);
             }
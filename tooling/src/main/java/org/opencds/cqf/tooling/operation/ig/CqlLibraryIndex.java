@@ -0,0 +1,96 @@
+package org.opencds.cqf.tooling.operation.ig;
+
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.opencds.cqf.tooling.processor.CqlProcessor;
+import org.opencds.cqf.tooling.utilities.CanonicalUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Index of the translated CQL libraries and library packages of an IG by library name, used to find the library a
+ * Measure or PlanDefinition refers to by canonical url.
+ *
+ * A canonical matches a library with the same name; when several do, the version (if the canonical has one) and then
+ * the canonical base (the namespace of the library) decide. A canonical whose version no library has still matches by
+ * name, with a warning.
+ */
+public class CqlLibraryIndex {
+   private static final Logger logger = LoggerFactory.getLogger(CqlLibraryIndex.class);
+
+   private final Map<String, List<CqlProcessor.CqlSourceFileInformation>> fileInformationByName = new HashMap<>();
+   private final Map<String, List<LibraryPackage>> libraryPackagesByName = new HashMap<>();
+
+   public CqlLibraryIndex(Collection<CqlProcessor.CqlSourceFileInformation> fileInformation,
+                          Collection<LibraryPackage> libraryPackages) {
+      for (var info : fileInformation) {
+         if (info.getIdentifier() != null) {
+            fileInformationByName.computeIfAbsent(info.getIdentifier().getId(), name -> new ArrayList<>()).add(info);
+         }
+      }
+      for (var libraryPackage : libraryPackages) {
+         if (libraryPackage.getCqlFileInfo() != null && libraryPackage.getCqlFileInfo().getIdentifier() != null) {
+            libraryPackagesByName.computeIfAbsent(libraryPackage.getCqlFileInfo().getIdentifier().getId(),
+                    name -> new ArrayList<>()).add(libraryPackage);
+         }
+      }
+   }
+
+   public CqlProcessor.CqlSourceFileInformation getFileInformation(String libraryUrl) {
+      return find(fileInformationByName, CqlProcessor.CqlSourceFileInformation::getIdentifier, libraryUrl);
+   }
+
+   public LibraryPackage getLibraryPackage(String libraryUrl) {
+      return find(libraryPackagesByName, pkg -> pkg.getCqlFileInfo().getIdentifier(), libraryUrl);
+   }
+
+   private static <T> T find(Map<String, List<T>> index, Function<T, VersionedIdentifier> identifiers, String libraryUrl) {
+      if (libraryUrl == null) {
+         return null;
+      }
+      List<T> candidates = index.get(CanonicalUtils.getId(libraryUrl));
+      if (candidates == null) {
+         return null;
+      }
+
+      String version = CanonicalUtils.getVersion(libraryUrl);
+      if (candidates.size() == 1) {
+         return checkVersion(candidates.get(0), identifiers, libraryUrl, version);
+      }
+
+      String base = CanonicalUtils.toVersionedIdentifierAnyResource(libraryUrl).getSystem();
+      T best = null;
+      int bestScore = -1;
+      for (T candidate : candidates) {
+         VersionedIdentifier identifier = identifiers.apply(candidate);
+         int score = 0;
+         if (version != null && version.equals(identifier.getVersion())) {
+            score += 2;
+         }
+         if (base != null && Objects.equals(base, identifier.getSystem())) {
+            score += 1;
+         }
+         if (score > bestScore) {
+            best = candidate;
+            bestScore = score;
+         }
+      }
+      return checkVersion(best, identifiers, libraryUrl, version);
+   }
+
+   private static <T> T checkVersion(T candidate, Function<T, VersionedIdentifier> identifiers, String libraryUrl,
+                                     String version) {
+      String found = identifiers.apply(candidate).getVersion();
+      if (version != null && !version.equals(found)) {
+         logger.warn("No library with version {} found for {}, using version {}", version, libraryUrl, found);
+      }
+      return candidate;
+   }
+}
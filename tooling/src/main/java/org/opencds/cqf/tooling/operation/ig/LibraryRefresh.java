@@ -15,6 +15,7 @@ import org.hl7.fhir.r5.model.Attachment;
 import org.hl7.fhir.utilities.npm.NpmPackage;
 import org.opencds.cqf.tooling.parameter.RefreshIGParameters;
 import org.opencds.cqf.tooling.processor.CqlProcessor;
+import org.opencds.cqf.tooling.processor.ElmCache;
 import org.opencds.cqf.tooling.utilities.CanonicalUtils;
 import org.opencds.cqf.tooling.utilities.IOUtils;
 import org.opencds.cqf.tooling.utilities.ResourceUtils;
@@ -55,6 +56,7 @@ public class LibraryRefresh extends Refresh {
 
    public List<IBaseResource> refresh(RefreshIGParameters params) {
       List<IBaseResource> refreshedLibraries = new ArrayList<>();
+      this.cqlProcessor.setElmCache(ElmCache.getDefault(params != null && Boolean.TRUE.equals(params.incremental)));
       this.cqlProcessor.execute();
       if (getIgInfo().isRefreshLibraries()) {
          logger.info("Refreshing Libraries...");
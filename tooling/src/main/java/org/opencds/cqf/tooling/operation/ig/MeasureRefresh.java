@@ -1,6 +1,7 @@
 package org.opencds.cqf.tooling.operation.ig;
 
 import ca.uhn.fhir.util.BundleUtil;
+import org.cqframework.cql.cql2elm.LibraryManager;
 import org.cqframework.cql.elm.requirements.fhir.DataRequirementsProcessor;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -14,12 +15,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 public class MeasureRefresh extends Refresh {
    private static final Logger logger = LoggerFactory.getLogger(MeasureRefresh.class);
    private final CqlProcessor cqlProcessor;
    private final List<LibraryPackage> libraryPackages;
    private final List<MeasurePackage> measurePackages;
+   private Consumer<MeasurePackage> packageListener;
 
    public MeasureRefresh(IGInfo igInfo, CqlProcessor cqlProcessor, List<LibraryPackage> libraryPackages) {
       super(igInfo);
@@ -28,6 +31,13 @@ public class MeasureRefresh extends Refresh {
       this.measurePackages = new ArrayList<>();
    }
 
+   /**
+    * Sets a listener that receives every measure package as soon as it is refreshed, from the refreshing thread.
+    */
+   public void setPackageListener(Consumer<MeasurePackage> packageListener) {
+      this.packageListener = packageListener;
+   }
+
    @Override
    public List<IBaseResource> refresh() {
       List<IBaseResource> refreshedMeasures = new ArrayList<>();
@@ -39,53 +49,69 @@ public class MeasureRefresh extends Refresh {
             cqlProcessor.execute();
          }
 
-         DataRequirementsProcessor dataRecProc = new DataRequirementsProcessor();
          Class<? extends IBaseResource> clazz = getFhirContext().getResourceDefinition(
                  "Measure").newInstance().getClass();
          IBaseBundle bundle = BundleUtils.getBundleOfResourceTypeFromDirectory(
                  getIgInfo().getMeasureResourcePath(), getFhirContext(), clazz);
 
+         List<Measure> measures = new ArrayList<>();
          for (var resource : BundleUtil.toListOfResources(getFhirContext(), bundle)) {
             Measure measure = (Measure) ResourceAndTypeConverter.convertToR5Resource(getFhirContext(), resource);
+            validatePrimaryLibraryReference(measure);
+            measures.add(measure);
+         }
 
-            logger.info("Refreshing {}", measure.getId());
+         // Measures are refreshed concurrently; library managers are not thread-safe, so every worker gets its own,
+         // sharing the libraries compiled by the CqlProcessor
+         CqlLibraryIndex libraryIndex = new CqlLibraryIndex(cqlProcessor.getAllFileInformation(), libraryPackages);
+         ThreadLocal<LibraryManager> libraryManagers = ThreadLocal.withInitial(cqlProcessor::newLibraryManager);
+         List<MeasurePackage> refreshed = refreshConcurrently("refresh measures", measures,
+                 measure -> refreshMeasure(measure, libraryIndex, libraryManagers.get()));
 
-            validatePrimaryLibraryReference(measure);
-            String libraryUrl = measure.getLibrary().get(0).getValueAsString();
-            LibraryPackage libraryPackage = libraryPackages.stream().filter(
-                            pkg -> libraryUrl.endsWith(pkg.getCqlFileInfo().getIdentifier().getId()))
-                    .findFirst().orElse(null);
-            for (CqlProcessor.CqlSourceFileInformation info : cqlProcessor.getAllFileInformation()) {
-               if (libraryUrl.endsWith(info.getIdentifier().getId())) {
-                  // TODO: should likely verify or resolve/refresh the following elements:
-                  //  cqfm-artifactComment, cqfm-allocation, cqfm-softwaresystem, url, identifier, version,
-                  //  name, title, status, experimental, type, publisher, contact, description, useContext,
-                  //  jurisdiction, and profile(s) (http://hl7.org/fhir/us/cqfmeasures/StructureDefinition/measure-cqfm)
-                  measure.setDate(new Date());
-                  addProfiles(measure, CqfmConstants.COMPUTABLE_MEASURE_PROFILE_URL);
-                  Library moduleDefinitionLibrary = getModuleDefinitionLibrary(
-                          measure, dataRecProc, info);
-                  refreshCqfmExtensions(measure, moduleDefinitionLibrary);
-                  attachModuleDefinitionLibrary(measure, moduleDefinitionLibrary);
-                  IBaseResource refreshedMeasure = ResourceAndTypeConverter.convertFromR5Resource(getFhirContext(), measure);
-                  refreshedMeasures.add(refreshedMeasure);
-                  measurePackages.add(new MeasurePackage(measure, refreshedMeasure, getFhirContext(), libraryPackage));
-               }
+         for (MeasurePackage measurePackage : refreshed) {
+            if (measurePackage != null) {
+               refreshedMeasures.add(measurePackage.getMeasure());
+               measurePackages.add(measurePackage);
             }
-
-            logger.info("Success!");
          }
       }
       return refreshedMeasures;
    }
 
-   private Library getModuleDefinitionLibrary(Measure measure, DataRequirementsProcessor dataRecProc,
+   private MeasurePackage refreshMeasure(Measure measure, CqlLibraryIndex libraryIndex, LibraryManager libraryManager) {
+      logger.info("Refreshing {}", measure.getId());
+
+      String libraryUrl = measure.getLibrary().get(0).getValueAsString();
+      CqlProcessor.CqlSourceFileInformation info = libraryIndex.getFileInformation(libraryUrl);
+      MeasurePackage measurePackage = null;
+      if (info != null) {
+         // TODO: should likely verify or resolve/refresh the following elements:
+         //  cqfm-artifactComment, cqfm-allocation, cqfm-softwaresystem, url, identifier, version,
+         //  name, title, status, experimental, type, publisher, contact, description, useContext,
+         //  jurisdiction, and profile(s) (http://hl7.org/fhir/us/cqfmeasures/StructureDefinition/measure-cqfm)
+         measure.setDate(new Date());
+         addProfiles(measure, CqfmConstants.COMPUTABLE_MEASURE_PROFILE_URL);
+         Library moduleDefinitionLibrary = getModuleDefinitionLibrary(measure, libraryManager, info);
+         refreshCqfmExtensions(measure, moduleDefinitionLibrary);
+         attachModuleDefinitionLibrary(measure, moduleDefinitionLibrary);
+         IBaseResource refreshedMeasure = ResourceAndTypeConverter.convertFromR5Resource(getFhirContext(), measure);
+         measurePackage = new MeasurePackage(measure, refreshedMeasure, getFhirContext(),
+                 libraryIndex.getLibraryPackage(libraryUrl));
+         if (packageListener != null) {
+            packageListener.accept(measurePackage);
+         }
+      }
+
+      logger.info("Success!");
+      return measurePackage;
+   }
+
+   private Library getModuleDefinitionLibrary(Measure measure, LibraryManager libraryManager,
                                               CqlProcessor.CqlSourceFileInformation info) {
       Set<String> expressions = getExpressions(measure);
-      return dataRecProc.gatherDataRequirements(
-              cqlProcessor.getLibraryManager(),
-              cqlProcessor.getLibraryManager().resolveLibrary(
-                      info.getIdentifier(), new ArrayList<>()),
+      return new DataRequirementsProcessor().gatherDataRequirements(
+              libraryManager,
+              libraryManager.resolveLibrary(info.getIdentifier(), new ArrayList<>()),
               info.getOptions().getCqlCompilerOptions(), expressions, true);
    }
 
@@ -3,8 +3,10 @@ package org.opencds.cqf.tooling.operation.ig;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.util.BundleBuilder;
 import org.apache.commons.io.FilenameUtils;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.opencds.cqf.tooling.Operation;
+import org.opencds.cqf.tooling.common.ThreadUtils;
 import org.opencds.cqf.tooling.common.r4.SoftwareSystemHelper;
 import org.opencds.cqf.tooling.parameter.RefreshIGParameters;
 import org.opencds.cqf.tooling.processor.argument.RefreshIGArgumentProcessor;
@@ -12,31 +14,44 @@ import org.opencds.cqf.tooling.utilities.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 public class NewRefreshIGOperation extends Operation {
    private static final Logger logger = LoggerFactory.getLogger(NewRefreshIGOperation.class);
    private RefreshIGParameters params;
 
+   public NewRefreshIGOperation() { }
+
+   NewRefreshIGOperation(RefreshIGParameters params) {
+      this.params = params;
+   }
+
    @Override
    public void execute(String[] args) {
+      RefreshPipeline pipeline = new RefreshPipeline(ThreadUtils.getQueueCapacity(), ThreadUtils.getParallelism());
       try {
          this.params = new RefreshIGArgumentProcessor().parseAndConvert(args);
          IGInfo info = new IGInfo(null, params);
          CqlRefresh cqlRefresh = new CqlRefresh(info);
-         cqlRefresh.refreshCql(info, params);
+         pipeline.stage("refresh CQL", () -> {
+            cqlRefresh.refreshCql(info, params);
+            return null;
+         });
          LibraryRefresh libraryRefresh = new LibraryRefresh(info);
-         publishLibraries(info, libraryRefresh.refresh(this.params));
+         // Libraries are shared by the PlanDefinition and Measure packages, which are bundled concurrently, so they
+         // are stamped and written before any package is published
+         pipeline.stage("refresh libraries", () -> {
+            publishLibraries(info, libraryRefresh.refresh(this.params));
+            return null;
+         });
+
          PlanDefinitionRefresh planDefinitionRefresh = new PlanDefinitionRefresh(info, libraryRefresh.getCqlProcessor(), libraryRefresh.getLibraryPackages());
-         publishPlanDefinitions(info, planDefinitionRefresh.refresh());
-         if (!planDefinitionRefresh.getPlanDefinitionPackages().isEmpty()) {
-             publishPlanDefinitionBundles(planDefinitionRefresh);
-         }
          MeasureRefresh measureRefresh = new MeasureRefresh(info, libraryRefresh.getCqlProcessor(), libraryRefresh.getLibraryPackages());
-         publishMeasures(info, measureRefresh.refresh());
-         if (!measureRefresh.getMeasurePackages().isEmpty()) {
-             publishMeasureBundles(measureRefresh);
-         }
+         refreshAndPublish(info, pipeline, planDefinitionRefresh, measureRefresh);
+         logger.info(pipeline.getSummary());
          // TODO: bundle IG/testcases
       } catch (Exception e) {
          logger.error(e.getMessage());
@@ -44,109 +59,108 @@ public class NewRefreshIGOperation extends Operation {
       }
    }
 
-   private void publishPlanDefinitionBundles(PlanDefinitionRefresh planDefinitionRefresh) {
-      String pathToBundles = FilenameUtils.concat(params.rootDir, "bundles");
-      String pathToPlanDefinitionBundles = FilenameUtils.concat(pathToBundles, "plandefinition");
+   /**
+    * Refreshes PlanDefinitions and Measures concurrently (both only depend on the libraries) and publishes every
+    * package as soon as it is refreshed. Fails if a package could not be refreshed or published.
+    */
+   void refreshAndPublish(IGInfo info, RefreshPipeline pipeline, PlanDefinitionRefresh planDefinitionRefresh,
+                          MeasureRefresh measureRefresh) throws Exception {
+      pipeline.startPublishing("publish refreshed artifacts");
       try {
-         IOUtils.ensurePath(pathToBundles);
-         IOUtils.ensurePath(pathToPlanDefinitionBundles);
-         planDefinitionRefresh.getPlanDefinitionPackages().forEach(
-                 pkg -> {
-                    String id = pkg.getPlanDefinition().getIdElement().getIdPart();
-                    String pathToPackage = FilenameUtils.concat(pathToPlanDefinitionBundles, id);
-                    IOUtils.writeResource(pkg.bundleResources(), pathToPackage, IOUtils.Encoding.JSON,
-                            pkg.getFhirContext(), params.versioned, id + "-bundle");
-                    String pathToFiles = FilenameUtils.concat(pathToPackage, "files");
-                    IOUtils.writeResource(pkg.getPlanDefinition(), pathToFiles, IOUtils.Encoding.JSON,
-                            pkg.getFhirContext());
-                    id = pkg.getLibraryPackage().getLibrary().getIdElement().getIdPart();
-                    IOUtils.writeResource(pkg.getLibraryPackage().getLibrary(), pathToFiles, IOUtils.Encoding.JSON,
-                            pkg.getFhirContext());
-                    BundleBuilder builder = new BundleBuilder(pkg.getFhirContext());
-                    pkg.getLibraryPackage().getDependsOnLibraries().forEach(builder::addTransactionUpdateEntry);
-                    IOUtils.writeResource(builder.getBundle(), pathToFiles, IOUtils.Encoding.JSON, pkg.getFhirContext(),
-                            params.versioned, "library-deps-" + id + "-bundle");
-                    builder = new BundleBuilder(pkg.getFhirContext());
-                    pkg.getLibraryPackage().getDependsOnValueSets().forEach(builder::addTransactionUpdateEntry);
-                    pkg.getLibraryPackage().getDependsOnCodeSystems().forEach(builder::addTransactionUpdateEntry);
-                    IOUtils.writeResource(builder.getBundle(), pathToFiles, IOUtils.Encoding.JSON, pkg.getFhirContext(),
-                            params.versioned, "terminology-" + id + "-bundle");
-                    // TODO: output CQL and ELM - also maybe XML files?
-                 }
-         );
-      } catch (Exception e) {
-         logger.warn(e.getMessage());
+         planDefinitionRefresh.setPackageListener(pkg -> pipeline.publish(() -> {
+            publishPlanDefinition(info, pkg);
+            return null;
+         }));
+         measureRefresh.setPackageListener(pkg -> pipeline.publish(() -> {
+            publishMeasure(info, pkg);
+            return null;
+         }));
+
+         Map<String, Callable<Void>> stages = new LinkedHashMap<>();
+         stages.put("refresh plan definitions", () -> {
+            planDefinitionRefresh.refresh();
+            return null;
+         });
+         stages.put("refresh measures", () -> {
+            measureRefresh.refresh();
+            return null;
+         });
+         pipeline.concurrently(stages);
+      } catch (Exception | Error e) {
+         // The refresh failure is the one reported, a publish failure is only attached to it
+         try {
+            pipeline.finishPublishing();
+         } catch (RuntimeException | Error publishFailure) {
+            e.addSuppressed(publishFailure);
+         }
+         throw e;
       }
+      pipeline.finishPublishing();
+   }
+
+   private String getPathToBundles(String type) {
+      return FilenameUtils.concat(FilenameUtils.concat(params.rootDir, "bundles"), type);
+   }
+
+   private void publishPlanDefinition(IGInfo igInfo, PlanDefinitionPackage pkg) {
+      // TODO: enable user to set output path
+      applySoftwareSystemStamp(igInfo.getFhirContext(), pkg.getPlanDefinition());
+      IOUtils.writeResource(pkg.getPlanDefinition(), igInfo.getPlanDefinitionResourcePath(), this.params.outputEncoding,
+              igInfo.getFhirContext(), this.params.versioned, true);
+      publishPackage(pkg.getPlanDefinition(), pkg.bundleResources(), pkg.getLibraryPackage(), pkg.getFhirContext(),
+              getPathToBundles("plandefinition"));
    }
 
-   private void publishMeasureBundles(MeasureRefresh measureRefresh) {
-      String pathToBundles = FilenameUtils.concat(params.rootDir, "bundles");
-      String pathToMeasureBundles = FilenameUtils.concat(pathToBundles, "measure");
+   private void publishMeasure(IGInfo igInfo, MeasurePackage pkg) {
+      String outputPath = this.params.measureOutputPath != null && !this.params.measureOutputPath.isEmpty()
+              ? this.params.measureOutputPath : igInfo.getMeasureResourcePath();
+      applySoftwareSystemStamp(igInfo.getFhirContext(), pkg.getMeasure());
+      IOUtils.writeResource(pkg.getMeasure(), outputPath, this.params.outputEncoding,
+              igInfo.getFhirContext(), this.params.versioned, true);
+      publishPackage(pkg.getMeasure(), pkg.bundleResources(), pkg.getLibraryPackage(), pkg.getFhirContext(),
+              getPathToBundles("measure"));
+   }
+
+   private void publishPackage(IBaseResource artifact, IBaseBundle bundle, LibraryPackage libraryPackage,
+                               FhirContext fhirContext, String pathToBundles) {
       try {
          IOUtils.ensurePath(pathToBundles);
-         IOUtils.ensurePath(pathToMeasureBundles);
-         measureRefresh.getMeasurePackages().forEach(
-                 pkg -> {
-                    String id = pkg.getMeasure().getIdElement().getIdPart();
-                    String pathToPackage = FilenameUtils.concat(pathToMeasureBundles, id);
-                    IOUtils.writeResource(pkg.bundleResources(), pathToPackage, IOUtils.Encoding.JSON,
-                            pkg.getFhirContext(), params.versioned, id + "-bundle");
-                    String pathToFiles = FilenameUtils.concat(pathToPackage, "files");
-                    IOUtils.writeResource(pkg.getMeasure(), pathToFiles, IOUtils.Encoding.JSON,
-                            pkg.getFhirContext());
-                    id = pkg.getLibraryPackage().getLibrary().getIdElement().getIdPart();
-                    IOUtils.writeResource(pkg.getLibraryPackage().getLibrary(), pathToFiles, IOUtils.Encoding.JSON,
-                            pkg.getFhirContext());
-                    BundleBuilder builder = new BundleBuilder(pkg.getFhirContext());
-                    pkg.getLibraryPackage().getDependsOnLibraries().forEach(builder::addTransactionUpdateEntry);
-                    IOUtils.writeResource(builder.getBundle(), pathToFiles, IOUtils.Encoding.JSON, pkg.getFhirContext(),
-                            params.versioned, "library-deps-" + id + "-bundle");
-                    builder = new BundleBuilder(pkg.getFhirContext());
-                    pkg.getLibraryPackage().getDependsOnValueSets().forEach(builder::addTransactionUpdateEntry);
-                    pkg.getLibraryPackage().getDependsOnCodeSystems().forEach(builder::addTransactionUpdateEntry);
-                    IOUtils.writeResource(builder.getBundle(), pathToFiles, IOUtils.Encoding.JSON, pkg.getFhirContext(),
-                            params.versioned, "terminology-" + id + "-bundle");
-                    // TODO: output CQL and ELM - also maybe XML files?
-                 }
-         );
+         String id = artifact.getIdElement().getIdPart();
+         String pathToPackage = FilenameUtils.concat(pathToBundles, id);
+         IOUtils.writeResource(bundle, pathToPackage, IOUtils.Encoding.JSON, fhirContext, params.versioned, id + "-bundle");
+         String pathToFiles = FilenameUtils.concat(pathToPackage, "files");
+         IOUtils.writeResource(artifact, pathToFiles, IOUtils.Encoding.JSON, fhirContext);
+         id = libraryPackage.getLibrary().getIdElement().getIdPart();
+         IOUtils.writeResource(libraryPackage.getLibrary(), pathToFiles, IOUtils.Encoding.JSON, fhirContext);
+         BundleBuilder builder = new BundleBuilder(fhirContext);
+         libraryPackage.getDependsOnLibraries().forEach(builder::addTransactionUpdateEntry);
+         IOUtils.writeResource(builder.getBundle(), pathToFiles, IOUtils.Encoding.JSON, fhirContext,
+                 params.versioned, "library-deps-" + id + "-bundle");
+         builder = new BundleBuilder(fhirContext);
+         libraryPackage.getDependsOnValueSets().forEach(builder::addTransactionUpdateEntry);
+         libraryPackage.getDependsOnCodeSystems().forEach(builder::addTransactionUpdateEntry);
+         IOUtils.writeResource(builder.getBundle(), pathToFiles, IOUtils.Encoding.JSON, fhirContext,
+                 params.versioned, "terminology-" + id + "-bundle");
+         // TODO: output CQL and ELM - also maybe XML files?
       } catch (Exception e) {
          logger.warn(e.getMessage());
       }
    }
 
-   private void publishLibraries (IGInfo igInfo, List<IBaseResource> libraries) {
+   void publishLibraries(IGInfo igInfo, List<IBaseResource> libraries) {
       String outputPath = this.params.libraryOutputPath != null && !this.params.libraryOutputPath.isEmpty()
               ? this.params.libraryOutputPath : igInfo.getLibraryResourcePath();
-      for (var library : libraries) {
+      for (IBaseResource library : libraries) {
          applySoftwareSystemStamp(igInfo.getFhirContext(), library);
          IOUtils.writeResource(library, outputPath, this.params.outputEncoding,
                  igInfo.getFhirContext(), this.params.versioned, true);
       }
    }
 
-   private void publishPlanDefinitions (IGInfo igInfo, List<IBaseResource> planDefinitions) {
-      // TODO: enable user to set output path
-      String outputPath = igInfo.getPlanDefinitionResourcePath();
-      for (var planDefinition : planDefinitions) {
-         applySoftwareSystemStamp(igInfo.getFhirContext(), planDefinition);
-         IOUtils.writeResource(planDefinition, outputPath, this.params.outputEncoding,
-                 igInfo.getFhirContext(), this.params.versioned, true);
-      }
-   }
-
-   private void publishMeasures (IGInfo igInfo, List<IBaseResource> measures) {
-      String outputPath = this.params.measureOutputPath != null && !this.params.measureOutputPath.isEmpty()
-              ? this.params.measureOutputPath : igInfo.getMeasureResourcePath();
-      for (var measure : measures) {
-         applySoftwareSystemStamp(igInfo.getFhirContext(), measure);
-         IOUtils.writeResource(measure, outputPath, this.params.outputEncoding,
-                 igInfo.getFhirContext(), this.params.versioned, true);
-      }
-   }
-
    private SoftwareSystemHelper r4CqfmSoftwareSystemHelper;
    private org.opencds.cqf.tooling.common.stu3.SoftwareSystemHelper dstu3SoftwareSystemHelper;
-   private void applySoftwareSystemStamp (FhirContext fhirContext, IBaseResource resource) {
+   // Synchronized: stamping writes the shared software system Device
+   synchronized void applySoftwareSystemStamp (FhirContext fhirContext, IBaseResource resource) {
       if (Boolean.TRUE.equals(this.params.shouldApplySoftwareSystemStamp)) {
          if (resource instanceof org.hl7.fhir.r4.model.DomainResource) {
             if (r4CqfmSoftwareSystemHelper == null) {
@@ -2,6 +2,7 @@ package org.opencds.cqf.tooling.operation.ig;
 
 import ca.uhn.fhir.model.primitive.IdDt;
 import ca.uhn.fhir.util.BundleUtil;
+import org.cqframework.cql.cql2elm.LibraryManager;
 import org.cqframework.cql.elm.requirements.fhir.DataRequirementsProcessor;
 import org.cqframework.fhir.npm.NpmPackageManager;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
@@ -16,12 +17,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 public class PlanDefinitionRefresh extends Refresh {
    private static final Logger logger = LoggerFactory.getLogger(PlanDefinitionRefresh.class);
    private final CqlProcessor cqlProcessor;
    private final List<LibraryPackage> libraryPackages;
    private final List<PlanDefinitionPackage> planDefinitionPackages;
+   private Consumer<PlanDefinitionPackage> packageListener;
 
    public PlanDefinitionRefresh(IGInfo igInfo, CqlProcessor cqlProcessor, List<LibraryPackage> libraryPackages) {
       super(igInfo);
@@ -30,6 +33,14 @@ public class PlanDefinitionRefresh extends Refresh {
       this.planDefinitionPackages = new ArrayList<>();
    }
 
+   /**
+    * Sets a listener that receives every plan definition package as soon as it is refreshed and its definitions are
+    * resolved, from the refreshing thread.
+    */
+   public void setPackageListener(Consumer<PlanDefinitionPackage> packageListener) {
+      this.packageListener = packageListener;
+   }
+
    @Override
    public List<IBaseResource> refresh() {
       List<IBaseResource> refreshedPlanDefinitions = new ArrayList<>();
@@ -41,51 +52,41 @@ public class PlanDefinitionRefresh extends Refresh {
             cqlProcessor.execute();
          }
 
-         DataRequirementsProcessor dataRecProc = new DataRequirementsProcessor();
          Class<? extends IBaseResource> clazz = getFhirContext().getResourceDefinition(
                  "PlanDefinition").newInstance().getClass();
          IBaseBundle bundle = BundleUtils.getBundleOfResourceTypeFromDirectory(
                  getIgInfo().getPlanDefinitionResourcePath(), getFhirContext(), clazz);
 
+         List<PlanDefinition> planDefinitions = new ArrayList<>();
          for (var resource : BundleUtil.toListOfResources(getFhirContext(), bundle)) {
             PlanDefinition planDefinition = (PlanDefinition) ResourceAndTypeConverter.convertToR5Resource(
                     getFhirContext(), resource);
+            validatePrimaryLibraryReference(planDefinition);
+            planDefinitions.add(planDefinition);
+         }
 
-            logger.info("Refreshing {}", planDefinition.getId());
+         loadDefinitionResources();
 
-            validatePrimaryLibraryReference(planDefinition);
-            String libraryUrl = planDefinition.getLibrary().get(0).getValueAsString();
-            LibraryPackage libraryPackage = libraryPackages.stream().filter(
-                    pkg -> libraryUrl.endsWith(pkg.getCqlFileInfo().getIdentifier().getId()))
-                    .findFirst().orElse(null);
-            for (CqlProcessor.CqlSourceFileInformation info : cqlProcessor.getAllFileInformation()) {
-               if (libraryUrl.endsWith(info.getIdentifier().getId())) {
-                  // TODO: should likely verify or resolve/refresh the following elements:
-                  //  cpg-knowledgeCapability, cpg-knowledgeRepresentationLevel, url, identifier, status,
-                  //  experimental, type, publisher, contact, description, useContext, jurisdiction,
-                  //  and profile(s) (http://hl7.org/fhir/uv/cpg/StructureDefinition/cpg-shareableplandefinition)
-                  planDefinition.setDate(new Date());
-                  Library moduleDefinitionLibrary = getModuleDefinitionLibrary(
-                          planDefinition, dataRecProc, info);
-                  cleanModuleDefinitionLibrary(moduleDefinitionLibrary);
-                  refreshCqfmExtensions(planDefinition, moduleDefinitionLibrary);
-                  attachModuleDefinitionLibrary(planDefinition, moduleDefinitionLibrary);
-                  IBaseResource refreshedPlanDefinition = ResourceAndTypeConverter.convertFromR5Resource(getFhirContext(), planDefinition);
-                  refreshedPlanDefinitions.add(refreshedPlanDefinition);
-                  this.planDefinitionPackages.add(new PlanDefinitionPackage(planDefinition, refreshedPlanDefinition, getFhirContext(), libraryPackage));
-               }
-            }
+         // PlanDefinitions are refreshed concurrently; library managers are not thread-safe, so every worker gets its
+         // own, sharing the libraries compiled by the CqlProcessor
+         CqlLibraryIndex libraryIndex = new CqlLibraryIndex(cqlProcessor.getAllFileInformation(), libraryPackages);
+         ThreadLocal<LibraryManager> libraryManagers = ThreadLocal.withInitial(cqlProcessor::newLibraryManager);
+         List<PlanDefinitionPackage> refreshed = refreshConcurrently("refresh plan definitions", planDefinitions,
+                 planDefinition -> refreshPlanDefinition(planDefinition, libraryIndex, libraryManagers.get()));
 
-            logger.info("Success!");
+         for (PlanDefinitionPackage planDefinitionPackage : refreshed) {
+            if (planDefinitionPackage != null) {
+               refreshedPlanDefinitions.add(planDefinitionPackage.getPlanDefinition());
+               this.planDefinitionPackages.add(planDefinitionPackage);
+            }
          }
-         resolvePlanDefinitionPackages();
       }
       return refreshedPlanDefinitions;
    }
 
    private List<IBaseResource> activityDefinitions;
    private List<IBaseResource> questionnaires;
-   private void resolvePlanDefinitionPackages() {
+   private void loadDefinitionResources() {
       // TODO: only resolving definition resources from source IG - enhance to resolve from NPM package.
       //  Additionally need to resolve nested PlanDefinitions
       activityDefinitions = BundleUtil.toListOfResources(getFhirContext(),
@@ -96,9 +97,6 @@ public class PlanDefinitionRefresh extends Refresh {
               BundleUtils.getBundleOfResourceTypeFromDirectory(getIgInfo().getActivityDefinitionResourcePath(),
                       getFhirContext(), getFhirContext().getResourceDefinition("Questionnaire")
                               .newInstance().getClass()));
-      this.planDefinitionPackages.forEach(
-              pkg -> pkg.getR5PlanDefinition().getAction().forEach(action -> resolveAction(action, pkg))
-      );
    }
 
    private void resolveAction(PlanDefinition.PlanDefinitionActionComponent action, PlanDefinitionPackage pkg) {
@@ -139,17 +137,48 @@ public class PlanDefinitionRefresh extends Refresh {
 
    }
 
-   private Library getModuleDefinitionLibrary(PlanDefinition planDefinition, DataRequirementsProcessor dataRecProc,
+   private PlanDefinitionPackage refreshPlanDefinition(PlanDefinition planDefinition, CqlLibraryIndex libraryIndex,
+                                                       LibraryManager libraryManager) {
+      logger.info("Refreshing {}", planDefinition.getId());
+
+      String libraryUrl = planDefinition.getLibrary().get(0).getValueAsString();
+      CqlProcessor.CqlSourceFileInformation info = libraryIndex.getFileInformation(libraryUrl);
+      PlanDefinitionPackage planDefinitionPackage = null;
+      if (info != null) {
+         // TODO: should likely verify or resolve/refresh the following elements:
+         //  cpg-knowledgeCapability, cpg-knowledgeRepresentationLevel, url, identifier, status,
+         //  experimental, type, publisher, contact, description, useContext, jurisdiction,
+         //  and profile(s) (http://hl7.org/fhir/uv/cpg/StructureDefinition/cpg-shareableplandefinition)
+         planDefinition.setDate(new Date());
+         Library moduleDefinitionLibrary = getModuleDefinitionLibrary(planDefinition, libraryManager, info);
+         cleanModuleDefinitionLibrary(moduleDefinitionLibrary);
+         refreshCqfmExtensions(planDefinition, moduleDefinitionLibrary);
+         attachModuleDefinitionLibrary(planDefinition, moduleDefinitionLibrary);
+         IBaseResource refreshedPlanDefinition = ResourceAndTypeConverter.convertFromR5Resource(getFhirContext(), planDefinition);
+         planDefinitionPackage = new PlanDefinitionPackage(planDefinition, refreshedPlanDefinition, getFhirContext(),
+                 libraryIndex.getLibraryPackage(libraryUrl));
+         for (var action : planDefinition.getAction()) {
+            resolveAction(action, planDefinitionPackage);
+         }
+         if (packageListener != null) {
+            packageListener.accept(planDefinitionPackage);
+         }
+      }
+
+      logger.info("Success!");
+      return planDefinitionPackage;
+   }
+
+   private Library getModuleDefinitionLibrary(PlanDefinition planDefinition, LibraryManager libraryManager,
                                               CqlProcessor.CqlSourceFileInformation info) {
       // TODO: do we still need this?
       Set<String> expressions = new HashSet<>();
       if (planDefinition.hasAction()) {
          getExpressions(planDefinition.getAction(), expressions);
       }
-      return dataRecProc.gatherDataRequirements(
-              cqlProcessor.getLibraryManager(),
-              cqlProcessor.getLibraryManager().resolveLibrary(
-                      info.getIdentifier(), new ArrayList<>()),
+      return new DataRequirementsProcessor().gatherDataRequirements(
+              libraryManager,
+              libraryManager.resolveLibrary(info.getIdentifier(), new ArrayList<>()),
               info.getOptions().getCqlCompilerOptions(), expressions, true);
    }
 
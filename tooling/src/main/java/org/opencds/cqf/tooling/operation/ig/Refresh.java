@@ -7,6 +7,7 @@ import org.hl7.fhir.exceptions.FHIRException;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r5.model.*;
+import org.opencds.cqf.tooling.common.ThreadUtils;
 import org.opencds.cqf.tooling.parameter.RefreshIGParameters;
 import org.opencds.cqf.tooling.utilities.BundleUtils;
 import org.opencds.cqf.tooling.utilities.LogicDefinitionUtils;
@@ -17,6 +18,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public abstract class Refresh {
@@ -31,6 +34,39 @@ public abstract class Refresh {
 
    public abstract List<IBaseResource> refresh();
 
+   /**
+    * Refreshes the artifacts concurrently on the shared pool and returns the results in the order of the artifacts.
+    * Every artifact is attempted; if any of them fails, the first failure is rethrown once all of them have completed,
+    * so a failed artifact is never silently left out of the refresh.
+    */
+   protected <T, R> List<R> refreshConcurrently(String phase, List<T> artifacts, Function<T, R> refresher) {
+      List<R> refreshed = new ArrayList<>(Collections.nCopies(artifacts.size(), null));
+      Throwable[] failures = new Throwable[artifacts.size()];
+      List<Callable<Void>> tasks = new ArrayList<>();
+      for (int i = 0; i < artifacts.size(); i++) {
+         int index = i;
+         tasks.add(() -> {
+            try {
+               refreshed.set(index, refresher.apply(artifacts.get(index)));
+            } catch (RuntimeException | Error e) {
+               failures[index] = e;
+            }
+            return null;
+         });
+      }
+      ThreadUtils.executeTasks(phase, tasks);
+
+      for (Throwable failure : failures) {
+         if (failure instanceof Error) {
+            throw (Error) failure;
+         }
+         if (failure != null) {
+            throw (RuntimeException) failure;
+         }
+      }
+      return refreshed;
+   }
+
    public void refreshDate(IBaseResource resource) {
       TerserUtil.clearField(getIgInfo().getFhirContext(), "date", resource);
       TerserUtil.setField(getIgInfo().getFhirContext(), "date", resource,
@@ -0,0 +1,208 @@
+package org.opencds.cqf.tooling.operation.ig;
+
+import org.opencds.cqf.tooling.common.ThreadUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The stages of a refresh, run as a pipeline.
+ *
+ * Stages that depend on each other run one after another, independent stages run concurrently, each on its own thread
+ * (so the work they hand to {@link ThreadUtils} still runs on the shared pool rather than inline). Output is handed to
+ * the publish stage as soon as it is ready: publish tasks wait in a bounded queue, producers block while it is full,
+ * and dedicated publisher threads run them until {@link #finishPublishing()} is called. The publishers do not use the
+ * shared pool, whose workers may be the very producers waiting for room in the queue.
+ *
+ * The elapsed time of every stage, the number of tasks published and the maximum depth of the publish queue are
+ * reported by {@link #getSummary()}.
+ */
+public class RefreshPipeline {
+   private static final Logger logger = LoggerFactory.getLogger(RefreshPipeline.class);
+
+   // Marks the end of the publish queue
+   private static final Callable<Void> END = () -> null;
+
+   private final BlockingQueue<Callable<Void>> publishQueue;
+   private final Map<String, Long> stageMillis = new LinkedHashMap<>();
+   private final AtomicInteger publishedTasks = new AtomicInteger();
+   private final AtomicInteger maxQueueDepth = new AtomicInteger();
+   private final AtomicReference<Throwable> publishFailure = new AtomicReference<>();
+   private final int publishThreads;
+   private String publishStage;
+   private volatile List<Thread> publishers;
+   private long publishStart;
+
+   public RefreshPipeline(int publishQueueCapacity, int publishThreads) {
+      this.publishQueue = new LinkedBlockingQueue<>(Math.max(1, publishQueueCapacity));
+      this.publishThreads = Math.max(1, publishThreads);
+   }
+
+   /**
+    * Runs a stage on the calling thread.
+    */
+   public <T> T stage(String name, Callable<T> work) throws Exception {
+      long start = System.nanoTime();
+      try {
+         return work.call();
+      } finally {
+         recordStage(name, start);
+      }
+   }
+
+   /**
+    * Runs independent stages concurrently and waits for all of them. If a stage fails, the first failure is rethrown
+    * once every stage has completed.
+    */
+   public void concurrently(Map<String, Callable<Void>> stages) throws Exception {
+      ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, stages.size()), runnable -> {
+         Thread thread = new Thread(runnable, "cqf-tooling-refresh-stage");
+         thread.setDaemon(true);
+         return thread;
+      });
+      try {
+         List<Future<Void>> futures = new ArrayList<>();
+         for (var stage : stages.entrySet()) {
+            futures.add(executor.submit(() -> stage(stage.getKey(), stage.getValue())));
+         }
+         Exception failure = null;
+         for (Future<Void> future : futures) {
+            try {
+               future.get();
+            } catch (ExecutionException e) {
+               if (failure == null) {
+                  failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+               }
+            }
+         }
+         if (failure != null) {
+            throw failure;
+         }
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+   /**
+    * Starts the publish stage; tasks handed to {@link #publish(Callable)} from now on are run as they arrive.
+    */
+   public synchronized void startPublishing(String name) {
+      if (publishers != null) {
+         throw new IllegalStateException("The publish stage has already been started");
+      }
+      publishStage = name;
+      publishStart = System.nanoTime();
+      List<Thread> threads = new ArrayList<>();
+      for (int i = 1; i <= publishThreads; i++) {
+         Thread thread = new Thread(this::runPublishTasks, "cqf-tooling-publisher-" + i);
+         thread.setDaemon(true);
+         thread.start();
+         threads.add(thread);
+      }
+      publishers = threads;
+   }
+
+   /**
+    * Queues a publish task, waiting while the queue is full.
+    */
+   public void publish(Callable<Void> task) {
+      if (publishers == null) {
+         throw new IllegalStateException("The publish stage has not been started");
+      }
+      try {
+         publishQueue.put(task);
+         publishedTasks.incrementAndGet();
+         maxQueueDepth.accumulateAndGet(publishQueue.size(), Math::max);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException("Interrupted while queueing a publish task", e);
+      }
+   }
+
+   /**
+    * Waits for every queued publish task to complete and ends the publish stage. If a publish task failed, the first
+    * failure is rethrown once every task has completed.
+    */
+   public synchronized void finishPublishing() {
+      if (publishers == null) {
+         return;
+      }
+      try {
+         publishQueue.put(END);
+         for (Thread thread : publishers) {
+            thread.join();
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         logger.error("Interrupted while waiting for the publish stage to complete");
+      } finally {
+         recordStage(publishStage, publishStart);
+         publishers = null;
+      }
+
+      Throwable failure = publishFailure.getAndSet(null);
+      if (failure instanceof Error) {
+         throw (Error) failure;
+      }
+      if (failure instanceof RuntimeException) {
+         throw (RuntimeException) failure;
+      }
+      if (failure != null) {
+         throw new IllegalStateException("Unable to publish refreshed artifacts: " + failure.getMessage(), failure);
+      }
+   }
+
+   public String getSummary() {
+      StringBuilder summary = new StringBuilder("Refresh stages:");
+      synchronized (stageMillis) {
+         stageMillis.forEach((name, millis) -> summary.append(String.format("%n  %s: %d ms", name, millis)));
+      }
+      summary.append(String.format("%n  %d task(s) published, max queue depth %d", publishedTasks.get(), maxQueueDepth.get()));
+      return summary.toString();
+   }
+
+   private void recordStage(String name, long start) {
+      synchronized (stageMillis) {
+         stageMillis.merge(name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), Long::sum);
+      }
+   }
+
+   // Runs queued publish tasks until the end of the queue; failures (errors included, so a publisher never dies and
+   // leaves producers blocked on a full queue) are logged and recorded, and do not stop the remaining tasks
+   private void runPublishTasks() {
+      while (true) {
+         Callable<Void> task;
+         try {
+            task = publishQueue.take();
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+         }
+         if (task == END) {
+            // Leave the marker for the other publishers; put cannot block, the queue is no longer being filled
+            publishQueue.offer(END);
+            return;
+         }
+         try {
+            task.call();
+         } catch (Throwable t) {
+            logger.error("RefreshPipeline ({}): ", publishStage, t);
+            publishFailure.compareAndSet(null, t);
+         }
+      }
+   }
+}
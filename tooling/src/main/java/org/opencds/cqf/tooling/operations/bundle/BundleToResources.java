@@ -1,7 +1,10 @@
 package org.opencds.cqf.tooling.operations.bundle;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
+import org.apache.commons.io.FilenameUtils;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.opencds.cqf.tooling.operations.ExecutableOperation;
@@ -9,6 +12,7 @@ import org.opencds.cqf.tooling.operations.Operation;
 import org.opencds.cqf.tooling.operations.OperationParam;
 import org.opencds.cqf.tooling.utilities.FhirContextCache;
 import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.opencds.cqf.tooling.utilities.StreamingBundleReader;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.util.BundleUtil;
@@ -29,10 +33,17 @@ public class BundleToResources implements ExecutableOperation {
             defaultValue = "src/main/resources/org/opencds/cqf/tooling/bundle/output",
             description = "The directory path to which the resource files should be written (default src/main/resources/org/opencds/cqf/tooling/bundle/output)")
     private String outputPath;
+    @OperationParam(alias = { "s", "streaming" }, setter = "setStreaming", defaultValue = "false",
+            description = "Whether to read a JSON bundle one entry at a time and write the resources in parallel, for bundles too large to load into memory (default false)")
+    private Boolean streaming;
 
     @Override
     public void execute() {
         FhirContext context = FhirContextCache.getContext(version);
+        if (Boolean.TRUE.equals(streaming) && IOUtils.Encoding.parse(FilenameUtils.getExtension(pathToBundle)) == IOUtils.Encoding.JSON) {
+            streamBundleToResources(context);
+            return;
+        }
         IBaseResource possibleBundle = IOUtils.readResource(pathToBundle, context, true);
         if (possibleBundle == null) {
             throw new IllegalArgumentException("Could not find Bundle at path: " + pathToBundle);
@@ -47,6 +58,21 @@ public class BundleToResources implements ExecutableOperation {
         }
     }
 
+    private void streamBundleToResources(FhirContext context) {
+        File bundleFile = new File(pathToBundle);
+        if (!bundleFile.isFile()) {
+            throw new IllegalArgumentException("Could not find Bundle at path: " + pathToBundle);
+        }
+        String resourcePath = outputPath == null ? pathToBundle : outputPath;
+        IOUtils.Encoding outputEncoding = IOUtils.Encoding.parse(encoding);
+        try (StreamingBundleReader reader = new StreamingBundleReader(bundleFile, context)) {
+            reader.forEachEntry("write bundle resources",
+                    resource -> IOUtils.writeResource(resource, resourcePath, outputEncoding, context));
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading Bundle at path: " + pathToBundle, e);
+        }
+    }
+
     public static List<IBaseResource> bundleToResources(@Nonnull FhirContext fhirContext, @Nonnull IBaseBundle bundle) {
         return BundleUtil.toListOfResources(fhirContext, bundle);
     }
@@ -82,4 +108,12 @@ public class BundleToResources implements ExecutableOperation {
     public void setOutputPath(String outputDirectory) {
         this.outputPath = outputDirectory;
     }
+
+    public Boolean getStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(Boolean streaming) {
+        this.streaming = streaming;
+    }
 }
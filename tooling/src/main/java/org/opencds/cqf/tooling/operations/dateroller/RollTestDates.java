@@ -2,13 +2,12 @@ package org.opencds.cqf.tooling.operations.dateroller;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.FhirVersionEnum;
-import ca.uhn.fhir.context.RuntimeChildChoiceDefinition;
 import ca.uhn.fhir.context.RuntimeChildPrimitiveDatatypeDefinition;
+import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.util.BundleBuilder;
 import ca.uhn.fhir.util.BundleUtil;
 import ca.uhn.fhir.util.ExtensionUtil;
 import ca.uhn.fhir.util.FhirTerser;
-import ca.uhn.fhir.util.TerserUtil;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
@@ -18,7 +17,9 @@ import org.apache.commons.lang3.time.DateUtils;
 import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseDatatype;
+import org.hl7.fhir.instance.model.api.IBaseExtension;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.common.ThreadUtils;
 import org.opencds.cqf.tooling.exception.InvalidOperationArgs;
 import org.opencds.cqf.tooling.operations.ExecutableOperation;
 import org.opencds.cqf.tooling.operations.Operation;
@@ -31,16 +32,26 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Operation(name = "RollTestDates")
 public class RollTestDates implements ExecutableOperation {
@@ -61,22 +72,30 @@ public class RollTestDates implements ExecutableOperation {
    @OperationParam(alias = { "op", "outputPath" }, setter = "setOutputPath",
            description = "The file system location where the resulting resources/requests are written (default same as -ptreq or -ptres)")
    private String outputPath;
+   @OperationParam(alias = { "s", "streaming" }, setter = "setStreaming", defaultValue = "false",
+           description = "Roll the files in place in parallel, skipping files without resources due to be rolled (default false)")
+   private Boolean streaming;
 
    private FhirContext fhirContext;
+   private List<Class<? extends IBase>> dateClasses;
 
    @Override
    public void execute() {
-      fhirContext = FhirContextCache.getContext(version);
+      setFhirContext(FhirContextCache.getContext(version));
       if (pathToResources == null && pathToRequests == null) {
          throw new InvalidOperationArgs("Either pathtoresources (-ptres) or pathtorequests (-ptreq) parameter must be provided");
       }
-      if (pathToResources != null) {
+      if (Boolean.TRUE.equals(streaming)) {
+         String inputPath = pathToResources != null ? pathToResources : pathToRequests;
+         rollFiles(Paths.get(inputPath), Paths.get(outputPath != null ? outputPath : inputPath), pathToResources == null);
+      }
+      else if (pathToResources != null) {
          if (outputPath == null) {
             outputPath = pathToResources;
          }
          List<IBaseResource> resources = IOUtils.readResources(Collections.singletonList(pathToResources), fhirContext)
                  .stream().filter(resource -> ExtensionUtil.hasExtension(resource, DATEROLLER_EXT_URL))
-                 .filter(resource -> getAllDateElements(fhirContext, resource, getDateClasses(fhirContext)))
+                 .filter(resource -> getAllDateElements(fhirContext, resource, getDateClasses()))
                  .collect(Collectors.toList());
          IOUtils.writeResources(resources, outputPath, IOUtils.Encoding.valueOf(encoding), fhirContext);
       }
@@ -119,11 +138,142 @@ public class RollTestDates implements ExecutableOperation {
       }
    }
 
+   // Library method
+   public RollStatistics rollFiles(Path inputPath, Path outputPath, boolean requests) {
+      Gson gson = new GsonBuilder().serializeNulls().setPrettyPrinting().create();
+      RollStatistics statistics = new RollStatistics();
+      long start = System.nanoTime();
+      try (Stream<Path> files = Files.walk(inputPath)) {
+         Iterator<Callable<Void>> tasks = files.filter(Files::isRegularFile)
+                 .filter(file -> isSupported(file, requests))
+                 .map(file -> (Callable<Void>) () -> {
+                    rollFile(file, getTarget(inputPath, outputPath, file), requests, gson, statistics);
+                    return null;
+                 })
+                 .iterator();
+         ThreadUtils.executeIoTasks("RollTestDates", tasks);
+      } catch (IOException e) {
+         throw new RuntimeException("Error reading " + inputPath, e);
+      }
+      statistics.elapsedNanos = System.nanoTime() - start;
+      logger.info("{}", statistics);
+      return statistics;
+   }
+
+   private boolean isSupported(Path file, boolean requests) {
+      IOUtils.Encoding fileEncoding = IOUtils.getEncoding(file.toString());
+      return fileEncoding == IOUtils.Encoding.JSON || (!requests && fileEncoding == IOUtils.Encoding.XML);
+   }
+
+   private Path getTarget(Path inputPath, Path outputPath, Path file) {
+      if (file.equals(inputPath)) {
+         return Files.isDirectory(outputPath) ? outputPath.resolve(file.getFileName()) : outputPath;
+      }
+      return outputPath.resolve(inputPath.relativize(file));
+   }
+
+   // Each file is read and parsed once, and only rewritten when at least one of its resources was due to be rolled;
+   // files with nothing due are still copied as they are when the target is another location
+   private void rollFile(Path file, Path target, boolean request, Gson gson, RollStatistics statistics) {
+      try {
+         byte[] content = Files.readAllBytes(file);
+         statistics.bytes.addAndGet(content.length);
+         String text = new String(content, StandardCharsets.UTF_8);
+         String rolled = request ? rollRequest(text, gson) : rollResource(text, IOUtils.getEncoding(file.toString()));
+         if (rolled == null) {
+            if (!Files.exists(target) || !Files.isSameFile(file, target)) {
+               IOUtils.writeAtomically(target, out -> out.write(content));
+            }
+            statistics.skipped.incrementAndGet();
+            return;
+         }
+         IOUtils.writeAtomically(target, out -> out.write(rolled.getBytes(StandardCharsets.UTF_8)));
+         statistics.rolled.incrementAndGet();
+      } catch (Exception e) {
+         statistics.failed.incrementAndGet();
+         logger.error("Error rolling dates in {}", file, e);
+      }
+   }
+
+   private String rollRequest(String content, Gson gson) {
+      JsonObject request = gson.fromJson(content, JsonObject.class);
+      if (request == null || !hasDueDateRoller(request)) {
+         return null;
+      }
+      getUpdatedRequest(request, gson);
+      return gson.toJson(request);
+   }
+
+   private String rollResource(String content, IOUtils.Encoding fileEncoding) {
+      IParser parser = fileEncoding == IOUtils.Encoding.XML ? fhirContext.newXmlParser() : fhirContext.newJsonParser();
+      IBaseResource resource = parser.parseResource(content);
+      List<IBaseResource> resources = resource instanceof IBaseBundle
+              ? BundleUtil.toListOfResources(fhirContext, (IBaseBundle) resource)
+              : Collections.singletonList(resource);
+      boolean rolled = false;
+      for (IBaseResource next : resources) {
+         if (isDue(next)) {
+            rolled |= getAllDateElements(fhirContext, next, getDateClasses());
+         }
+      }
+      return rolled ? parser.setPrettyPrint(true).encodeResourceToString(resource) : null;
+   }
+
+   // Looks for a dataDateRoller extension that is due without parsing the request's resources
+   private boolean hasDueDateRoller(JsonElement element) {
+      if (element.isJsonArray()) {
+         for (JsonElement next : element.getAsJsonArray()) {
+            if (hasDueDateRoller(next)) {
+               return true;
+            }
+         }
+      }
+      else if (element.isJsonObject()) {
+         JsonObject object = element.getAsJsonObject();
+         JsonElement url = object.get("url");
+         if (url != null && url.isJsonPrimitive() && DATEROLLER_EXT_URL.equals(url.getAsString())) {
+            return isDue(object);
+         }
+         for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+            if (hasDueDateRoller(entry.getValue())) {
+               return true;
+            }
+         }
+      }
+      return false;
+   }
+
+   private boolean isDue(JsonObject dateRollerExtension) {
+      LocalDate lastUpdated = null;
+      int frequencyInDays = 0;
+      JsonElement extensions = dateRollerExtension.get("extension");
+      if (extensions != null && extensions.isJsonArray()) {
+         for (JsonElement next : extensions.getAsJsonArray()) {
+            JsonObject extension = next.getAsJsonObject();
+            String url = extension.has("url") ? extension.get("url").getAsString() : "";
+            if (url.equals("dateLastUpdated")) {
+               JsonElement value = extension.has("valueDateTime") ? extension.get("valueDateTime") : extension.get("valueDate");
+               if (value != null) {
+                  lastUpdated = LocalDate.parse(value.getAsString().split("T")[0]);
+               }
+            }
+            else if (url.equals("frequency") && extension.has("valueDuration")) {
+               JsonObject duration = extension.getAsJsonObject("valueDuration");
+               frequencyInDays = toDays(duration.get("value").getAsInt(), StringUtils.firstNonEmpty(
+                       duration.has("code") ? duration.get("code").getAsString() : null,
+                       duration.has("unit") ? duration.get("unit").getAsString() : null));
+            }
+         }
+      }
+      // without a dateLastUpdated the request is rolled (and reported) as before
+      return lastUpdated == null || isDue(lastUpdated, frequencyInDays);
+   }
+
    private IBaseBundle updateBundleDates(IBaseBundle bundle) {
       BundleBuilder builder = new BundleBuilder(fhirContext);
       BundleUtil.toListOfResources(fhirContext, bundle).forEach(
               resource -> {
-                 getAllDateElements(fhirContext, resource, getDateClasses(fhirContext));
+                 getAllDateElements(fhirContext, resource, getDateClasses());
                  builder.addCollectionEntry(resource);
               }
       );
@@ -157,7 +307,7 @@ public class RollTestDates implements ExecutableOperation {
                        JsonObject.class));
             }
             else {
-               getAllDateElements(fhirContext, resource, getDateClasses(fhirContext));
+               getAllDateElements(fhirContext, resource, getDateClasses());
                updatedPrefetch.add(prefetchElement.getKey(), gson.fromJson(
                        fhirContext.newJsonParser().encodeResourceToString(resource), JsonObject.class));
             }
@@ -185,12 +335,6 @@ public class RollTestDates implements ExecutableOperation {
                   {
                      continue;
                   }
-                  // Resolve choice type path names by type
-                  if (theChildDefinition instanceof RuntimeChildChoiceDefinition) {
-                     String s = theChildDefinition.getChildNameByDatatype(clazz);
-                     thePathToElement.remove(thePathToElement.size() - 1);
-                     thePathToElement.add(s);
-                  }
                   int daysToAdd = getDaysBetweenDates(getLastUpdatedDate(resource), LocalDate.now());
                   if (theElement instanceof org.hl7.fhir.dstu3.model.BaseDateTimeType) {
                      TimeZone timeZone = ((org.hl7.fhir.dstu3.model.BaseDateTimeType) theElement).getTimeZone();
@@ -239,12 +383,12 @@ public class RollTestDates implements ExecutableOperation {
                              "Expected type: date | datetime | timing | instant | period, found: " +
                                      theElement.fhirType());
                   }
-                  TerserUtil.setFieldByFhirPath(terser, resolveFhirPath(theResource.fhirType(), thePathToElement),
-                          resource, theElement);
-                  updateDateRollerExtension(fhirContext, resource);
+                  // the element is updated in place, so it does not need to be set again by its path
+                  break;
                }
             }
          });
+         updateDateRollerExtension(fhirContext, resource);
          return true;
       }
       return false;
@@ -270,8 +414,12 @@ public class RollTestDates implements ExecutableOperation {
    }
 
    private int getFrequencyInDays(IBaseResource resource) {
-      IBaseDatatype frequency = ExtensionUtil.getExtensionByUrl(
-              ExtensionUtil.getExtensionByUrl(resource, DATEROLLER_EXT_URL), "frequency").getValue();
+      IBaseExtension<?, ?> frequencyExtension = ExtensionUtil.getExtensionByUrl(
+              ExtensionUtil.getExtensionByUrl(resource, DATEROLLER_EXT_URL), "frequency");
+      if (frequencyExtension == null) {
+         return 0;
+      }
+      IBaseDatatype frequency = frequencyExtension.getValue();
       int numDays;
       String precision;
       if (frequency instanceof org.hl7.fhir.dstu3.model.Duration) {
@@ -286,6 +434,10 @@ public class RollTestDates implements ExecutableOperation {
       } else {
          throw new IllegalArgumentException("Unsupported type/version found for frequency duration extension: " + frequency.fhirType());
       }
+      return toDays(numDays, precision);
+   }
+
+   private static int toDays(int numDays, String precision) {
       if (precision == null) {
          throw new IllegalArgumentException("The frequency duration precision not found");
       } else if (precision.toLowerCase().startsWith("d")) {
@@ -305,11 +457,28 @@ public class RollTestDates implements ExecutableOperation {
       return getLastUpdatedDate(resource).isBefore(LocalDate.now());
    }
 
+   // Whether the dates were last rolled longer ago than the frequency (the look-back interval) of the resource
+   private boolean isDue(IBaseResource resource) {
+      return ExtensionUtil.hasExtension(resource, DATEROLLER_EXT_URL)
+              && isDue(getLastUpdatedDate(resource), getFrequencyInDays(resource));
+   }
+
+   private static boolean isDue(LocalDate lastUpdated, int frequencyInDays) {
+      return ChronoUnit.DAYS.between(lastUpdated, LocalDate.now()) > frequencyInDays;
+   }
+
    private void updateDateRollerExtension(FhirContext fhirContext, IBaseResource resource) {
       ExtensionUtil.setExtension(fhirContext, ExtensionUtil.getExtensionByUrl(ExtensionUtil.getExtensionByUrl(
               resource, DATEROLLER_EXT_URL), "dateLastUpdated"), "dateTime", new Date());
    }
 
+   private List<Class<? extends IBase>> getDateClasses() {
+      if (dateClasses == null) {
+         dateClasses = getDateClasses(fhirContext);
+      }
+      return dateClasses;
+   }
+
    public List<Class<? extends IBase>> getDateClasses(FhirContext fhirContext) {
       List<Class<? extends IBase>> classes = new ArrayList<>();
       if (fhirContext.getVersion().getVersion() == FhirVersionEnum.DSTU3) {
@@ -338,14 +507,6 @@ public class RollTestDates implements ExecutableOperation {
       return classes;
    }
 
-   private String resolveFhirPath(String resourceType, List<String> paths) {
-      StringBuilder builder = new StringBuilder();
-      builder.append(resourceType).append(".");
-      paths.forEach(path -> builder.append(path).append("."));
-      builder.deleteCharAt(builder.length() - 1);
-      return builder.toString();
-   }
-
    public String getPathToResources() {
       return pathToResources;
    }
@@ -392,5 +553,52 @@ public class RollTestDates implements ExecutableOperation {
 
    public void setFhirContext(FhirContext fhirContext) {
       this.fhirContext = fhirContext;
+      this.dateClasses = null;
+   }
+
+   public Boolean getStreaming() {
+      return streaming;
+   }
+
+   public void setStreaming(Boolean streaming) {
+      this.streaming = streaming;
+   }
+
+   public static class RollStatistics {
+      private final AtomicInteger rolled = new AtomicInteger();
+      private final AtomicInteger skipped = new AtomicInteger();
+      private final AtomicInteger failed = new AtomicInteger();
+      private final AtomicLong bytes = new AtomicLong();
+      private long elapsedNanos;
+
+      public int getRolled() {
+         return rolled.get();
+      }
+
+      public int getSkipped() {
+         return skipped.get();
+      }
+
+      public int getFailed() {
+         return failed.get();
+      }
+
+      public long getBytes() {
+         return bytes.get();
+      }
+
+      public long getElapsedMillis() {
+         return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+      }
+
+      @Override
+      public String toString() {
+         int files = getRolled() + getSkipped() + getFailed();
+         double seconds = Math.max(elapsedNanos, 1) / 1e9;
+         return String.format(Locale.ROOT,
+                 "Processed %d files (%d rolled, %d skipped, %d failed) in %.1f s: %.1f files/s, %.1f MB/s",
+                 files, getRolled(), getSkipped(), getFailed(), seconds, files / seconds,
+                 getBytes() / 1048576.0 / seconds);
+      }
    }
 }
@@ -9,7 +9,6 @@ import org.cqframework.cql.cql2elm.CqlTranslatorOptions;
 import org.cqframework.cql.cql2elm.DefaultLibrarySourceProvider;
 import org.cqframework.cql.cql2elm.LibraryManager;
 import org.cqframework.cql.cql2elm.LibrarySourceProvider;
-import org.cqframework.cql.cql2elm.ModelManager;
 import org.cqframework.cql.elm.requirements.fhir.DataRequirementsProcessor;
 import org.hl7.elm.r1.IncludeDef;
 import org.hl7.elm.r1.Library;
@@ -19,6 +18,7 @@ import org.hl7.fhir.convertors.conv30_50.VersionConvertor_30_50;
 import org.hl7.fhir.convertors.conv40_50.VersionConvertor_40_50;
 import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.cql.CqlTranslationService;
 import org.opencds.cqf.tooling.operations.ExecutableOperation;
 import org.opencds.cqf.tooling.operations.Operation;
 import org.opencds.cqf.tooling.operations.OperationParam;
@@ -58,12 +58,11 @@ public class LibraryGenerator implements ExecutableOperation {
    public void execute() {
       fhirContext = FhirContextCache.getContext(version);
       translatorOptions = ResourceUtils.getTranslatorOptions(pathToCqlContent);
-      ModelManager modelManager = new ModelManager();
-      LibraryManager libraryManager = new LibraryManager(modelManager, translatorOptions.getCqlCompilerOptions());
       File cqlContent = new File(pathToCqlContent);
       LibrarySourceProvider librarySourceProvider = new DefaultLibrarySourceProvider(cqlContent.isDirectory() ?
               cqlContent.toPath() : cqlContent.getParentFile().toPath());
-      libraryManager.getLibrarySourceLoader().registerProvider(librarySourceProvider);
+      LibraryManager libraryManager = CqlTranslationService.getInstance()
+              .createLibraryManager(translatorOptions.getCqlCompilerOptions(), librarySourceProvider);
 
       if (cqlContent.isDirectory()) {
          File[] cqlFiles = cqlContent.listFiles();
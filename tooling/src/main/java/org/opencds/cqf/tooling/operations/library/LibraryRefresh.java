@@ -11,6 +11,7 @@ import org.cqframework.cql.elm.requirements.fhir.DataRequirementsProcessor;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r5.model.Attachment;
 import org.hl7.fhir.r5.model.Library;
+import org.opencds.cqf.tooling.cql.CqlTranslationService;
 import org.opencds.cqf.tooling.exception.InvalidOperationArgs;
 import org.opencds.cqf.tooling.operations.ExecutableOperation;
 import org.opencds.cqf.tooling.operations.Operation;
@@ -61,11 +62,10 @@ public class LibraryRefresh implements ExecutableOperation {
       }
 
       try {
-         modelManager = new ModelManager();
          translatorOptions = ResourceUtils.getTranslatorOptions(pathToCql);
-         libraryManager = new LibraryManager(modelManager, translatorOptions.getCqlCompilerOptions());
-         libraryManager.getLibrarySourceLoader().registerProvider(new DefaultLibrarySourceProvider(Paths.get(pathToCql)));
-         libraryManager.getLibrarySourceLoader().registerProvider(new FhirLibrarySourceProvider());
+         libraryManager = CqlTranslationService.getInstance().createLibraryManager(translatorOptions.getCqlCompilerOptions(),
+                 new DefaultLibrarySourceProvider(Paths.get(pathToCql)), new FhirLibrarySourceProvider());
+         modelManager = libraryManager.getModelManager();
          refreshLibrary(libraryToRefresh);
 
          if (outputPath == null) {
@@ -2,66 +2,60 @@ package org.opencds.cqf.tooling.operations.stripcontent;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
-
-import static org.opencds.cqf.tooling.utilities.converters.ResourceAndTypeConverter.convertFromR5Resource;
-import static org.opencds.cqf.tooling.utilities.converters.ResourceAndTypeConverter.convertToR5Resource;
+import java.util.function.Predicate;
 
 import org.hl7.fhir.instance.model.api.IAnyResource;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseHasExtensions;
 import org.hl7.fhir.instance.model.api.IBaseResource;
-import org.hl7.fhir.r5.model.Attachment;
-import org.hl7.fhir.r5.model.DomainResource;
-import org.hl7.fhir.r5.model.Extension;
-import org.hl7.fhir.r5.model.Library;
-import org.hl7.fhir.r5.model.Measure;
-import org.hl7.fhir.r5.model.Parameters;
-import org.hl7.fhir.r5.model.PlanDefinition;
-import org.hl7.fhir.r5.model.Questionnaire;
-import org.hl7.fhir.r5.model.RelatedArtifact;
-import org.hl7.fhir.r5.model.Resource;
+import org.hl7.fhir.instance.model.api.IDomainResource;
 
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.DataFormatException;
 import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.util.TerserUtil;
 
 /**
  * This class is used to strip autogenerated content from FHIR resources. This includes narrative,
  * extensions added by the tooling, related artifacts that are auto detected from the CQL,
  * contained resources added by the tooling, and ELM generated from the CQL.
- * 
- * This class converts the resource to its R5 equivalent, strips the content, and then converts
- * back to the original FHIR version.
- * 
- * The T parameter is used to specify the version of the Resource base class to use for the operation
- * and conversions.
+ *
+ * The content is stripped directly on the resource's own FHIR version model through the terser. Every
+ * element that is stripped (text, extension, contained, relatedArtifact, content, parameter and
+ * dataRequirement) has the same name in DSTU3, R4 and R5, so no conversion to R5 and back is needed.
+ *
+ * Instances are safe to use from multiple threads: each thread gets its own parsers.
  */
-abstract class BaseContentStripper<T extends IAnyResource> implements ContentStripper {
+abstract class BaseContentStripper implements ContentStripper {
+    private static final String DEPENDS_ON = "depends-on";
+
+    private final ThreadLocal<IParser> jsonParser =
+            ThreadLocal.withInitial(() -> context().newJsonParser().setPrettyPrint(true));
+    private final ThreadLocal<IParser> xmlParser =
+            ThreadLocal.withInitial(() -> context().newXmlParser().setPrettyPrint(true));
+
     protected abstract FhirContext context();
 
     public void stripFile(File inputFile, File outputFile, ContentStripperOptions options) {
         var resource = parseResource(inputFile);
-
-        var upgraded = convertToR5Resource(context(), resource);
-        stripResource(upgraded, outputFile, options);
-
-        @SuppressWarnings("unchecked")
-        var downgraded = (T) convertFromR5Resource(context(), upgraded);
-        writeResource(outputFile, downgraded);
+        stripResource(resource, outputFile, options);
+        writeResource(outputFile, resource);
     }
 
     protected void writeContent(File f, String content) {
-        if (!f.getParentFile().exists()) {
-            f.getParentFile().mkdirs();
-        }
-
-        try (var writer = new BufferedWriter(new FileWriter(f))) {
-            writer.write(content);
+        try {
+            Files.createDirectories(f.getAbsoluteFile().toPath().getParent());
+            try (var writer = Files.newBufferedWriter(f.toPath(), StandardCharsets.UTF_8)) {
+                writer.write(content);
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -69,9 +63,9 @@ abstract class BaseContentStripper<T extends IAnyResource> implements ContentStr
 
     protected IParser parserForFile(File file) {
         if (file.getName().endsWith(".json")) {
-            return context().newJsonParser();
+            return jsonParser.get();
         } else if (file.getName().endsWith(".xml")) {
-            return context().newXmlParser();
+            return xmlParser.get();
         } else {
             throw new IllegalArgumentException(String.format("unsupported file type: %s", file.getName()));
         }
@@ -79,7 +73,7 @@ abstract class BaseContentStripper<T extends IAnyResource> implements ContentStr
 
     protected IBaseResource parseResource(File file) {
         var parser = parserForFile(file);
-        try (var reader = new FileReader(file)) {
+        try (var reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
             return parser.parseResource(reader);
         }
         catch (IOException | DataFormatException e) {
@@ -88,112 +82,116 @@ abstract class BaseContentStripper<T extends IAnyResource> implements ContentStr
     }
 
     protected void writeResource(File file, IBaseResource resource) {
-        var parser = parserForFile(file).setPrettyPrint(true);
-        var output = parser.encodeResourceToString(resource);
-        writeContent(file, output);
+        var parser = parserForFile(file);
+        try {
+            Files.createDirectories(file.getAbsoluteFile().toPath().getParent());
+            try (var writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                parser.encodeResourceToWriter(resource, writer);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     // Output file is required because the CQL export functionality requires knowledge of the library
     // file location to correctly set the Library.content.url property.
-    private Resource stripResource(IBaseResource resource, File outputFile, ContentStripperOptions options) {
+    private IBaseResource stripResource(IBaseResource resource, File outputFile, ContentStripperOptions options) {
         switch (resource.fhirType()) {
             case "Library":
-                return stripLibrary((Library) resource, outputFile, options);
+                return stripLibrary(resource, outputFile, options);
             case "Measure":
-                return stripMeasure((Measure) resource, options);
             case "PlanDefinition":
-                return stripPlanDefinition((PlanDefinition) resource, options);
             case "Questionnaire":
-                return stripQuestionnaire((Questionnaire) resource, options);
+                return stripKnowledgeArtifact(resource, options);
             default:
-                return stripResource((DomainResource) resource, options);
+                return stripDomainResource(resource, options);
         }
     }
 
-    private boolean isCqlOptionsParameters(Resource resource) {
-        if (!(resource instanceof Parameters)) {
-            return false;
-        }
-
-        var parameters = (Parameters) resource;
-        return "options".equals(parameters.getId());
+    private boolean isCqlOptionsParameters(IAnyResource resource) {
+        return "Parameters".equals(resource.fhirType()) && "options".equals(resource.getId());
     }
 
-    private void filterContained(List<Resource> contained) {
-        contained.removeIf(this::isCqlOptionsParameters);
+    // Removes the values of a (repeating) child element matching the filter, if the resource type has that element
+    private void filterChild(IBaseResource resource, String childName, Predicate<IBase> filter) {
+        BaseRuntimeChildDefinition child = context().getResourceDefinition(resource).getChildByName(childName);
+        if (child == null) {
+            return;
+        }
+        List<IBase> values = new ArrayList<>(child.getAccessor().getValues(resource));
+        if (values.removeIf(filter)) {
+            child.getMutator().setValue(resource, null);
+            values.forEach(value -> child.getMutator().addValue(resource, value));
+        }
     }
 
-    private void filterExtensions(List<Extension> extensions, Set<String> strippedExtensions) {
-        extensions.removeIf(x -> strippedExtensions.contains(x.getUrl()));
+    private void clearChild(IBaseResource resource, String childName) {
+        if (context().getResourceDefinition(resource).getChildByName(childName) != null) {
+            TerserUtil.clearField(context(), resource, childName);
+        }
     }
 
-    private void filterContent(List<Attachment> attachments, Set<String> strippedContentTypes) {
-        attachments.removeIf(x -> strippedContentTypes.contains(x.getContentType()));
+    private String primitiveValue(IBase element, String path) {
+        return context().newTerser().getSinglePrimitiveValueOrNull(element, path);
     }
 
-    private void filterRelatedArtifacts(List<RelatedArtifact> artifacts) {
-        artifacts.removeIf(x -> RelatedArtifact.RelatedArtifactType.DEPENDSON.equals(x.getType()));
+    private void filterRelatedArtifacts(IBaseResource resource) {
+        filterChild(resource, "relatedArtifact", x -> DEPENDS_ON.equals(primitiveValue(x, "type")));
     }
 
     // Strip library includes functionality to export the cql file,
     // so it requires knowledge of the target directory for the Library.
-    private Library stripLibrary(Library library, File libraryFile, ContentStripperOptions options) {
-        stripResource(library, options);
-        library.setParameter(null);
-        library.setDataRequirement(null);
-        filterRelatedArtifacts(library.getRelatedArtifact());
-        filterContent(library.getContent(), options.strippedContentTypes());
-        exportCql(library.getContent(), library.getName(), libraryFile, options.cqlExportDirectory());
+    private IBaseResource stripLibrary(IBaseResource library, File libraryFile, ContentStripperOptions options) {
+        stripKnowledgeArtifact(library, options);
+        clearChild(library, "parameter");
+        clearChild(library, "dataRequirement");
+        Set<String> strippedContentTypes = options.strippedContentTypes();
+        filterChild(library, "content", x -> strippedContentTypes.contains(primitiveValue(x, "contentType")));
+        exportCql(library, libraryFile, options.cqlExportDirectory());
         return library;
     }
 
-    private Measure stripMeasure(Measure measure, ContentStripperOptions options) {
-        stripResource(measure, options);
-        filterRelatedArtifacts(measure.getRelatedArtifact());
-        return measure;
-    }
-
-    private PlanDefinition stripPlanDefinition(PlanDefinition planDefinition, ContentStripperOptions options) {
-        stripResource(planDefinition, options);
-        filterRelatedArtifacts(planDefinition.getRelatedArtifact());
-        return planDefinition;
-    }
-
-    private Questionnaire stripQuestionnaire(Questionnaire questionnaire, ContentStripperOptions options) {
-        stripResource(questionnaire, options);
-        filterRelatedArtifacts(questionnaire.getRelatedArtifact());
-        return questionnaire;
+    private IBaseResource stripKnowledgeArtifact(IBaseResource resource, ContentStripperOptions options) {
+        stripDomainResource(resource, options);
+        filterRelatedArtifacts(resource);
+        return resource;
     }
 
-    private DomainResource stripResource(DomainResource resource, ContentStripperOptions options) {
-        resource.setText(null);
-        filterExtensions(resource.getExtension(), options.strippedExtensionUrls());
-        filterContained(resource.getContained());
+    private IBaseResource stripDomainResource(IBaseResource resource, ContentStripperOptions options) {
+        if (resource instanceof IDomainResource) {
+            clearChild(resource, "text");
+            ((IDomainResource) resource).getContained().removeIf(this::isCqlOptionsParameters);
+        }
+        if (resource instanceof IBaseHasExtensions) {
+            Set<String> strippedExtensionUrls = options.strippedExtensionUrls();
+            ((IBaseHasExtensions) resource).getExtension().removeIf(x -> strippedExtensionUrls.contains(x.getUrl()));
+        }
         return resource;
     }
 
-    private void exportCql(Attachment content, String libraryName, File libraryFile, File cqlExportDirectory) {
+    private void exportCql(IBase content, String libraryName, File libraryFile, File cqlExportDirectory) {
         checkNotNull(libraryName, "libraryName must be provided");
-        if (content.getData() == null || cqlExportDirectory == null) {
+        // CQL content is encoded as base64, so we need to decode it
+        // to get back to the original CQL.
+        var base64 = primitiveValue(content, "data");
+        if (base64 == null || cqlExportDirectory == null) {
             return;
         }
 
-        // CQL content is encoded as base64, so we need to decode it
-        // to get back to the original CQL.
-        var base64 = content.getDataElement().getValueAsString();
-        var cql = new String(java.util.Base64.getDecoder().decode(base64));
+        var cql = new String(java.util.Base64.getDecoder().decode(base64), StandardCharsets.UTF_8);
 
         var cqlFileName = libraryName + ".cql";
         var cqlFile = cqlExportDirectory.toPath().resolve(cqlFileName).toFile();
 
-        content.setUrl(libraryFile.toPath().relativize(cqlFile.toPath()).toString());
-        content.setDataElement(null);
+        context().newTerser().setElement(content, "url", libraryFile.toPath().relativize(cqlFile.toPath()).toString());
+        TerserUtil.clearField(context(), "data", content);
         writeContent(cqlFile, cql);
     }
 
-    private void exportCql(List<Attachment> content, String libraryName, File libraryOutputFile, File cqlExportDirectory) {
-        for (Attachment attachment : content) {
-            if (ContentStripperOptions.CQL_CONTENT_TYPE.equals(attachment.getContentType())) {
+    private void exportCql(IBaseResource library, File libraryOutputFile, File cqlExportDirectory) {
+        var libraryName = primitiveValue(library, "name");
+        for (IBase attachment : context().newTerser().getValues(library, "content")) {
+            if (ContentStripperOptions.CQL_CONTENT_TYPE.equals(primitiveValue(attachment, "contentType"))) {
                exportCql(attachment, libraryName, libraryOutputFile, cqlExportDirectory);
             }
         }
@@ -2,8 +2,12 @@ package org.opencds.cqf.tooling.operations.stripcontent;
 
 import java.io.File;
 import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.commons.io.FileUtils;
+import org.opencds.cqf.tooling.common.ThreadUtils;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkArgument;
@@ -12,7 +16,8 @@ import ca.uhn.fhir.context.FhirVersionEnum;
 /**
  * This class executes the StripContent command line operation. It picks the correct version
  * of a ContentStripper based on the FHIR version specified in the command line arguments. It then
- * iterates over all the files in the input directory and runs the stripFile method on each file.
+ * iterates over all the files in the input directory and runs the stripFile method on each file,
+ * either one at a time or, in parallel mode, concurrently on the shared worker pool.
  */
 public class StripContentExecutor {
 
@@ -20,6 +25,7 @@ public class StripContentExecutor {
     private File inputDirectory;
     private File outputDirectory;
     private String cqlExportDirectory;
+    private boolean parallel;
 
     public StripContentExecutor(StripContentParams params) {
         checkNotNull(params, "params must be provided");
@@ -29,19 +35,45 @@ public class StripContentExecutor {
         this.inputDirectory = validateDirectory(params.inputDirectory());
         this.outputDirectory = new File(params.outputDirectory());
         this.cqlExportDirectory = params.cqlExportDirectory();
+        this.parallel = params.parallel();
     }
 
     public void execute() {
         var files = listResourceFiles(inputDirectory);
         var contentStripper = createContentStripper();
         var options = createContentStripperOptions();
+        if (parallel) {
+            stripFilesInParallel(files, contentStripper, options);
+            return;
+        }
         for (File file : files) {
-            // Keep the same filename, but change the directory to the output directory
-            var outputFile = outputDirectory.toPath().resolve(file.getName()).toFile();
-            contentStripper.stripFile(file, outputFile, options);
+            contentStripper.stripFile(file, outputFileFor(file), options);
+        }
+    }
+
+    private void stripFilesInParallel(Collection<File> files, ContentStripper contentStripper, ContentStripperOptions options) {
+        Queue<RuntimeException> failures = new ConcurrentLinkedQueue<>();
+        ThreadUtils.executeTasks("StripContent", files.stream().map(file -> (Callable<Void>) () -> {
+            try {
+                contentStripper.stripFile(file, outputFileFor(file), options);
+            } catch (RuntimeException e) {
+                failures.add(e);
+            }
+            return null;
+        }).iterator());
+        if (!failures.isEmpty()) {
+            // Report every failure rather than just the first one, as the serial mode would
+            var exception = new RuntimeException(String.format("Unable to strip %d file(s)", failures.size()), failures.poll());
+            failures.forEach(exception::addSuppressed);
+            throw exception;
         }
     }
 
+    // Keep the same filename, but change the directory to the output directory
+    private File outputFileFor(File file) {
+        return outputDirectory.toPath().resolve(file.getName()).toFile();
+    }
+
     private ContentStripperOptions createContentStripperOptions() {
         var cqlExportFile = this.cqlExportDirectory != null ? new File(this.cqlExportDirectory) : null;
         return ContentStripperOptions.defaultOptions().cqlExportDirectory(cqlExportFile);
@@ -6,6 +6,7 @@ public class StripContentParams {
     private String outputDirectory;
     private String fhirVersion;
     private String cqlExportDirectory;
+    private boolean parallel;
 
     public String inputDirectory() {
         return inputDirectory;
@@ -42,4 +43,13 @@ public class StripContentParams {
         this.cqlExportDirectory = cqlExportDirectory;
         return this;
     }
+
+    public boolean parallel() {
+        return parallel;
+    }
+
+    public StripContentParams parallel(boolean parallel) {
+        this.parallel = parallel;
+        return this;
+    }
 }
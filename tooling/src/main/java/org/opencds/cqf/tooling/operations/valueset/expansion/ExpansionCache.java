@@ -0,0 +1,233 @@
+package org.opencds.cqf.tooling.operations.valueset.expansion;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.util.TerserUtil;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.hl7.fhir.instance.model.api.IBase;
+import org.hl7.fhir.instance.model.api.IBaseParameters;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.opencds.cqf.tooling.common.ThreadUtils;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * Persistent cache of ValueSet expansions, so that the same ValueSet is only sent to the terminology server once
+ * across runs.
+ * <p>
+ * Expansions are stored as one resource file per cache key in the cache directory. The key is made of the terminology
+ * server, the canonical url and version of the ValueSet, a hash of its compose (so editing a ValueSet invalidates the
+ * cached expansion, even under the same version) and the expansion parameters. Expansions older than the time to live
+ * are expanded again. In offline mode the terminology server is never contacted and ValueSets that are not in the
+ * cache are not expanded. Without a directory nothing is cached and every ValueSet is expanded.
+ * <p>
+ * Cache misses are expanded concurrently, at most {@value #DEFAULT_MAX_CONCURRENT_EXPANSIONS} at a time by default
+ * (see {@value #MAX_CONCURRENT_EXPANSIONS_PROPERTY}), so a large set of ValueSets does not flood the server.
+ */
+public class ExpansionCache {
+   private static final Logger logger = LoggerFactory.getLogger(ExpansionCache.class);
+
+   public static final String MAX_CONCURRENT_EXPANSIONS_PROPERTY = "cqf-tooling.tx.maxConcurrentExpansions";
+   public static final int DEFAULT_MAX_CONCURRENT_EXPANSIONS = 8;
+   public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofDays(30);
+
+   private static final Semaphore expansionPermits = new Semaphore(
+           Math.max(1, Integer.getInteger(MAX_CONCURRENT_EXPANSIONS_PROPERTY, DEFAULT_MAX_CONCURRENT_EXPANSIONS)));
+
+   private final FhirContext fhirContext;
+   private final Path directory;
+   private final Duration timeToLive;
+   private final boolean offline;
+   // Concurrent requests for the same key wait for a single expansion; a lock is dropped once its key is expanded
+   private final Map<String, Object> keyLocks = new ConcurrentHashMap<>();
+
+   /**
+    * @param directory  The directory the expansions are cached in, or null to not cache them.
+    * @param timeToLive The age after which a cached expansion is expanded again, or null for the default.
+    * @param offline    Only use cached expansions, without calling the expander.
+    */
+   public ExpansionCache(FhirContext fhirContext, Path directory, Duration timeToLive, boolean offline) {
+      this.fhirContext = Objects.requireNonNull(fhirContext, "fhirContext can not be null");
+      if (offline && directory == null) {
+         throw new IllegalArgumentException("A cache directory is required to only use cached expansions");
+      }
+      this.directory = directory;
+      this.timeToLive = timeToLive == null ? DEFAULT_TIME_TO_LIVE : timeToLive;
+      this.offline = offline;
+   }
+
+   public Path getDirectory() {
+      return directory;
+   }
+
+   public boolean isOffline() {
+      return offline;
+   }
+
+   /**
+    * @param server              The terminology server performing the expansion.
+    * @param valueSet            The ValueSet to expand.
+    * @param expansionParameters Additional $expand parameters, or null.
+    * @return the cache key of the expansion
+    */
+   public String getKey(String server, IBaseResource valueSet, IBaseParameters expansionParameters) {
+      String url = getPrimitiveValue(valueSet, "url");
+      String version = getPrimitiveValue(valueSet, "version");
+      StringBuilder key = new StringBuilder();
+      key.append(server).append('\n');
+      key.append(url != null ? url : valueSet.getIdElement().getIdPart()).append('\n');
+      if (version != null) {
+         key.append(version).append('\n');
+      }
+      key.append(DigestUtils.sha256Hex(encodeCompose(valueSet))).append('\n');
+      if (expansionParameters != null) {
+         key.append(fhirContext.newJsonParser().encodeResourceToString(expansionParameters));
+      }
+      return DigestUtils.sha256Hex(key.toString());
+   }
+
+   /**
+    * @return the cached expansion, or null if there is none or it has expired
+    */
+   public IBaseResource get(String key) {
+      if (directory == null) {
+         return null;
+      }
+      Path file = getFile(key);
+      try {
+         if (!Files.isRegularFile(file)) {
+            return null;
+         }
+         if (!offline && Files.getLastModifiedTime(file).toInstant().plus(timeToLive).isBefore(Instant.now())) {
+            logger.debug("Cached expansion {} has expired", key);
+            return null;
+         }
+         return newParser().parseResource(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+      } catch (Exception e) {
+         logger.warn("Unable to read cached expansion {}: {}", file, e.getMessage());
+         return null;
+      }
+   }
+
+   public void put(String key, IBaseResource expansion) {
+      if (directory == null) {
+         return;
+      }
+      Path file = getFile(key);
+      try {
+         // written atomically, so concurrent runs never read a partial expansion
+         byte[] content = newParser().encodeResourceToString(expansion).getBytes(StandardCharsets.UTF_8);
+         IOUtils.writeAtomically(file, out -> out.write(content));
+      } catch (IOException e) {
+         logger.warn("Unable to cache expansion {}: {}", file, e.getMessage());
+      }
+   }
+
+   /**
+    * Returns the cached expansion of the ValueSet, expanding it with the expander on a cache miss.
+    *
+    * @param server              The terminology server performing the expansion.
+    * @param valueSet            The ValueSet to expand.
+    * @param expansionParameters Additional $expand parameters, or null.
+    * @param expander            Performs the expansion; returns null if the ValueSet could not be expanded.
+    * @return the expanded ValueSet, or null if it could not be expanded (or is not cached in offline mode)
+    */
+   public IBaseResource expand(String server, IBaseResource valueSet, IBaseParameters expansionParameters,
+                               Function<IBaseResource, IBaseResource> expander) {
+      String key = getKey(server, valueSet, expansionParameters);
+      Object lock = keyLocks.computeIfAbsent(key, k -> new Object());
+      try {
+         synchronized (lock) {
+            IBaseResource expansion = get(key);
+            if (expansion != null) {
+               logger.debug("Using cached expansion of {}", valueSet.getIdElement().getValue());
+               return expansion;
+            }
+            if (offline) {
+               logger.warn("No cached expansion of {} (offline)", valueSet.getIdElement().getValue());
+               return null;
+            }
+
+            expansionPermits.acquireUninterruptibly();
+            try {
+               expansion = expander.apply(valueSet);
+            } finally {
+               expansionPermits.release();
+            }
+            if (expansion != null) {
+               put(key, expansion);
+            }
+            return expansion;
+         }
+      } finally {
+         // Requests already waiting on the lock find the expansion in the cache
+         keyLocks.remove(key, lock);
+      }
+   }
+
+   /**
+    * Expands the ValueSets concurrently, only contacting the terminology server for those that are not cached.
+    *
+    * @return the expanded ValueSets by ValueSet; ValueSets that could not be expanded are not included
+    */
+   public Map<IBaseResource, IBaseResource> expandAll(String server, List<? extends IBaseResource> valueSets,
+                                                      IBaseParameters expansionParameters,
+                                                      Function<IBaseResource, IBaseResource> expander) {
+      Map<IBaseResource, IBaseResource> expansions = new IdentityHashMap<>();
+      List<Callable<Void>> tasks = new ArrayList<>();
+      for (IBaseResource valueSet : valueSets) {
+         tasks.add(() -> {
+            IBaseResource expansion = expand(server, valueSet, expansionParameters, expander);
+            if (expansion != null) {
+               synchronized (expansions) {
+                  expansions.put(valueSet, expansion);
+               }
+            }
+            return null;
+         });
+      }
+      ThreadUtils.executeIoTasks("expand value sets", tasks);
+      return expansions;
+   }
+
+   private Path getFile(String key) {
+      return directory.resolve(key + ".json");
+   }
+
+   private IParser newParser() {
+      return fhirContext.newJsonParser();
+   }
+
+   // Only the compose of the ValueSet, which determines its expansion
+   private String encodeCompose(IBaseResource valueSet) {
+      IBaseResource compose = fhirContext.getResourceDefinition(valueSet).newInstance();
+      List<IBase> values = TerserUtil.getValues(fhirContext, valueSet, "compose");
+      if (!values.isEmpty()) {
+         TerserUtil.setField(fhirContext, "compose", compose, values.toArray(new IBase[0]));
+      }
+      return fhirContext.newJsonParser().encodeResourceToString(compose);
+   }
+
+   private String getPrimitiveValue(IBaseResource resource, String path) {
+      IPrimitiveType<?> value = fhirContext.newTerser().getSingleValueOrNull(resource, path, IPrimitiveType.class);
+      return value == null ? null : value.getValueAsString();
+   }
+}
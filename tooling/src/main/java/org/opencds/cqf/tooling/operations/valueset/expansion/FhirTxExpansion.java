@@ -15,6 +15,9 @@ import org.slf4j.LoggerFactory;
 
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
 
 @Operation(name = "FhirTxExpansion")
 public class FhirTxExpansion implements ExecutableOperation {
@@ -37,29 +40,44 @@ public class FhirTxExpansion implements ExecutableOperation {
            defaultValue = "src/main/resources/org/opencds/cqf/tooling/terminology/output",
            description = "The directory path to which the generated FHIR ValueSet resource should be written (default src/main/resources/org/opencds/cqf/tooling/terminology/output)")
    private String outputPath;
+   @OperationParam(alias = { "cp", "cachepath" }, setter = "setCachePath",
+           description = "The directory in which expansions are cached across runs (default none, expansions are not cached)")
+   private String cachePath;
+   @OperationParam(alias = { "ttl", "cachettl" }, setter = "setCacheTtl", defaultValue = "720",
+           description = "The number of hours after which a cached expansion is expanded again (default 720)")
+   private Integer cacheTtl;
+   @OperationParam(alias = { "offline" }, setter = "setOffline", defaultValue = "false",
+           description = "Only use cached expansions, without contacting the FHIR server; requires the cache path (default false)")
+   private Boolean offline;
 
    private FhirContext fhirContext;
    private IGenericClient fhirServerClient;
+   private ExpansionCache expansionCache;
 
    @Override
    public void execute() {
       fhirContext = FhirContextCache.getContext(version);
-      fhirServerClient = fhirContext.newRestfulGenericClient(fhirServer);
 
       if (Files.isDirectory(Paths.get(pathToValueSet))) {
-         for (IBaseResource resource : IOUtils.readResources(IOUtils.getFilePaths(pathToValueSet, true), fhirContext)) {
-            expandAndWriteValueSet(resource);
-         }
+         List<IBaseResource> valueSets = IOUtils.readResources(IOUtils.getFilePaths(pathToValueSet, true), fhirContext)
+                 .stream().filter(resource -> resource.fhirType().equalsIgnoreCase("valueset"))
+                 .collect(Collectors.toList());
+         getExpansionCache().expandAll(fhirServer, valueSets, null, this::expandOnServer).values()
+                 .forEach(this::writeValueSet);
       } else {
          expandAndWriteValueSet(IOUtils.readResource(pathToValueSet, fhirContext));
       }
    }
 
    public IBaseResource expandValueSet(IBaseResource valueSet) {
+      return getExpansionCache().expand(fhirServer, valueSet, null, this::expandOnServer);
+   }
+
+   private IBaseResource expandOnServer(IBaseResource valueSet) {
       try {
          IBaseParameters parameters = ParametersUtil.newInstance(fhirContext);
          ParametersUtil.addParameterToParameters(fhirContext, parameters, "valueSet", valueSet);
-         return fhirServerClient.operation().onType("ValueSet")
+         return getFhirServerClient().operation().onType("ValueSet")
                  .named("$expand").withParameters(parameters).execute();
       } catch (Exception e) {
          logger.warn("Unable to expand: {}", valueSet.getIdElement().getValue(), e);
@@ -71,11 +89,32 @@ public class FhirTxExpansion implements ExecutableOperation {
       if (resource.fhirType().equalsIgnoreCase("valueset")) {
          IBaseResource expandedVs = expandValueSet(resource);
          if (expandedVs != null) {
-            IOUtils.writeResource(expandedVs, outputPath, IOUtils.Encoding.valueOf(encoding), fhirContext);
+            writeValueSet(expandedVs);
          }
       }
    }
 
+   private void writeValueSet(IBaseResource expandedVs) {
+      IOUtils.writeResource(expandedVs, outputPath, IOUtils.Encoding.parse(encoding), fhirContext);
+   }
+
+   private synchronized IGenericClient getFhirServerClient() {
+      if (fhirServerClient == null || !fhirServerClient.getServerBase().equals(fhirServer)) {
+         fhirServerClient = fhirContext.newRestfulGenericClient(fhirServer);
+      }
+      return fhirServerClient;
+   }
+
+   private synchronized ExpansionCache getExpansionCache() {
+      if (expansionCache == null) {
+         expansionCache = new ExpansionCache(fhirContext,
+                 cachePath == null || cachePath.isEmpty() ? null : Paths.get(cachePath),
+                 cacheTtl == null ? ExpansionCache.DEFAULT_TIME_TO_LIVE : Duration.ofHours(cacheTtl),
+                 Boolean.TRUE.equals(offline));
+      }
+      return expansionCache;
+   }
+
    public String getPathToValueSet() {
       return pathToValueSet;
    }
@@ -116,7 +155,35 @@ public class FhirTxExpansion implements ExecutableOperation {
       this.outputPath = outputPath;
    }
 
+   public String getCachePath() {
+      return cachePath;
+   }
+
+   public void setCachePath(String cachePath) {
+      this.cachePath = cachePath;
+      this.expansionCache = null;
+   }
+
+   public Integer getCacheTtl() {
+      return cacheTtl;
+   }
+
+   public void setCacheTtl(Integer cacheTtl) {
+      this.cacheTtl = cacheTtl;
+      this.expansionCache = null;
+   }
+
+   public Boolean getOffline() {
+      return offline;
+   }
+
+   public void setOffline(Boolean offline) {
+      this.offline = offline;
+      this.expansionCache = null;
+   }
+
    public void setFhirContext(FhirContext fhirContext) {
       this.fhirContext = fhirContext;
+      this.expansionCache = null;
    }
 }
@@ -4,14 +4,17 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
 import org.apache.commons.io.FilenameUtils;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.processor.IGBuildCache;
 import org.opencds.cqf.tooling.utilities.IOUtils;
 import org.opencds.cqf.tooling.utilities.ResourceUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 public abstract class Package<T extends IBaseResource> {
 
@@ -47,6 +50,7 @@ public abstract class Package<T extends IBaseResource> {
     private String fhirServerUrl;
     private IGenericClient fhirClient;
     private String bundleOutputPath;
+    private IGBuildCache buildCache;
 
     public Package(String igRoot, FhirContext fhirContext, boolean includeDependencies, boolean includeTerminology, boolean includeTests, String fhirServerUrl) {
         this.igRoot = igRoot;
@@ -66,13 +70,54 @@ public abstract class Package<T extends IBaseResource> {
     public abstract TestPackage<?, ?> resolveTests(T mainArtifact);
     public abstract void output();
 
+    /**
+     * @return the directory the package for the resolved main artifact is written to
+     */
+    public abstract String resolveOutputPath();
+
     public void packageArtifact() {
         this.mainArtifact = resolveMainArtifact();
         this.dependencies = resolveDependencies(this.mainArtifact);
         if (includeTests) {
             this.testPackage = resolveTests(this.mainArtifact);
         }
+
+        // Packages that are loaded to a FHIR server are always rebuilt, loading is the point of the run
+        String fingerprint = buildCache != null && fhirClient == null ? getPackageFingerprint() : null;
+        String outputPath = fingerprint != null ? resolveOutputPath() : null;
+        if (fingerprint != null && buildCache.isUpToDate(IGBuildCache.BUNDLE, outputPath, fingerprint)) {
+            logger.info("Package for {} is unchanged since the previous build, skipping",
+                    mainArtifact.getIdElement().getIdPart());
+            return;
+        }
+
         output();
+
+        if (fingerprint != null) {
+            buildCache.recordDirectory(IGBuildCache.BUNDLE, outputPath, fingerprint, outputPath);
+        }
+    }
+
+    /*
+        Fingerprint of the package content: the main artifact, its resolved dependencies and test cases, and the
+        packaging options. Resources are hashed in a stable order so the fingerprint does not depend on resolution order.
+    */
+    private String getPackageFingerprint() {
+        var parser = fhirContext.newJsonParser();
+        var content = new ArrayList<String>();
+        content.add(String.format("dependencies=%s;terminology=%s;tests=%s", includeDependencies, includeTerminology, includeTests));
+        content.add(parser.encodeResourceToString(mainArtifact));
+        var resources = new ArrayList<IBaseResource>(dependencies);
+        if (testPackage != null) {
+            if (testPackage.getGroup() != null) {
+                resources.add(testPackage.getGroup());
+            }
+            if (testPackage.getTests() != null) {
+                resources.addAll(testPackage.getTests());
+            }
+        }
+        content.addAll(resources.stream().map(parser::encodeResourceToString).sorted().collect(Collectors.toList()));
+        return IGBuildCache.hash(content);
     }
 
     public void resolvePrimaryLibraryDependencies(IBaseResource mainArtifact, FhirContext fhirContext, LinkedHashSet<IBaseResource> dependencies) {
@@ -192,6 +237,14 @@ public abstract class Package<T extends IBaseResource> {
         this.fhirClient = fhirClient;
     }
 
+    public IGBuildCache getBuildCache() {
+        return buildCache;
+    }
+
+    public void setBuildCache(IGBuildCache buildCache) {
+        this.buildCache = buildCache;
+    }
+
     public String getBundleOutputPath() {
         return bundleOutputPath;
     }
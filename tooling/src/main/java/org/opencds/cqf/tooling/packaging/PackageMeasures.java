@@ -3,17 +3,25 @@ package org.opencds.cqf.tooling.packaging;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.context.FhirVersionEnum;
 import org.opencds.cqf.tooling.packaging.r4.PackageMeasure;
+import org.opencds.cqf.tooling.processor.IGBuildCache;
 import org.opencds.cqf.tooling.utilities.IOUtils;
 
 public class PackageMeasures {
 
     public PackageMeasures(String igRoot, FhirContext fhirContext, boolean includeDependencies, boolean includeTerminology, boolean includeTests, String fhirServerUrl) {
+        this(igRoot, fhirContext, includeDependencies, includeTerminology, includeTests, fhirServerUrl, null);
+    }
+
+    public PackageMeasures(String igRoot, FhirContext fhirContext, boolean includeDependencies, boolean includeTerminology, boolean includeTests, String fhirServerUrl, IGBuildCache buildCache) {
         // This is expected to be called during refresh - safe to assume the Measure paths will be present
         var measureResourcePaths = IOUtils.getMeasurePaths(fhirContext);
         if (fhirContext.getVersion().getVersion() == FhirVersionEnum.R4) {
             measureResourcePaths.forEach(
-                    path -> new PackageMeasure(igRoot, fhirContext, path, includeDependencies, includeTerminology, includeTests, fhirServerUrl)
-                            .packageArtifact());
+                    path -> {
+                        var artifactPackage = new PackageMeasure(igRoot, fhirContext, path, includeDependencies, includeTerminology, includeTests, fhirServerUrl);
+                        artifactPackage.setBuildCache(buildCache);
+                        artifactPackage.packageArtifact();
+                    });
         } else {
             throw new UnsupportedOperationException("Package operation for Measure resources is not supported for FHIR version: " + fhirContext.getVersion().getVersion().getFhirVersionString());
         }
@@ -20,6 +20,7 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -108,8 +109,7 @@ public class PackageMeasure extends Package<Measure> {
 
         var measureId = mainArtifact.getIdElement().getIdPart();
         logger.info("Packaging Measure {}...", measureId);
-        var measureOutputPath = IOUtils.concatFilePath(getBundleOutputPath(),
-                "measure", measureId);
+        var measureOutputPath = resolveOutputPath();
         IOUtils.initializeDirectory(measureOutputPath);
 
         var measureFilesOutputPath = IOUtils.concatFilePath(measureOutputPath,
@@ -124,16 +124,16 @@ public class PackageMeasure extends Package<Measure> {
         if (isIncludeDependencies()) {
             logger.info("Packaging Dependencies...");
             var libraryDependencyBundleId = "library-deps-" + measureId + "-bundle";
-            IOUtils.writeBundle(createDependencyLibraryBundle(libraryDependencyBundleId, dependencies),
-                    measureFilesOutputPath, IOUtils.Encoding.JSON, getFhirContext(), libraryDependencyBundleId);
+            BundleUtils.writeBundleArtifacts(libraryDependencyBundleId, getDependencyLibraries(dependencies), getFhirContext(),
+                    true, measureFilesOutputPath, IOUtils.Encoding.JSON, libraryDependencyBundleId);
         }
 
         // TODO: Is this correct? Do we just exclude the dependencies from the bundle?
         if (isIncludeTerminology()) {
             logger.info("Packaging Terminology...");
             var valueSetDependencyBundleId = "valuesets-" + measureId + "-bundle";
-            IOUtils.writeBundle(createDependencyValueSetBundle(valueSetDependencyBundleId, dependencies),
-                    measureFilesOutputPath, IOUtils.Encoding.JSON, getFhirContext(), valueSetDependencyBundleId);
+            BundleUtils.writeBundleArtifacts(valueSetDependencyBundleId, getDependencyValueSets(dependencies), getFhirContext(),
+                    true, measureFilesOutputPath, IOUtils.Encoding.JSON, valueSetDependencyBundleId);
         }
 
         if (getPrimaryLibrary() != null) {
@@ -159,11 +159,15 @@ public class PackageMeasure extends Package<Measure> {
         }
 
         dependencies.add(mainArtifact);
-        var packageBundle = createArtifactPackageBundle(measureId, dependencies);
-        IOUtils.writeBundle(packageBundle, measureOutputPath,
-                IOUtils.Encoding.JSON, getFhirContext(), measureId + "-bundle");
+        if (getFhirClient() == null) {
+            BundleUtils.writeBundleArtifacts(measureId, dependencies, getFhirContext(), true, measureOutputPath,
+                    IOUtils.Encoding.JSON, measureId + "-bundle");
+        } else {
+            // the package bundle is kept in memory to be loaded to the server
+            var packageBundle = createArtifactPackageBundle(measureId, dependencies);
+            IOUtils.writeBundle(packageBundle, measureOutputPath,
+                    IOUtils.Encoding.JSON, getFhirContext(), measureId + "-bundle");
 
-        if (getFhirClient() != null) {
             logger.info("Loading package to FHIR Server: {}", getFhirServerUrl());
             try {
                 getFhirClient().transaction().withBundle(packageBundle).execute();
@@ -175,18 +179,21 @@ public class PackageMeasure extends Package<Measure> {
         logger.info("Finished Packaging Measure {}...", measureId);
     }
 
+    @Override
+    public String resolveOutputPath() {
+        return IOUtils.concatFilePath(getBundleOutputPath(), "measure", getMainArtifact().getIdElement().getIdPart());
+    }
+
     private Bundle createArtifactPackageBundle(String id, Set<IBaseResource> resources) {
         return BundleUtils.bundleR4Artifacts(id, new ArrayList<>(resources), null, true);
     }
 
-    private Bundle createDependencyLibraryBundle(String id, Set<IBaseResource> dependencies) {
-        var libraries = dependencies.stream().filter(
+    private List<IBaseResource> getDependencyLibraries(Set<IBaseResource> dependencies) {
+        return dependencies.stream().filter(
                 dependency -> dependency instanceof Library).collect(Collectors.toList());
-        return BundleUtils.bundleR4Artifacts(id, libraries, null, true);
     }
 
-    private Bundle createDependencyValueSetBundle(String id, Set<IBaseResource> dependencies) {
-        var valueSets = dependencies.stream().filter(dependency -> dependency instanceof ValueSet).collect(Collectors.toList());
-        return BundleUtils.bundleR4Artifacts(id, valueSets, null, true);
+    private List<IBaseResource> getDependencyValueSets(Set<IBaseResource> dependencies) {
+        return dependencies.stream().filter(dependency -> dependency instanceof ValueSet).collect(Collectors.toList());
     }
 }
@@ -116,8 +116,7 @@ public class PackagePlanDefinition extends org.opencds.cqf.tooling.packaging.Pac
 
         var planDefinitionId = mainArtifact.getIdElement().getIdPart();
         logger.info("Packaging PlanDefinition {}...", planDefinitionId);
-        var planDefinitionOutputPath = IOUtils.concatFilePath(getBundleOutputPath(),
-                "plandefinition", planDefinitionId);
+        var planDefinitionOutputPath = resolveOutputPath();
         IOUtils.initializeDirectory(planDefinitionOutputPath);
 
         var planDefinitionFilesOutputPath = IOUtils.concatFilePath(planDefinitionOutputPath,
@@ -130,16 +129,16 @@ public class PackagePlanDefinition extends org.opencds.cqf.tooling.packaging.Pac
         if (isIncludeDependencies()) {
             logger.info("Packaging Dependencies...");
             var libraryDependencyBundleId = "library-deps-" + planDefinitionId + "-bundle";
-            IOUtils.writeBundle(createDependencyLibraryBundle(libraryDependencyBundleId, dependencies),
-                    planDefinitionFilesOutputPath, IOUtils.Encoding.JSON, getFhirContext(), libraryDependencyBundleId);
+            BundleUtils.writeBundleArtifacts(libraryDependencyBundleId, getDependencyLibraries(dependencies), getFhirContext(),
+                    true, planDefinitionFilesOutputPath, IOUtils.Encoding.JSON, libraryDependencyBundleId);
         }
 
         // Is this correct? Do we just exclude the dependencies from the bundle?
         if (isIncludeTerminology()) {
             logger.info("Packaging Terminology...");
             var valueSetDependencyBundleId = "valuesets-" + planDefinitionId + "-bundle";
-            IOUtils.writeBundle(createDependencyValueSetBundle(valueSetDependencyBundleId, dependencies),
-                    planDefinitionFilesOutputPath, IOUtils.Encoding.JSON, getFhirContext(), valueSetDependencyBundleId);
+            BundleUtils.writeBundleArtifacts(valueSetDependencyBundleId, getDependencyValueSets(dependencies), getFhirContext(),
+                    true, planDefinitionFilesOutputPath, IOUtils.Encoding.JSON, valueSetDependencyBundleId);
         }
 
         IOUtils.writeResources(getActivityDefinitions(dependencies), planDefinitionFilesOutputPath,
@@ -164,11 +163,15 @@ public class PackagePlanDefinition extends org.opencds.cqf.tooling.packaging.Pac
         }
 
         dependencies.add(mainArtifact);
-        var packageBundle = createArtifactPackageBundle(planDefinitionId, dependencies);
-        IOUtils.writeBundle(packageBundle, planDefinitionOutputPath,
-                IOUtils.Encoding.JSON, getFhirContext(), planDefinitionId + "-bundle");
+        if (getFhirClient() == null) {
+            BundleUtils.writeBundleArtifacts(planDefinitionId, dependencies, getFhirContext(), true, planDefinitionOutputPath,
+                    IOUtils.Encoding.JSON, planDefinitionId + "-bundle");
+        } else {
+            // the package bundle is kept in memory to be loaded to the server
+            var packageBundle = createArtifactPackageBundle(planDefinitionId, dependencies);
+            IOUtils.writeBundle(packageBundle, planDefinitionOutputPath,
+                    IOUtils.Encoding.JSON, getFhirContext(), planDefinitionId + "-bundle");
 
-        if (getFhirClient() != null) {
             logger.info("Loading package to FHIR Server: {}", getFhirServerUrl());
             try {
                 getFhirClient().transaction().withBundle(packageBundle).execute();
@@ -180,6 +183,11 @@ public class PackagePlanDefinition extends org.opencds.cqf.tooling.packaging.Pac
         logger.info("Finished Packaging PlanDefinition {}...", planDefinitionId);
     }
 
+    @Override
+    public String resolveOutputPath() {
+        return IOUtils.concatFilePath(getBundleOutputPath(), "plandefinition", getMainArtifact().getIdElement().getIdPart());
+    }
+
     private void getDefinitionReferences(List<PlanDefinition.PlanDefinitionActionComponent> actions, List<String> references) {
         for (var action : actions) {
             if (action.hasDefinition() && action.getDefinition() instanceof CanonicalType) {
@@ -196,15 +204,13 @@ public class PackagePlanDefinition extends org.opencds.cqf.tooling.packaging.Pac
         return BundleUtils.bundleR4Artifacts(id, new ArrayList<>(resources), null, true);
     }
 
-    private Bundle createDependencyLibraryBundle(String id, Set<IBaseResource> dependencies) {
-        var libraries = dependencies.stream().filter(
+    private List<IBaseResource> getDependencyLibraries(Set<IBaseResource> dependencies) {
+        return dependencies.stream().filter(
                 dependency -> dependency instanceof Library).collect(Collectors.toList());
-        return BundleUtils.bundleR4Artifacts(id, libraries, null, true);
     }
 
-    private Bundle createDependencyValueSetBundle(String id, Set<IBaseResource> dependencies) {
-        var valueSets = dependencies.stream().filter(dependency -> dependency instanceof ValueSet).collect(Collectors.toList());
-        return BundleUtils.bundleR4Artifacts(id, valueSets, null, true);
+    private List<IBaseResource> getDependencyValueSets(Set<IBaseResource> dependencies) {
+        return dependencies.stream().filter(dependency -> dependency instanceof ValueSet).collect(Collectors.toList());
     }
 
     private List<IBaseResource> getActivityDefinitions(Set<IBaseResource> dependencies) {
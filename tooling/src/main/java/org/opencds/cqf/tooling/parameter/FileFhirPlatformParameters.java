@@ -7,4 +7,6 @@ public class FileFhirPlatformParameters {
   public FhirContext fhirContext;
   public EncodingEnum encoding;
   public String resourceDir;
+  // keep the search index of resourceDir on disk, so that only changed files are parsed on the next run
+  public boolean persistIndex;
 }
@@ -8,4 +8,8 @@ public class PostBundlesInDirParameters {
     public String fhirUri;
     public FHIRVersion fhirVersion;
     public IOUtils.Encoding encoding;
+    // "transaction" or "batch" to coalesce the resources into bundles of that type, null to post each bundle as is
+    public String batchType;
+    public Integer batchEntries;
+    public Long batchBytes;
 }
\ No newline at end of file
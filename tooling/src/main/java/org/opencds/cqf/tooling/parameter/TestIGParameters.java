@@ -43,4 +43,9 @@ public class TestIGParameters {
     Execution engine (i.e., CQF Ruler) to load the test content to and run the evaluation on.
     */
     public String fhirServerUri;
+
+    /*
+    Path of the JUnit XML report of the test results (defaults to <IG root>/output/test-reports/TEST-ig.xml)
+    */
+    public String junitReportPath;
 }
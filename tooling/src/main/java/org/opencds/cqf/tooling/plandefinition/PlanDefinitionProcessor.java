@@ -15,7 +15,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class PlanDefinitionProcessor extends BaseProcessor {
 
@@ -83,6 +85,11 @@ public class PlanDefinitionProcessor extends BaseProcessor {
     protected boolean versioned;
     protected FhirContext fhirContext;
 
+    /**
+     * Ids of the PlanDefinitions whose primary library failed to translate during refresh
+     */
+    protected final Set<String> refreshFailures = new HashSet<>();
+
     public List<String> refreshPlanDefinitionContent(RefreshPlanDefinitionParameters params) {
         return new ArrayList<>();
     }
@@ -122,6 +129,7 @@ public class PlanDefinitionProcessor extends BaseProcessor {
             if (!hasErrors) {
                 return processor.refreshPlanDefinition(planDefinition, libraryManager, compiledLibrary, cqlCompilerOptions);
             }
+            refreshFailures.add(planDefinition.getId());
         }
         return planDefinition;
     }
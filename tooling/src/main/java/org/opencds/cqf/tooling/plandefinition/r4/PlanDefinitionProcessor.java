@@ -6,6 +6,7 @@ import org.hl7.fhir.r4.formats.FormatUtilities;
 import org.opencds.cqf.tooling.common.r4.SoftwareSystemHelper;
 import org.opencds.cqf.tooling.library.LibraryProcessor;
 import org.opencds.cqf.tooling.parameter.RefreshPlanDefinitionParameters;
+import org.opencds.cqf.tooling.processor.IGBuildCache;
 import org.opencds.cqf.tooling.utilities.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,6 +65,24 @@ public class PlanDefinitionProcessor extends org.opencds.cqf.tooling.plandefinit
             loadPlanDefinition(fileMap, planDefinitions, file);
         }
 
+        // Skip PlanDefinitions whose primary library logic and PlanDefinition file are unchanged since the previous build
+        var fingerprints = new HashMap<String, String>();
+        var unchangedPlanDefinitions = new ArrayList<org.hl7.fhir.r5.model.PlanDefinition>();
+        if (getBuildCache() != null) {
+            for (var planDefinition : planDefinitions) {
+                var fingerprint = planDefinition.hasLibrary() && planDefinition.getLibrary().size() == 1
+                        ? getPrimaryLibraryFingerprint(planDefinition.getLibrary().get(0).getValue()) : null;
+                var planDefinitionFile = fileMap.get(planDefinition.getId());
+                if (fingerprint != null && planDefinitionFile != null) {
+                    fingerprints.put(planDefinition.getId(), fingerprint);
+                    if (getBuildCache().isUpToDate(IGBuildCache.PLAN_DEFINITION, planDefinitionFile, fingerprint)) {
+                        unchangedPlanDefinitions.add(planDefinition);
+                    }
+                }
+            }
+            planDefinitions.removeAll(unchangedPlanDefinitions);
+        }
+
         var refreshedPlanDefinitionNames = new ArrayList<String>();
         var refreshedPlanDefinitions = super.refreshGeneratedContent(planDefinitions);
         var versionConvertor = new VersionConvertor_40_50(new BaseAdvisor_40_50());
@@ -99,6 +118,10 @@ public class PlanDefinitionProcessor extends org.opencds.cqf.tooling.plandefinit
                     }
                 }
                 IOUtils.writeResource(planDefinition, outputPath, fileEncoding, params.fhirContext, params.versioned);
+                if (getBuildCache() != null && !refreshFailures.contains(refreshedPlanDefinition.getId())) {
+                    getBuildCache().record(IGBuildCache.PLAN_DEFINITION, filePath,
+                            fingerprints.get(refreshedPlanDefinition.getId()), Collections.singletonList(outputPath));
+                }
                 String refreshedPlanDefinitionName;
                 if (params.versioned && refreshedPlanDefinition.getVersion() != null) {
                     refreshedPlanDefinitionName = refreshedPlanDefinition.getName() + "-" + refreshedPlanDefinition.getVersion();
@@ -109,6 +132,18 @@ public class PlanDefinitionProcessor extends org.opencds.cqf.tooling.plandefinit
             }
         }
 
+        for (var unchangedPlanDefinition : unchangedPlanDefinitions) {
+            if (unchangedPlanDefinition.hasIdentifier()) {
+                var planDefinition = (org.hl7.fhir.r4.model.PlanDefinition) versionConvertor.convertResource(unchangedPlanDefinition);
+                this.getIdentifiers().addAll(planDefinition.getIdentifier());
+            }
+            refreshedPlanDefinitionNames.add(params.versioned && unchangedPlanDefinition.getVersion() != null
+                    ? unchangedPlanDefinition.getName() + "-" + unchangedPlanDefinition.getVersion() : unchangedPlanDefinition.getName());
+        }
+        if (!unchangedPlanDefinitions.isEmpty()) {
+            logger.info("{} PlanDefinition resource(s) skipped, unchanged since the previous build", unchangedPlanDefinitions.size());
+        }
+
         return refreshedPlanDefinitionNames;
     }
 
@@ -53,6 +53,7 @@ public abstract class AbstractBundler {
     private List<Object> identifiers;
     private CDSHooksProcessor cdsHooksProcessor;
     private LibraryProcessor libraryProcessor;
+    private IGBuildCache buildCache;
 
     /**
      * Sets the LibraryProcessor for handling library-related tasks.
@@ -72,6 +73,15 @@ public abstract class AbstractBundler {
         this.cdsHooksProcessor = cdsHooksProcessor;
     }
 
+    /**
+     * Sets the build cache used to skip re-bundling resources whose bundle content is unchanged.
+     *
+     * @param buildCache The IGBuildCache instance to set, or null to always bundle.
+     */
+    public void setBuildCache(IGBuildCache buildCache) {
+        this.buildCache = buildCache;
+    }
+
     protected List<Object> getIdentifiers() {
         if (identifiers == null) {
             identifiers = new CopyOnWriteArrayList<>();
@@ -236,6 +246,15 @@ public abstract class AbstractBundler {
                         if (shouldPersist) {
                             String bundleDestPath = FilenameUtils.concat(FilenameUtils.concat(IGProcessor.getBundlesPath(igPath), getResourceTestGroupName()), resourceName);
 
+                            String fingerprint = getBundleFingerprint(resources, fhirContext, fhirUri, addBundleTimestamp);
+                            if (fingerprint != null && buildCache.isUpToDate(IGBuildCache.BUNDLE, bundleDestPath, fingerprint)) {
+                                logger.info(getResourceBundlerType() + " bundle is unchanged since the previous build: " + resourceName);
+                                bundledResources.add(resourceSourcePath);
+                                processedResources.add(resourceSourcePath);
+                                reportProgress(processedResources.size(), tasks.size());
+                                return null;
+                            }
+
                             persistBundle(bundleDestPath, resourceName, encoding, fhirContext, new ArrayList<IBaseResource>(resources.values()), fhirUri, addBundleTimestamp);
 
                             // It's not clear at all why this is happening... we've already persisted the bundle? Why write out all the bundle files??
@@ -256,6 +275,10 @@ public abstract class AbstractBundler {
                                 cdsHooksProcessor.addActivityDefinitionFilesToBundle(igPath, bundleDestPath, activityDefinitionPaths, fhirContext, encoding);
                             }
 
+                            if (fingerprint != null) {
+                                buildCache.recordDirectory(IGBuildCache.BUNDLE, bundleDestPath, fingerprint, bundleDestPath);
+                            }
+
                             bundledResources.add(resourceSourcePath);
                         }
 
@@ -279,7 +302,7 @@ public abstract class AbstractBundler {
 
             }//end for loop
 
-            ThreadUtils.executeTasks(tasks);
+            ThreadUtils.executeTasks("bundle " + getResourceBundlerType(), tasks);
 
         } catch (Exception e) {
             LogUtils.putException("bundleResources: " + getResourceBundlerType(), e);
@@ -291,6 +314,26 @@ public abstract class AbstractBundler {
         logger.info(summaryOutput);
     }
 
+    /**
+     * Computes a fingerprint of the resources gathered for a bundle, used to skip re-writing bundles whose content
+     * is unchanged since the previous build. Returns null (always bundle) when there is no build cache, when the
+     * bundle is posted to a FHIR server or timestamped, or when CDS Hooks activity definitions are added after bundling.
+     */
+    private String getBundleFingerprint(Map<String, IBaseResource> resources, FhirContext fhirContext, String fhirUri,
+                                        Boolean addBundleTimestamp) {
+        if (buildCache == null || (fhirUri != null && !fhirUri.isEmpty()) || Boolean.TRUE.equals(addBundleTimestamp)
+                || cdsHooksProcessor != null) {
+            return null;
+        }
+        var parser = fhirContext.newJsonParser();
+        List<String> content = new ArrayList<>();
+        for (IBaseResource resource : resources.values()) {
+            content.add(parser.encodeResourceToString(resource));
+        }
+        Collections.sort(content);
+        return IGBuildCache.hash(content);
+    }
+
     /**
      * Generates a summary message based on the processing results of bundling and persisting FHIR resources.
      * The summary contains a list of measures that failed as well as which measures have tasks in the post queue.
@@ -445,13 +488,17 @@ public abstract class AbstractBundler {
                                List<IBaseResource> resources, String fhirUri,
                                Boolean addBundleTimestamp) throws IOException {
         IOUtils.initializeDirectory(bundleDestPath);
+        if (fhirUri == null || fhirUri.isEmpty()) {
+            BundleUtils.writeBundleArtifacts(libraryName, resources, fhirContext, addBundleTimestamp, bundleDestPath, encoding, null, this.getIdentifiers());
+            return;
+        }
+
+        // the bundle is kept in memory to be posted
         Object bundle = BundleUtils.bundleArtifacts(libraryName, resources, fhirContext, addBundleTimestamp, this.getIdentifiers());
         IOUtils.writeBundle(bundle, bundleDestPath, encoding, fhirContext);
 
-        if (fhirUri != null && !fhirUri.isEmpty()) {
-            String resourceWriteLocation = bundleDestPath + separator + libraryName + "-bundle." + encoding;
-            HttpClientUtils.post(fhirUri, (IBaseResource) bundle, encoding, fhirContext, resourceWriteLocation, true);
-        }
+        String resourceWriteLocation = bundleDestPath + separator + libraryName + "-bundle." + encoding;
+        HttpClientUtils.post(fhirUri, (IBaseResource) bundle, encoding, fhirContext, resourceWriteLocation, true);
     }
 
 
@@ -479,8 +526,7 @@ public abstract class AbstractBundler {
             try {
                 Map<String, IBaseResource> valueSets = ResourceUtils.getDepValueSetResources(cqlLibrarySourcePath, igPath, fhirContext, includeDependencies, includeVersion);
                 if (!valueSets.isEmpty()) {
-                    Object bundle = BundleUtils.bundleArtifacts(ValueSetsProcessor.getId(primaryLibraryName), new ArrayList<IBaseResource>(valueSets.values()), fhirContext, addBundleTimestamp, this.getIdentifiers());
-                    IOUtils.writeBundle(bundle, bundleDestFilesPath, encoding, fhirContext);
+                    BundleUtils.writeBundleArtifacts(ValueSetsProcessor.getId(primaryLibraryName), valueSets.values(), fhirContext, addBundleTimestamp, bundleDestFilesPath, encoding, null, this.getIdentifiers());
                 }
             } catch (CqlTranslatorException cqlTranslatorException) {
                 translatorWarningMessages.put(primaryLibraryName, cqlTranslatorException.getErrors());
@@ -491,8 +537,7 @@ public abstract class AbstractBundler {
             Map<String, IBaseResource> depLibraries = ResourceUtils.getDepLibraryResources(librarySourcePath, fhirContext, encoding, includeVersion, logger);
             if (!depLibraries.isEmpty()) {
                 String depLibrariesID = "library-deps-" + primaryLibraryName;
-                Object bundle = BundleUtils.bundleArtifacts(depLibrariesID, new ArrayList<IBaseResource>(depLibraries.values()), fhirContext, addBundleTimestamp, this.getIdentifiers());
-                IOUtils.writeBundle(bundle, bundleDestFilesPath, encoding, fhirContext);
+                BundleUtils.writeBundleArtifacts(depLibrariesID, depLibraries.values(), fhirContext, addBundleTimestamp, bundleDestFilesPath, encoding, null, this.getIdentifiers());
             }
         }
 
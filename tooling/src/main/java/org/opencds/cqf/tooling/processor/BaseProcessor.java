@@ -18,6 +18,7 @@ import org.hl7.fhir.utilities.Utilities;
 import org.hl7.fhir.utilities.VersionUtilities;
 import org.hl7.fhir.utilities.npm.NpmPackage;
 import org.opencds.cqf.tooling.exception.IGInitializationException;
+import org.opencds.cqf.tooling.utilities.CanonicalUtils;
 import org.opencds.cqf.tooling.utilities.IGUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -87,6 +88,12 @@ public class BaseProcessor implements IProcessorContext, ILoggingService {
         return verboseMessaging;
     }
 
+    protected IGBuildCache buildCache;
+
+    public IGBuildCache getBuildCache() {
+        return buildCache;
+    }
+
     public void initialize(IProcessorContext context) {
         this.parentContext = context;
 
@@ -101,6 +108,7 @@ public class BaseProcessor implements IProcessorContext, ILoggingService {
             this.binaryPaths = parentContext.getBinaryPaths();
             this.cqlProcessor = parentContext.getCqlProcessor();
             this.verboseMessaging = parentContext.getVerboseMessaging();
+            this.buildCache = parentContext.getBuildCache();
         }
     }
 
@@ -197,11 +205,27 @@ public class BaseProcessor implements IProcessorContext, ILoggingService {
             cqlProcessor = new CqlProcessor(new CopyOnWriteArrayList<>(cleanPackageList(packageManager.getNpmList())),
                     new CopyOnWriteArrayList<>(binaryPaths), reader, this, ucumService,
                     packageId, canonicalBase, verboseMessaging);
+            cqlProcessor.setBuildCache(buildCache);
+            cqlProcessor.setElmCache(ElmCache.getDefault(buildCache != null));
         }
 
         return cqlProcessor;
     }
 
+    /*
+     * Fingerprint of the CQL source (including transitive includes) of an artifact's primary library, used to skip
+     * refreshing artifacts whose logic is unchanged since the previous build. Returns null if there is no build
+     * cache or the primary library is not sourced from this IG.
+     */
+    protected String getPrimaryLibraryFingerprint(String primaryLibraryUrl) {
+        if (buildCache == null || primaryLibraryUrl == null) {
+            return null;
+        }
+        var identifier = CanonicalUtils.toVersionedIdentifier(primaryLibraryUrl);
+        var cqlFile = getCqlProcessor().getSourceFile(identifier.getId(), identifier.getVersion());
+        return cqlFile == null ? null : buildCache.getCqlFingerprint(cqlFile);
+    }
+
     private List<NpmPackage> cleanPackageList(List<NpmPackage> originalPackageList) {
         Set<String> pathSet = new HashSet<>();
         return originalPackageList.stream().filter(e -> pathSet.add(e.getPath()))
@@ -1,7 +1,9 @@
 package org.opencds.cqf.tooling.processor;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.cqframework.cql.cql2elm.*;
 import org.cqframework.cql.cql2elm.model.CompiledLibrary;
+import org.cqframework.cql.cql2elm.model.Model;
 import org.cqframework.cql.cql2elm.quick.FhirLibrarySourceProvider;
 import org.cqframework.cql.elm.requirements.fhir.DataRequirementsProcessor;
 import org.cqframework.cql.elm.tracking.TrackBack;
@@ -9,6 +11,7 @@ import org.cqframework.fhir.npm.ILibraryReader;
 import org.cqframework.fhir.npm.NpmLibrarySourceProvider;
 import org.cqframework.fhir.npm.NpmModelInfoProvider;
 import org.fhir.ucum.UcumService;
+import org.hl7.cql.model.ModelIdentifier;
 import org.hl7.cql.model.NamespaceInfo;
 import org.hl7.elm.r1.VersionedIdentifier;
 import org.hl7.fhir.exceptions.FHIRException;
@@ -25,10 +28,25 @@ import org.slf4j.Logger;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.CodeSource;
 import java.util.*;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class CqlProcessor {
 
@@ -158,6 +176,34 @@ public class CqlProcessor {
 
     private boolean verboseMessaging;
 
+    /**
+     * Optional build cache; when set, CQL files whose fingerprint matches the previous build are not translated
+     */
+    private IGBuildCache buildCache;
+
+    /**
+     * Fully qualified names of the CQL files that were skipped because they are unchanged since the previous build
+     */
+    private final Set<String> unchangedFiles = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Optional persistent cache of translation results; when set, files whose source, includes and options match a
+     * previous translation (of this or any other IG) are restored from it rather than translated
+     */
+    private ElmCache elmCache;
+
+    /**
+     * Hashes of the sources of included libraries (and their includes), by folder and include, for the ELM cache keys
+     */
+    private final Map<String, String> includeHashes = new ConcurrentHashMap<>();
+
+    /**
+     * Number of worker threads used to translate the CQL files in a folder. With a single thread (the default) files
+     * are translated one at a time in directory order; otherwise independent libraries are translated concurrently
+     * in include order, sharing one compiled-library cache.
+     */
+    private int translationThreads = 1;
+
     public CqlProcessor(List<NpmPackage> packages, List<String> folders, ILibraryReader reader, ILoggingService logger, UcumService ucumService, String packageId, String canonicalBase, Boolean verboseMessaging) {
         super();
         this.packages = packages;
@@ -182,12 +228,22 @@ public class CqlProcessor {
      */
     public void execute() throws FHIRException {
         try {
-            fileMap = new HashMap<>();
+            fileMap = new ConcurrentHashMap<>();
+            unchangedFiles.clear();
+            includeHashes.clear();
+            synchronized (this) {
+                sharedModels = null;
+                sharedLibraries = null;
+            }
 
             // foreach folder
             for (String folder : folders) {
                 translateFolder(folder);
             }
+
+            if (elmCache != null) {
+                log.info(elmCache.getSummary());
+            }
         }
         catch (Exception E) {
             logger.logMessage(String.format("Errors occurred attempting to translate CQL content: %s", E.getMessage()));
@@ -232,6 +288,61 @@ public class CqlProcessor {
         return this.fileMap;
     }
 
+    public int getTranslationThreads() {
+        return translationThreads;
+    }
+
+    public void setTranslationThreads(int translationThreads) {
+        this.translationThreads = Math.max(1, translationThreads);
+    }
+
+    public ElmCache getElmCache() {
+        return elmCache;
+    }
+
+    public void setElmCache(ElmCache elmCache) {
+        this.elmCache = elmCache;
+    }
+
+    public IGBuildCache getBuildCache() {
+        return buildCache;
+    }
+
+    public void setBuildCache(IGBuildCache buildCache) {
+        this.buildCache = buildCache;
+    }
+
+    /**
+     * Returns true if the given file was not translated during execute because the build cache reported it unchanged
+     * @param filename Fully qualified name of the source file
+     */
+    public boolean isUnchanged(String filename) {
+        return filename != null && unchangedFiles.contains(filename);
+    }
+
+    /**
+     * Locates the CQL source file for the given library in the configured folders, preferring a versioned file name
+     * @return the source file, or null if the library is not sourced from this IG
+     */
+    public File getSourceFile(String libraryName, String version) {
+        if (libraryName == null) {
+            return null;
+        }
+        for (String folder : folders) {
+            if (version != null) {
+                File versioned = new File(folder, libraryName + "-" + version + ".cql");
+                if (versioned.exists()) {
+                    return versioned.getAbsoluteFile();
+                }
+            }
+            File file = new File(folder, libraryName + ".cql");
+            if (file.exists()) {
+                return file.getAbsoluteFile();
+            }
+        }
+        return null;
+    }
+
     /**
      * Called at the end after all getFileInformation have been called
      * return any errors that didn't have any particular home, and also
@@ -277,6 +388,24 @@ public class CqlProcessor {
         return cachedLibraryManager;
     }
 
+    private String cachedFolder;
+    private Map<ModelIdentifier, Model> sharedModels;
+    private Map<VersionedIdentifier, CompiledLibrary> sharedLibraries;
+
+    /**
+     * Creates a library manager like {@link #getLibraryManager()}, for use on another thread: library managers are not
+     * thread-safe, but the managers created by this method share the models and compiled libraries of the translation
+     * (copied once into concurrent maps), so they can be used concurrently, one per thread.
+     */
+    public synchronized LibraryManager newLibraryManager() {
+        checkCachedManager();
+        if (sharedModels == null) {
+            sharedModels = new ConcurrentHashMap<>(cachedLibraryManager.getModelManager().getGlobalCache());
+            sharedLibraries = new ConcurrentHashMap<>(cachedLibraryManager.getCompiledLibraries());
+        }
+        return createLibraryManager(cachedFolder, cachedOptions, sharedModels, sharedLibraries);
+    }
+
     private void translateFolder(String folder) {
         System.out.printf("Translating CQL source in folder %s%n", folder);
 
@@ -285,26 +414,34 @@ public class CqlProcessor {
         // Setup
         // Construct DefaultLibrarySourceProvider
         // Construct FhirLibrarySourceProvider
-        ModelManager modelManager = new ModelManager();
-        LibraryManager libraryManager = new LibraryManager(modelManager, options.getCqlCompilerOptions());
-        if (options.getCqlCompilerOptions().getValidateUnits()) {
-            libraryManager.setUcumService(ucumService);
-        }
-        if (packages != null) {
-            modelManager.getModelInfoLoader().registerModelInfoProvider(new NpmModelInfoProvider(packages, reader, logger), true);
-            libraryManager.getLibrarySourceLoader().registerProvider(new NpmLibrarySourceProvider(packages, reader, logger));
-        }
-        libraryManager.getLibrarySourceLoader().registerProvider(new DefaultLibrarySourceProvider(Paths.get(folder)));
-        libraryManager.getLibrarySourceLoader().registerProvider(new FhirLibrarySourceProvider());
-        modelManager.getModelInfoLoader().registerModelInfoProvider(new DefaultModelInfoProvider(Paths.get(folder)));
-
-        loadNamespaces(libraryManager);
+        // When translating in parallel, every worker gets its own managers (they are not thread-safe), but all of
+        // them share the loaded models and compiled libraries so common dependencies are compiled only once
+        boolean parallel = translationThreads > 1;
+        Map<ModelIdentifier, Model> modelCache = parallel ? new ConcurrentHashMap<>() : new HashMap<>();
+        Map<VersionedIdentifier, CompiledLibrary> libraryCache = parallel ? new ConcurrentHashMap<>() : new HashMap<>();
+        LibraryManager libraryManager = createLibraryManager(folder, options, modelCache, libraryCache);
 
         // foreach *.cql file
         boolean hadCqlFiles = false;
+        List<File> filesToTranslate = new ArrayList<>();
         for (File file : new File(folder).listFiles(getCqlFilenameFilter())) {
             hadCqlFiles = true;
-            translateFile(libraryManager, file, options.getCqlCompilerOptions());
+            if (buildCache != null && buildCache.isUpToDate(IGBuildCache.CQL, file.getAbsolutePath(),
+                    buildCache.getCqlFingerprint(file))) {
+                unchangedFiles.add(file.getAbsoluteFile().toString());
+                continue;
+            }
+            filesToTranslate.add(file);
+        }
+
+        if (parallel && filesToTranslate.size() > 1) {
+            translateFilesInParallel(filesToTranslate,
+                    () -> createLibraryManager(folder, options, modelCache, libraryCache), options.getCqlCompilerOptions());
+        }
+        else {
+            for (File file : filesToTranslate) {
+                translateFile(libraryManager, file, options.getCqlCompilerOptions());
+            }
         }
 
         if (hadCqlFiles) {
@@ -312,6 +449,7 @@ public class CqlProcessor {
                 if (!hasMultipleBinaryPaths) {
                     cachedOptions = options;
                     cachedLibraryManager = libraryManager;
+                    cachedFolder = folder;
                 }
             }
             else {
@@ -319,11 +457,132 @@ public class CqlProcessor {
                     hasMultipleBinaryPaths = true;
                     cachedOptions = null;
                     cachedLibraryManager = null;
+                    cachedFolder = null;
                 }
             }
         }
     }
 
+    private LibraryManager createLibraryManager(String folder, CqlTranslatorOptions options,
+            Map<ModelIdentifier, Model> modelCache, Map<VersionedIdentifier, CompiledLibrary> libraryCache) {
+        ModelManager modelManager = new ModelManager(modelCache);
+        LibraryManager libraryManager = new LibraryManager(modelManager, options.getCqlCompilerOptions(), libraryCache);
+        if (options.getCqlCompilerOptions().getValidateUnits()) {
+            libraryManager.setUcumService(ucumService);
+        }
+        if (packages != null) {
+            modelManager.getModelInfoLoader().registerModelInfoProvider(new NpmModelInfoProvider(packages, reader, logger), true);
+            libraryManager.getLibrarySourceLoader().registerProvider(new NpmLibrarySourceProvider(packages, reader, logger));
+        }
+        libraryManager.getLibrarySourceLoader().registerProvider(new DefaultLibrarySourceProvider(Paths.get(folder)));
+        libraryManager.getLibrarySourceLoader().registerProvider(new FhirLibrarySourceProvider());
+        modelManager.getModelInfoLoader().registerModelInfoProvider(new DefaultModelInfoProvider(Paths.get(folder)));
+
+        loadNamespaces(libraryManager);
+        return libraryManager;
+    }
+
+    /**
+     * Translates the given files on a bounded worker pool, in include order: a file is only scheduled once every
+     * library it includes from the same folder has been translated (and is therefore in the shared compiled-library
+     * cache), so shared dependencies are compiled once rather than by every library that includes them.
+     * Libraries included from packages are resolved by whichever worker needs them first.
+     */
+    private void translateFilesInParallel(List<File> files, Supplier<LibraryManager> libraryManagers, CqlCompilerOptions options) {
+        // Build the include graph between the files being translated
+        Map<String, File> filesByLibraryName = new HashMap<>();
+        Map<File, CqlSourceHeader> headers = new HashMap<>();
+        for (File file : files) {
+            try {
+                CqlSourceHeader header = CqlSourceHeader.read(file);
+                headers.put(file, header);
+                filesByLibraryName.put(header.getName() != null ? header.getName() : file.getName().replace(".cql", ""), file);
+            } catch (IOException e) {
+                log.warn("Unable to read include declarations from {}: {}", file, e.getMessage());
+            }
+        }
+
+        Map<File, Set<File>> pendingIncludes = new HashMap<>();
+        Map<File, List<File>> includedBy = new HashMap<>();
+        for (File file : files) {
+            Set<File> pending = new HashSet<>();
+            CqlSourceHeader header = headers.get(file);
+            if (header != null) {
+                for (CqlSourceHeader.Include include : header.getIncludes()) {
+                    File includeFile = filesByLibraryName.get(include.getName());
+                    if (includeFile != null && !includeFile.equals(file)) {
+                        pending.add(includeFile);
+                        includedBy.computeIfAbsent(includeFile, f -> new ArrayList<>()).add(file);
+                    }
+                }
+            }
+            pendingIncludes.put(file, pending);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(translationThreads, files.size()));
+        CompletionService<File> completionService = new ExecutorCompletionService<>(executor);
+        Set<File> scheduled = new HashSet<>();
+        int submitted = 0;
+        try {
+            for (File file : files) {
+                if (pendingIncludes.get(file).isEmpty()) {
+                    scheduled.add(file);
+                    submitTranslation(completionService, libraryManagers, file, options);
+                    submitted++;
+                }
+            }
+
+            int completed = 0;
+            while (true) {
+                if (completed == submitted) {
+                    if (scheduled.size() == files.size()) {
+                        break;
+                    }
+                    // Only circular includes remain; translate them anyway so the translator reports the cycle
+                    for (File file : files) {
+                        if (scheduled.add(file)) {
+                            submitTranslation(completionService, libraryManagers, file, options);
+                            submitted++;
+                        }
+                    }
+                }
+
+                File translated = completionService.take().get();
+                completed++;
+                for (File dependent : includedBy.getOrDefault(translated, Collections.emptyList())) {
+                    Set<File> pending = pendingIncludes.get(dependent);
+                    pending.remove(translated);
+                    if (pending.isEmpty() && scheduled.add(dependent)) {
+                        submitTranslation(completionService, libraryManagers, dependent, options);
+                        submitted++;
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("CQL translation was interrupted", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                // As when translating serially (e.g. the translator overflowing the stack on circular includes)
+                throw (Error) e.getCause();
+            }
+            throw new RuntimeException("CQL translation failed: " + e.getCause().getMessage(), e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void submitTranslation(CompletionService<File> completionService, Supplier<LibraryManager> libraryManagers,
+            File file, CqlCompilerOptions options) {
+        completionService.submit(() -> {
+            translateFile(libraryManagers.get(), file, options);
+            return file;
+        });
+    }
+
     private void loadNamespaces(LibraryManager libraryManager) {
         if (namespaceInfo != null) {
             libraryManager.getNamespaceManager().addNamespace(namespaceInfo);
@@ -387,10 +646,31 @@ public class CqlProcessor {
             libraryManager.setUcumService(ucumService);
         }
 
+        String cacheKey = null;
+        if (elmCache != null) {
+            try {
+                byte[] cql = Files.readAllBytes(file.toPath());
+                cacheKey = getElmCacheKey(libraryManager, file, cql, options);
+                String statusMessage = elmCache.get(cacheKey, result);
+                if (statusMessage != null) {
+                    if (result.getElm() != null) {
+                        result.setOptions(new CqlTranslatorOptions().withCqlCompilerOptions(options));
+                        result.setCql(cql);
+                    }
+                    logger.logMessage(statusMessage);
+                    return;
+                }
+            } catch (Exception e) {
+                log.warn("Unable to look up cached ELM for {}: {}", file, e.getMessage());
+                cacheKey = null;
+            }
+        }
+
         try {
 
             // translate toXML
             CqlTranslator translator = CqlTranslator.fromFile(namespaceInfo, file, libraryManager);
+            boolean cacheable = true;
 
             // record errors and warnings
             for (CqlCompilerException exception : translator.getExceptions()) {
@@ -419,7 +699,9 @@ public class CqlProcessor {
                     // Add the translated library to the library manager (NOTE: This should be a "cacheLibrary" call on the LibraryManager, available in 1.5.3+)
                     // Without this, the data requirements processor will try to load the current library, resulting in a re-translation
                     CompiledLibrary compiledLibrary = translator.getTranslatedLibrary();
-                    libraryManager.getCompiledLibraries().put(compiledLibrary.getIdentifier(), compiledLibrary);
+                    if (compiledLibrary.getIdentifier() != null) {
+                        libraryManager.getCompiledLibraries().put(compiledLibrary.getIdentifier(), compiledLibrary);
+                    }
 
                     DataRequirementsProcessor drp = new DataRequirementsProcessor();
                     org.hl7.fhir.r5.model.Library requirementsLibrary =
@@ -458,12 +740,18 @@ public class CqlProcessor {
                     result.dataRequirements.addAll(requirementsLibrary.getDataRequirement());
 
                 } catch (Exception ex) {
+                    cacheable = false;
                     logger.logMessage(String.format("CQL Translation succeeded for file: '%s', but ELM generation failed with the following error: %s", file.getAbsolutePath(), ex.getMessage()));
                 }
             }
 
             //output Success/Warn/Info/Fail message to user:
-            logger.logMessage(buildStatusMessage(translator.getErrors(), file.getName(), verboseMessaging));
+            String statusMessage = buildStatusMessage(translator.getErrors(), file.getName(), verboseMessaging);
+            logger.logMessage(statusMessage);
+
+            if (cacheKey != null && cacheable) {
+                elmCache.put(cacheKey, result, statusMessage);
+            }
         }
         catch (Exception e) {
             result.getErrors().add(new ValidationMessage(ValidationMessage.Source.Publisher, IssueType.EXCEPTION, file.getName(), "CQL Processing failed with exception: "+e.getMessage(), IssueSeverity.ERROR));
@@ -472,6 +760,117 @@ public class CqlProcessor {
 
     }
 
+    // The builds the cached ELM was produced with, so a tooling or translator change invalidates the cache
+    private static final String TOOLING_BUILD = getBuild(CqlProcessor.class);
+    private static final String TRANSLATOR_BUILD = getBuild(CqlTranslator.class);
+
+    /**
+     * The implementation version of the jar a class is loaded from. Classes loaded from a directory (a development
+     * build or an IDE) have no version, so the size and modification time of the class files are used instead.
+     */
+    static String getBuild(Class<?> clazz) {
+        String version = clazz.getPackage() == null ? null : clazz.getPackage().getImplementationVersion();
+        if (version != null && !version.endsWith("-SNAPSHOT")) {
+            return version;
+        }
+        try {
+            CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+            if (codeSource == null || codeSource.getLocation() == null) {
+                return version;
+            }
+            Path location = Paths.get(codeSource.getLocation().toURI());
+            if (!Files.isDirectory(location)) {
+                return version + "|" + Files.size(location) + "|" + Files.getLastModifiedTime(location).toMillis();
+            }
+            try (Stream<Path> files = Files.walk(location)) {
+                LongSummaryStatistics classFiles = files.filter(f -> f.toString().endsWith(".class"))
+                        .mapToLong(f -> f.toFile().lastModified() ^ f.toFile().length()).summaryStatistics();
+                return version + "|" + classFiles.getCount() + "|" + classFiles.getMax() + "|" + classFiles.getSum();
+            }
+        } catch (IOException | URISyntaxException | SecurityException | IllegalArgumentException e) {
+            log.debug("Unable to identify the build of {}: {}", clazz.getName(), e.getMessage());
+            return version;
+        }
+    }
+
+    /**
+     * The ELM cache key of a file: everything that determines its translation result. Included libraries are resolved
+     * with the library manager the file is translated with, so both local and package libraries are accounted for.
+     */
+    private String getElmCacheKey(LibraryManager libraryManager, File file, byte[] cql, CqlCompilerOptions options) {
+        List<String> parts = new ArrayList<>();
+        parts.add(TOOLING_BUILD);
+        parts.add(TRANSLATOR_BUILD);
+        parts.add(Boolean.toString(verboseMessaging));
+        StringWriter optionsWriter = new StringWriter();
+        CqlTranslatorOptionsMapper.toWriter(optionsWriter, new CqlTranslatorOptions().withCqlCompilerOptions(options));
+        parts.add(optionsWriter.toString());
+        parts.add(namespaceInfo == null ? null : namespaceInfo.getName() + "|" + namespaceInfo.getUri());
+        if (packages != null) {
+            for (NpmPackage p : packages) {
+                parts.add(p.name() + "#" + p.version());
+            }
+        }
+
+        // Model info in the folder takes precedence over the model info of the translator and packages
+        File folder = file.getAbsoluteFile().getParentFile();
+        File[] modelInfoFiles = folder.listFiles((dir, name) -> name.toLowerCase().endsWith(".xml") && name.toLowerCase().contains("modelinfo"));
+        if (modelInfoFiles != null) {
+            Arrays.sort(modelInfoFiles);
+            for (File modelInfoFile : modelInfoFiles) {
+                parts.add(modelInfoFile.getName());
+                parts.add(IGBuildCache.hashFile(modelInfoFile));
+            }
+        }
+
+        String source = new String(cql, StandardCharsets.UTF_8);
+        parts.add(DigestUtils.sha256Hex(cql));
+        Set<String> visiting = new HashSet<>();
+        for (CqlSourceHeader.Include include : CqlSourceHeader.parse(source).getIncludes()) {
+            parts.add(getIncludeHash(libraryManager, folder.getPath(), include, visiting));
+        }
+        return IGBuildCache.hash(parts);
+    }
+
+    private String getIncludeHash(LibraryManager libraryManager, String folder, CqlSourceHeader.Include include, Set<String> visiting) {
+        String key = folder + "|" + include;
+        String cached = includeHashes.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        if (!visiting.add(key)) {
+            // Circular includes are a translation error, reported (and keyed) by the library itself
+            return include.toString();
+        }
+
+        String hash;
+        byte[] source = null;
+        try (InputStream in = libraryManager.getLibrarySourceLoader().getLibrarySource(
+                new VersionedIdentifier().withId(include.getName()).withVersion(include.getVersion()))) {
+            if (in != null) {
+                source = in.readAllBytes();
+            }
+        } catch (Exception e) {
+            log.debug("Unable to read the source of included library {}: {}", include, e.getMessage());
+        }
+        if (source == null) {
+            // Unresolved includes fail the translation, there is nothing more to account for
+            hash = include.toString();
+        }
+        else {
+            List<String> parts = new ArrayList<>();
+            parts.add(DigestUtils.sha256Hex(source));
+            for (CqlSourceHeader.Include nested : CqlSourceHeader.parse(new String(source, StandardCharsets.UTF_8)).getIncludes()) {
+                parts.add(getIncludeHash(libraryManager, folder, nested, visiting));
+            }
+            hash = IGBuildCache.hash(parts);
+        }
+
+        visiting.remove(key);
+        includeHashes.put(key, hash);
+        return hash;
+    }
+
     private FilenameFilter getCqlFilenameFilter() {
         return new FilenameFilter() {
             @Override
@@ -0,0 +1,151 @@
+package org.opencds.cqf.tooling.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lightweight scan of the declarations at the top of a CQL source file (library identifier, includes and
+ * valueset references). This does not invoke the translator, so it is cheap enough to run over every file
+ * in an IG to decide what needs to be translated.
+ */
+public class CqlSourceHeader {
+
+    private static final String IDENTIFIER = "([A-Za-z_][A-Za-z0-9_.]*|\"[^\"]+\")";
+    private static final Pattern LIBRARY_PATTERN = Pattern.compile(
+            "^\\s*library\\s+" + IDENTIFIER + "(?:\\s+version\\s+'([^']+)')?", Pattern.MULTILINE);
+    private static final Pattern INCLUDE_PATTERN = Pattern.compile(
+            "^\\s*include\\s+" + IDENTIFIER + "(?:\\s+version\\s+'([^']+)')?", Pattern.MULTILINE);
+    private static final Pattern VALUESET_PATTERN = Pattern.compile(
+            "^\\s*(?:public\\s+|private\\s+)?valueset\\s+(?:\"[^\"]+\"|[A-Za-z_][A-Za-z0-9_]*)\\s*:\\s*'([^']+)'",
+            Pattern.MULTILINE);
+
+    /**
+     * Reference to another library, as declared by an include statement
+     */
+    public static class Include {
+        private final String name;
+        private final String version;
+
+        public Include(String name, String version) {
+            this.name = name;
+            this.version = version;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        @Override
+        public String toString() {
+            return version == null ? name : name + "|" + version;
+        }
+    }
+
+    private final String name;
+    private final String version;
+    private final List<Include> includes;
+    private final List<String> valueSetUrls;
+
+    private CqlSourceHeader(String name, String version, List<Include> includes, List<String> valueSetUrls) {
+        this.name = name;
+        this.version = version;
+        this.includes = Collections.unmodifiableList(includes);
+        this.valueSetUrls = Collections.unmodifiableList(valueSetUrls);
+    }
+
+    public static CqlSourceHeader read(File cqlFile) throws IOException {
+        return parse(new String(Files.readAllBytes(cqlFile.toPath()), StandardCharsets.UTF_8));
+    }
+
+    public static CqlSourceHeader parse(String cql) {
+        String source = stripComments(cql);
+
+        String name = null;
+        String version = null;
+        Matcher libraryMatcher = LIBRARY_PATTERN.matcher(source);
+        if (libraryMatcher.find()) {
+            name = simpleName(libraryMatcher.group(1));
+            version = libraryMatcher.group(2);
+        }
+
+        List<Include> includes = new ArrayList<>();
+        Matcher includeMatcher = INCLUDE_PATTERN.matcher(source);
+        while (includeMatcher.find()) {
+            includes.add(new Include(simpleName(includeMatcher.group(1)), includeMatcher.group(2)));
+        }
+
+        List<String> valueSetUrls = new ArrayList<>();
+        Matcher valueSetMatcher = VALUESET_PATTERN.matcher(source);
+        while (valueSetMatcher.find()) {
+            valueSetUrls.add(valueSetMatcher.group(1));
+        }
+
+        return new CqlSourceHeader(name, version, includes, valueSetUrls);
+    }
+
+    // Removes line and block comments, leaving quoted strings (which may contain '//' in urls) intact
+    private static String stripComments(String cql) {
+        StringBuilder result = new StringBuilder(cql.length());
+        int i = 0;
+        while (i < cql.length()) {
+            char c = cql.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                int end = i + 1;
+                while (end < cql.length() && cql.charAt(end) != c) {
+                    end += cql.charAt(end) == '\\' ? 2 : 1;
+                }
+                end = Math.min(end + 1, cql.length());
+                result.append(cql, i, end);
+                i = end;
+            } else if (cql.startsWith("//", i)) {
+                while (i < cql.length() && cql.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (cql.startsWith("/*", i)) {
+                int end = cql.indexOf("*/", i + 2);
+                i = end < 0 ? cql.length() : end + 2;
+                result.append(' ');
+            } else {
+                result.append(c);
+                i++;
+            }
+        }
+        return result.toString();
+    }
+
+    // Includes may be namespace qualified (e.g. hl7.fhir.us.cqfmeasures.FHIRHelpers); files are named for the library only
+    private static String simpleName(String identifier) {
+        if (identifier.startsWith("\"")) {
+            return identifier.substring(1, identifier.length() - 1);
+        }
+        int index = identifier.lastIndexOf('.');
+        return index >= 0 ? identifier.substring(index + 1) : identifier;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public List<Include> getIncludes() {
+        return includes;
+    }
+
+    public List<String> getValueSetUrls() {
+        return valueSetUrls;
+    }
+}
@@ -0,0 +1,296 @@
+package org.opencds.cqf.tooling.processor;
+
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.hl7.fhir.r5.formats.JsonParser;
+import org.hl7.fhir.r5.model.Library;
+import org.hl7.fhir.r5.model.Resource;
+import org.hl7.fhir.utilities.validation.ValidationMessage;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Persistent cache of CQL translation results, shared by every IG refreshed on the machine.
+ *
+ * Each entry holds what the CqlProcessor keeps for a translated file: the library identifier, the ELM as XML and
+ * JSON, the translator errors and annotations, and the related artifacts, parameters and data requirements gathered
+ * from the ELM, together with the status message reported for the file. Entries are stored gzipped, one file per key,
+ * in the cache directory. The key is computed by the CqlProcessor from everything that goes into the translation
+ * (the CQL source, the source of every library it includes, the translator options, the namespace, the packages, the
+ * messaging options and the tooling build), so a changed input simply results in a different key.
+ *
+ * The cache is only used by incremental refreshes (-inc), in ~/.cqf-tooling/elm-cache, unless the
+ * {@value #ELM_CACHE_PROPERTY} system property is set: to "true" to always use it, to a directory to always use that
+ * one, or to "false" to never use it. Entries that have not been used for {@value #DEFAULT_MAX_AGE_DAYS} days (see
+ * {@value #MAX_AGE_DAYS_PROPERTY}) are removed the first time the cache directory is used in a run.
+ */
+public class ElmCache {
+    private static final Logger logger = LoggerFactory.getLogger(ElmCache.class);
+
+    public static final String ELM_CACHE_PROPERTY = "cqf-tooling.elmCache";
+    public static final String MAX_AGE_DAYS_PROPERTY = "cqf-tooling.elmCache.maxAgeDays";
+    public static final int DEFAULT_MAX_AGE_DAYS = 30;
+    public static final Path DEFAULT_DIRECTORY = Paths.get(System.getProperty("user.home"), ".cqf-tooling", "elm-cache");
+
+    // Directories already pruned in this run
+    private static final Set<Path> prunedDirectories = ConcurrentHashMap.newKeySet();
+
+    private static final int MAGIC = 0x43514645;
+    private static final int FORMAT_VERSION = 1;
+    private static final String EXTENSION = ".elm.gz";
+
+    private final Path directory;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ElmCache(Path directory) {
+        this.directory = Objects.requireNonNull(directory, "directory can not be null");
+    }
+
+    /**
+     * @param incremental Whether the refresh is incremental, which enables the cache unless the
+     *                    {@value #ELM_CACHE_PROPERTY} system property says otherwise.
+     * @return the cache configured by the {@value #ELM_CACHE_PROPERTY} system property, or null if it is disabled
+     */
+    public static ElmCache getDefault(boolean incremental) {
+        String property = System.getProperty(ELM_CACHE_PROPERTY);
+        ElmCache cache;
+        if (property == null || property.isBlank()) {
+            if (!incremental) {
+                return null;
+            }
+            cache = new ElmCache(DEFAULT_DIRECTORY);
+        } else if ("false".equalsIgnoreCase(property)) {
+            return null;
+        } else if ("true".equalsIgnoreCase(property)) {
+            cache = new ElmCache(DEFAULT_DIRECTORY);
+        } else {
+            cache = new ElmCache(Paths.get(property));
+        }
+
+        if (prunedDirectories.add(cache.getDirectory().toAbsolutePath())) {
+            cache.prune(Duration.ofDays(Math.max(1, Integer.getInteger(MAX_AGE_DAYS_PROPERTY, DEFAULT_MAX_AGE_DAYS))));
+        }
+        return cache;
+    }
+
+    /**
+     * Removes the entries that have not been used for the given time.
+     *
+     * @return the number of entries removed
+     */
+    public int prune(Duration maxAge) {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        FileTime oldest = FileTime.from(Instant.now().minus(maxAge));
+        int removed = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path entry : entries) {
+                try {
+                    if (Files.getLastModifiedTime(entry).compareTo(oldest) < 0 && Files.deleteIfExists(entry)) {
+                        removed++;
+                    }
+                } catch (IOException e) {
+                    logger.debug("Unable to remove cached ELM {}: {}", entry, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to prune the ELM cache {}: {}", directory, e.getMessage());
+        }
+        if (removed > 0) {
+            logger.info("Removed {} ELM cache entries unused for {} days", removed, maxAge.toDays());
+        }
+        return removed;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Restores the cached translation result for the key into the given file information.
+     *
+     * @return the status message reported when the file was translated, or null if there is no (readable) entry, in
+     * which case the file information is left untouched
+     */
+    public String get(String key, CqlProcessor.CqlSourceFileInformation result) {
+        Path file = getFile(key);
+        if (!Files.isRegularFile(file)) {
+            misses.increment();
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !key.equals(in.readUTF())) {
+                misses.increment();
+                return null;
+            }
+
+            String statusMessage = readString(in);
+            VersionedIdentifier identifier = null;
+            if (in.readBoolean()) {
+                identifier = new VersionedIdentifier().withSystem(readString(in)).withId(readString(in)).withVersion(readString(in));
+            }
+            byte[] elm = readBytes(in);
+            byte[] jsonElm = readBytes(in);
+
+            List<ValidationMessage> errors = new ArrayList<>();
+            int errorCount = in.readInt();
+            for (int i = 0; i < errorCount; i++) {
+                ValidationMessage.Source source = readEnum(in, ValidationMessage.Source.class);
+                ValidationMessage.IssueType type = readEnum(in, ValidationMessage.IssueType.class);
+                int line = in.readInt();
+                int col = in.readInt();
+                String location = readString(in);
+                String message = readString(in);
+                ValidationMessage.IssueSeverity level = readEnum(in, ValidationMessage.IssueSeverity.class);
+                errors.add(new ValidationMessage(source, type, line, col, location, message, level));
+            }
+
+            Library requirements = (Library) new JsonParser().parse(readBytes(in));
+
+            result.setIdentifier(identifier);
+            result.setElm(elm);
+            result.setJsonElm(jsonElm);
+            result.getErrors().addAll(errors);
+            result.getRelatedArtifacts().addAll(requirements.getRelatedArtifact());
+            result.getParameters().addAll(requirements.getParameter());
+            result.getDataRequirements().addAll(requirements.getDataRequirement());
+
+            // Entries in use stay recent, so prune only removes unused entries
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.increment();
+            return statusMessage;
+        } catch (Exception e) {
+            logger.warn("Unable to read cached ELM {}: {}", file, e.getMessage());
+            misses.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the translation result held by the given file information under the key.
+     */
+    public void put(String key, CqlProcessor.CqlSourceFileInformation result, String statusMessage) {
+        Path file = getFile(key);
+        try {
+            // written atomically, so concurrent runs never read a partial entry
+            IOUtils.writeAtomically(file, stream -> {
+                try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(stream)))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(FORMAT_VERSION);
+                    out.writeUTF(key);
+                    writeString(out, statusMessage);
+
+                    VersionedIdentifier identifier = result.getIdentifier();
+                    out.writeBoolean(identifier != null);
+                    if (identifier != null) {
+                        writeString(out, identifier.getSystem());
+                        writeString(out, identifier.getId());
+                        writeString(out, identifier.getVersion());
+                    }
+                    writeBytes(out, result.getElm());
+                    writeBytes(out, result.getJsonElm());
+
+                    out.writeInt(result.getErrors().size());
+                    for (ValidationMessage error : result.getErrors()) {
+                        writeEnum(out, error.getSource());
+                        writeEnum(out, error.getType());
+                        out.writeInt(error.getLine());
+                        out.writeInt(error.getCol());
+                        writeString(out, error.getLocation());
+                        writeString(out, error.getMessage());
+                        writeEnum(out, error.getLevel());
+                    }
+
+                    Library requirements = new Library();
+                    requirements.setRelatedArtifact(new ArrayList<>(result.getRelatedArtifacts()));
+                    requirements.setParameter(new ArrayList<>(result.getParameters()));
+                    requirements.setDataRequirement(new ArrayList<>(result.getDataRequirements()));
+                    writeBytes(out, compose(requirements));
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Unable to cache ELM {}: {}", file, e.getMessage());
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public String getSummary() {
+        return String.format("ELM cache: %d hit(s), %d miss(es)", getHits(), getMisses());
+    }
+
+    private Path getFile(String key) {
+        return directory.resolve(key + EXTENSION);
+    }
+
+    private static byte[] compose(Resource resource) throws IOException {
+        return new JsonParser().composeBytes(resource);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        // writeUTF is limited to 64K, translator messages and locations are not
+        writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes == null ? -1 : bytes.length);
+        if (bytes != null) {
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeEnum(DataOutputStream out, Enum<?> value) throws IOException {
+        writeString(out, value == null ? null : value.name());
+    }
+
+    private static <E extends Enum<E>> E readEnum(DataInputStream in, Class<E> type) throws IOException {
+        String name = readString(in);
+        return name == null ? null : Enum.valueOf(type, name);
+    }
+}
@@ -0,0 +1,374 @@
+package org.opencds.cqf.tooling.processor;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persistent content-hash cache used to make IG refresh incremental.
+ *
+ * Each cached artifact is recorded under a category and key (the source path, relative to the IG root) together
+ * with a fingerprint of everything that went into producing it, and the hashes of the files that were written.
+ * On the next run an artifact is considered up to date only if its fingerprint is unchanged and every recorded
+ * output still exists with the recorded hash, so hand edits or deleted outputs always force a rebuild.
+ *
+ * The cache is stored at [rootDir]/.cqf-tooling/build-cache.json. Changing the tooling fingerprint (tooling
+ * version or the options that affect generated content) invalidates every entry.
+ */
+public class IGBuildCache {
+    private static final Logger logger = LoggerFactory.getLogger(IGBuildCache.class);
+
+    public static final String CACHE_DIRECTORY = ".cqf-tooling";
+    public static final String CACHE_FILE = "build-cache.json";
+    private static final int FORMAT_VERSION = 1;
+
+    public static final String CQL = "cql";
+    public static final String MEASURE = "Measure";
+    public static final String PLAN_DEFINITION = "PlanDefinition";
+    public static final String BUNDLE = "bundle";
+
+    private static class Entry {
+        String fingerprint;
+        Map<String, String> outputs = new TreeMap<>();
+    }
+
+    private static class Snapshot {
+        int formatVersion;
+        String toolingFingerprint;
+        Map<String, Entry> entries = new TreeMap<>();
+    }
+
+    private final Path rootPath;
+    private final File cacheFile;
+    private final String toolingFingerprint;
+    private final Map<String, Entry> previousEntries;
+    private final Map<String, Entry> currentEntries = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> hits = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> misses = new ConcurrentHashMap<>();
+    private final Map<String, String> cqlFingerprints = new ConcurrentHashMap<>();
+    private final Map<String, String> valueSetFiles = new ConcurrentHashMap<>();
+
+    private IGBuildCache(String rootDir, String toolingFingerprint, Map<String, Entry> previousEntries) {
+        this.rootPath = Paths.get(rootDir).toAbsolutePath().normalize();
+        this.cacheFile = rootPath.resolve(CACHE_DIRECTORY).resolve(CACHE_FILE).toFile();
+        this.toolingFingerprint = toolingFingerprint;
+        this.previousEntries = previousEntries;
+    }
+
+    /**
+     * Loads the build cache for the IG at rootDir. A missing, unreadable, or stale (different tooling fingerprint)
+     * cache file results in an empty cache, so every artifact is rebuilt.
+     *
+     * @param rootDir            the IG root directory
+     * @param toolingFingerprint fingerprint of the tooling version and options that affect generated content
+     */
+    public static IGBuildCache load(String rootDir, String toolingFingerprint) {
+        var cacheFile = Paths.get(rootDir).resolve(CACHE_DIRECTORY).resolve(CACHE_FILE).toFile();
+        Map<String, Entry> entries = new TreeMap<>();
+        if (cacheFile.exists()) {
+            try (Reader reader = Files.newBufferedReader(cacheFile.toPath(), StandardCharsets.UTF_8)) {
+                var snapshot = new Gson().fromJson(reader, Snapshot.class);
+                if (snapshot != null && snapshot.formatVersion == FORMAT_VERSION
+                        && toolingFingerprint.equals(snapshot.toolingFingerprint) && snapshot.entries != null) {
+                    entries = snapshot.entries;
+                } else {
+                    logger.info("Build cache at {} was produced with different options or tooling, rebuilding all content", cacheFile);
+                }
+            } catch (IOException | JsonParseException e) {
+                logger.warn("Unable to read build cache at {}, rebuilding all content: {}", cacheFile, e.getMessage());
+            }
+        }
+        return new IGBuildCache(rootDir, toolingFingerprint, entries);
+    }
+
+    /**
+     * Returns true if the artifact identified by category and key was produced by a previous run from the same
+     * fingerprint and its outputs are untouched. Every call counts as a cache hit or miss for the category.
+     */
+    public boolean isUpToDate(String category, String key, String fingerprint) {
+        var cacheKey = cacheKey(category, key);
+        var entry = previousEntries.get(cacheKey);
+        if (fingerprint != null && entry != null && fingerprint.equals(entry.fingerprint) && outputsUnchanged(entry)) {
+            currentEntries.put(cacheKey, entry);
+            hits.computeIfAbsent(category, c -> new AtomicInteger()).incrementAndGet();
+            return true;
+        }
+        misses.computeIfAbsent(category, c -> new AtomicInteger()).incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Records the artifact identified by category and key as built from fingerprint, producing the given output files.
+     */
+    public void record(String category, String key, String fingerprint, Collection<String> outputPaths) {
+        if (fingerprint == null) {
+            return;
+        }
+        var entry = new Entry();
+        entry.fingerprint = fingerprint;
+        for (var outputPath : outputPaths) {
+            var file = new File(outputPath);
+            if (file.isFile()) {
+                entry.outputs.put(relativize(file.getAbsolutePath()), hashFile(file));
+            }
+        }
+        currentEntries.put(cacheKey(category, key), entry);
+    }
+
+    /**
+     * Records the artifact identified by category and key, using every file below outputDirectory as its output.
+     */
+    public void recordDirectory(String category, String key, String fingerprint, String outputDirectory) {
+        List<String> outputs = new ArrayList<>();
+        var directory = Paths.get(outputDirectory);
+        if (Files.isDirectory(directory)) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                outputs = files.filter(Files::isRegularFile).map(Path::toString).collect(Collectors.toList());
+            } catch (IOException e) {
+                logger.warn("Unable to list outputs in {}: {}", outputDirectory, e.getMessage());
+                return;
+            }
+        }
+        record(category, key, fingerprint, outputs);
+    }
+
+    /**
+     * Writes the cache back to disk. Entries from previous runs that were not revisited are kept as long as their
+     * source still exists, so that refreshing a subset of the IG does not invalidate the rest.
+     */
+    public synchronized void save() {
+        var snapshot = new Snapshot();
+        snapshot.formatVersion = FORMAT_VERSION;
+        snapshot.toolingFingerprint = toolingFingerprint;
+        for (var previous : previousEntries.entrySet()) {
+            var key = previous.getKey();
+            if (rootPath.resolve(key.substring(key.indexOf(':') + 1)).toFile().exists()) {
+                snapshot.entries.put(key, previous.getValue());
+            }
+        }
+        snapshot.entries.putAll(currentEntries);
+
+        try {
+            Files.createDirectories(cacheFile.getParentFile().toPath());
+            var tempFile = new File(cacheFile.getParentFile(), CACHE_FILE + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+                new GsonBuilder().setPrettyPrinting().create().toJson(snapshot, writer);
+            }
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Unable to write build cache to {}: {}", cacheFile, e.getMessage());
+        }
+    }
+
+    /**
+     * Registers the files below the given directories as candidate ValueSet sources. ValueSet references in CQL
+     * are matched to files by the last segment of the canonical (usually the OID or id), so no parsing is needed.
+     */
+    public void indexValueSets(Collection<String> directories) {
+        for (var directory : directories) {
+            var path = Paths.get(directory);
+            if (!Files.isDirectory(path)) {
+                continue;
+            }
+            try (Stream<Path> files = Files.walk(path)) {
+                files.filter(Files::isRegularFile).forEach(file -> {
+                    var baseName = FilenameUtils.getBaseName(file.toString());
+                    if (baseName.toLowerCase().startsWith("valueset-")) {
+                        baseName = baseName.substring("valueset-".length());
+                    }
+                    valueSetFiles.putIfAbsent(baseName, file.toString());
+                });
+            } catch (IOException e) {
+                logger.warn("Unable to index ValueSets in {}: {}", directory, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Computes the fingerprint of a CQL source file: its content, the cql-options.json of its folder, the
+     * fingerprints of any includes that resolve to files in the same folder (transitively), and the content of
+     * any referenced ValueSets that resolve to local files. Results are memoized for the lifetime of the cache.
+     */
+    public String getCqlFingerprint(File cqlFile) {
+        return getCqlFingerprint(cqlFile.getAbsoluteFile(), new HashSet<>());
+    }
+
+    private String getCqlFingerprint(File cqlFile, Set<String> visiting) {
+        var path = cqlFile.getPath();
+        var cached = cqlFingerprints.get(path);
+        if (cached != null) {
+            return cached;
+        }
+        if (!visiting.add(path)) {
+            // Circular includes are a translation error, the content hash is enough to detect changes
+            return hashFile(cqlFile);
+        }
+
+        var digest = newDigest();
+        update(digest, toolingFingerprint);
+        update(digest, hashFile(cqlFile));
+        var options = new File(cqlFile.getParentFile(), "cql-options.json");
+        if (options.exists()) {
+            update(digest, hashFile(options));
+        }
+
+        try {
+            var header = CqlSourceHeader.read(cqlFile);
+            for (var include : header.getIncludes()) {
+                var includeFile = resolveInclude(cqlFile.getParentFile(), include);
+                update(digest, includeFile != null ? getCqlFingerprint(includeFile, visiting) : include.toString());
+            }
+            for (var valueSetUrl : header.getValueSetUrls()) {
+                var valueSetFile = valueSetFiles.get(valueSetUrl.substring(valueSetUrl.lastIndexOf('/') + 1));
+                update(digest, valueSetFile != null ? hashFile(new File(valueSetFile)) : valueSetUrl);
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to read CQL source {}: {}", cqlFile, e.getMessage());
+        }
+
+        var fingerprint = toHex(digest.digest());
+        cqlFingerprints.put(path, fingerprint);
+        visiting.remove(path);
+        return fingerprint;
+    }
+
+    private File resolveInclude(File folder, CqlSourceHeader.Include include) {
+        if (include.getVersion() != null) {
+            var versioned = new File(folder, include.getName() + "-" + include.getVersion() + ".cql");
+            if (versioned.exists()) {
+                return versioned.getAbsoluteFile();
+            }
+        }
+        var unversioned = new File(folder, include.getName() + ".cql");
+        return unversioned.exists() ? unversioned.getAbsoluteFile() : null;
+    }
+
+    public String getSummary() {
+        var categories = new TreeMap<String, String>();
+        var names = new HashSet<>(hits.keySet());
+        names.addAll(misses.keySet());
+        for (var category : names) {
+            categories.put(category, String.format("%s: %d hit(s), %d miss(es)", category,
+                    getHits(category), getMisses(category)));
+        }
+        if (categories.isEmpty()) {
+            return "Build cache: no artifacts checked";
+        }
+        return "Build cache: " + String.join("; ", categories.values());
+    }
+
+    public int getHits(String category) {
+        var count = hits.get(category);
+        return count == null ? 0 : count.get();
+    }
+
+    public int getMisses(String category) {
+        var count = misses.get(category);
+        return count == null ? 0 : count.get();
+    }
+
+    public String getToolingFingerprint() {
+        return toolingFingerprint;
+    }
+
+    private boolean outputsUnchanged(Entry entry) {
+        for (var output : entry.outputs.entrySet()) {
+            var file = rootPath.resolve(output.getKey()).toFile();
+            if (!file.isFile() || !output.getValue().equals(hashFile(file))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String cacheKey(String category, String key) {
+        return category + ":" + relativize(key);
+    }
+
+    private String relativize(String path) {
+        var absolute = Paths.get(path).toAbsolutePath().normalize();
+        if (absolute.startsWith(rootPath)) {
+            return FilenameUtils.separatorsToUnix(rootPath.relativize(absolute).toString());
+        }
+        return FilenameUtils.separatorsToUnix(absolute.toString());
+    }
+
+    /**
+     * Hashes the given strings, in order, into a single fingerprint. Null values are hashed as empty.
+     */
+    public static String hash(String... values) {
+        var digest = newDigest();
+        for (var value : values) {
+            update(digest, value);
+        }
+        return toHex(digest.digest());
+    }
+
+    public static String hash(Collection<String> values) {
+        return hash(values.toArray(new String[0]));
+    }
+
+    public static String hashFile(File file) {
+        var digest = newDigest();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            var buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            // A missing or unreadable file never matches a recorded hash
+            return "";
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update((value == null ? "" : value).getBytes(StandardCharsets.UTF_8));
+        // separator so that ("ab", "c") and ("a", "bc") hash differently
+        digest.update((byte) 0);
+    }
+
+    private static String toHex(byte[] bytes) {
+        var builder = new StringBuilder(bytes.length * 2);
+        for (var b : bytes) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+}
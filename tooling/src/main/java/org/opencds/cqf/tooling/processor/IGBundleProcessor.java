@@ -21,6 +21,7 @@ public class IGBundleProcessor {
     public static final String bundleFilesPathElement = "files/";
 
     private final Boolean verboseMessaging;
+    private IGBuildCache buildCache;
     LibraryProcessor libraryProcessor;
     CDSHooksProcessor cdsHooksProcessor;
 
@@ -30,6 +31,10 @@ public class IGBundleProcessor {
         this.cdsHooksProcessor = cdsHooksProcessor;
     }
 
+    public void setBuildCache(IGBuildCache buildCache) {
+        this.buildCache = buildCache;
+    }
+
     public void bundleIg(List<String> refreshedLibraryNames, String igPath, List<String> binaryPaths, Encoding encoding, Boolean includeELM,
                          Boolean includeDependencies, Boolean includeTerminology, Boolean includePatientScenarios, Boolean versioned, Boolean addBundleTimestamp,
                          FhirContext fhirContext, String fhirUri) {
@@ -38,13 +43,15 @@ public class IGBundleProcessor {
 //                igPath, binaryPaths, includeDependencies, includeTerminology,
 //                includePatientScenarios, versioned, addBundleTimestamp, fhirContext,
 //                fhirUri, encoding, verboseMessaging);
-        new PackageMeasures(igPath, fhirContext, includeDependencies, includeTerminology, includePatientScenarios, fhirUri);
+        new PackageMeasures(igPath, fhirContext, includeDependencies, includeTerminology, includePatientScenarios, fhirUri, buildCache);
 //        new PlanDefinitionBundler(this.libraryProcessor, this.cdsHooksProcessor).bundleResources(refreshedLibraryNames,
 //                igPath, binaryPaths, includeDependencies, includeTerminology,
 //                includePatientScenarios, versioned, addBundleTimestamp, fhirContext,
 //                fhirUri, encoding, verboseMessaging);
-        new PackagePlanDefinitions(igPath, fhirContext, includeDependencies, includeTerminology, includePatientScenarios, fhirUri);
-        new QuestionnaireBundler(this.libraryProcessor).bundleResources(refreshedLibraryNames,
+        new PackagePlanDefinitions(igPath, fhirContext, includeDependencies, includeTerminology, includePatientScenarios, fhirUri, buildCache);
+        var questionnaireBundler = new QuestionnaireBundler(this.libraryProcessor);
+        questionnaireBundler.setBuildCache(buildCache);
+        questionnaireBundler.bundleResources(refreshedLibraryNames,
                 igPath, binaryPaths, includeDependencies, includeTerminology,
                 includePatientScenarios, versioned, addBundleTimestamp, fhirContext,
                 fhirUri, encoding, verboseMessaging);
@@ -3,7 +3,9 @@ package org.opencds.cqf.tooling.processor;
 import ca.uhn.fhir.context.FhirContext;
 import com.google.common.base.Strings;
 import org.apache.commons.io.FilenameUtils;
+import org.cqframework.cql.cql2elm.CqlTranslator;
 import org.hl7.fhir.utilities.Utilities;
+import org.opencds.cqf.tooling.common.ThreadUtils;
 import org.opencds.cqf.tooling.library.LibraryProcessor;
 import org.opencds.cqf.tooling.measure.MeasureProcessor;
 import org.opencds.cqf.tooling.parameter.RefreshIGParameters;
@@ -99,7 +101,9 @@ public class IGProcessor extends BaseProcessor {
         var skipPackages = params.skipPackages;
 
         if (Boolean.FALSE.equals(skipPackages)) {
-            new IGBundleProcessor(params.verboseMessaging, new LibraryProcessor(), new CDSHooksProcessor()).bundleIg(
+            var bundleProcessor = new IGBundleProcessor(params.verboseMessaging, new LibraryProcessor(), new CDSHooksProcessor());
+            bundleProcessor.setBuildCache(buildCache);
+            bundleProcessor.bundleIg(
                     refreshedResourcesNames,
                     rootDir,
                     getBinaryPaths(),
@@ -113,7 +117,10 @@ public class IGProcessor extends BaseProcessor {
                     fhirContext,
                     params.fhirUri
             );
+            saveBuildCache();
         }
+        logger.info("Cache statistics: {}", IOUtils.getCacheSummary());
+        logger.info("Task timing: {}", ThreadUtils.getTimingSummary());
         //test everything
         //IGTestProcessor.testIg(IGTestParameters);
         //Publish?
@@ -144,6 +151,10 @@ public class IGProcessor extends BaseProcessor {
         var fhirContext = IGProcessor.getIgFhirContext(fhirVersion);
         IGProcessor.ensure(rootDir, params.includePatientScenarios, params.includeTerminology,
                 IOUtils.resourceDirectories);
+        initializeBuildCache(params);
+        if (params.cqlTranslationThreads != null) {
+            getCqlProcessor().setTranslationThreads(params.cqlTranslationThreads);
+        }
 
         var libraryProcessor = new LibraryProcessor();
         refreshedResourcesNames.addAll(libraryProcessor
@@ -175,6 +186,8 @@ public class IGProcessor extends BaseProcessor {
                     fhirContext, params.planDefinitionToRefreshPath, params.shouldApplySoftwareSystemStamp));
         }
 
+        saveBuildCache();
+
         if (refreshedResourcesNames.isEmpty()) {
             logger.info("No resources successfully refreshed.");
             return;
@@ -188,6 +201,50 @@ public class IGProcessor extends BaseProcessor {
         }
     }
 
+    private void initializeBuildCache(RefreshIGParameters params) {
+        if (!Boolean.TRUE.equals(params.incremental) || buildCache != null) {
+            return;
+        }
+        if (!Strings.isNullOrEmpty(params.libraryOutputPath) || !Strings.isNullOrEmpty(params.measureOutputPath)
+                || !Strings.isNullOrEmpty(params.planDefinitionOutputPath)) {
+            logger.info("Incremental refresh is not supported when writing to separate output paths, refreshing all content");
+            return;
+        }
+        buildCache = IGBuildCache.load(rootDir, getToolingFingerprint(params));
+        buildCache.indexValueSets(IOUtils.resourceDirectories);
+        getCqlProcessor().setBuildCache(buildCache);
+        getCqlProcessor().setElmCache(ElmCache.getDefault(true));
+    }
+
+    /*
+     * Any change to the tooling or translator version, or to an option that affects generated content,
+     * invalidates the whole build cache
+     */
+    private String getToolingFingerprint(RefreshIGParameters params) {
+        return IGBuildCache.hash(
+                IGProcessor.class.getPackage().getImplementationVersion(),
+                CqlTranslator.class.getPackage().getImplementationVersion(),
+                fhirVersion,
+                canonicalBase,
+                String.valueOf(params.outputEncoding),
+                String.valueOf(params.versioned),
+                String.valueOf(params.includeELM),
+                String.valueOf(params.includeDependencies),
+                String.valueOf(params.includeTerminology),
+                String.valueOf(params.includePatientScenarios),
+                String.valueOf(params.shouldApplySoftwareSystemStamp),
+                String.valueOf(params.addBundleTimestamp),
+                String.valueOf(params.includePopulationLevelDataRequirements),
+                params.updatedVersion);
+    }
+
+    private void saveBuildCache() {
+        if (buildCache != null) {
+            buildCache.save();
+            logger.info(buildCache.getSummary());
+        }
+    }
+
     public static FhirContext getIgFhirContext(String igVersion) {
         if (igVersion == null) {
             throw new IllegalArgumentException(IG_VERSION_REQUIRED);
@@ -5,21 +5,33 @@ import ca.uhn.fhir.context.FhirVersionEnum;
 import ca.uhn.fhir.context.RuntimeResourceDefinition;
 import ca.uhn.fhir.parser.IParser;
 import org.apache.commons.io.FilenameUtils;
+import org.cqframework.cql.cql2elm.CqlCompilerOptions;
 import org.hl7.fhir.Parameters;
 import org.hl7.fhir.ParametersParameter;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.opencds.cqf.tooling.common.BaseSoftwareSystemHelper;
 import org.opencds.cqf.tooling.common.SoftwareSystem;
+import org.opencds.cqf.tooling.common.ThreadUtils;
 import org.opencds.cqf.tooling.measure.MeasureTestProcessor;
 import org.opencds.cqf.tooling.parameter.TestIGParameters;
 import org.opencds.cqf.tooling.utilities.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 public class IGTestProcessor extends BaseProcessor {
@@ -68,6 +80,15 @@ public class IGTestProcessor extends BaseProcessor {
         public String getMessage() { return this.message; }
         public void setMessage(String value) { this.message = value; }
 
+        // Type of the exception the test case failed with, if any
+        private String error;
+        public String getError() { return this.error; }
+        public void setError(String value) { this.error = value; }
+
+        private long durationMillis;
+        public long getDurationMillis() { return this.durationMillis; }
+        public void setDurationMillis(long value) { this.durationMillis = value; }
+
         @Override
         public String toString() {
             StringBuilder builder = new StringBuilder();
@@ -80,7 +101,31 @@ public class IGTestProcessor extends BaseProcessor {
 
     }
 
-    private FhirContext fhirContext;
+    // The content bundle and test cases of a test artifact, shared by the workers running its test cases
+    private static class TestArtifact {
+        private final String group;
+        private final String name;
+        private final Map.Entry<String, IBaseResource> contentBundle;
+        private final ITestProcessor testProcessor;
+        private final List<SoftwareSystem> softwareSystems;
+        private final List<Map.Entry<String, IBaseResource>> testCaseBundles;
+        private final AtomicInteger remainingTestCases;
+
+        TestArtifact(String group, String name, Map.Entry<String, IBaseResource> contentBundle, ITestProcessor testProcessor,
+                List<SoftwareSystem> softwareSystems, List<Map.Entry<String, IBaseResource>> testCaseBundles) {
+            this.group = group;
+            this.name = name;
+            this.contentBundle = contentBundle;
+            this.testProcessor = testProcessor;
+            this.softwareSystems = softwareSystems;
+            this.testCaseBundles = testCaseBundles;
+            this.remainingTestCases = new AtomicInteger(testCaseBundles.size());
+        }
+    }
+
+    public static final String DEFAULT_JUNIT_REPORT_PATH = "output" + File.separator + "test-reports" + File.separator + "TEST-ig.xml";
+
+    protected FhirContext fhirContext;
 
     private IBaseResource getServerMetadata(String testServerUri) {
         IBaseResource result = null;
@@ -106,6 +151,11 @@ public class IGTestProcessor extends BaseProcessor {
     private SoftwareSystem getCqfRulerSoftwareSystem(String testServerUri) {
         SoftwareSystem softwareSystem = null;
 
+        // Without a server the test cases are evaluated locally with the CQL engine
+        if (testServerUri == null) {
+            return softwareSystem;
+        }
+
         try {
             IBaseResource resource = getServerMetadata(testServerUri);
 
@@ -186,105 +236,218 @@ public class IGTestProcessor extends BaseProcessor {
         TestCaseProcessor testCaseProcessor = new TestCaseProcessor();
         testCaseProcessor.refreshTestCases(params.testCasesPath, IOUtils.Encoding.JSON, fhirContext, verboseMessaging);
 
-        List<TestCaseResultSummary> TestResults = new ArrayList<TestCaseResultSummary>();
+        //all Test Artifact Tests Passed
+        List<SoftwareSystem> softwareSystems = new ArrayList<SoftwareSystem>() {
+            {
+                add(testTargetSoftwareSystem);
+            }
+        };
+
+        List<TestCaseResultSummary> TestResults = runTestCases(testCasesDirectory, softwareSystems, params.fhirServerUri);
+
+        List<TestCaseResultSummary> passedTests = new ArrayList<TestCaseResultSummary>();
+        List<TestCaseResultSummary> failedTests = new ArrayList<TestCaseResultSummary>();
+        for (TestCaseResultSummary result : TestResults) {
+            logger.info("TestCaseResultSummary: " + result.toString());
+
+            if (result.testPassed) {
+                passedTests.add(result);
+            } else {
+                failedTests.add(result);
+            }
+        }
+
+        logger.info("{} tests failed", failedTests.size());
+        logger.info("{} tests passed", passedTests.size());
+
+        String junitReportPath = params.junitReportPath != null ? params.junitReportPath
+                : FilenameUtils.concat(getRootDir(), DEFAULT_JUNIT_REPORT_PATH);
+        writeJUnitReport(TestResults, new File(junitReportPath));
+        logger.info("JUnit report written to {}", junitReportPath);
+    }
+
+    /**
+     * Runs the test cases of every test artifact in the test cases directory and returns their results, sorted by
+     * resource type, test artifact and test case so the results (and the report) do not depend on the order in which
+     * the workers complete them.
+     */
+    List<TestCaseResultSummary> runTestCases(File testCasesDirectory, List<SoftwareSystem> softwareSystems, String fhirServerUri) {
+        // Results are added by the workers running the test cases
+        List<TestCaseResultSummary> TestResults = Collections.synchronizedList(new ArrayList<TestCaseResultSummary>());
 
         File[] resourceTypeTestGroups = testCasesDirectory.listFiles(File::isDirectory);
         //TODO: How can we validate the set of directories here - that they're actually FHIR resources - and message when they're not. Really it doesn't matter, it can be any grouping so long as it has a corresponding path in /bundles.
 
         if (resourceTypeTestGroups != null) {
-            for (File group : resourceTypeTestGroups) {
-                logger.info("Processing {} test cases...", group.getName());
+            // Test cases run on the worker pool as the artifacts are discovered. The content bundle of an artifact is
+            // loaded once and shared read-only by all of its test cases (which also share its compiled libraries when
+            // evaluated locally); it is stamped once its last test case is done.
+            Iterator<Callable<Void>> testCaseTasks = Arrays.stream(resourceTypeTestGroups)
+                    .flatMap(group -> {
+                        logger.info("Processing {} test cases...", group.getName());
+                        File[] testArtifactNames = group.listFiles(File::isDirectory);
+                        return testArtifactNames == null ? Stream.empty() : Arrays.stream(testArtifactNames)
+                                .map(testArtifact -> loadTestArtifact(group, testArtifact, softwareSystems))
+                                .filter(Objects::nonNull);
+                    })
+                    .flatMap(testArtifact -> testArtifact.testCaseBundles.stream()
+                            .map(testCaseBundle -> (Callable<Void>) () -> {
+                                TestResults.add(runTestCase(testArtifact, testCaseBundle, fhirServerUri));
+                                if (testArtifact.remainingTestCases.decrementAndGet() == 0) {
+                                    completeTestArtifact(testArtifact);
+                                }
+                                return null;
+                            }))
+                    .iterator();
 
-                // Get set of test artifacts
-                File[] testArtifactNames = group.listFiles(File::isDirectory);
+            // Locally the evaluation is CPU bound, against a server the workers mostly wait on it
+            if (fhirServerUri == null) {
+                ThreadUtils.executeTasks("run IG test cases", testCaseTasks);
+            } else {
+                ThreadUtils.executeIoTasks("run IG test cases", testCaseTasks);
+            }
+        }
 
-                if (testArtifactNames != null) {
-                    for (File testArtifact : testArtifactNames) {
-                        logger.info("Processing test cases for {}: {}", group.getName(), testArtifact.getName());
+        TestCaseResultSummaryComparator comparator = new TestCaseResultSummaryComparator();
+        TestResults.sort(comparator);
+        return TestResults;
+    }
 
-                        // Get content bundle
-                        Map.Entry<String, IBaseResource> testArtifactContentBundleMap = getContentBundleForTestArtifact(group.getName(), testArtifact.getName());
+    private TestArtifact loadTestArtifact(File group, File testArtifact, List<SoftwareSystem> softwareSystems) {
+        logger.info("Processing test cases for {}: {}", group.getName(), testArtifact.getName());
 
-                        if ((testArtifactContentBundleMap == null) || testArtifactContentBundleMap.getValue() == null) {
-                            logger.info("No content bundle found for {}: {}", group.getName(), testArtifact.getName());
-                            logger.info("Done processing all test cases for {}: {}", group.getName(), testArtifact.getName());
-                            continue;
-                        }
+        // Get content bundle
+        Map.Entry<String, IBaseResource> testArtifactContentBundleMap = getContentBundleForTestArtifact(group.getName(), testArtifact.getName());
 
-                        ITestProcessor testProcessor = getResourceTypeTestProcessor(group.getName());
-                        List<Map.Entry<String, IBaseResource>> testCasesBundles =
-                                BundleUtils.getBundlesInDir(testArtifact.getPath(), fhirContext, false);
-
-                        for (Map.Entry<String, IBaseResource> testCaseBundleMapEntry : testCasesBundles) {
-                            IBaseResource testCaseBundle = testCaseBundleMapEntry.getValue();
-                            TestCaseResultSummary testCaseResult  = new TestCaseResultSummary(group.getName(), testArtifact.getName(),
-                                    testCaseBundle.getIdElement().toString());
-                            try {
-                                logger.info("Starting processing of test case '{}' for {}: {}", testCaseBundle.getIdElement(), group.getName(), testArtifact.getName());
-                                Parameters testResults = testProcessor.executeTest(testCaseBundle, testArtifactContentBundleMap.getValue(), params.fhirServerUri);
-
-                                Boolean testPassed = false;
-                                for (ParametersParameter param : testResults.getParameter()) {
-                                    if (param.getName().getValue().contains(MeasureTestProcessor.TestPassedKey)) {
-                                        testPassed = param.getValueBoolean().isValue();
-                                        break;
-                                    }
-                                }
-                                testCaseResult.setTestPassed(testPassed);
-                                logger.info("Done processing test case '{}' for {}: {}", testCaseBundle.getIdElement(), group.getName(), testArtifact.getName());
-                            } catch (Exception ex) {
-                                testCaseResult.setTestPassed(false);
-                                testCaseResult.setMessage(ex.getMessage());
-                                logger.error("Error: Test case '{}' for {}: {} failed with message: {}", testCaseBundle.getIdElement(), group.getName(), testArtifact.getName(), ex.getMessage());
-                            }
-                            TestResults.add(testCaseResult);
-                        }
+        if ((testArtifactContentBundleMap == null) || testArtifactContentBundleMap.getValue() == null) {
+            logger.info("No content bundle found for {}: {}", group.getName(), testArtifact.getName());
+            logger.info("Done processing all test cases for {}: {}", group.getName(), testArtifact.getName());
+            return null;
+        }
 
-                        logger.info(String.format("  Done processing all test cases for %s: %s", group.getName(), testArtifact.getName()));
-
-                        //all Test Artifact Tests Passed
-                        List<SoftwareSystem> softwareSystems = new ArrayList<SoftwareSystem>() {
-                            {
-                                add(testTargetSoftwareSystem);
-                            }
-                        };
-
-                        if ((fhirContext.getVersion().getVersion() == FhirVersionEnum.DSTU3) || (fhirContext.getVersion().getVersion() == FhirVersionEnum.R4)) {
-                            if (fhirContext.getVersion().getVersion() == FhirVersionEnum.DSTU3) {
-                                // Stamp the testContentBundle artifacts
-                                BundleUtils.stampDstu3BundleEntriesWithSoftwareSystems((org.hl7.fhir.dstu3.model.Bundle)testArtifactContentBundleMap.getValue(), softwareSystems, fhirContext, getRootDir());
-                            } else if (fhirContext.getVersion().getVersion() == FhirVersionEnum.R4) {
-                                BundleUtils.stampR4BundleEntriesWithSoftwareSystems((org.hl7.fhir.r4.model.Bundle)testArtifactContentBundleMap.getValue(), softwareSystems, fhirContext, getRootDir());
-                            }
-
-                            String bundleFilePath = testArtifactContentBundleMap.getKey();
-                            IBaseResource bundle = testArtifactContentBundleMap.getValue();
-                            IOUtils.writeResource(bundle, bundleFilePath, IOUtils.getEncoding(bundleFilePath), fhirContext);
-                        }
-                    }
+        ITestProcessor testProcessor = getResourceTypeTestProcessor(group.getName());
+        if (testProcessor == null) {
+            return null;
+        }
+
+        List<Map.Entry<String, IBaseResource>> testCasesBundles =
+                BundleUtils.getBundlesInDir(testArtifact.getPath(), fhirContext, false);
+        TestArtifact artifact = new TestArtifact(group.getName(), testArtifact.getName(), testArtifactContentBundleMap,
+                testProcessor, softwareSystems, testCasesBundles);
+        if (testCasesBundles.isEmpty()) {
+            completeTestArtifact(artifact);
+        }
+        return artifact;
+    }
+
+    private TestCaseResultSummary runTestCase(TestArtifact testArtifact, Map.Entry<String, IBaseResource> testCaseBundleMapEntry, String fhirServerUri) {
+        IBaseResource testCaseBundle = testCaseBundleMapEntry.getValue();
+        TestCaseResultSummary testCaseResult  = new TestCaseResultSummary(testArtifact.group, testArtifact.name,
+                testCaseBundle.getIdElement().toString());
+        long start = System.nanoTime();
+        try {
+            logger.info("Starting processing of test case '{}' for {}: {}", testCaseBundle.getIdElement(), testArtifact.group, testArtifact.name);
+            Parameters testResults = testArtifact.testProcessor.executeTest(testCaseBundle, testArtifact.contentBundle.getValue(), fhirServerUri);
+
+            Boolean testPassed = false;
+            for (ParametersParameter param : testResults.getParameter()) {
+                if (param.getName().getValue().contains(MeasureTestProcessor.TestPassedKey)) {
+                    testPassed = param.getValueBoolean().isValue();
+                    break;
                 }
+            }
+            testCaseResult.setTestPassed(testPassed);
+            logger.info("Done processing test case '{}' for {}: {}", testCaseBundle.getIdElement(), testArtifact.group, testArtifact.name);
+        } catch (Exception ex) {
+            testCaseResult.setTestPassed(false);
+            testCaseResult.setMessage(ex.getMessage());
+            testCaseResult.setError(ex.getClass().getName());
+            logger.error("Error: Test case '{}' for {}: {} failed with message: {}", testCaseBundle.getIdElement(), testArtifact.group, testArtifact.name, ex.getMessage());
+        }
+        testCaseResult.setDurationMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return testCaseResult;
+    }
 
-                logger.info("Done processing {} test cases", group.getName());
+    // Called once all the test cases of the artifact are done, so nothing reads the content bundle while it is stamped.
+    // Synchronized: artifacts complete on different workers, and stamping writes the shared software system Device
+    private synchronized void completeTestArtifact(TestArtifact testArtifact) {
+        logger.info(String.format("  Done processing all test cases for %s: %s", testArtifact.group, testArtifact.name));
+
+        if ((fhirContext.getVersion().getVersion() == FhirVersionEnum.DSTU3) || (fhirContext.getVersion().getVersion() == FhirVersionEnum.R4)) {
+            if (fhirContext.getVersion().getVersion() == FhirVersionEnum.DSTU3) {
+                // Stamp the testContentBundle artifacts
+                BundleUtils.stampDstu3BundleEntriesWithSoftwareSystems((org.hl7.fhir.dstu3.model.Bundle)testArtifact.contentBundle.getValue(), testArtifact.softwareSystems, fhirContext, getRootDir());
+            } else if (fhirContext.getVersion().getVersion() == FhirVersionEnum.R4) {
+                BundleUtils.stampR4BundleEntriesWithSoftwareSystems((org.hl7.fhir.r4.model.Bundle)testArtifact.contentBundle.getValue(), testArtifact.softwareSystems, fhirContext, getRootDir());
             }
+
+            String bundleFilePath = testArtifact.contentBundle.getKey();
+            IBaseResource bundle = testArtifact.contentBundle.getValue();
+            IOUtils.writeResource(bundle, bundleFilePath, IOUtils.getEncoding(bundleFilePath), fhirContext);
         }
+    }
 
-        TestCaseResultSummaryComparator comparator = new TestCaseResultSummaryComparator();
-        TestResults.sort(comparator);
+    /**
+     * Writes the results as a JUnit XML report, with a test suite per test artifact and the duration of each test case.
+     */
+    public void writeJUnitReport(List<TestCaseResultSummary> results, File reportFile) throws IOException {
+        results = new ArrayList<>(results);
+        results.sort(new TestCaseResultSummaryComparator());
+        Map<String, List<TestCaseResultSummary>> suites = new TreeMap<>();
+        for (TestCaseResultSummary result : results) {
+            suites.computeIfAbsent(result.resourceTypeGroup + "." + result.testArtifactName, name -> new ArrayList<>()).add(result);
+        }
 
-        List<TestCaseResultSummary> passedTests = new ArrayList<TestCaseResultSummary>();
-        List<TestCaseResultSummary> failedTests = new ArrayList<TestCaseResultSummary>();
-        for (TestCaseResultSummary result : TestResults) {
-            logger.info("TestCaseResultSummary: " + result.toString());
+        File reportDirectory = reportFile.getAbsoluteFile().getParentFile();
+        if (reportDirectory != null && !reportDirectory.exists() && !reportDirectory.mkdirs()) {
+            throw new IOException("Unable to create directory " + reportDirectory);
+        }
 
-            if (result.testPassed) {
-                passedTests.add(result);
-            } else {
-                failedTests.add(result);
+        try (Writer writer = Files.newBufferedWriter(reportFile.toPath(), StandardCharsets.UTF_8)) {
+            XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(writer);
+            xml.writeStartDocument("UTF-8", "1.0");
+            xml.writeStartElement("testsuites");
+            writeCounts(xml, results);
+            for (Map.Entry<String, List<TestCaseResultSummary>> suite : suites.entrySet()) {
+                xml.writeStartElement("testsuite");
+                xml.writeAttribute("name", suite.getKey());
+                writeCounts(xml, suite.getValue());
+                for (TestCaseResultSummary result : suite.getValue()) {
+                    xml.writeStartElement("testcase");
+                    xml.writeAttribute("classname", suite.getKey());
+                    xml.writeAttribute("name", result.testCaseID);
+                    xml.writeAttribute("time", toSeconds(result.durationMillis));
+                    if (!result.testPassed) {
+                        xml.writeEmptyElement(result.error != null ? "error" : "failure");
+                        xml.writeAttribute("message", result.message != null ? result.message : "Actual results did not match the expected results");
+                        if (result.error != null) {
+                            xml.writeAttribute("type", result.error);
+                        }
+                    }
+                    xml.writeEndElement();
+                }
+                xml.writeEndElement();
             }
+            xml.writeEndElement();
+            xml.writeEndDocument();
+            xml.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to write JUnit report " + reportFile, e);
         }
+    }
 
-        logger.info("{} tests failed", failedTests.size());
-        logger.info("{} tests passed", passedTests.size());
+    private static void writeCounts(XMLStreamWriter xml, List<TestCaseResultSummary> results) throws XMLStreamException {
+        long errors = results.stream().filter(result -> !result.testPassed && result.error != null).count();
+        long failures = results.stream().filter(result -> !result.testPassed && result.error == null).count();
+        long time = results.stream().mapToLong(result -> result.durationMillis).sum();
+        xml.writeAttribute("tests", Integer.toString(results.size()));
+        xml.writeAttribute("failures", Long.toString(failures));
+        xml.writeAttribute("errors", Long.toString(errors));
+        xml.writeAttribute("time", toSeconds(time));
+    }
+
+    private static String toSeconds(long millis) {
+        return String.format(Locale.ROOT, "%.3f", millis / 1000.0);
     }
 
     private Map.Entry<String, IBaseResource> getContentBundleForTestArtifact(String groupName, String testArtifactName) {
@@ -307,13 +470,22 @@ public class IGTestProcessor extends BaseProcessor {
         return contentBundlePath;
     }
 
-    private ITestProcessor getResourceTypeTestProcessor(String resourceTypeName) {
+    // Test cases evaluated locally compile the content libraries with the cql-options of the IG
+    private CqlCompilerOptions getCqlCompilerOptions() {
+        List<String> binaryPaths = getBinaryPaths();
+        if (binaryPaths == null || binaryPaths.isEmpty()) {
+            return null;
+        }
+        return ResourceUtils.getTranslatorOptions(binaryPaths.get(0)).getCqlCompilerOptions();
+    }
+
+    protected ITestProcessor getResourceTypeTestProcessor(String resourceTypeName) {
         ITestProcessor testProcessor = null;
         String loweredResourceTypeName = resourceTypeName.toLowerCase();
 
         switch(loweredResourceTypeName) {
             case "measure":
-                testProcessor = new MeasureTestProcessor(fhirContext);
+                testProcessor = new MeasureTestProcessor(fhirContext, getCqlCompilerOptions());
                 break;
             default:
                 // Currently unsupported/undocumented
@@ -26,4 +26,6 @@ public interface IProcessorContext {
     CqlProcessor getCqlProcessor();
 
     Boolean getVerboseMessaging();
+
+    IGBuildCache getBuildCache();
 }
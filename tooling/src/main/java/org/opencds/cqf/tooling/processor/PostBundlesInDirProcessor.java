@@ -5,6 +5,7 @@ import java.util.Map;
 
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.opencds.cqf.tooling.parameter.PostBundlesInDirParameters;
+import org.opencds.cqf.tooling.utilities.BatchBundleUploader;
 import org.opencds.cqf.tooling.utilities.BundleUtils;
 import org.opencds.cqf.tooling.utilities.HttpClientUtils;
 import org.opencds.cqf.tooling.utilities.IOUtils.Encoding;
@@ -61,6 +62,14 @@ public class PostBundlesInDirProcessor {
         FhirContext fhirContext = getFhirContext(fhirVersion);
 
         List<Map.Entry<String, IBaseResource>> resources = BundleUtils.getBundlesInDir(params.directoryPath, fhirContext);
+        if (params.batchType != null && fhirUri != null && !fhirUri.equals("")) {
+            BatchBundleUploader uploader = new BatchBundleUploader(fhirContext, encoding, params.batchType,
+                    params.batchEntries != null ? params.batchEntries : BatchBundleUploader.DEFAULT_MAX_ENTRIES,
+                    params.batchBytes != null ? params.batchBytes : BatchBundleUploader.DEFAULT_MAX_BYTES);
+            resources.forEach(entry -> uploader.add(entry.getValue()));
+            uploader.upload(fhirUri);
+            return;
+        }
         resources.forEach(entry -> postBundleToFhirUri(fhirUri, encoding, fhirContext, entry.getValue()));
 
         if (HttpClientUtils.hasPostTasksInQueue()){
@@ -186,13 +186,12 @@ public class TestCaseProcessor {
                             }
 
                             // If the resource is a transaction bundle then don't bundle it again otherwise do
-                            Object bundle;
                             if ((resources.size() == 1) && (BundleUtils.resourceIsABundle(resources.get(0)))) {
-                                bundle = processTestBundle(fileId, resources.get(0), fhirContext, testArtifactPath, testCasePath);
+                                Object bundle = processTestBundle(fileId, resources.get(0), fhirContext, testArtifactPath, testCasePath);
+                                IOUtils.writeBundle(bundle, testArtifactPath, encoding, fhirContext);
                             } else {
-                                bundle = BundleUtils.bundleArtifacts(fileId, resources, fhirContext, false);
+                                BundleUtils.writeBundleArtifacts(fileId, resources, fhirContext, false, testArtifactPath, encoding, null);
                             }
-                            IOUtils.writeBundle(bundle, testArtifactPath, encoding, fhirContext);
 
                         } catch (Exception e) {
                             testCaseRefreshFailMap.put(testCasePath, e.getMessage());
@@ -74,6 +74,10 @@ public class ValueSetsProcessor {
             
         cachedValueSets = ValueSetsProcessor.copyToUrls(allValueSets, fhirContext);
     }
+
+    public static void cleanUp() {
+        cachedValueSets = null;
+    }
     
     public static String getId(String baseId) {
         return "valuesets-" + baseId;
@@ -5,6 +5,7 @@ import static java.util.Arrays.asList;
 import org.opencds.cqf.tooling.parameter.PostBundlesInDirParameters;
 import org.opencds.cqf.tooling.processor.PostBundlesInDirProcessor.FHIRVersion;
 import org.opencds.cqf.tooling.utilities.ArgUtils;
+import org.opencds.cqf.tooling.utilities.BatchBundleUploader;
 import org.opencds.cqf.tooling.utilities.IOUtils.Encoding;
 
 import joptsimple.OptionParser;
@@ -21,6 +22,9 @@ public class PostBundlesInDirArgumentProcessor {
     public static final String[] FHIR_VERSION_OPTIONS = {"fv", "fhir-version"};
     public static final String[] ENCODING_OPTIONS = {"e", "encoding"};
     public static final String[] FHIR_URI_OPTIONS = {"fs", "fhir-uri"};
+    public static final String[] BATCH_TYPE_OPTIONS = {"bt", "batch-type"};
+    public static final String[] BATCH_ENTRIES_OPTIONS = {"be", "batch-entries"};
+    public static final String[] BATCH_BYTES_OPTIONS = {"bb", "batch-bytes"};
 
     @SuppressWarnings("unused")
     public OptionParser build() {
@@ -30,12 +34,18 @@ public class PostBundlesInDirArgumentProcessor {
         OptionSpecBuilder fhirVersionBuilder = parser.acceptsAll(asList(FHIR_VERSION_OPTIONS),"As of now FHIR DSTU3 and R4 are supported");
         OptionSpecBuilder encodingBuilder = parser.acceptsAll(asList(ENCODING_OPTIONS), "If omitted, output will be generated using JSON encoding.");
         OptionSpecBuilder fhirUriBuilder = parser.acceptsAll(asList(FHIR_URI_OPTIONS),"FHIR server.");
+        OptionSpecBuilder batchTypeBuilder = parser.acceptsAll(asList(BATCH_TYPE_OPTIONS),"If present, the resources in all bundles are coalesced into bundles of this type (transaction or batch), ordered so that dependencies are uploaded first. If omitted, each bundle is posted as is.");
+        OptionSpecBuilder batchEntriesBuilder = parser.acceptsAll(asList(BATCH_ENTRIES_OPTIONS),"Maximum number of entries in a coalesced bundle. Defaults to " + BatchBundleUploader.DEFAULT_MAX_ENTRIES + ".");
+        OptionSpecBuilder batchBytesBuilder = parser.acceptsAll(asList(BATCH_BYTES_OPTIONS),"Maximum encoded size, in bytes, of the resources in a coalesced bundle. Defaults to " + BatchBundleUploader.DEFAULT_MAX_BYTES + ".");
 
         OptionSpec<String> dirPath = dirPathBuilder.withRequiredArg().describedAs("path to directory containing bundle resources");
         OptionSpec<String> fhirVersion = fhirVersionBuilder.withRequiredArg().describedAs("fhir version");
         OptionSpec<String> encoding = encodingBuilder.withOptionalArg().describedAs("encoding for bundle resources"); 
         
         OptionSpec<String> fhirUri = fhirUriBuilder.withRequiredArg().describedAs("uri of fhir server"); 
+        OptionSpec<String> batchType = batchTypeBuilder.withOptionalArg().describedAs("bundle type for coalesced upload");
+        OptionSpec<String> batchEntries = batchEntriesBuilder.withRequiredArg().describedAs("maximum entries per bundle");
+        OptionSpec<String> batchBytes = batchBytesBuilder.withRequiredArg().describedAs("maximum bytes per bundle");
 
         parser.acceptsAll(asList(OPERATION_OPTIONS),"The operation to run.");
 
@@ -54,6 +64,15 @@ public class PostBundlesInDirArgumentProcessor {
         String fhirVersion = (String)options.valueOf(FHIR_VERSION_OPTIONS[0]);
         String outputEncoding = (String)options.valueOf(ENCODING_OPTIONS[0]);
         String fhirUri = (String)options.valueOf(FHIR_URI_OPTIONS[0]);
+        String batchType = null;
+        if (options.has(BATCH_TYPE_OPTIONS[0])) {
+            batchType = options.valueOf(BATCH_TYPE_OPTIONS[0]) == null ? "transaction" : ((String)options.valueOf(BATCH_TYPE_OPTIONS[0])).toLowerCase();
+            if (!batchType.equals("transaction") && !batchType.equals("batch")) {
+                throw new IllegalArgumentException("Batch type must be transaction or batch: " + batchType);
+            }
+        }
+        Long batchEntries = parsePositive(options, BATCH_ENTRIES_OPTIONS[0], "batch entries");
+        Long batchBytes = parsePositive(options, BATCH_BYTES_OPTIONS[0], "batch bytes");
         Encoding outputEncodingEnum = Encoding.JSON;
         if (outputEncoding != null) {
             outputEncodingEnum = Encoding.parse(outputEncoding.toLowerCase());
@@ -64,7 +83,27 @@ public class PostBundlesInDirArgumentProcessor {
         pbp.fhirVersion = FHIRVersion.parse(fhirVersion);
         pbp.encoding = outputEncodingEnum;
         pbp.fhirUri = fhirUri;
+        pbp.batchType = batchType;
+        pbp.batchEntries = batchEntries == null ? null : Math.toIntExact(batchEntries);
+        pbp.batchBytes = batchBytes;
        
         return pbp;
     }
+
+    private Long parsePositive(OptionSet options, String option, String description) {
+        String value = (String)options.valueOf(option);
+        if (value == null) {
+            return null;
+        }
+        long parsed;
+        try {
+            parsed = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number of " + description + ": " + value);
+        }
+        if (parsed < 1) {
+            throw new IllegalArgumentException("The number of " + description + " must be at least 1");
+        }
+        return parsed;
+    }
 }
\ No newline at end of file
@@ -38,6 +38,8 @@ public class RefreshIGArgumentProcessor {
     public static final String[] SHOULD_ADD_TIMESTAMP_OPTIONS = { "ts", "timestamp" };
     public static final String[] SHOULD_INCLUDE_ERRORS = { "x", "include-errors" };
     public static final String[] INCLUDE_POP_LEVEL_DATA_REQUIREMENTS_OPTIONS = { "pldr", "popDataRequirements" };
+    public static final String[] INCREMENTAL_OPTIONS = { "inc", "incremental" };
+    public static final String[] CQL_TRANSLATION_THREADS_OPTIONS = { "ct", "cql-threads" };
 
 
     @SuppressWarnings("unused")
@@ -57,6 +59,7 @@ public class RefreshIGArgumentProcessor {
         OptionSpecBuilder measureOutputPathBuilder = parser.acceptsAll(asList(MEASURE_OUTPUT_PATH_OPTIONS),"If omitted, the measures will overwrite any existing measures");
         OptionSpecBuilder shouldApplySoftwareSystemStampBuilder = parser.acceptsAll(asList(SHOULD_APPLY_SOFTWARE_SYSTEM_STAMP_OPTIONS),"Indicates whether refreshed Measure and Library resources should be stamped with the 'cqf-tooling' stamp via the crmi-softwaresystem Extension.");
         OptionSpecBuilder shouldAddTimestampBuilder = parser.acceptsAll(asList(SHOULD_ADD_TIMESTAMP_OPTIONS),"Indicates whether refreshed Bundle should attach timestamp of creation.");
+        OptionSpecBuilder cqlTranslationThreadsBuilder = parser.acceptsAll(asList(CQL_TRANSLATION_THREADS_OPTIONS),"Number of threads used to translate CQL. If present without a value, one thread per available processor is used. If omitted, CQL is translated on a single thread.");
         OptionSpecBuilder shouldVerboseMessaging = parser.acceptsAll(asList(SHOULD_APPLY_SOFTWARE_SYSTEM_STAMP_OPTIONS),"Indicates that a complete list of errors during library, measure, and test case refresh are included upon failure.");
 
         OptionSpec<String> ini = iniBuilder.withRequiredArg().describedAs("Path to the IG ini file");
@@ -71,6 +74,7 @@ public class RefreshIGArgumentProcessor {
         OptionSpec<String> measureOutputPath = measureOutputPathBuilder.withOptionalArg().describedAs("path to the output directory for updated measures");
         OptionSpec<String> shouldApplySoftwareSystemStamp = shouldApplySoftwareSystemStampBuilder.withOptionalArg().describedAs("Indicates whether refreshed Measure and Library resources should be stamped with the 'cqf-tooling' stamp via the crmi-softwaresystem Extension");
         OptionSpec<String> shouldAddTimestampOptions = shouldAddTimestampBuilder.withOptionalArg().describedAs("Indicates whether refreshed Bundle should attach timestamp of creation");
+        OptionSpec<String> cqlTranslationThreads = cqlTranslationThreadsBuilder.withOptionalArg().describedAs("number of CQL translation threads");
         OptionSpec<String> shouldVerboseMessagingOptions = shouldVerboseMessaging.withOptionalArg().describedAs("Indicates that a complete list of errors during library, measure, and test case refresh are included upon failure.");
 
 
@@ -86,6 +90,7 @@ public class RefreshIGArgumentProcessor {
         parser.acceptsAll(asList(VERSIONED_OPTIONS),"If omitted resources must be uniquely named.");
         parser.acceptsAll(asList(SHOULD_INCLUDE_ERRORS),"Specifies whether to show errors during library, measure, and test case refresh.");
         parser.acceptsAll(asList(INCLUDE_POP_LEVEL_DATA_REQUIREMENTS_OPTIONS), "If omitted, the measures will not include population-level data requirements");
+        parser.acceptsAll(asList(INCREMENTAL_OPTIONS), "If present, artifacts whose inputs are unchanged since the previous run (tracked in .cqf-tooling/build-cache.json under the root directory) are not refreshed or bundled again, and translated ELM is reused from ~/.cqf-tooling/elm-cache.");
 
         OptionSpec<Void> help = parser.acceptsAll(asList(ArgUtils.HELP_OPTIONS), "Show this help page").forHelp();
 
@@ -126,6 +131,7 @@ public class RefreshIGArgumentProcessor {
         boolean includePatientScenarios = options.has(INCLUDE_PATIENT_SCENARIOS_OPTIONS[0]);
         boolean versioned = options.has(VERSIONED_OPTIONS[0]);
         boolean includePopLevelDataRequirements = options.has(INCLUDE_POP_LEVEL_DATA_REQUIREMENTS_OPTIONS[0]);
+        boolean incremental = options.has(INCREMENTAL_OPTIONS[0]);
         String fhirUri = (String)options.valueOf(FHIR_URI_OPTIONS[0]);
         String measureToRefreshPath = (String)options.valueOf(MEASURE_TO_REFRESH_PATH[0]);
 
@@ -160,6 +166,24 @@ public class RefreshIGArgumentProcessor {
 
         boolean verboseMessaging = options.has(SHOULD_INCLUDE_ERRORS[0]);
 
+        Integer cqlTranslationThreads = null;
+        if (options.has(CQL_TRANSLATION_THREADS_OPTIONS[0])) {
+            String cqlTranslationThreadsValue = (String)options.valueOf(CQL_TRANSLATION_THREADS_OPTIONS[0]);
+            if (cqlTranslationThreadsValue == null) {
+                cqlTranslationThreads = Runtime.getRuntime().availableProcessors();
+            }
+            else {
+                try {
+                    cqlTranslationThreads = Integer.parseInt(cqlTranslationThreadsValue);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid number of CQL translation threads: " + cqlTranslationThreadsValue);
+                }
+                if (cqlTranslationThreads < 1) {
+                    throw new IllegalArgumentException("The number of CQL translation threads must be at least 1");
+                }
+            }
+        }
+
         ArrayList<String> paths = new ArrayList<>();
         if (resourcePaths != null && !resourcePaths.isEmpty()) {
             paths.addAll(resourcePaths);
@@ -191,6 +215,8 @@ public class RefreshIGArgumentProcessor {
         ip.updatedVersion = updatedVersion;
         ip.verboseMessaging = verboseMessaging;
         ip.includePopulationLevelDataRequirements = includePopLevelDataRequirements;
+        ip.incremental = incremental;
+        ip.cqlTranslationThreads = cqlTranslationThreads;
         return ip;
     }
 }
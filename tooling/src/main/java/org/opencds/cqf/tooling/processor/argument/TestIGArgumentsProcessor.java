@@ -22,6 +22,7 @@ public class TestIGArgumentsProcessor {
     public static final String[] FHIR_VERSION_OPTIONS = {"fv", "fhir-version"};
     public static final String[] TEST_CASES_PATH_OPTIONS = {"tests", "testsPath", "testCasesPath", "tp", "tcp"};
     public static final String[] FHIR_URI_OPTIONS = {"fs", "fhir-uri"};
+    public static final String[] JUNIT_REPORT_OPTIONS = {"jr", "junit-report"};
 
     @SuppressWarnings("unused")
     public OptionParser build() {
@@ -33,7 +34,8 @@ public class TestIGArgumentsProcessor {
 //        OptionSpecBuilder igCanonicalBaseBuilder = parser.acceptsAll(asList(IG_CANONICAL_BASE),"resource canonical base");
         OptionSpecBuilder fhirVersionBuilder = parser.acceptsAll(asList(FHIR_VERSION_OPTIONS),"Limited to a single version of FHIR.");
         OptionSpecBuilder testCasesPathBuilder = parser.acceptsAll(asList(TEST_CASES_PATH_OPTIONS),"Path to test cases");
-        OptionSpecBuilder fhirUriBuilder = parser.acceptsAll(asList(FHIR_URI_OPTIONS),"If omitted the final bundle will not be loaded to a FHIR server.");
+        OptionSpecBuilder fhirUriBuilder = parser.acceptsAll(asList(FHIR_URI_OPTIONS),"If omitted the test cases are evaluated locally with the CQL engine.");
+        OptionSpecBuilder junitReportBuilder = parser.acceptsAll(asList(JUNIT_REPORT_OPTIONS),"If omitted the JUnit XML report is written to output/test-reports/TEST-ig.xml under the root directory.");
 
         OptionSpec<String> ini = iniBuilder.withOptionalArg().describedAs("IG ini file");
         OptionSpec<String> rootDir = rootDirBuilder.withOptionalArg().describedAs("Root directory of the IG");
@@ -42,6 +44,7 @@ public class TestIGArgumentsProcessor {
         OptionSpec<String> fhirVersion = fhirVersionBuilder.withOptionalArg().describedAs("fhir version");
         OptionSpec<String> testCasesPath = testCasesPathBuilder.withRequiredArg().describedAs("path to the test cases");
         OptionSpec<String> fhirServerUri = fhirUriBuilder.withRequiredArg().describedAs("uri for fhir server to test on");
+        OptionSpec<String> junitReport = junitReportBuilder.withRequiredArg().describedAs("path of the JUnit XML report");
 
         parser.acceptsAll(asList(OPERATION_OPTIONS),"The operation to run.");
 
@@ -63,6 +66,7 @@ public class TestIGArgumentsProcessor {
         String fhirVersion = (String)options.valueOf(FHIR_VERSION_OPTIONS[0]);
         String testCasesPath = (String)options.valueOf(TEST_CASES_PATH_OPTIONS[0]);
         String fhirServerUri = (String)options.valueOf(FHIR_URI_OPTIONS[0]);
+        String junitReportPath = (String)options.valueOf(JUNIT_REPORT_OPTIONS[0]);
 
         TestIGParameters ip = new TestIGParameters();
         ip.ini = ini;
@@ -71,6 +75,7 @@ public class TestIGArgumentsProcessor {
 //        ip.igCanonicalBase = igCanonicalBase;
         ip.testCasesPath = testCasesPath;
         ip.fhirServerUri = fhirServerUri;
+        ip.junitReportPath = junitReportPath;
         ip.fhirContext = IGProcessor.getIgFhirContext(fhirVersion);
 
         return ip;
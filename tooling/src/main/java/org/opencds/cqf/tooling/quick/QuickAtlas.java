@@ -3,19 +3,38 @@ package org.opencds.cqf.tooling.quick;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
+import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.StructureDefinition;
+import org.opencds.cqf.tooling.modelinfo.ConformanceSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import ca.uhn.fhir.context.FhirContext;
 
 public class QuickAtlas {
 
+    private static final Logger logger = LoggerFactory.getLogger(QuickAtlas.class);
+
+    // Snapshot groups, one per source of StructureDefinitions
+    private static final String QICORE = "qicore";
+    private static final String TYPES = "types";
+    private static final String PROFILES = "profiles";
+    private static final String EXTENSIONS = "extensions";
+
     // Container for the QiCore-defined profiles (StructureDefinition.type -> StructureDefinition)
     private Map<String, StructureDefinition> qicoreProfiles = new TreeMap<>();
     public Map<String, StructureDefinition> getQicoreProfiles() {
@@ -125,26 +144,86 @@ public class QuickAtlas {
     private FhirContext context;
 
     public QuickAtlas(String qicoreDirPath, FhirContext context) throws FileNotFoundException {
+        this(qicoreDirPath, context, null);
+    }
+
+    /**
+     * Loads the QiCore and FHIR StructureDefinitions, using a snapshot of them if one is given and neither the QiCore
+     * profiles nor the FHIR definitions on the class path changed since it was written. Otherwise the definitions are
+     * parsed and the snapshot is (re)written.
+     *
+     * @param qicoreDirPath The QiCore output directory.
+     * @param context       The FHIR context.
+     * @param snapshotFile  The snapshot file to use, or null to always parse the definitions.
+     * @throws FileNotFoundException - this Exception will not be raised as written, but must be accounted for when using FileReader
+     */
+    public QuickAtlas(String qicoreDirPath, FhirContext context, Path snapshotFile) throws FileNotFoundException {
         this.qicoreDirPath = qicoreDirPath;
         this.context = context;
 
-        // first step is to read in and store all the StructureDefinitions defined by the QiCore IG
-        resolveQiCoreProfiles();
-        // second step is to read in and store all the FHIR types
-        resolveFhirTypes();
-        // third step is to read in and store all the FHIR profiles
-        resolveFhirProfiles();
-        // fourth step is to read in and store all the FHIR extensions
-        resolveFhirExtensions();
+        File[] qicoreSds = listQiCoreProfiles();
+        List<Path> sources = snapshotFile != null ? getSources(qicoreSds) : null;
+        ConformanceSnapshot snapshot = sources != null ? ConformanceSnapshot.read(context, snapshotFile, sources) : null;
+        if (snapshot != null) {
+            logger.info("Reading StructureDefinitions from snapshot {}", snapshotFile);
+        }
+        else {
+            snapshot = new ConformanceSnapshot(context);
+            readQiCoreProfiles(qicoreSds, snapshot);
+            readStructureDefinitions("profiles-types.xml", "type", TYPES, snapshot);
+            readStructureDefinitions("profiles-resources.xml", "profile", PROFILES, snapshot);
+            readStructureDefinitions("extension-definitions.xml", "extension", EXTENSIONS, snapshot);
+            if (sources != null) {
+                try {
+                    snapshot.write(snapshotFile, sources);
+                } catch (IOException e) {
+                    logger.warn("Unable to write snapshot {}: {}", snapshotFile, e.getMessage());
+                }
+            }
+        }
+
+        // first step is to store all the StructureDefinitions defined by the QiCore IG
+        resolveQiCoreProfiles(snapshot.getResources(QICORE));
+        // second step is to store all the FHIR types
+        resolveFhirTypes(snapshot.getResources(TYPES));
+        // third step is to store all the FHIR profiles
+        resolveFhirProfiles(snapshot.getResources(PROFILES));
+        // fourth step is to store all the FHIR extensions
+        resolveFhirExtensions(snapshot.getResources(EXTENSIONS));
         // fifth step is to resolve the FHIR and CQL types in the link map
         resolveLinkMaps();
     }
 
     /**
-     * Read and store all the QiCore profiles from the provided directory. Expects profile file names to start with "StructureDefinition-".
-     * @throws FileNotFoundException - this Exception will not be raised as written, but must be accounted for when using FileReader
+     * Returns the default snapshot file for the given QiCore output directory.
+     */
+    public static Path getDefaultSnapshotPath(String qicoreDirPath) {
+        return ConformanceSnapshot.getDefaultPath("quick", Collections.singletonList(Paths.get(qicoreDirPath)));
+    }
+
+    /**
+     * Returns the files the definitions are read from, or null if a class path definition is not read from a file.
      */
-    private void resolveQiCoreProfiles() throws FileNotFoundException {
+    private List<Path> getSources(File[] qicoreSds) {
+        List<Path> sources = new ArrayList<>();
+        for (File file : qicoreSds) {
+            sources.add(file.toPath());
+        }
+        for (String name : new String[] { "profiles-types.xml", "profiles-resources.xml", "extension-definitions.xml" }) {
+            URL resource = this.getClass().getResource(name);
+            Path source = ConformanceSnapshot.getSourcePath(resource);
+            if (source == null) {
+                return null;
+            }
+            sources.add(source);
+        }
+        return sources;
+    }
+
+    /**
+     * List all the QiCore profiles in the provided directory. Expects profile file names to start with "StructureDefinition-".
+     */
+    private File[] listQiCoreProfiles() {
         File qicoreOutput = new File(qicoreDirPath);
         if (!qicoreOutput.exists()) {
             throw new IllegalArgumentException("The provided qicore output directory doesn't exist.");
@@ -155,91 +234,91 @@ public class QuickAtlas {
         File[] qicoreSds = qicoreOutput.listFiles(
                 pathname -> pathname.getName().startsWith("StructureDefinition-") && pathname.getName().endsWith(".xml")
         );
-        if (qicoreSds != null) {
-            for (File file : qicoreSds) {
-                StructureDefinition sd = context.newXmlParser().parseResource(StructureDefinition.class, new FileReader(file));
-                if (sd.getType().equals("Extension")) {
-                    qicoreExtensions.put(sd.getUrl(), sd);
-                }
-                else {
-                    qicoreProfiles.put(sd.getType(), sd);
-                    qicoreUrlToType.put(sd.getUrl(), sd.getType());
-                }
+        if (qicoreSds == null) {
+            throw new IllegalArgumentException("No profiles were found in the provided QiCore directory.");
+        }
+        return qicoreSds;
+    }
+
+    private void readQiCoreProfiles(File[] qicoreSds, ConformanceSnapshot snapshot) throws FileNotFoundException {
+        for (File file : qicoreSds) {
+            snapshot.add(QICORE, context.newXmlParser().parseResource(StructureDefinition.class, new FileReader(file)));
+        }
+    }
+
+    /**
+     * Read all the StructureDefinitions in a Bundle stored in the src/main/resources/org/opencds/cqf/tooling/quick directory.
+     */
+    private void readStructureDefinitions(String name, String kind, String group, ConformanceSnapshot snapshot) {
+        InputStream is = this.getClass().getResourceAsStream(name);
+        Bundle bundle = context.newXmlParser().parseResource(Bundle.class, new InputStreamReader(is));
+        if (!bundle.hasEntry()) {
+            throw new IllegalArgumentException("Provided FHIR " + kind + " Bundle entry is empty");
+        }
+        for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+            if (entry.hasResource() && entry.getResource() instanceof StructureDefinition) {
+                snapshot.add(group, entry.getResource());
             }
         }
-        else {
-            throw new IllegalArgumentException("No profiles were found in the provided QiCore directory.");
+    }
+
+    /**
+     * Store all the QiCore profiles read from the provided directory.
+     */
+    private void resolveQiCoreProfiles(List<IBaseResource> qicoreSds) {
+        for (IBaseResource resource : qicoreSds) {
+            StructureDefinition sd = (StructureDefinition) resource;
+            if (sd.getType().equals("Extension")) {
+                qicoreExtensions.put(sd.getUrl(), sd);
+            }
+            else {
+                qicoreProfiles.put(sd.getType(), sd);
+                qicoreUrlToType.put(sd.getUrl(), sd.getType());
+            }
         }
     }
 
     /**
-     * Read and store all the FHIR types provided in the file "profile-types.xml" (obtained from http://hl7.org/fhir/definitions.xml.zip).
+     * Store all the FHIR types provided in the file "profile-types.xml" (obtained from http://hl7.org/fhir/definitions.xml.zip).
      * This file MUST be stored in the src/main/resources/org/opencds/cqf/tooling/quick directory in this project.
      * Excludes Element and BackboneElement types.
      */
-    private void resolveFhirTypes() {
-        InputStream is = this.getClass().getResourceAsStream("profiles-types.xml");
-        Bundle typeBundle = context.newXmlParser().parseResource(Bundle.class, new InputStreamReader(is));
-        if (typeBundle.hasEntry()) {
-            for (Bundle.BundleEntryComponent entry : typeBundle.getEntry()) {
-                if (entry.hasResource() && entry.getResource() instanceof StructureDefinition) {
-                    StructureDefinition sd = (StructureDefinition) entry.getResource();
-                    if (sd.getType().equals("Element") || sd.getType().equals("BackboneElement")
-                            || sd.getType().equals("Extension")) {
-                        continue;
-                    }
-
-                    fhirTypes.put(sd.getType(), sd);
-                }
+    private void resolveFhirTypes(List<IBaseResource> types) {
+        for (IBaseResource resource : types) {
+            StructureDefinition sd = (StructureDefinition) resource;
+            if (sd.getType().equals("Element") || sd.getType().equals("BackboneElement")
+                    || sd.getType().equals("Extension")) {
+                continue;
             }
-        }
-        else {
-            throw new IllegalArgumentException("Provided FHIR type Bundle entry is empty");
+
+            fhirTypes.put(sd.getType(), sd);
         }
     }
 
     /**
-     * Read and store all the FHIR profiles provided in the file "profile-resources.xml" (obtained from http://hl7.org/fhir/definitions.xml.zip).
+     * Store all the FHIR profiles provided in the file "profile-resources.xml" (obtained from http://hl7.org/fhir/definitions.xml.zip).
      * This file MUST be stored in the src/main/resources/org/opencds/cqf/tooling/quick directory in this project.
      * Excludes Resource profile.
      */
-    private void resolveFhirProfiles() {
-        InputStream is = this.getClass().getResourceAsStream("profiles-resources.xml");
-        Bundle typeBundle = context.newXmlParser().parseResource(Bundle.class, new InputStreamReader(is));
-        if (typeBundle.hasEntry()) {
-            for (Bundle.BundleEntryComponent entry : typeBundle.getEntry()) {
-                if (entry.hasResource() && entry.getResource() instanceof StructureDefinition) {
-                    StructureDefinition sd = (StructureDefinition) entry.getResource();
-                    if (sd.getType().equals("Resource")) {
-                        continue;
-                    }
-
-                    fhirProfiles.put(sd.getType(), sd);
-                }
+    private void resolveFhirProfiles(List<IBaseResource> profiles) {
+        for (IBaseResource resource : profiles) {
+            StructureDefinition sd = (StructureDefinition) resource;
+            if (sd.getType().equals("Resource")) {
+                continue;
             }
-        }
-        else {
-            throw new IllegalArgumentException("Provided FHIR profile Bundle entry is empty");
+
+            fhirProfiles.put(sd.getType(), sd);
         }
     }
 
     /**
-     * Read and store all the FHIR extensions provided in the file "extension-definitions.xml" (obtained from http://hl7.org/fhir/definitions.xml.zip).
+     * Store all the FHIR extensions provided in the file "extension-definitions.xml" (obtained from http://hl7.org/fhir/definitions.xml.zip).
      * This file MUST be stored in the src/main/resources/org/opencds/cqf/tooling/quick directory in this project.
      */
-    private void resolveFhirExtensions() {
-        InputStream is = this.getClass().getResourceAsStream("extension-definitions.xml");
-        Bundle extensionsBundle = context.newXmlParser().parseResource(Bundle.class, new InputStreamReader(is));
-        if (extensionsBundle.hasEntry()) {
-            for (Bundle.BundleEntryComponent entry : extensionsBundle.getEntry()) {
-                if (entry.hasResource() && entry.getResource() instanceof StructureDefinition) {
-                    StructureDefinition sd = (StructureDefinition) entry.getResource();
-                    fhirExtensions.put(sd.getId(), sd);
-                }
-            }
-        }
-        else {
-            throw new IllegalArgumentException("Provided FHIR extension Bundle entry is empty");
+    private void resolveFhirExtensions(List<IBaseResource> extensions) {
+        for (IBaseResource resource : extensions) {
+            StructureDefinition sd = (StructureDefinition) resource;
+            fhirExtensions.put(sd.getId(), sd);
         }
     }
 
@@ -18,6 +18,7 @@ import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.opencds.cqf.tooling.Operation;
+import org.opencds.cqf.tooling.modelinfo.ConformanceSnapshot;
 import org.opencds.cqf.tooling.utilities.IOUtils;
 
 import ca.uhn.fhir.context.FhirContext;
@@ -50,7 +51,8 @@ public class QuickPageGenerator extends Operation {
 
         // resolving and processing definitions for the operation
         try {
-            atlas = new QuickAtlas(qicoreDirPath, context);
+            atlas = new QuickAtlas(qicoreDirPath, context,
+                    ConformanceSnapshot.isEnabled() ? QuickAtlas.getDefaultSnapshotPath(qicoreDirPath) : null);
             // sixth step is to process the profiles
             processQiCoreProfiles();
             // seventh step is to build the html for the complex FHIR types
@@ -0,0 +1,383 @@
+package org.opencds.cqf.tooling.terminology;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.hl7.fhir.r4.model.ValueSet;
+
+/**
+ * A compact, read-only store of ValueSet expansions that answers membership queries directly from the (memory mapped)
+ * file, without deserializing it.
+ * <p>
+ * Every string (ValueSet keys, systems and codes) is stored once in a dictionary sorted by its UTF-8 bytes, and is
+ * referred to by its position in the dictionary. Each expansion is stored as one sorted array of code ids per system.
+ * A membership test is then a binary search of the dictionary for the ValueSet and the code, a binary search of the
+ * ValueSet index, and a binary search of the code array of each system.
+ * <p>
+ * Layout (all integers are big-endian 32-bit):
+ * <pre>
+ * header:          magic "VSDB", format version, string count, ValueSet count
+ * string offsets:  string count + 1 offsets into the string data
+ * string data:     the UTF-8 bytes of the strings, in dictionary order
+ * ValueSet index:  (key id, system count, position of the first system), sorted by key id
+ * systems:         (system id, code count, position of the codes)
+ * codes:           the sorted code ids of each system
+ * </pre>
+ * ValueSets are keyed by "url|version", and also by "url" alone for the highest version of each url.
+ */
+public class BinaryValueSetDb implements Closeable {
+
+    public static final String FILE_NAME = "valueset-db.bin";
+
+    private static final int MAGIC = 0x56534442; // "VSDB"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int VALUE_SET_ENTRY_SIZE = 12;
+    private static final int SYSTEM_ENTRY_SIZE = 12;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int stringCount;
+    private final int valueSetCount;
+    private final int stringDataPosition;
+    private final int valueSetIndexPosition;
+
+    private BinaryValueSetDb(FileChannel channel, ByteBuffer buffer) {
+        this.channel = channel;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a binary ValueSet db");
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported binary ValueSet db format version " + buffer.getInt(4));
+        }
+        this.stringCount = buffer.getInt(8);
+        this.valueSetCount = buffer.getInt(12);
+        this.stringDataPosition = HEADER_SIZE + 4 * (stringCount + 1);
+        this.valueSetIndexPosition = stringDataPosition + buffer.getInt(HEADER_SIZE + 4 * stringCount);
+    }
+
+    /**
+     * Opens the store by memory mapping the file.
+     */
+    public static BinaryValueSetDb open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new BinaryValueSetDb(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a store held in memory, e.g. one loaded from the classpath.
+     */
+    public static BinaryValueSetDb wrap(byte[] bytes) {
+        return new BinaryValueSetDb(null, ByteBuffer.wrap(bytes).asReadOnlyBuffer());
+    }
+
+    /**
+     * @return the number of ValueSet keys ("url|version" and "url") in the store
+     */
+    public int getValueSetCount() {
+        return valueSetCount;
+    }
+
+    public boolean hasValueSet(String url, String version) {
+        return findValueSet(url, version) >= 0;
+    }
+
+    /**
+     * @param url     The canonical url of the ValueSet.
+     * @param version The version of the ValueSet, or null for the highest version.
+     * @param system  The code system, or null to match the code in any system.
+     * @param code    The code.
+     * @return whether the code is in the expansion of the ValueSet
+     * @throws IllegalArgumentException if the ValueSet is not in the store
+     */
+    public boolean contains(String url, String version, String system, String code) {
+        int entry = findValueSet(url, version);
+        if (entry < 0) {
+            throw new IllegalArgumentException(String.format("Unknown ValueSet %s", version == null ? url : url + "|" + version));
+        }
+
+        int codeId = findString(code);
+        if (codeId < 0) {
+            return false;
+        }
+        int systemId = -1;
+        if (system != null) {
+            systemId = findString(system);
+            if (systemId < 0) {
+                return false;
+            }
+        }
+
+        int systemCount = buffer.getInt(entry + 4);
+        int systemPosition = buffer.getInt(entry + 8);
+        for (int i = 0; i < systemCount; i++, systemPosition += SYSTEM_ENTRY_SIZE) {
+            if (systemId >= 0 && buffer.getInt(systemPosition) != systemId) {
+                continue;
+            }
+            if (binarySearch(buffer.getInt(systemPosition + 8), buffer.getInt(systemPosition + 4), codeId) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    // Returns the position of the ValueSet index entry, or -1
+    private int findValueSet(String url, String version) {
+        int keyId = findString(version == null ? url : url + "|" + version);
+        if (keyId < 0) {
+            return -1;
+        }
+        int low = 0;
+        int high = valueSetCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int position = valueSetIndexPosition + mid * VALUE_SET_ENTRY_SIZE;
+            int midKey = buffer.getInt(position);
+            if (midKey < keyId) {
+                low = mid + 1;
+            } else if (midKey > keyId) {
+                high = mid - 1;
+            } else {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private int binarySearch(int position, int count, int value) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midValue = buffer.getInt(position + 4 * mid);
+            if (midValue < value) {
+                low = mid + 1;
+            } else if (midValue > value) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // Returns the id of the string in the dictionary, or -1
+    private int findString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = stringCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int comparison = compareString(mid, bytes);
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compareString(int id, byte[] bytes) {
+        int start = stringDataPosition + buffer.getInt(HEADER_SIZE + 4 * id);
+        int length = stringDataPosition + buffer.getInt(HEADER_SIZE + 4 * (id + 1)) - start;
+        int common = Math.min(length, bytes.length);
+        for (int i = 0; i < common; i++) {
+            int comparison = Integer.compare(buffer.get(start + i) & 0xff, bytes[i] & 0xff);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(length, bytes.length);
+    }
+
+    /**
+     * Collects ValueSet expansions and writes them in the binary format.
+     */
+    public static class Writer {
+        // ValueSet key -> system -> codes
+        private final Map<String, Map<String, TreeSet<String>>> expansions = new HashMap<>();
+        // url -> highest version
+        private final Map<String, String> latestVersions = new HashMap<>();
+
+        public Writer addValueSet(ValueSet valueSet) {
+            if (!valueSet.hasUrl()) {
+                return this;
+            }
+            Map<String, TreeSet<String>> codesBySystem = new TreeMap<>();
+            if (valueSet.hasExpansion()) {
+                addCodes(codesBySystem, valueSet.getExpansion().getContains());
+            }
+
+            String url = valueSet.getUrl();
+            String version = valueSet.hasVersion() ? valueSet.getVersion() : null;
+            if (version != null) {
+                expansions.put(url + "|" + version, codesBySystem);
+            }
+            String latest = latestVersions.get(url);
+            if (!expansions.containsKey(url) || (version != null && (latest == null || compareVersions(version, latest) > 0))) {
+                expansions.put(url, codesBySystem);
+                latestVersions.put(url, version);
+            }
+            return this;
+        }
+
+        // Compares dotted versions segment by segment, numeric segments by value (so 10.0.0 is after 9.0.0), other
+        // segments (e.g. dates) as text
+        static int compareVersions(String version1, String version2) {
+            String[] segments1 = version1.split("\\.");
+            String[] segments2 = version2.split("\\.");
+            for (int i = 0; i < Math.min(segments1.length, segments2.length); i++) {
+                String segment1 = segments1[i];
+                String segment2 = segments2[i];
+                int result;
+                if (isNumeric(segment1) && isNumeric(segment2)) {
+                    String number1 = segment1.replaceFirst("^0+(?=.)", "");
+                    String number2 = segment2.replaceFirst("^0+(?=.)", "");
+                    result = number1.length() != number2.length()
+                            ? Integer.compare(number1.length(), number2.length()) : number1.compareTo(number2);
+                } else {
+                    result = segment1.compareTo(segment2);
+                }
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return Integer.compare(segments1.length, segments2.length);
+        }
+
+        private static boolean isNumeric(String segment) {
+            return !segment.isEmpty() && segment.chars().allMatch(c -> c >= '0' && c <= '9');
+        }
+
+        private void addCodes(Map<String, TreeSet<String>> codesBySystem, List<ValueSet.ValueSetExpansionContainsComponent> containsList) {
+            for (ValueSet.ValueSetExpansionContainsComponent contains : containsList) {
+                if (contains.hasCode()) {
+                    codesBySystem.computeIfAbsent(contains.hasSystem() ? contains.getSystem() : "", system -> new TreeSet<>())
+                            .add(contains.getCode());
+                }
+                addCodes(codesBySystem, contains.getContains());
+            }
+        }
+
+        public void write(OutputStream stream) throws IOException {
+            // The dictionary, in UTF-8 byte order
+            TreeMap<byte[], Integer> dictionary = new TreeMap<>(Arrays::compareUnsigned);
+            for (Map.Entry<String, Map<String, TreeSet<String>>> expansion : expansions.entrySet()) {
+                dictionary.put(utf8(expansion.getKey()), 0);
+                for (Map.Entry<String, TreeSet<String>> system : expansion.getValue().entrySet()) {
+                    dictionary.put(utf8(system.getKey()), 0);
+                    for (String code : system.getValue()) {
+                        dictionary.put(utf8(code), 0);
+                    }
+                }
+            }
+            Map<String, Integer> ids = new HashMap<>();
+            int nextId = 0;
+            for (Map.Entry<byte[], Integer> entry : dictionary.entrySet()) {
+                entry.setValue(nextId);
+                ids.put(new String(entry.getKey(), StandardCharsets.UTF_8), nextId++);
+            }
+
+            int stringDataLength = 0;
+            for (byte[] bytes : dictionary.keySet()) {
+                stringDataLength += bytes.length;
+            }
+            int valueSetIndexPosition = HEADER_SIZE + 4 * (dictionary.size() + 1) + stringDataLength;
+
+            // ValueSets in key id order, with their systems and sorted code ids
+            TreeMap<Integer, Map<String, TreeSet<String>>> valueSets = new TreeMap<>();
+            expansions.forEach((key, codesBySystem) -> valueSets.put(ids.get(key), codesBySystem));
+            int systemsPosition = valueSetIndexPosition + VALUE_SET_ENTRY_SIZE * valueSets.size();
+            int systemCount = 0;
+            for (Map<String, TreeSet<String>> codesBySystem : valueSets.values()) {
+                systemCount += codesBySystem.size();
+            }
+            int codesPosition = systemsPosition + SYSTEM_ENTRY_SIZE * systemCount;
+
+            ByteArrayOutputStream systems = new ByteArrayOutputStream();
+            ByteArrayOutputStream codes = new ByteArrayOutputStream();
+            DataOutputStream systemsOut = new DataOutputStream(systems);
+            DataOutputStream codesOut = new DataOutputStream(codes);
+
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(dictionary.size());
+            out.writeInt(valueSets.size());
+            int offset = 0;
+            for (byte[] bytes : dictionary.keySet()) {
+                out.writeInt(offset);
+                offset += bytes.length;
+            }
+            out.writeInt(offset);
+            for (byte[] bytes : dictionary.keySet()) {
+                out.write(bytes);
+            }
+
+            for (Map.Entry<Integer, Map<String, TreeSet<String>>> valueSet : valueSets.entrySet()) {
+                out.writeInt(valueSet.getKey());
+                out.writeInt(valueSet.getValue().size());
+                out.writeInt(systemsPosition + systems.size());
+                for (Map.Entry<String, TreeSet<String>> system : valueSet.getValue().entrySet()) {
+                    List<Integer> codeIds = new ArrayList<>(system.getValue().size());
+                    for (String code : system.getValue()) {
+                        codeIds.add(ids.get(code));
+                    }
+                    codeIds.sort(null);
+
+                    systemsOut.writeInt(ids.get(system.getKey()));
+                    systemsOut.writeInt(codeIds.size());
+                    systemsOut.writeInt(codesPosition + codes.size());
+                    for (int codeId : codeIds) {
+                        codesOut.writeInt(codeId);
+                    }
+                }
+            }
+            systems.writeTo(out);
+            codes.writeTo(out);
+            out.flush();
+        }
+
+        public void write(Path path) throws IOException {
+            try (OutputStream stream = Files.newOutputStream(path)) {
+                write(stream);
+            }
+        }
+
+        private static byte[] utf8(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.opencds.cqf.tooling.terminology;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Paths;
 
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
@@ -20,6 +21,8 @@ public class ToJsonValueSetDbOperation extends Operation {
 
     @SuppressWarnings("unused")
     private String encoding = IOUtils.Encoding.JSON.toString();
+    // json, or binary for a memory-mappable BinaryValueSetDb
+    private String format = "json";
     private FhirContext fhirContext;
 
     public FhirContext getFhirContext() {
@@ -47,6 +50,7 @@ public class ToJsonValueSetDbOperation extends Operation {
                 case "outputpath": case "op": setOutputPath(value); break; // -outputpath (-op)
                 case "valuesetpath": case "path": case "vsp": valueSetPath = value; break; // -valuesetpath (-vsp, -path)
                 case "encoding": case "e": encoding = value.toLowerCase(); break;
+                case "format": case "f": format = value.toLowerCase(); break; // -format (-f) json | binary
                 default: throw new IllegalArgumentException("Unknown flag: " + flag);
             }
         }
@@ -55,7 +59,12 @@ public class ToJsonValueSetDbOperation extends Operation {
             throw new IllegalArgumentException("The path to the value set directory is required");
         }
 
+        if (!format.equals("json") && !format.equals("binary")) {
+            throw new IllegalArgumentException("Unknown format: " + format);
+        }
+
         JsonObject valueSetDb = new JsonObject();
+        BinaryValueSetDb.Writer binaryValueSetDb = new BinaryValueSetDb.Writer();
 
         for (File file : new File(valueSetPath).listFiles()) {
             if (file.getName().endsWith(".json") || file.getName().endsWith(".xml")) {
@@ -63,7 +72,11 @@ public class ToJsonValueSetDbOperation extends Operation {
                     IBaseResource resource = IOUtils.readResource(file.getAbsolutePath(), getFhirContext());
                     if (resource instanceof org.hl7.fhir.r4.model.ValueSet) {
                         org.hl7.fhir.r4.model.ValueSet valueSet = (ValueSet)resource;
-                        addValueSetToDb(valueSetDb, valueSet);
+                        if (format.equals("binary")) {
+                            binaryValueSetDb.addValueSet(valueSet);
+                        } else {
+                            addValueSetToDb(valueSetDb, valueSet);
+                        }
                     }
                 }
                 catch (Exception e) {
@@ -73,6 +86,16 @@ public class ToJsonValueSetDbOperation extends Operation {
             }
         }
 
+        if (format.equals("binary")) {
+            try {
+                binaryValueSetDb.write(Paths.get(getOutputPath(), BinaryValueSetDb.FILE_NAME));
+            } catch (IOException e) {
+                e.printStackTrace();
+                throw new IllegalArgumentException("Error writing ValueSet db to file: " + e.getMessage());
+            }
+            return;
+        }
+
         try {
             FileWriter fw = new FileWriter(getOutputPath() + "/valueset-db.json");
             new GsonBuilder()
@@ -0,0 +1,621 @@
+package org.opencds.cqf.tooling.terminology.fhirservice;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.hl7.fhir.CodeableConcept;
+import org.hl7.fhir.convertors.factory.VersionConvertorFactory_30_40;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.BooleanType;
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.StringType;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.hl7.fhir.r4.model.codesystems.ConceptSubsumptionOutcome;
+import org.hl7.fhir.utilities.npm.NpmPackage;
+import org.opencds.cqf.tooling.utilities.CanonicalUtils;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.util.BundleUtil;
+
+/**
+ * A TerminologyService answering from CodeSystems and ValueSets held in memory, e.g. those of the vocabulary folders
+ * of an IG and of its NPM package dependencies, so terminology operations do not need a terminology server.
+ *
+ * Each CodeSystem is indexed by code, and the transitive closure of its hierarchy (nested concepts and parent/child
+ * properties) is computed once, so subsumption tests and is-a/descendent-of filters are lookups. ValueSet expansions
+ * are computed from the compose (falling back to the stated expansion when the compose can not be computed) and
+ * cached, so membership tests are lookups as well.
+ *
+ * Resources are loaded before the service is used; the service may then be queried concurrently.
+ */
+public class LocalTerminologyService implements TerminologyService {
+    private static final Logger logger = LoggerFactory.getLogger(LocalTerminologyService.class);
+
+    private final Map<String, CodeSystemIndex> codeSystems = new HashMap<>();
+    private final Map<String, ValueSet> valueSets = new HashMap<>();
+    // Expansions by ValueSet canonical (and the system versions they were computed with)
+    private final Map<String, Expansion> expansions = new ConcurrentHashMap<>();
+
+    /**
+     * Loads the CodeSystem and ValueSet resources (including those in Bundles) of the given files and directories.
+     */
+    public static LocalTerminologyService fromPaths(FhirContext fhirContext, Collection<String> paths) {
+        LocalTerminologyService service = new LocalTerminologyService();
+        for (String path : paths) {
+            List<String> filePaths = new File(path).isDirectory() ? IOUtils.getFilePaths(path, true) : Collections.singletonList(path);
+            for (String filePath : filePaths) {
+                IBaseResource resource;
+                try {
+                    resource = IOUtils.readResource(filePath, fhirContext, true);
+                } catch (Exception e) {
+                    logger.debug("Skipping {}: {}", filePath, e.getMessage());
+                    continue;
+                }
+                if (resource instanceof IBaseBundle) {
+                    BundleUtil.toListOfResources(fhirContext, (IBaseBundle) resource).forEach(service::addResource);
+                } else if (resource != null) {
+                    service.addResource(resource);
+                }
+            }
+        }
+        return service;
+    }
+
+    public LocalTerminologyService addResource(IBaseResource resource) {
+        if (resource instanceof org.hl7.fhir.dstu3.model.CodeSystem || resource instanceof org.hl7.fhir.dstu3.model.ValueSet) {
+            resource = VersionConvertorFactory_30_40.convertResource((org.hl7.fhir.dstu3.model.Resource) resource);
+        }
+        if (resource instanceof CodeSystem) {
+            addCodeSystem((CodeSystem) resource);
+        } else if (resource instanceof ValueSet) {
+            addValueSet((ValueSet) resource);
+        }
+        return this;
+    }
+
+    public synchronized LocalTerminologyService addCodeSystem(CodeSystem codeSystem) {
+        if (!codeSystem.hasUrl()) {
+            return this;
+        }
+        CodeSystemIndex index = new CodeSystemIndex(codeSystem);
+        codeSystems.put(codeSystem.getUrl(), index);
+        if (codeSystem.hasVersion()) {
+            codeSystems.put(codeSystem.getUrl() + "|" + codeSystem.getVersion(), index);
+        }
+        expansions.clear();
+        return this;
+    }
+
+    public synchronized LocalTerminologyService addValueSet(ValueSet valueSet) {
+        if (!valueSet.hasUrl()) {
+            return this;
+        }
+        valueSets.put(valueSet.getUrl(), valueSet);
+        if (valueSet.hasVersion()) {
+            valueSets.put(valueSet.getUrl() + "|" + valueSet.getVersion(), valueSet);
+        }
+        expansions.clear();
+        return this;
+    }
+
+    /**
+     * Loads the CodeSystem and ValueSet resources of an NPM package (only R4 and STU3 packages are supported).
+     */
+    public LocalTerminologyService addPackage(NpmPackage npmPackage) {
+        FhirContext fhirContext = npmPackage.fhirVersion() != null && npmPackage.fhirVersion().startsWith("3.")
+                ? FhirContext.forCached(FhirVersionEnum.DSTU3) : FhirContext.forCached(FhirVersionEnum.R4);
+        IParser parser = fhirContext.newJsonParser();
+        try {
+            for (String file : npmPackage.listResources("CodeSystem", "ValueSet")) {
+                try (InputStream stream = npmPackage.load("package", file)) {
+                    addResource(parser.parseResource(stream));
+                } catch (Exception e) {
+                    logger.warn("Unable to load {} from package {}: {}", file, npmPackage.name(), e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to list the terminology of package {}: {}", npmPackage.name(), e.getMessage());
+        }
+        return this;
+    }
+
+    public boolean hasCodeSystem(String url) {
+        return getCodeSystemIndex(url) != null;
+    }
+
+    @Override
+    public ValueSet expand(String url) {
+        return expand(url, null);
+    }
+
+    @Override
+    public ValueSet expand(String url, Iterable<String> systemVersion) {
+        ValueSet valueSet = getValueSet(url);
+        Expansion expansion = getExpansion(url, toSystemVersions(systemVersion));
+
+        ValueSet result = new ValueSet();
+        result.setId(valueSet.getIdElement().getIdPart());
+        result.setUrl(valueSet.getUrl());
+        result.setVersion(valueSet.getVersion());
+        result.setName(valueSet.getName());
+        result.setTitle(valueSet.getTitle());
+        result.setStatus(valueSet.getStatus());
+        ValueSet.ValueSetExpansionComponent component = result.getExpansion();
+        component.setTimestamp(new Date());
+        component.setTotal(expansion.contains.size());
+        for (ValueSet.ValueSetExpansionContainsComponent contains : expansion.contains.values()) {
+            component.addContains(contains.copy());
+        }
+        return result;
+    }
+
+    @Override
+    public Parameters lookup(String code, String systemUrl) {
+        CodeSystemIndex index = getRequiredCodeSystemIndex(systemUrl);
+        CodeSystem.ConceptDefinitionComponent concept = index.concepts.get(code);
+        if (concept == null) {
+            throw new IllegalArgumentException(String.format("Code %s not found in CodeSystem %s", code, systemUrl));
+        }
+
+        Parameters parameters = new Parameters();
+        parameters.addParameter("name", index.codeSystem.hasName() ? index.codeSystem.getName() : index.codeSystem.getUrl());
+        if (index.codeSystem.hasVersion()) {
+            parameters.addParameter("version", index.codeSystem.getVersion());
+        }
+        if (concept.hasDisplay()) {
+            parameters.addParameter("display", concept.getDisplay());
+        }
+        for (String parent : index.parents.getOrDefault(code, Collections.emptySet())) {
+            parameters.addParameter().setName("property")
+                    .addPart(new Parameters.ParametersParameterComponent().setName("code").setValue(new StringType("parent")))
+                    .addPart(new Parameters.ParametersParameterComponent().setName("value").setValue(new StringType(parent)));
+        }
+        return parameters;
+    }
+
+    @Override
+    public Parameters lookup(Coding coding) {
+        return lookup(coding.getCode(), coding.getSystem());
+    }
+
+    @Override
+    public Parameters validateCodeInValueSet(String url, String code, String systemUrl, String display) {
+        Expansion expansion = getExpansion(url, Collections.emptyMap());
+        ValueSet.ValueSetExpansionContainsComponent contains = systemUrl != null
+                ? expansion.contains.get(key(systemUrl, code)) : expansion.findByCode(code);
+        if (contains == null) {
+            return validationResult(false, contains, String.format("Code %s is not in ValueSet %s", code, url));
+        }
+        return validationResult(true, contains, null);
+    }
+
+    @Override
+    public Parameters validateCodingInValueSet(String url, Coding code) {
+        return validateCodeInValueSet(url, code.getCode(), code.getSystem(), code.getDisplay());
+    }
+
+    @Override
+    public Parameters validateCodeableConceptInValueSet(String url, CodeableConcept concept) {
+        for (org.hl7.fhir.Coding coding : concept.getCoding()) {
+            Parameters result = validateCodeInValueSet(url, valueOf(coding.getCode()), valueOf(coding.getSystem()), null);
+            if (isValid(result)) {
+                return result;
+            }
+        }
+        return validationResult(false, null, String.format("None of the codings are in ValueSet %s", url));
+    }
+
+    @Override
+    public Parameters validateCodeInCodeSystem(String url, String code, String systemUrl, String display) {
+        CodeSystemIndex index = getRequiredCodeSystemIndex(url);
+        if (systemUrl != null && !systemUrl.equals(index.codeSystem.getUrl())) {
+            return validationResult(false, null, String.format("System %s does not match CodeSystem %s", systemUrl, url));
+        }
+        CodeSystem.ConceptDefinitionComponent concept = index.concepts.get(code);
+        if (concept == null) {
+            return validationResult(false, null, String.format("Code %s is not in CodeSystem %s", code, url));
+        }
+        return validationResult(true, new ValueSet.ValueSetExpansionContainsComponent().setDisplay(concept.getDisplay()), null);
+    }
+
+    @Override
+    public Parameters validateCodingInCodeSystem(String url, Coding code) {
+        return validateCodeInCodeSystem(url, code.getCode(), code.getSystem(), code.getDisplay());
+    }
+
+    @Override
+    public Parameters validateCodeableConceptInCodeSystem(String url, CodeableConcept concept) {
+        for (org.hl7.fhir.Coding coding : concept.getCoding()) {
+            Parameters result = validateCodeInCodeSystem(url, valueOf(coding.getCode()), valueOf(coding.getSystem()), null);
+            if (isValid(result)) {
+                return result;
+            }
+        }
+        return validationResult(false, null, String.format("None of the codings are in CodeSystem %s", url));
+    }
+
+    @Override
+    public ConceptSubsumptionOutcome subsumes(String codeA, String codeB, String systemUrl) {
+        CodeSystemIndex index = getRequiredCodeSystemIndex(systemUrl);
+        for (String code : new String[] { codeA, codeB }) {
+            if (!index.concepts.containsKey(code)) {
+                throw new IllegalArgumentException(String.format("Code %s not found in CodeSystem %s", code, systemUrl));
+            }
+        }
+
+        if (codeA.equals(codeB)) {
+            return ConceptSubsumptionOutcome.EQUIVALENT;
+        } else if (index.getDescendants(codeA).contains(codeB)) {
+            return ConceptSubsumptionOutcome.SUBSUMES;
+        } else if (index.getDescendants(codeB).contains(codeA)) {
+            return ConceptSubsumptionOutcome.SUBSUMEDBY;
+        }
+        return ConceptSubsumptionOutcome.NOTSUBSUMED;
+    }
+
+    @Override
+    public ConceptSubsumptionOutcome subsumes(Coding codeA, Coding codeB) {
+        if (codeA.getSystem() == null || !codeA.getSystem().equals(codeB.getSystem())) {
+            throw new IllegalArgumentException("The codings must be from the same system");
+        }
+        return subsumes(codeA.getCode(), codeB.getCode(), codeA.getSystem());
+    }
+
+    @Override
+    public IBaseResource getResource(String url) {
+        ValueSet valueSet = valueSets.get(url);
+        if (valueSet != null) {
+            return valueSet;
+        }
+        CodeSystemIndex index = codeSystems.get(url);
+        return index == null ? null : index.codeSystem;
+    }
+
+    private ValueSet getValueSet(String url) {
+        ValueSet valueSet = valueSets.get(url);
+        if (valueSet == null) {
+            throw new IllegalArgumentException(String.format("Unknown ValueSet %s", url));
+        }
+        return valueSet;
+    }
+
+    private CodeSystemIndex getCodeSystemIndex(String url) {
+        return url == null ? null : codeSystems.get(url);
+    }
+
+    private CodeSystemIndex getRequiredCodeSystemIndex(String url) {
+        CodeSystemIndex index = getCodeSystemIndex(url);
+        if (index == null) {
+            throw new IllegalArgumentException(String.format("Unknown CodeSystem %s", url));
+        }
+        return index;
+    }
+
+    private Expansion getExpansion(String url, Map<String, String> systemVersions) {
+        return getExpansion(url, systemVersions, new HashSet<>());
+    }
+
+    private Expansion getExpansion(String url, Map<String, String> systemVersions, Set<String> expanding) {
+        String cacheKey = systemVersions.isEmpty() ? url : url + systemVersions;
+        Expansion expansion = expansions.get(cacheKey);
+        if (expansion == null) {
+            if (!expanding.add(url)) {
+                throw new IllegalArgumentException(String.format("ValueSet %s includes itself", url));
+            }
+            expansion = computeExpansion(getValueSet(url), systemVersions, expanding);
+            expanding.remove(url);
+            expansions.putIfAbsent(cacheKey, expansion);
+        }
+        return expansion;
+    }
+
+    private Expansion computeExpansion(ValueSet valueSet, Map<String, String> systemVersions, Set<String> expanding) {
+        if (!valueSet.hasCompose()) {
+            if (valueSet.hasExpansion()) {
+                return Expansion.of(valueSet.getExpansion().getContains());
+            }
+            throw new IllegalArgumentException(String.format("ValueSet %s has neither a compose nor an expansion", valueSet.getUrl()));
+        }
+
+        try {
+            Expansion expansion = new Expansion();
+            for (ValueSet.ConceptSetComponent include : valueSet.getCompose().getInclude()) {
+                expansion.addAll(expandConceptSet(include, systemVersions, expanding));
+            }
+            for (ValueSet.ConceptSetComponent exclude : valueSet.getCompose().getExclude()) {
+                expansion.removeAll(expandConceptSet(exclude, systemVersions, expanding));
+            }
+            return expansion;
+        } catch (IllegalArgumentException | UnsupportedOperationException e) {
+            if (valueSet.hasExpansion()) {
+                logger.debug("Using the stated expansion of {}: {}", valueSet.getUrl(), e.getMessage());
+                return Expansion.of(valueSet.getExpansion().getContains());
+            }
+            throw e;
+        }
+    }
+
+    private Expansion expandConceptSet(ValueSet.ConceptSetComponent conceptSet, Map<String, String> systemVersions,
+            Set<String> expanding) {
+        Expansion expansion = null;
+        if (conceptSet.hasSystem()) {
+            expansion = expandSystem(conceptSet, systemVersions);
+        }
+        for (org.hl7.fhir.r4.model.CanonicalType valueSetUrl : conceptSet.getValueSet()) {
+            Expansion included = getExpansion(valueSetUrl.getValue(), systemVersions, expanding);
+            expansion = expansion == null ? Expansion.copyOf(included) : expansion.retainAll(included);
+        }
+        return expansion == null ? new Expansion() : expansion;
+    }
+
+    private Expansion expandSystem(ValueSet.ConceptSetComponent conceptSet, Map<String, String> systemVersions) {
+        String system = conceptSet.getSystem();
+        String version = conceptSet.hasVersion() ? conceptSet.getVersion() : systemVersions.get(system);
+        CodeSystemIndex index = getCodeSystemIndex(version != null ? system + "|" + version : system);
+        if (index == null && version != null) {
+            index = getCodeSystemIndex(system);
+        }
+
+        Expansion expansion = new Expansion();
+        if (conceptSet.hasConcept()) {
+            for (ValueSet.ConceptReferenceComponent concept : conceptSet.getConcept()) {
+                CodeSystem.ConceptDefinitionComponent definition = index == null ? null : index.concepts.get(concept.getCode());
+                String display = concept.hasDisplay() ? concept.getDisplay() : definition != null ? definition.getDisplay() : null;
+                expansion.add(system, version, concept.getCode(), display);
+            }
+            return expansion;
+        }
+
+        if (index == null) {
+            throw new IllegalArgumentException(String.format("Unknown CodeSystem %s", system));
+        }
+
+        Set<String> codes = null;
+        for (ValueSet.ConceptSetFilterComponent filter : conceptSet.getFilter()) {
+            Set<String> filtered = applyFilter(index, filter);
+            if (codes == null) {
+                codes = new LinkedHashSet<>(filtered);
+            } else {
+                codes.retainAll(filtered);
+            }
+        }
+        for (String code : codes != null ? codes : index.concepts.keySet()) {
+            CodeSystem.ConceptDefinitionComponent concept = index.concepts.get(code);
+            if (concept != null) {
+                expansion.add(system, index.codeSystem.getVersion(), code, concept.getDisplay());
+            }
+        }
+        return expansion;
+    }
+
+    private Set<String> applyFilter(CodeSystemIndex index, ValueSet.ConceptSetFilterComponent filter) {
+        if (!"concept".equals(filter.getProperty()) && !"code".equals(filter.getProperty())) {
+            throw new UnsupportedOperationException(String.format("Filters on property %s are not supported", filter.getProperty()));
+        }
+
+        String value = filter.getValue();
+        Set<String> codes = new LinkedHashSet<>();
+        switch (filter.getOp()) {
+            case ISA:
+                if (index.concepts.containsKey(value)) {
+                    codes.add(value);
+                }
+                codes.addAll(index.getDescendants(value));
+                return codes;
+            case DESCENDENTOF:
+                codes.addAll(index.getDescendants(value));
+                return codes;
+            case ISNOTA:
+                codes.addAll(index.concepts.keySet());
+                codes.remove(value);
+                codes.removeAll(index.getDescendants(value));
+                return codes;
+            case IN:
+                for (String code : value.split(",")) {
+                    if (index.concepts.containsKey(code.trim())) {
+                        codes.add(code.trim());
+                    }
+                }
+                return codes;
+            case NOTIN:
+                codes.addAll(index.concepts.keySet());
+                for (String code : value.split(",")) {
+                    codes.remove(code.trim());
+                }
+                return codes;
+            case EQUAL:
+                if (index.concepts.containsKey(value)) {
+                    codes.add(value);
+                }
+                return codes;
+            default:
+                throw new UnsupportedOperationException(String.format("Filter operation %s is not supported", filter.getOp().toCode()));
+        }
+    }
+
+    private static Map<String, String> toSystemVersions(Iterable<String> systemVersion) {
+        if (systemVersion == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> systemVersions = new LinkedHashMap<>();
+        for (String canonical : systemVersion) {
+            String version = CanonicalUtils.getVersion(canonical);
+            if (version != null) {
+                systemVersions.put(canonical.substring(0, canonical.lastIndexOf('|')), version);
+            }
+        }
+        return systemVersions;
+    }
+
+    private static Parameters validationResult(boolean result, ValueSet.ValueSetExpansionContainsComponent concept, String message) {
+        Parameters parameters = new Parameters();
+        parameters.addParameter().setName("result").setValue(new BooleanType(result));
+        if (concept != null && concept.hasDisplay()) {
+            parameters.addParameter("display", concept.getDisplay());
+        }
+        if (message != null) {
+            parameters.addParameter("message", message);
+        }
+        return parameters;
+    }
+
+    private static boolean isValid(Parameters result) {
+        return result.getParameter().stream()
+                .anyMatch(parameter -> "result".equals(parameter.getName()) && parameter.getValue().castToBoolean(parameter.getValue()).booleanValue());
+    }
+
+    private static String valueOf(org.hl7.fhir.Code code) {
+        return code == null ? null : code.getValue();
+    }
+
+    private static String valueOf(org.hl7.fhir.Uri uri) {
+        return uri == null ? null : uri.getValue();
+    }
+
+    private static String key(String system, String code) {
+        return system + "|" + code;
+    }
+
+    /**
+     * The concepts of a CodeSystem by code, with the transitive closure of its hierarchy
+     */
+    private static class CodeSystemIndex {
+        private final CodeSystem codeSystem;
+        private final Map<String, CodeSystem.ConceptDefinitionComponent> concepts = new LinkedHashMap<>();
+        private final Map<String, Set<String>> parents = new HashMap<>();
+        private final Map<String, Set<String>> children = new HashMap<>();
+        private final Map<String, Set<String>> descendants = new HashMap<>();
+
+        CodeSystemIndex(CodeSystem codeSystem) {
+            this.codeSystem = codeSystem;
+            indexConcepts(null, codeSystem.getConcept());
+            for (Map.Entry<String, Set<String>> entry : children.entrySet()) {
+                computeDescendants(entry.getKey(), new HashSet<>());
+            }
+        }
+
+        private void indexConcepts(String parent, List<CodeSystem.ConceptDefinitionComponent> conceptList) {
+            for (CodeSystem.ConceptDefinitionComponent concept : conceptList) {
+                concepts.put(concept.getCode(), concept);
+                if (parent != null) {
+                    addRelationship(parent, concept.getCode());
+                }
+                for (CodeSystem.ConceptPropertyComponent property : concept.getProperty()) {
+                    if (property.hasValue() && property.getValue().isPrimitive()) {
+                        if ("parent".equals(property.getCode())) {
+                            addRelationship(property.getValue().primitiveValue(), concept.getCode());
+                        } else if ("child".equals(property.getCode())) {
+                            addRelationship(concept.getCode(), property.getValue().primitiveValue());
+                        }
+                    }
+                }
+                indexConcepts(concept.getCode(), concept.getConcept());
+            }
+        }
+
+        private void addRelationship(String parent, String child) {
+            children.computeIfAbsent(parent, code -> new LinkedHashSet<>()).add(child);
+            parents.computeIfAbsent(child, code -> new LinkedHashSet<>()).add(parent);
+        }
+
+        // Hierarchies are normally acyclic, but a cycle only stops the descent rather than failing
+        private Set<String> computeDescendants(String code, Set<String> visiting) {
+            Set<String> result = descendants.get(code);
+            if (result != null) {
+                return result;
+            }
+            result = new LinkedHashSet<>();
+            if (visiting.add(code)) {
+                for (String child : children.getOrDefault(code, Collections.emptySet())) {
+                    result.add(child);
+                    result.addAll(computeDescendants(child, visiting));
+                }
+                visiting.remove(code);
+                result.remove(code);
+                descendants.put(code, Collections.unmodifiableSet(result));
+            }
+            return result;
+        }
+
+        Set<String> getDescendants(String code) {
+            return descendants.getOrDefault(code, Collections.emptySet());
+        }
+    }
+
+    /**
+     * The concepts of a ValueSet expansion by system and code
+     */
+    private static class Expansion {
+        private final Map<String, ValueSet.ValueSetExpansionContainsComponent> contains = new LinkedHashMap<>();
+        private Map<String, ValueSet.ValueSetExpansionContainsComponent> byCode;
+
+        static Expansion of(List<ValueSet.ValueSetExpansionContainsComponent> containsList) {
+            Expansion expansion = new Expansion();
+            expansion.addContains(containsList);
+            return expansion;
+        }
+
+        static Expansion copyOf(Expansion other) {
+            Expansion expansion = new Expansion();
+            expansion.contains.putAll(other.contains);
+            return expansion;
+        }
+
+        private void addContains(List<ValueSet.ValueSetExpansionContainsComponent> containsList) {
+            for (ValueSet.ValueSetExpansionContainsComponent component : containsList) {
+                if (component.hasCode()) {
+                    contains.putIfAbsent(key(component.getSystem(), component.getCode()), component);
+                }
+                addContains(component.getContains());
+            }
+        }
+
+        void add(String system, String version, String code, String display) {
+            contains.putIfAbsent(key(system, code), new ValueSet.ValueSetExpansionContainsComponent()
+                    .setSystem(system).setVersion(version).setCode(code).setDisplay(display));
+        }
+
+        void addAll(Expansion other) {
+            other.contains.forEach(contains::putIfAbsent);
+        }
+
+        void removeAll(Expansion other) {
+            contains.keySet().removeAll(other.contains.keySet());
+        }
+
+        Expansion retainAll(Expansion other) {
+            contains.keySet().retainAll(other.contains.keySet());
+            return this;
+        }
+
+        synchronized ValueSet.ValueSetExpansionContainsComponent findByCode(String code) {
+            if (byCode == null) {
+                byCode = new HashMap<>();
+                for (ValueSet.ValueSetExpansionContainsComponent component : contains.values()) {
+                    byCode.putIfAbsent(component.getCode(), component);
+                }
+            }
+            return byCode.get(code);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package org.opencds.cqf.tooling.utilities;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.cqframework.cql.cql2elm.CqlCompilerException;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.cql.exception.CqlTranslatorException;
+import org.opencds.cqf.tooling.processor.ValueSetsProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
+
+/**
+ * The dependency graph of the knowledge artifacts of an IG, built once per run (per FHIR version) and shared by the
+ * bundlers and refresh operations through the ResourceUtils dependency methods.
+ * <p>
+ * Library canonicals are resolved once, against the Library indexes of {@link IOUtils}, and ValueSet canonicals are
+ * looked up in the url index of {@link ValueSetsProcessor#getCachedValueSets(FhirContext)}. The transitive Library
+ * and terminology closure of each artifact is computed on first use and reused by every artifact that depends on it,
+ * so shared libraries such as FHIRHelpers are only walked once.
+ * <p>
+ * The graph reflects the IG as it was first read, like the IOUtils indexes it is built on. It is discarded by
+ * {@link ResourceUtils#cleanUp()}.
+ */
+public class ArtifactDependencyGraph {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArtifactDependencyGraph.class);
+
+    private static final Map<FhirVersionEnum, ArtifactDependencyGraph> graphs = new ConcurrentHashMap<>();
+
+    public static ArtifactDependencyGraph forContext(FhirContext fhirContext) {
+        return graphs.computeIfAbsent(fhirContext.getVersion().getVersion(), v -> new ArtifactDependencyGraph(fhirContext));
+    }
+
+    public static void cleanUp() {
+        graphs.clear();
+    }
+
+    private final FhirContext fhirContext;
+
+    // Keyed by resource identity, HAPI resources do not implement equals
+    private final Map<IBaseResource, Node> nodes = new ConcurrentHashMap<>();
+    private final Map<String, Optional<IBaseResource>> librariesByCanonical = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> cqlValueSetIds = new ConcurrentHashMap<>();
+
+    private ArtifactDependencyGraph(FhirContext fhirContext) {
+        this.fhirContext = fhirContext;
+    }
+
+    /**
+     * Returns the Libraries the given Library or Measure depends on, by the canonical they are referenced with.
+     *
+     * @param resource            The Library or Measure.
+     * @param includeDependencies Whether to include the dependencies of the dependencies.
+     * @param missingDependencies Receives the canonicals of the Libraries that could not be resolved.
+     * @return The Libraries by canonical.
+     */
+    public Map<String, IBaseResource> getLibraries(IBaseResource resource, boolean includeDependencies, Set<String> missingDependencies) {
+        Node node = node(resource);
+        if (includeDependencies) {
+            Closure closure = node.getClosure();
+            missingDependencies.addAll(closure.missingLibraries);
+            return new HashMap<>(closure.libraries);
+        }
+
+        Map<String, IBaseResource> libraries = new HashMap<>();
+        for (String url : node.libraryUrls) {
+            IBaseResource library = resolveLibrary(url);
+            if (library != null) {
+                libraries.putIfAbsent(url, library);
+            }
+            else {
+                missingDependencies.add(url);
+            }
+        }
+        return libraries;
+    }
+
+    /**
+     * Returns the ValueSets (and CodeSystems) the given Library or Measure depends on, by canonical.
+     *
+     * @param resource            The Library or Measure.
+     * @param includeDependencies Whether to include the terminology of the Libraries it depends on.
+     * @param missingDependencies Receives the canonicals of the terminology and Libraries that could not be resolved.
+     * @return The terminology resources by canonical.
+     */
+    public Map<String, IBaseResource> getValueSets(IBaseResource resource, boolean includeDependencies, Set<String> missingDependencies) {
+        Node node = node(resource);
+        Set<String> terminologyUrls;
+        if (includeDependencies) {
+            Closure closure = node.getClosure();
+            missingDependencies.addAll(closure.missingLibraries);
+            terminologyUrls = closure.terminologyUrls;
+        }
+        else {
+            terminologyUrls = new LinkedHashSet<>(node.terminologyUrls);
+        }
+
+        Map<String, IBaseResource> valueSets = ValueSetsProcessor.getCachedValueSets(fhirContext);
+        Map<String, IBaseResource> valueSetResources = new HashMap<>();
+        for (String url : terminologyUrls) {
+            if (valueSets.containsKey(url)) {
+                valueSetResources.put(url, valueSets.get(url));
+            }
+            else {
+                missingDependencies.add(url);
+            }
+        }
+        return valueSetResources;
+    }
+
+    /**
+     * Returns the ValueSets referenced by the given CQL library, and optionally by the CQL libraries it includes.
+     *
+     * @param cqlContentPath      The path of the CQL library.
+     * @param includeDependencies Whether to include the ValueSets of the included libraries.
+     * @param includeVersion      Whether included libraries are resolved by name and version.
+     * @return The ValueSets by canonical.
+     * @throws CqlTranslatorException If the library can not be translated or a ValueSet can not be resolved.
+     */
+    public Map<String, IBaseResource> getCqlValueSets(String cqlContentPath, boolean includeDependencies, Boolean includeVersion) throws CqlTranslatorException {
+        Set<String> valueSetIds = includeDependencies
+                ? getCqlValueSetClosure(cqlContentPath, includeVersion)
+                : new LinkedHashSet<>(ResourceUtils.getDepELMValueSetDefIDs(cqlContentPath));
+
+        Map<String, IBaseResource> valueSets = ValueSetsProcessor.getCachedValueSets(fhirContext);
+        Map<String, IBaseResource> valueSetResources = new HashMap<>();
+        List<String> missingValueSets = new ArrayList<>();
+        for (String valueSetId : valueSetIds) {
+            if (valueSets.containsKey(valueSetId)) {
+                valueSetResources.put(valueSetId, valueSets.get(valueSetId));
+            }
+            else {
+                missingValueSets.add(valueSetId + " MISSING");
+            }
+        }
+        if (!missingValueSets.isEmpty()) {
+            throw new CqlTranslatorException(missingValueSets, CqlCompilerException.ErrorSeverity.Warning);
+        }
+        return valueSetResources;
+    }
+
+    private Set<String> getCqlValueSetClosure(String cqlContentPath, Boolean includeVersion) throws CqlTranslatorException {
+        String key = cqlContentPath + "|" + Boolean.TRUE.equals(includeVersion);
+        Set<String> closure = cqlValueSetIds.get(key);
+        if (closure != null) {
+            return closure;
+        }
+
+        // CQL does not allow circular includes, so the closures of the included libraries can be reused as they are
+        closure = new LinkedHashSet<>(ResourceUtils.getDepELMValueSetDefIDs(cqlContentPath));
+        for (String dependencyPath : IOUtils.getDependencyCqlPaths(cqlContentPath, includeVersion)) {
+            closure.addAll(getCqlValueSetClosure(dependencyPath, includeVersion));
+        }
+
+        closure = Collections.unmodifiableSet(closure);
+        Set<String> existing = cqlValueSetIds.putIfAbsent(key, closure);
+        return existing != null ? existing : closure;
+    }
+
+    private Node node(IBaseResource resource) {
+        return nodes.computeIfAbsent(resource, r -> new Node(r,
+                ResourceUtils.getLibraryDependencies(r, fhirContext), ResourceUtils.getTerminologyDependencies(r, fhirContext)));
+    }
+
+    private IBaseResource resolveLibrary(String url) {
+        return librariesByCanonical.computeIfAbsent(url, this::findLibrary).orElse(null);
+    }
+
+    private Optional<IBaseResource> findLibrary(String url) {
+        IBaseResource library = IOUtils.getLibraryUrlMap(fhirContext).get(url);
+        if (library == null) {
+            var id = CanonicalUtils.getId(url);
+            var version = CanonicalUtils.getVersion(url);
+            library = IOUtils.getLibraries(fhirContext).get(id);
+            if (library != null) {
+                var libraryVersion = ResourceUtils.getVersion(library, fhirContext);
+                if (libraryVersion != null && !libraryVersion.equals(version)) {
+                    logger.warn("Mismatch library version for {}, expected {}, found {}", url, version, libraryVersion);
+                    library = null;
+                }
+            }
+        }
+        return Optional.ofNullable(library);
+    }
+
+    private class Node {
+        private final IBaseResource resource;
+        private final List<String> libraryUrls;
+        private final List<String> terminologyUrls;
+        private Closure closure;
+
+        Node(IBaseResource resource, List<String> libraryUrls, List<String> terminologyUrls) {
+            this.resource = resource;
+            this.libraryUrls = libraryUrls;
+            this.terminologyUrls = terminologyUrls;
+        }
+
+        synchronized Closure getClosure() {
+            if (closure == null) {
+                closure = computeClosure();
+            }
+            return closure;
+        }
+
+        private Closure computeClosure() {
+            Closure result = new Closure();
+            Map<IBaseResource, Boolean> visited = new IdentityHashMap<>();
+            Deque<Node> pending = new ArrayDeque<>();
+            visited.put(resource, Boolean.TRUE);
+            pending.push(this);
+            while (!pending.isEmpty()) {
+                Node current = pending.pop();
+                result.terminologyUrls.addAll(current.terminologyUrls);
+                for (String url : current.libraryUrls) {
+                    IBaseResource library = resolveLibrary(url);
+                    if (library == null) {
+                        result.missingLibraries.add(url);
+                        continue;
+                    }
+                    result.libraries.putIfAbsent(url, library);
+                    if (visited.put(library, Boolean.TRUE) == null) {
+                        pending.push(node(library));
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    private static class Closure {
+        // Libraries by the canonical they are referenced with
+        private final Map<String, IBaseResource> libraries = new LinkedHashMap<>();
+        private final Set<String> missingLibraries = new LinkedHashSet<>();
+        private final Set<String> terminologyUrls = new LinkedHashSet<>();
+    }
+}
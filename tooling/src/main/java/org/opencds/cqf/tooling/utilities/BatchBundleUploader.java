@@ -0,0 +1,216 @@
+package org.opencds.cqf.tooling.utilities;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.BundleBuilder;
+import ca.uhn.fhir.util.BundleUtil;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.instance.model.api.IBaseReference;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IIdType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Coalesces resources from many files into transaction (or batch) bundles and uploads them to a FHIR server.
+ * <p>
+ * Resources are grouped into levels so that everything a resource depends on is uploaded in an earlier level:
+ * terminology first, then Libraries, then knowledge artifacts (Measures, PlanDefinitions, ...), then everything else,
+ * with resources pushed further back when they reference (by literal reference) another resource in the upload.
+ * Each level is split into chunks of at most the configured number of entries and (approximate) encoded size, and the
+ * chunks of a level are posted concurrently through {@link HttpClientUtils}.
+ */
+public class BatchBundleUploader {
+    private static final Logger logger = LoggerFactory.getLogger(BatchBundleUploader.class);
+
+    public static final int DEFAULT_MAX_ENTRIES = 500;
+    public static final long DEFAULT_MAX_BYTES = 10L * 1024 * 1024;
+
+    private static final Map<String, Integer> RESOURCE_TYPE_LEVELS = new HashMap<>();
+    private static final int DEFAULT_LEVEL = 4;
+
+    static {
+        for (String type : new String[] { "CodeSystem", "NamingSystem", "StructureDefinition", "SearchParameter",
+                "OperationDefinition", "CapabilityStatement", "ImplementationGuide" }) {
+            RESOURCE_TYPE_LEVELS.put(type, 0);
+        }
+        RESOURCE_TYPE_LEVELS.put("ValueSet", 1);
+        RESOURCE_TYPE_LEVELS.put("ConceptMap", 1);
+        RESOURCE_TYPE_LEVELS.put("Library", 2);
+        for (String type : new String[] { "Measure", "PlanDefinition", "ActivityDefinition", "Questionnaire" }) {
+            RESOURCE_TYPE_LEVELS.put(type, 3);
+        }
+    }
+
+    private final FhirContext fhirContext;
+    private final IOUtils.Encoding encoding;
+    private final String bundleType;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    // keyed by resource type and id so that a resource found in several files is uploaded once
+    private final Map<String, IBaseResource> resources = new LinkedHashMap<>();
+    private int anonymousCount;
+
+    /**
+     * @param fhirContext The FHIR context of the resources.
+     * @param encoding    The encoding used to post the bundles.
+     * @param bundleType  Either "transaction" or "batch".
+     * @param maxEntries  The maximum number of entries in a single bundle.
+     * @param maxBytes    The maximum encoded size of the resources in a single bundle.
+     */
+    public BatchBundleUploader(FhirContext fhirContext, IOUtils.Encoding encoding, String bundleType, int maxEntries, long maxBytes) {
+        if (!"transaction".equals(bundleType) && !"batch".equals(bundleType)) {
+            throw new IllegalArgumentException("Bundle type must be transaction or batch: " + bundleType);
+        }
+        if (maxEntries < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("The maximum bundle entries and size must be positive");
+        }
+        this.fhirContext = fhirContext;
+        this.encoding = encoding;
+        this.bundleType = bundleType;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Adds a resource to the upload. The entries of a bundle are added instead of the bundle itself.
+     */
+    public void add(IBaseResource resource) {
+        if (resource == null) {
+            return;
+        }
+        if (resource instanceof IBaseBundle) {
+            for (IBaseResource entry : BundleUtil.toListOfResources(fhirContext, (IBaseBundle) resource)) {
+                add(entry);
+            }
+            return;
+        }
+        IIdType id = resource.getIdElement();
+        String key = id.hasIdPart() ? resource.fhirType() + "/" + id.getIdPart() : "#" + anonymousCount++;
+        if (resources.put(key, resource) != null) {
+            logger.debug("{} found more than once, uploading the last occurrence", key);
+        }
+    }
+
+    public int size() {
+        return resources.size();
+    }
+
+    /**
+     * @return the bundles to upload, by level; the bundles of a level only depend on resources in earlier levels
+     */
+    public List<List<IBaseBundle>> getChunks() {
+        Map<String, Integer> levels = new HashMap<>();
+        for (String key : resources.keySet()) {
+            getLevel(key, levels, new HashSet<>());
+        }
+
+        TreeMap<Integer, List<IBaseBundle>> chunksByLevel = new TreeMap<>();
+        Map<Integer, ChunkBuilder> openChunks = new HashMap<>();
+        for (Map.Entry<String, IBaseResource> entry : resources.entrySet()) {
+            int level = levels.get(entry.getKey());
+            long size = IOUtils.encodeResourceAsString(entry.getValue(), encoding, fhirContext).getBytes(StandardCharsets.UTF_8).length;
+            ChunkBuilder chunk = openChunks.get(level);
+            if (chunk != null && (chunk.entries >= maxEntries || chunk.bytes + size > maxBytes)) {
+                chunksByLevel.computeIfAbsent(level, l -> new ArrayList<>()).add(chunk.build());
+                chunk = null;
+            }
+            if (chunk == null) {
+                chunk = new ChunkBuilder();
+                openChunks.put(level, chunk);
+            }
+            chunk.add(entry.getValue(), size);
+        }
+        openChunks.forEach((level, chunk) -> chunksByLevel.computeIfAbsent(level, l -> new ArrayList<>()).add(chunk.build()));
+
+        return new ArrayList<>(chunksByLevel.values());
+    }
+
+    /**
+     * Uploads the resources to the FHIR server, one level at a time, posting the bundles of each level concurrently.
+     */
+    public void upload(String fhirUri) {
+        List<List<IBaseBundle>> chunks = getChunks();
+        int bundleCount = chunks.stream().mapToInt(List::size).sum();
+        logger.info("Uploading {} resource(s) to {} in {} {} bundle(s) over {} dependency level(s)",
+                resources.size(), fhirUri, bundleCount, bundleType, chunks.size());
+        for (int level = 0; level < chunks.size(); level++) {
+            logger.info("Uploading level {} of {} ({} bundle(s))", level + 1, chunks.size(), chunks.get(level).size());
+            for (IBaseBundle bundle : chunks.get(level)) {
+                try {
+                    HttpClientUtils.post(fhirUri, bundle, encoding, fhirContext, null);
+                } catch (IOException e) {
+                    logger.error("Error occurred for bundle {}: {}", bundle.getIdElement().getIdPart(), e.getMessage());
+                }
+            }
+            HttpClientUtils.postTaskCollection();
+        }
+    }
+
+    private int getLevel(String key, Map<String, Integer> levels, Set<String> visiting) {
+        Integer known = levels.get(key);
+        if (known != null) {
+            return known;
+        }
+        IBaseResource resource = resources.get(key);
+        int level = RESOURCE_TYPE_LEVELS.getOrDefault(resource.fhirType(), DEFAULT_LEVEL);
+        // references back into a cycle are ignored; the members of a cycle may then share a level
+        visiting.add(key);
+        for (String reference : getReferencedKeys(resource)) {
+            if (resources.containsKey(reference) && !visiting.contains(reference)) {
+                level = Math.max(level, getLevel(reference, levels, visiting) + 1);
+            }
+        }
+        visiting.remove(key);
+        levels.put(key, level);
+        return level;
+    }
+
+    private Set<String> getReferencedKeys(IBaseResource resource) {
+        Set<String> keys = new HashSet<>();
+        for (IBaseReference reference : fhirContext.newTerser().getAllPopulatedChildElementsOfType(resource, IBaseReference.class)) {
+            IIdType referenceElement = reference.getReferenceElement();
+            if (referenceElement != null && referenceElement.hasResourceType() && referenceElement.hasIdPart()) {
+                keys.add(referenceElement.getResourceType() + "/" + referenceElement.getIdPart());
+            }
+        }
+        return keys;
+    }
+
+    private class ChunkBuilder {
+        private final BundleBuilder builder = new BundleBuilder(fhirContext);
+        private int entries;
+        private long bytes;
+
+        private void add(IBaseResource resource, long size) {
+            // PUT keeps the ids of the source files and makes repeated uploads idempotent
+            if (resource.getIdElement().hasIdPart()) {
+                builder.addTransactionUpdateEntry(resource);
+            } else {
+                builder.addTransactionCreateEntry(resource);
+            }
+            entries++;
+            bytes += size;
+        }
+
+        private IBaseBundle build() {
+            // adding transaction entries resets the type, so it is set last
+            builder.setType(bundleType);
+            IBaseBundle bundle = builder.getBundle();
+            bundle.setId(UUID.randomUUID().toString());
+            return bundle;
+        }
+    }
+}
@@ -11,6 +11,8 @@ import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Resource;
 import org.opencds.cqf.tooling.common.SoftwareSystem;
 import org.opencds.cqf.tooling.common.r4.SoftwareSystemHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
@@ -22,6 +24,7 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class BundleUtils {
+    private static final Logger logger = LoggerFactory.getLogger(BundleUtils.class);
 
     private BundleUtils() {}
 
@@ -37,10 +40,7 @@ public class BundleUtils {
     @SafeVarargs
     public static Object bundleArtifacts(String id, List<IBaseResource> resources, FhirContext fhirContext, Boolean addBundleTimestamp, List<Object>... identifiers) {
         for (IBaseResource resource : resources) {
-            if (resource.getIdElement().getIdPart() == null || resource.getIdElement().getIdPart().isEmpty()) {
-                ResourceUtils.setIgId(id.replace("-bundle", "-" + UUID.randomUUID()), resource, false);
-                resource.setId(resource.getClass().getSimpleName() + "/" + resource.getIdElement().getIdPart());
-            }
+            ensureEntryId(id, resource);
         }
 
         switch (fhirContext.getVersion().getVersion()) {
@@ -56,27 +56,82 @@ public class BundleUtils {
         }
     }
 
+    /**
+     * Writes the same bundle as {@link #bundleArtifacts} to the directory at path, encoding one entry at a time as the
+     * resources are iterated instead of building and encoding the whole bundle in memory.
+     * The file is named after outputFileName, or the bundle id if that is null.
+     *
+     * @return the path of the written bundle file
+     */
+    @SafeVarargs
+    public static String writeBundleArtifacts(String id, Iterable<? extends IBaseResource> resources, FhirContext fhirContext, Boolean addBundleTimestamp,
+                                              String path, IOUtils.Encoding encoding, String outputFileName, List<Object>... identifiers) {
+        IBaseBundle shell;
+        switch (fhirContext.getVersion().getVersion()) {
+            case DSTU3:
+                shell = createStu3BundleShell(id);
+                break;
+            case R4:
+                shell = createR4BundleShell(id, identifiers != null && identifiers.length > 0 ? identifiers[0] : null, addBundleTimestamp);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown fhir version: " + fhirContext.getVersion().getVersion().getFhirVersionString());
+        }
+
+        String outputPath = IOUtils.getResourceOutputPath(shell, path, encoding, fhirContext, outputFileName);
+        try (StreamingBundleWriter writer = new StreamingBundleWriter(shell, outputPath, encoding, fhirContext, false)) {
+            for (IBaseResource resource : resources) {
+                ensureEntryId(id, resource);
+                writer.addEntry(resource);
+            }
+        } catch (IOException e) {
+            logger.error(e.getMessage());
+            throw new RuntimeException("Error writing Bundle to file: " + e.getMessage());
+        }
+        return outputPath;
+    }
 
+    private static void ensureEntryId(String bundleId, IBaseResource resource) {
+        if (resource.getIdElement().getIdPart() == null || resource.getIdElement().getIdPart().isEmpty()) {
+            ResourceUtils.setIgId(bundleId.replace("-bundle", "-" + UUID.randomUUID()), resource, false);
+            resource.setId(resource.getClass().getSimpleName() + "/" + resource.getIdElement().getIdPart());
+        }
+    }
 
     public static org.hl7.fhir.dstu3.model.Bundle bundleStu3Artifacts(String id, List<IBaseResource> resources) {
+        org.hl7.fhir.dstu3.model.Bundle bundle = createStu3BundleShell(id);
+        for (IBaseResource resource : resources) {
+            bundle.addEntry(createStu3BundleEntry(resource));
+        }
+        return bundle;
+    }
+
+    static org.hl7.fhir.dstu3.model.Bundle createStu3BundleShell(String id) {
         org.hl7.fhir.dstu3.model.Bundle bundle = new org.hl7.fhir.dstu3.model.Bundle();
         ResourceUtils.setIgId(id, bundle, false);
         bundle.setType(org.hl7.fhir.dstu3.model.Bundle.BundleType.TRANSACTION);
+        return bundle;
+    }
+
+    static org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent createStu3BundleEntry(IBaseResource resource) {
+        return new org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent()
+                .setResource((org.hl7.fhir.dstu3.model.Resource) resource)
+                .setRequest(
+                        new org.hl7.fhir.dstu3.model.Bundle.BundleEntryRequestComponent()
+                                .setMethod(org.hl7.fhir.dstu3.model.Bundle.HTTPVerb.PUT)
+                                .setUrl(((org.hl7.fhir.dstu3.model.Resource) resource).getId())
+                );
+    }
+
+    public static org.hl7.fhir.r4.model.Bundle bundleR4Artifacts(String id, List<IBaseResource> resources, List<Object> identifiers, Boolean addBundleTimestamp) {
+        org.hl7.fhir.r4.model.Bundle bundle = createR4BundleShell(id, identifiers, addBundleTimestamp);
         for (IBaseResource resource : resources) {
-            bundle.addEntry(
-                    new org.hl7.fhir.dstu3.model.Bundle.BundleEntryComponent()
-                            .setResource((org.hl7.fhir.dstu3.model.Resource) resource)
-                            .setRequest(
-                                    new org.hl7.fhir.dstu3.model.Bundle.BundleEntryRequestComponent()
-                                            .setMethod(org.hl7.fhir.dstu3.model.Bundle.HTTPVerb.PUT)
-                                            .setUrl(((org.hl7.fhir.dstu3.model.Resource) resource).getId())
-                            )
-            );
+            bundle.addEntry(createR4BundleEntry(resource));
         }
         return bundle;
     }
 
-    public static org.hl7.fhir.r4.model.Bundle bundleR4Artifacts(String id, List<IBaseResource> resources, List<Object> identifiers, Boolean addBundleTimestamp) {
+    static org.hl7.fhir.r4.model.Bundle createR4BundleShell(String id, List<Object> identifiers, Boolean addBundleTimestamp) {
         org.hl7.fhir.r4.model.Bundle bundle = new org.hl7.fhir.r4.model.Bundle();
         ResourceUtils.setIgId(id, bundle, false);
         bundle.setType(org.hl7.fhir.r4.model.Bundle.BundleType.TRANSACTION);
@@ -90,22 +145,20 @@ public class BundleUtils {
             }
             bundle.setIdentifier(identifier);
         }
-
-        for (IBaseResource resource : resources) {
-            String resourceRef = (resource.getIdElement().getResourceType() == null) ? resource.fhirType() + "/" + resource.getIdElement().getIdPart() : resource.getIdElement().getValueAsString();
-            bundle.addEntry(
-                    new org.hl7.fhir.r4.model.Bundle.BundleEntryComponent()
-                            .setResource((org.hl7.fhir.r4.model.Resource) resource)
-                            .setRequest(
-                                    new org.hl7.fhir.r4.model.Bundle.BundleEntryRequestComponent()
-                                            .setMethod(org.hl7.fhir.r4.model.Bundle.HTTPVerb.PUT)
-                                            .setUrl(resourceRef)
-                            )
-            );
-        }
         return bundle;
     }
 
+    static org.hl7.fhir.r4.model.Bundle.BundleEntryComponent createR4BundleEntry(IBaseResource resource) {
+        String resourceRef = (resource.getIdElement().getResourceType() == null) ? resource.fhirType() + "/" + resource.getIdElement().getIdPart() : resource.getIdElement().getValueAsString();
+        return new org.hl7.fhir.r4.model.Bundle.BundleEntryComponent()
+                .setResource((org.hl7.fhir.r4.model.Resource) resource)
+                .setRequest(
+                        new org.hl7.fhir.r4.model.Bundle.BundleEntryRequestComponent()
+                                .setMethod(org.hl7.fhir.r4.model.Bundle.HTTPVerb.PUT)
+                                .setUrl(resourceRef)
+                );
+    }
+
     public static List<Map.Entry<String, IBaseResource>> getBundlesInDir(String directoryPath, FhirContext fhirContext) {
         return getBundlesInDir(directoryPath, fhirContext, true);
     }
@@ -279,4 +332,17 @@ public class BundleUtils {
         return false;
 
     }
+
+    public static boolean resourceIsBatchBundle(IBaseResource inputResource) {
+        if (inputResource == null) return false;
+
+        if (inputResource instanceof org.hl7.fhir.dstu3.model.Bundle) {
+            return ((org.hl7.fhir.dstu3.model.Bundle) inputResource).getType().equals(org.hl7.fhir.dstu3.model.Bundle.BundleType.BATCH);
+
+        } else if (inputResource instanceof org.hl7.fhir.r4.model.Bundle) {
+            return ((org.hl7.fhir.r4.model.Bundle) inputResource).getType().equals(org.hl7.fhir.r4.model.Bundle.BundleType.BATCH);
+        }
+        return false;
+
+    }
 }
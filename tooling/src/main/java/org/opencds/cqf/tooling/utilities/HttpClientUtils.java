@@ -10,11 +10,14 @@ import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.slf4j.Logger;
@@ -25,10 +28,15 @@ import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
 /**
  * A utility class for collecting HTTP requests to a FHIR server and executing them collectively.
+ * <p>
+ * Collected POST calls are sent over a pool of concurrent connections (see {@link #configurePosting}), optionally
+ * rate limited, with 429 and 5xx responses retried automatically using exponential backoff.
  */
 public class HttpClientUtils {
     //60 second timeout
@@ -43,24 +51,62 @@ public class HttpClientUtils {
     private static final String ENCODING_TYPE = "Encoding Type";
     private static final String FHIR_CONTEXT = "FHIR Context";
 
-    //This is not to maintain a thread count, but rather to maintain the maximum number of POST calls that can simultaneously be waiting for a response from the server.
+    public static final String POST_CONNECTIONS_PROPERTY = "cqf-tooling.post.connections";
+    public static final String POST_RATE_LIMIT_PROPERTY = "cqf-tooling.post.requestsPerSecond";
+    public static final String POST_MAX_RETRIES_PROPERTY = "cqf-tooling.post.maxRetries";
+    public static final String POST_INTERACTIVE_PROPERTY = "cqf-tooling.post.interactive";
+
+    private static final long INITIAL_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+
+    //The maximum number of POST calls that can simultaneously be waiting for a response from the server.
     //This gives us some control over how many POSTs we're making so we don't crash the server.
-    //possible TODO:Allow users to specify this value on their own with arg passed into operation so that more robust servers can process post list faster
-    private static final int MAX_SIMULTANEOUS_POST_COUNT = 10;
+    private static int maxConnections = Integer.getInteger(POST_CONNECTIONS_PROPERTY, 10);
+    //Requests per second across all connections, 0 for no limit
+    private static double requestsPerSecond = Double.parseDouble(System.getProperty(POST_RATE_LIMIT_PROPERTY, "0"));
+    private static int maxRetries = Integer.getInteger(POST_MAX_RETRIES_PROPERTY, 3);
+    //Without a console (e.g. CI) there is nobody to answer the retry prompt
+    private static boolean interactive = Boolean.parseBoolean(System.getProperty(POST_INTERACTIVE_PROPERTY,
+            String.valueOf(System.console() != null)));
 
     //failedPostCalls needs to maintain the details built in the FAILED message, as well as a copy of the inputs for a retry by the user on failed posts.
     private static Queue<Pair<String, PostComponent>> failedPostCalls = new ConcurrentLinkedQueue<>();
     private static List<String> successfulPostCalls = new CopyOnWriteArrayList<>();
-    private static Map<IBaseResource, Callable<Void>> tasks = new ConcurrentHashMap<>();
-    private static Map<IBaseResource, Callable<Void>> initialTasks = new ConcurrentHashMap<>();
-    private static List<IBaseResource> runningPostTaskList = new CopyOnWriteArrayList<>();
-    private static int processedPostCounter = 0;
+    private static Map<IBaseResource, PostComponent> tasks = new ConcurrentHashMap<>();
+    private static Map<IBaseResource, PostComponent> initialTasks = new ConcurrentHashMap<>();
+    private static AtomicInteger runningPostCount = new AtomicInteger();
+    private static AtomicInteger processedPostCounter = new AtomicInteger();
+    private static PostStatistics postStatistics = new PostStatistics();
+    private static String lastPostSummary;
 
     private HttpClientUtils() {
     }
 
+    /**
+     * Configures how collected POST calls are executed by {@link #postTaskCollection()}. The defaults can also be set
+     * with the system properties {@value #POST_CONNECTIONS_PROPERTY}, {@value #POST_RATE_LIMIT_PROPERTY},
+     * {@value #POST_MAX_RETRIES_PROPERTY} and {@value #POST_INTERACTIVE_PROPERTY}.
+     *
+     * @param connections       The number of concurrent connections to the FHIR server (at least 1).
+     * @param requestsPerSecond The maximum number of requests started per second, or 0 for no limit.
+     * @param retries           The number of times a 429, 5xx or connection failure is retried before it is reported.
+     * @param promptForRetry    Whether to ask on the console to retry POST calls that still failed.
+     */
+    public static void configurePosting(int connections, double requestsPerSecond, int retries, boolean promptForRetry) {
+        if (connections < 1) {
+            throw new IllegalArgumentException("The number of POST connections must be at least 1");
+        }
+        if (requestsPerSecond < 0 || retries < 0) {
+            throw new IllegalArgumentException("The POST rate limit and retry count can not be negative");
+        }
+        maxConnections = connections;
+        HttpClientUtils.requestsPerSecond = requestsPerSecond;
+        maxRetries = retries;
+        interactive = promptForRetry;
+    }
+
     public static boolean hasPostTasksInQueue() {
-        return !tasks.isEmpty();
+        return !tasks.isEmpty() || !initialTasks.isEmpty();
     }
 
     /**
@@ -124,9 +170,8 @@ public class HttpClientUtils {
     /**
      * Creates a task for handling an HTTP POST request to a FHIR server with the specified parameters.
      * <p>
-     * This method is responsible for creating a task that prepares and executes an HTTP POST request to the provided FHIR server
-     * with the given FHIR resource, encoding type, and FHIR context. It adds the task to the queue of tasks for later execution.
-     * If any exceptions occur during task creation or configuration, an error message is logged.
+     * This method records the details of the POST request in the queue of tasks for later execution. Tasks marked with
+     * priority are executed, and complete, before any of the remaining tasks are started.
      *
      * @param fhirServerUrl The URL of the FHIR server to which the POST request will be sent.
      * @param resource      The FHIR resource to be posted.
@@ -134,16 +179,11 @@ public class HttpClientUtils {
      * @param fhirContext   The FHIR context for the resource.
      */
     private static void createPostTask(String fhirServerUrl, IBaseResource resource, IOUtils.Encoding encoding, FhirContext fhirContext, String fileLocation, boolean withPriority) {
-        try {
-            PostComponent postPojo = new PostComponent(fhirServerUrl, resource, encoding, fhirContext, fileLocation, withPriority);
-            HttpPost post = configureHttpPost(fhirServerUrl, resource, encoding, fhirContext);
-            if (withPriority) {
-                initialTasks.put(resource, createPostCallable(post, postPojo));
-            } else {
-                tasks.put(resource, createPostCallable(post, postPojo));
-            }
-        } catch (Exception e) {
-            logger.error("Error while submitting the POST request: " + e.getMessage(), e);
+        PostComponent postPojo = new PostComponent(fhirServerUrl, resource, encoding, fhirContext, fileLocation, withPriority);
+        if (withPriority) {
+            initialTasks.put(resource, postPojo);
+        } else {
+            tasks.put(resource, postPojo);
         }
     }
 
@@ -162,9 +202,9 @@ public class HttpClientUtils {
      */
     private static HttpPost configureHttpPost(String fhirServerUrl, IBaseResource resource, IOUtils.Encoding encoding, FhirContext fhirContext) {
 
-        //Transaction bundles get posted to /fhir but other resources get posted to /fhir/resourceType ie fhir/Group
+        //Transaction and batch bundles get posted to /fhir but other resources get posted to /fhir/resourceType ie fhir/Group
         String fhirServer = fhirServerUrl;
-        if (!BundleUtils.resourceIsTransactionBundle(resource)) {
+        if (!BundleUtils.resourceIsTransactionBundle(resource) && !BundleUtils.resourceIsBatchBundle(resource)) {
             fhirServer = fhirServer +
                     (fhirServerUrl.endsWith("/") ? resource.fhirType()
                             : "/" + resource.fhirType());
@@ -189,52 +229,46 @@ public class HttpClientUtils {
      * Creates a callable task for executing an HTTP POST request and handling the response.
      * <p>
      * This method constructs a callable task that performs the following steps:
-     * 1. Executes an HTTP POST request using the provided parameters.
+     * 1. Waits for the rate limiter, then executes the HTTP POST request on the shared client.
      * 2. Processes the HTTP response, checking the status code and reason phrase.
-     * 3. Logs success or failure messages based on the response status.
-     * 4. Handles exceptions related to the request and response.
-     * 5. Updates the progress and status of the post task.
+     * 3. Retries 429, 5xx and connection failures with exponential backoff, up to the configured number of retries.
+     * 4. Logs success or failure messages based on the final response status.
+     * 5. Updates the progress and latency statistics of the post task.
      *
-     * @param post          The HTTP POST request to be executed.
-     * @param postComponent A data object containing additional information about the POST request.
+     * @param httpClient    The pooled client shared by all POST calls of the collection.
+     * @param rateLimiter   The limiter shared by all POST calls of the collection.
+     * @param postComponent A data object containing the information about the POST request.
      * @return A callable task for executing the HTTP POST request.
      */
-    private static Callable<Void> createPostCallable(HttpPost post, PostComponent postComponent) {
+    private static Callable<Void> createPostCallable(CloseableHttpClient httpClient, RateLimiter rateLimiter, PostComponent postComponent) {
         return () -> {
             String resourceIdentifier = (postComponent.fileLocation != null ?
                     Paths.get(postComponent.fileLocation).getFileName().toString()
                     :
                     postComponent.resource.getIdElement().getIdPart());
-            try (CloseableHttpClient httpClient = HttpClientBuilder.create().build()) {
-
-                HttpResponse response = httpClient.execute(post);
-
-                StatusLine statusLine = response.getStatusLine();
-                int statusCode = statusLine.getStatusCode();
-                String diagnosticString = getDiagnosticString(EntityUtils.toString(response.getEntity()));
+            runningPostCount.incrementAndGet();
+            try {
+                HttpPost post = configureHttpPost(postComponent.fhirServerUrl, postComponent.resource, postComponent.encoding, postComponent.fhirContext);
+                PostResult result = executeWithRetry(httpClient, rateLimiter, post);
 
-                if (statusCode >= 200 && statusCode < 300) {
+                if (result.isSuccess()) {
                     successfulPostCalls.add(buildSuccessMessage(postComponent.fhirServerUrl, resourceIdentifier));
-                }else if (statusCode == 301){
+                } else if (result.statusCode == 301) {
                     //redirected, find new location:
-                    Header locationHeader = response.getFirstHeader("Location");
-                    if (locationHeader != null) {
-                        postComponent.redirectFhirServerUrl = locationHeader.getValue();
+                    if (result.location != null) {
+                        postComponent.redirectFhirServerUrl = result.location;
                         HttpPost redirectedPost = configureHttpPost(postComponent.redirectFhirServerUrl, postComponent.resource, postComponent.encoding, postComponent.fhirContext);
                         String redirectLocationIdentifier = postComponent.redirectFhirServerUrl
                                 + "(redirected from " + postComponent.fhirServerUrl + ")";
                         //attempt to post at location specified in redirect response:
-                        try (CloseableHttpClient redirectHttpClient = HttpClientBuilder.create().build()) {
-                            HttpResponse redirectResponse = redirectHttpClient.execute(redirectedPost);
-                            StatusLine redirectStatusLine = redirectResponse.getStatusLine();
-                            int redirectStatusCode = redirectStatusLine.getStatusCode();
-                            String redirectDiagnosticString = getDiagnosticString(EntityUtils.toString(redirectResponse.getEntity()));
+                        try {
+                            PostResult redirectResult = executeWithRetry(httpClient, rateLimiter, redirectedPost);
 
                             //treat new response same as we would before:
-                            if (redirectStatusCode >= 200 && redirectStatusCode < 300) {
+                            if (redirectResult.isSuccess()) {
                                 successfulPostCalls.add(buildSuccessMessage(redirectLocationIdentifier, resourceIdentifier));
                             } else {
-                                failedPostCalls.add(buildFailedPostMessage(postComponent, redirectStatusCode, redirectLocationIdentifier, resourceIdentifier, redirectDiagnosticString));
+                                failedPostCalls.add(buildFailedPostMessage(postComponent, redirectResult.statusCode, redirectLocationIdentifier, resourceIdentifier, redirectResult.diagnostics));
                             }
                         } catch (Exception e) {
                             failedPostCalls.add(buildExceptionMessage(postComponent, e, resourceIdentifier, redirectLocationIdentifier));
@@ -246,19 +280,73 @@ public class HttpClientUtils {
                                 + postComponent.fhirServerUrl + ": Redirect, but no new location specified", postComponent));
                     }
                 } else {
-                    failedPostCalls.add(buildFailedPostMessage(postComponent, statusCode, postComponent.fhirServerUrl, resourceIdentifier, diagnosticString));
+                    failedPostCalls.add(buildFailedPostMessage(postComponent, result.statusCode, postComponent.fhirServerUrl, resourceIdentifier, result.diagnostics));
                 }
 
             } catch (Exception e) {
                 failedPostCalls.add(buildExceptionMessage(postComponent, e, resourceIdentifier, postComponent.fhirServerUrl));
+            } finally {
+                runningPostCount.decrementAndGet();
             }
 
-            runningPostTaskList.remove(postComponent.resource);
             reportProgress();
             return null;
         };
     }
 
+    /**
+     * Executes the POST request, retrying 429 (Too Many Requests), 5xx and connection failures. The delay before each
+     * retry doubles, starting at {@value #INITIAL_BACKOFF_MILLIS} ms, unless the server specifies one with a
+     * Retry-After header.
+     */
+    private static PostResult executeWithRetry(CloseableHttpClient httpClient, RateLimiter rateLimiter, HttpPost post) throws IOException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            rateLimiter.acquire();
+            long start = System.nanoTime();
+            PostResult result;
+            try (CloseableHttpResponse response = httpClient.execute(post)) {
+                StatusLine statusLine = response.getStatusLine();
+                HttpEntity entity = response.getEntity();
+                result = new PostResult(statusLine.getStatusCode(),
+                        getDiagnosticString(entity != null ? EntityUtils.toString(entity) : ""),
+                        getHeaderValue(response, "Location"), getHeaderValue(response, "Retry-After"));
+            } catch (IOException e) {
+                postStatistics.recordLatency(System.nanoTime() - start);
+                if (attempt >= maxRetries) {
+                    throw e;
+                }
+                postStatistics.recordRetry();
+                Thread.sleep(getBackoffMillis(attempt, null));
+                continue;
+            }
+            postStatistics.recordLatency(System.nanoTime() - start);
+
+            if (!result.isRetryable() || attempt >= maxRetries) {
+                return result;
+            }
+            postStatistics.recordRetry();
+            Thread.sleep(getBackoffMillis(attempt, result.retryAfter));
+        }
+    }
+
+    private static String getHeaderValue(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header != null ? header.getValue() : null;
+    }
+
+    private static long getBackoffMillis(int attempt, String retryAfter) {
+        if (retryAfter != null) {
+            try {
+                return Math.min(MAX_BACKOFF_MILLIS, TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim())));
+            } catch (NumberFormatException e) {
+                //HTTP-date form, fall back to exponential backoff
+            }
+        }
+        long backoff = INITIAL_BACKOFF_MILLIS << Math.min(attempt, 16);
+        //jitter so that connections rejected together do not all retry together
+        return Math.min(MAX_BACKOFF_MILLIS, backoff + ThreadLocalRandom.current().nextLong(INITIAL_BACKOFF_MILLIS));
+    }
+
     private static Pair<String, PostComponent> buildExceptionMessage(PostComponent postComponent, Exception e, String resourceIdentifier, String locationIdentifier) {
         return Pair.of("[FAIL] Exception during " + resourceIdentifier + " POST request execution to " + locationIdentifier + ": " + e.getMessage(), postComponent);
     }
@@ -299,16 +387,16 @@ public class HttpClientUtils {
     }
 
     /**
-     * Reports the progress of HTTP POST calls and the current thread pool size.
+     * Reports the progress of HTTP POST calls and the number of calls awaiting a response.
      * <p>
      * This method updates and prints the progress of HTTP POST calls by calculating the percentage of completed tasks
-     * relative to the total number of tasks. It also displays the current size of the running thread pool. The progress
-     * and pool size information is printed to the standard output.
+     * relative to the total number of tasks. It also displays the number of POST calls currently in flight. The progress
+     * information is printed to the standard output.
      */
     private static void reportProgress() {
-        int currentCounter = processedPostCounter++;
-        double percentage = (double) currentCounter / getTotalTaskCount() * 100;
-        System.out.print("\rPOST calls: " + String.format("%.2f%%", percentage) + " processed. POST response pool size: " + runningPostTaskList.size() + ". ");
+        int currentCounter = processedPostCounter.incrementAndGet();
+        double percentage = (double) currentCounter / Math.max(1, getTotalTaskCount()) * 100;
+        System.out.print("\rPOST calls: " + String.format("%.2f%%", percentage) + " processed. POST response pool size: " + runningPostCount.get() + ". ");
     }
 
     private static int getTotalTaskCount() {
@@ -320,71 +408,79 @@ public class HttpClientUtils {
      * <p>
      * This method orchestrates the execution of a collection of HTTP POST requests, each represented as a task.
      * The method performs the following steps:
-     * 1. Creates a thread pool using a fixed number of threads (usually 1).
-     * 2. Initiates the HTTP POST tasks for FHIR resources and monitors their progress.
+     * 1. Creates a pooled HTTP client and a thread pool with one thread per configured connection.
+     * 2. Executes the tasks marked as having priority, then the remaining tasks, subject to the rate limit.
      * 3. Collects and logs success or failure messages for each task.
      * 4. Sorts and reports the results of the post tasks, both successful and failed.
-     * 5. Offers the option to retry failed tasks, if desired by the user.
-     * 6. Cleans up resources and shuts down the thread pool when finished.
+     * 5. In interactive mode, offers the option to retry failed tasks.
+     * 6. Logs the latency and throughput of the POST calls, cleans up resources and shuts down the thread pool.
      * <p>
      * This method serves as the entry point for posting tasks and provides progress monitoring and result reporting.
      */
     public static void postTaskCollection() {
-        ExecutorService executorService = Executors.newFixedThreadPool(1);
-
-        try {
-            logger.info(getTotalTaskCount() + " POST calls to be made. Starting now. Please wait...");
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(maxConnections, runnable -> {
+            Thread thread = new Thread(runnable, "fhir-post-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        RateLimiter rateLimiter = new RateLimiter(requestsPerSecond, maxConnections);
+        postStatistics = new PostStatistics();
+
+        try (CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build()) {
+            logger.info(getTotalTaskCount() + " POST calls to be made over " + maxConnections + " connection(s)"
+                    + (requestsPerSecond > 0 ? " at most " + requestsPerSecond + " per second" : "") + ". Starting now. Please wait...");
             double percentage = 0;
             System.out.print("\rPOST: " + String.format("%.2f%%", percentage) + " done. ");
 
             //execute any tasks marked as having priority:
-            executeTasks(executorService, initialTasks);
+            executeTasks(executorService, httpClient, rateLimiter, initialTasks);
 
             //execute the remaining tasks:
-            executeTasks(executorService, tasks);
-
-            reportProgress();
+            executeTasks(executorService, httpClient, rateLimiter, tasks);
 
             logger.info("Processing results...");
-            Collections.sort(successfulPostCalls);
+            List<String> sortedSuccessfulPostCalls = new ArrayList<>(successfulPostCalls);
+            Collections.sort(sortedSuccessfulPostCalls);
 
             StringBuilder message = new StringBuilder();
-            for (String successPost : successfulPostCalls) {
+            for (String successPost : sortedSuccessfulPostCalls) {
                 message.append("\n").append(successPost);
             }
-            message.append("\r\n").append(successfulPostCalls.size()).append(" resources successfully posted.");
+            message.append("\r\n").append(sortedSuccessfulPostCalls.size()).append(" resources successfully posted.");
             logger.info(message.toString());
-            successfulPostCalls = new ArrayList<>();
+            successfulPostCalls = new CopyOnWriteArrayList<>();
 
-            if (!failedPostCalls.isEmpty()) {
+            if (!failedPostCalls.isEmpty() && interactive) {
                 logger.info(failedPostCalls.size() + " tasks failed to POST. Retry these failed posts? (Y/N)");
                 Scanner scanner = new Scanner(System.in);
-                String userInput = scanner.nextLine().trim().toLowerCase();
+                String userInput = scanner.hasNextLine() ? scanner.nextLine().trim().toLowerCase() : "";
 
                 if (userInput.equalsIgnoreCase("y")) {
                     List<Pair<String, PostComponent>> failedPostCallList = new ArrayList<>(failedPostCalls);
-                    cleanUp(); //clear the queue, reset the counter, start fresh
+                    resetPostCalls(); //clear the queue, reset the counter, start fresh
 
                     for (Pair<String, PostComponent> pair : failedPostCallList) {
                         PostComponent postComponent = pair.getRight();
-                        try {
-                            post(postComponent.fhirServerUrl,
-                                    postComponent.resource,
-                                    postComponent.encoding,
-                                    postComponent.fhirContext,
-                                    postComponent.fileLocation,
-                                    postComponent.hasPriority);
-                        } catch (IOException e) {
-                            throw new RuntimeException(e);
-                        }
+                        createPostTask(postComponent.fhirServerUrl,
+                                postComponent.resource,
+                                postComponent.encoding,
+                                postComponent.fhirContext,
+                                postComponent.fileLocation,
+                                postComponent.hasPriority);
                     }
                     //execute any tasks marked as having priority:
-                    executeTasks(executorService, initialTasks);
+                    executeTasks(executorService, httpClient, rateLimiter, initialTasks);
 
                     //execute the remaining tasks:
-                    executeTasks(executorService, tasks);
+                    executeTasks(executorService, httpClient, rateLimiter, tasks);
 
-                    reportProgress();
                     if (failedPostCalls.isEmpty()) {
                         logger.info("\r\nRetry successful, all tasks successfully posted");
                     }
@@ -398,7 +494,7 @@ public class HttpClientUtils {
                 }
                 message.append("\r\n").append(successfulPostCalls.size()).append(" resources successfully posted.");
                 logger.info(message.toString());
-                successfulPostCalls = new ArrayList<>();
+                successfulPostCalls = new CopyOnWriteArrayList<>();
             }
 
             if (!failedPostCalls.isEmpty()) {
@@ -421,12 +517,24 @@ public class HttpClientUtils {
                 writeFailedPostAttemptsToLog(failedMessages);
             }
 
+            lastPostSummary = postStatistics.getSummary();
+            logger.info("POST statistics: {}", lastPostSummary);
+        } catch (IOException e) {
+            logger.error("Error closing the HTTP client after POST calls: " + e.getMessage(), e);
         } finally {
             cleanUp();
             executorService.shutdown();
         }
     }
 
+    /**
+     * @return the latency and throughput of the POST calls made by the last {@link #postTaskCollection()}, or null if
+     * none has completed
+     */
+    public static String getLastPostSummary() {
+        return lastPostSummary;
+    }
+
     /**
      * Gives the user a log file containing failed POST attempts during postTaskCollection()
      * @param failedMessages
@@ -447,23 +555,22 @@ public class HttpClientUtils {
     }
 
 
-    private static void executeTasks(ExecutorService executorService, Map<IBaseResource, Callable<Void>> executableTasksMap) {
+    private static void executeTasks(ExecutorService executorService, CloseableHttpClient httpClient, RateLimiter rateLimiter,
+                                     Map<IBaseResource, PostComponent> postComponents) {
         List<Future<Void>> futures = new ArrayList<>();
-        List<IBaseResource> resources = new ArrayList<>(executableTasksMap.keySet());
-        for (int i = 0; i < resources.size(); i++) {
-            IBaseResource thisResource = resources.get(i);
-            if (runningPostTaskList.size() < MAX_SIMULTANEOUS_POST_COUNT) {
-                runningPostTaskList.add(thisResource);
-                futures.add(executorService.submit(executableTasksMap.get(thisResource)));
-            } else {
-                threadSleep(10);
-                i--;
-            }
+        //the pool has one thread per connection, so at most maxConnections calls await a response at once
+        for (PostComponent postComponent : postComponents.values()) {
+            futures.add(executorService.submit(createPostCallable(httpClient, rateLimiter, postComponent)));
         }
 
         for (Future<Void> future : futures) {
             try {
                 future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                logger.error("HTTPClientUtils POST calls were interrupted");
+                return;
             } catch (Exception e) {
                 logger.error("HTTPClientUtils future.get()", e);
             }
@@ -471,18 +578,14 @@ public class HttpClientUtils {
     }
 
     /**
-     * Pauses the current thread's execution for a specified duration.
-     * This method causes the current thread to sleep for the given duration, allowing a pause in execution. If an
-     * interruption occurs during the sleep, it is logged as an exception.
-     *
-     * @param i The duration, in milliseconds, for which the thread should sleep.
+     * Clears the results of the POST calls made so far, before failed calls are retried.
      */
-    private static void threadSleep(int i) {
-        try {
-            Thread.sleep(i);
-        } catch (InterruptedException e) {
-            logger.error("postTaskCollection", new RuntimeException(e));
-        }
+    private static void resetPostCalls() {
+        failedPostCalls = new ConcurrentLinkedQueue<>();
+        tasks = new ConcurrentHashMap<>();
+        initialTasks = new ConcurrentHashMap<>();
+        processedPostCounter = new AtomicInteger();
+        runningPostCount = new AtomicInteger();
     }
 
     /**
@@ -493,17 +596,13 @@ public class HttpClientUtils {
      * 2. Clears the list of successful POST call results.
      * 3. Resets the map of tasks to be executed.
      * 4. Resets the counter that tracks the number of processed POST calls.
-     * 5. Clears the list of resources currently being posted.
+     * 5. Resets the number of resources currently being posted.
      * <p>
      * This method ensures a clean state and prepares the system for potential subsequent POST calls or retries.
      */
     private static void cleanUp() {
-        failedPostCalls = new ConcurrentLinkedQueue<>();
+        resetPostCalls();
         successfulPostCalls = new CopyOnWriteArrayList<>();
-        tasks = new ConcurrentHashMap<>();
-        initialTasks = new ConcurrentHashMap<>();
-        processedPostCounter = 0;
-        runningPostTaskList = new CopyOnWriteArrayList<>();
     }
 
     public static String get(String path) throws IOException {
@@ -548,6 +647,101 @@ public class HttpClientUtils {
         }
     }
 
+    /**
+     * The outcome of a single POST request
+     */
+    private static class PostResult {
+        private final int statusCode;
+        private final String diagnostics;
+        private final String location;
+        private final String retryAfter;
+
+        private PostResult(int statusCode, String diagnostics, String location, String retryAfter) {
+            this.statusCode = statusCode;
+            this.diagnostics = diagnostics;
+            this.location = location;
+            this.retryAfter = retryAfter;
+        }
+
+        private boolean isSuccess() {
+            return statusCode >= 200 && statusCode < 300;
+        }
+
+        private boolean isRetryable() {
+            return statusCode == 429 || statusCode >= 500;
+        }
+    }
+
+    /**
+     * A token bucket shared by the POST threads: tokens are added at the configured rate, up to one per connection,
+     * and each request takes one, waiting for it if the bucket is empty.
+     */
+    private static class RateLimiter {
+        private final double permitsPerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        private RateLimiter(double permitsPerSecond, int capacity) {
+            this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = capacity;
+            this.tokens = capacity;
+        }
+
+        private void acquire() throws InterruptedException {
+            if (permitsPerNano <= 0) {
+                return;
+            }
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerNano);
+                lastRefill = now;
+                //take the token now, possibly going into debt, so that waiting threads are served in order
+                tokens -= 1;
+                waitNanos = tokens >= 0 ? 0 : (long) (-tokens / permitsPerNano);
+            }
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        }
+    }
+
+    /**
+     * Latency and throughput of the requests made for a collection of POST calls
+     */
+    private static class PostStatistics {
+        private final long start = System.nanoTime();
+        private final Queue<Long> latencies = new ConcurrentLinkedQueue<>();
+        private final AtomicLong retries = new AtomicLong();
+
+        private void recordLatency(long nanos) {
+            latencies.add(nanos);
+        }
+
+        private void recordRetry() {
+            retries.incrementAndGet();
+        }
+
+        private String getSummary() {
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            if (sorted.length == 0) {
+                return "no requests made";
+            }
+            return String.format("%d request(s) (%d retried) in %.1f s, %.1f requests/s, latency avg %d ms, p50 %d ms, p95 %d ms, max %d ms",
+                    sorted.length, retries.get(), elapsedSeconds, sorted.length / Math.max(elapsedSeconds, 0.001),
+                    TimeUnit.NANOSECONDS.toMillis((long) Arrays.stream(sorted).average().orElse(0)),
+                    TimeUnit.NANOSECONDS.toMillis(percentile(sorted, 0.5)),
+                    TimeUnit.NANOSECONDS.toMillis(percentile(sorted, 0.95)),
+                    TimeUnit.NANOSECONDS.toMillis(sorted[sorted.length - 1]));
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+        }
+    }
+
     public static ResponseHandler<String> getDefaultResponseHandler() {
         return response -> {
             int status = response.getStatusLine().getStatusCode();
@@ -559,4 +753,4 @@ public class HttpClientUtils {
             }
         };
     }
-}
\ No newline at end of file
+}
@@ -13,6 +13,7 @@ import org.cqframework.cql.cql2elm.*;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.utilities.Utilities;
+import org.opencds.cqf.tooling.cql.CqlTranslationService;
 import org.opencds.cqf.tooling.cql.exception.CqlTranslatorException;
 import org.opencds.cqf.tooling.library.LibraryProcessor;
 import org.opencds.cqf.tooling.processor.CqlProcessor;
@@ -126,30 +127,7 @@ public class IOUtils {
     public static <T extends IBaseResource> void writeResource(T resource, String path, Encoding encoding,
                                                                FhirContext fhirContext, Boolean versioned,
                                                                String outputFileName, boolean prettyPrintOutput) {
-        // If the path is to a specific resource file, just re-use that file path/name.
-        String outputPath;
-        File file = new File(path);
-        if (file.isFile()) {
-            outputPath = path;
-        }
-        else {
-            ensurePath(path);
-
-            String baseName;
-            if (outputFileName == null || outputFileName.isBlank()) {
-                baseName = resource.getIdElement().getIdPart();
-            } else {
-                baseName = outputFileName;
-            }
-
-            // Issue 96
-            // If includeVersion is false then just use name and not id for the file baseName
-//            if (Boolean.FALSE.equals(versioned)) {
-            // Assumes that the id will be a string with - separating the version number
-            // baseName = baseName.split("-")[0];
-//            }
-            outputPath = FilenameUtils.concat(path, formatFileName(baseName, encoding, fhirContext));
-        }
+        String outputPath = getResourceOutputPath(resource, path, encoding, fhirContext, outputFileName);
 
         try (FileOutputStream writer = new FileOutputStream(outputPath)) {
             writer.write(encodeResource(resource, encoding, fhirContext, prettyPrintOutput));
@@ -160,6 +138,35 @@ public class IOUtils {
         }
     }
 
+    /**
+     * @return the file a resource is written to by writeResource: path itself if it is an existing file, otherwise a
+     * file in the directory at path (which is created if needed) named after outputFileName or the resource id
+     */
+    public static String getResourceOutputPath(IBaseResource resource, String path, Encoding encoding, FhirContext fhirContext,
+                                               String outputFileName) {
+        // If the path is to a specific resource file, just re-use that file path/name.
+        File file = new File(path);
+        if (file.isFile()) {
+            return path;
+        }
+        ensurePath(path);
+
+        String baseName;
+        if (outputFileName == null || outputFileName.isBlank()) {
+            baseName = resource.getIdElement().getIdPart();
+        } else {
+            baseName = outputFileName;
+        }
+
+        // Issue 96
+        // If includeVersion is false then just use name and not id for the file baseName
+//        if (Boolean.FALSE.equals(versioned)) {
+        // Assumes that the id will be a string with - separating the version number
+        // baseName = baseName.split("-")[0];
+//        }
+        return FilenameUtils.concat(path, formatFileName(baseName, encoding, fhirContext));
+    }
+
     public static <T extends IBaseResource> void writeResources(List<T> resources, String path,
                                                                 Encoding encoding, FhirContext fhirContext) {
         resources.forEach(resource -> writeResource(resource, path, encoding, fhirContext));
@@ -279,22 +286,31 @@ public class IOUtils {
         return readResource(path, fhirContext, false);
     }
 
+    /*
+     * Parsed resources and translators are cached for the life of the process (the same files are read repeatedly
+     * during refresh and bundling). Entries are dropped when the file on disk changes, and the least recently used
+     * entries are evicted beyond the limits below, which can be raised with the corresponding system properties.
+     */
+    public static final String RESOURCE_CACHE_SIZE_PROPERTY = "cqf-tooling.resourceCacheSize";
+    public static final String TRANSLATOR_CACHE_SIZE_PROPERTY = "cqf-tooling.translatorCacheSize";
+    private static final ResourceCache<String, IBaseResource> cachedResources =
+            new ResourceCache<>("resources", Long.getLong(RESOURCE_CACHE_SIZE_PROPERTY, 25000));
+
     //users should always check for null
-    private static final Map<String, IBaseResource> cachedResources = new LinkedHashMap<>();
     public static IBaseResource readResource(String path, FhirContext fhirContext, Boolean safeRead) {
         Encoding encoding = getEncoding(path);
         if (encoding == Encoding.UNKNOWN || encoding == Encoding.CQL) {
             return null;
         }
 
-        IBaseResource resource = cachedResources.get(path);
+        File file = new File(path);
+        IBaseResource resource = cachedResources.get(path, file);
         if (resource != null) {
             return resource;
         }
 
         try {
             IParser parser = getParser(encoding, fhirContext);
-            File file = new File(path);
 
             if (file.exists() && file.isDirectory()) {
                 throw new IllegalArgumentException(String.format("Cannot read a resource from a directory: %s", path));
@@ -306,7 +322,7 @@ public class IOUtils {
             try (FileReader reader = new FileReader(file)) {
                 resource = parser.parseResource(reader);
             }
-            cachedResources.put(path, resource);
+            cachedResources.put(path, resource, file);
         } catch (IOException e) {
             throw new RuntimeException(String.format("Error reading resource from path %s: %s", path, e.getMessage()), e);
         }
@@ -314,7 +330,7 @@ public class IOUtils {
     }
 
     public static void updateCachedResource(IBaseResource updatedResource, String path) {
-        cachedResources.computeIfPresent(path, (key, value) -> updatedResource);
+        cachedResources.replaceIfPresent(path, updatedResource, new File(path));
     }
 
     public static List<IBaseResource> readResources(List<String> paths, FhirContext fhirContext) {
@@ -334,8 +350,10 @@ public class IOUtils {
             return null;
         }
 
-        if (cachedResources.containsKey(path)) {
-            return cachedResources.get(path);
+        File file = new File(path);
+        IBaseResource cached = cachedResources.get(path, file);
+        if (cached != null) {
+            return cached;
         }
 
         IParser parser = getParser(encoding, fhirContext);
@@ -343,7 +361,7 @@ public class IOUtils {
             JsonObject obj = JsonParser.parseReader(reader).getAsJsonObject();
             Arrays.stream(elements).forEach(obj::remove);
             IBaseResource resource = parser.parseResource(obj.toString());
-            cachedResources.put(path, resource);
+            cachedResources.put(path, resource, file);
             return resource;
         } catch (IOException e) {
             logger.error(e.getMessage());
@@ -535,7 +553,7 @@ public class IOUtils {
     }
 
     //users should protect against Encoding.UNKNOWN or Encoding.CQL
-    private static IParser getParser(Encoding encoding, FhirContext fhirContext) {
+    static IParser getParser(Encoding encoding, FhirContext fhirContext) {
         switch (encoding) {
             case XML:
                 return fhirContext.newXmlParser();
@@ -599,11 +617,12 @@ public class IOUtils {
         return dependencyCqlFiles;
     }
 
-    private static final Map<String, CqlTranslator> cachedTranslator = new LinkedHashMap<>();
+    private static final ResourceCache<String, CqlTranslator> cachedTranslator =
+            new ResourceCache<>("translators", Long.getLong(TRANSLATOR_CACHE_SIZE_PROPERTY, 500));
 
     public static CqlTranslator translate(File cqlFile, LibraryManager libraryManager) throws CqlTranslatorException {
         String cqlContentPath = cqlFile.getAbsolutePath();
-        CqlTranslator translator = cachedTranslator.get(cqlContentPath);
+        CqlTranslator translator = cachedTranslator.get(cqlContentPath, cqlFile);
         if (translator != null) {
             return translator;
         }
@@ -618,7 +637,7 @@ public class IOUtils {
                 throw new CqlTranslatorException(translator.getErrors());
             }
 
-            cachedTranslator.put(cqlContentPath, translator);
+            cachedTranslator.put(cqlContentPath, translator, cqlFile);
             return translator;
         } catch (IOException e) {
             throw new CqlTranslatorException(e);
@@ -699,8 +718,12 @@ public class IOUtils {
         return libraryPath;
     }
 
+    /*
+     * The path and resource indexes below are built lazily on first use and may be requested from bundling worker
+     * threads, so they are only built and read under the IOUtils class lock.
+     */
     private static final Set<String> cqlLibraryPaths = new LinkedHashSet<>();
-    public static Set<String> getCqlLibraryPaths() {
+    public static synchronized Set<String> getCqlLibraryPaths() {
         if (cqlLibraryPaths.isEmpty()) {
             setupCqlLibraryPaths();
         }
@@ -741,7 +764,7 @@ public class IOUtils {
     }
 
     private static final Set<String> terminologyPaths = new LinkedHashSet<>();
-    public static Set<String> getTerminologyPaths(FhirContext fhirContext) {
+    public static synchronized Set<String> getTerminologyPaths(FhirContext fhirContext) {
         if (terminologyPaths.isEmpty()) {
             setupTerminologyPaths(fhirContext);
         }
@@ -786,14 +809,14 @@ public class IOUtils {
     }
 
     private static final Set<String> libraryPaths = new LinkedHashSet<>();
-    public static Set<String> getLibraryPaths(FhirContext fhirContext) {
+    public static synchronized Set<String> getLibraryPaths(FhirContext fhirContext) {
         if (libraryPaths.isEmpty()) {
             setupLibraryPaths(fhirContext);
         }
         return libraryPaths;
     }
     private static final Map<String, IBaseResource> libraryUrlMap = new LinkedHashMap<>();
-    public static Map<String, IBaseResource> getLibraryUrlMap(FhirContext fhirContext) {
+    public static synchronized Map<String, IBaseResource> getLibraryUrlMap(FhirContext fhirContext) {
         if (libraryPathMap.isEmpty()) {
             setupLibraryPaths(fhirContext);
         }
@@ -804,14 +827,14 @@ public class IOUtils {
         return libraryUrlMap;
     }
     private static final Map<String, String> libraryPathMap = new LinkedHashMap<>();
-    public static Map<String, String> getLibraryPathMap(FhirContext fhirContext) {
+    public static synchronized Map<String, String> getLibraryPathMap(FhirContext fhirContext) {
         if (libraryPathMap.isEmpty()) {
             setupLibraryPaths(fhirContext);
         }
         return libraryPathMap;
     }
     private static final Map<String, IBaseResource> libraries = new LinkedHashMap<>();
-    public static Map<String, IBaseResource> getLibraries(FhirContext fhirContext) {
+    public static synchronized Map<String, IBaseResource> getLibraries(FhirContext fhirContext) {
         if (libraries.isEmpty()) {
             setupLibraryPaths(fhirContext);
         }
@@ -854,21 +877,21 @@ public class IOUtils {
     }
 
     private static final Set<String> measurePaths = new LinkedHashSet<>();
-    public static Set<String> getMeasurePaths(FhirContext fhirContext) {
+    public static synchronized Set<String> getMeasurePaths(FhirContext fhirContext) {
         if (measurePaths.isEmpty()) {
             setupMeasurePaths(fhirContext);
         }
         return measurePaths;
     }
     private static final Map<String, String> measurePathMap = new LinkedHashMap<>();
-    public static Map<String, String> getMeasurePathMap(FhirContext fhirContext) {
+    public static synchronized Map<String, String> getMeasurePathMap(FhirContext fhirContext) {
         if (measurePathMap.isEmpty()) {
             setupMeasurePaths(fhirContext);
         }
         return measurePathMap;
     }
     private static final Map<String, IBaseResource> measures = new LinkedHashMap<>();
-    public static Map<String, IBaseResource> getMeasures(FhirContext fhirContext) {
+    public static synchronized Map<String, IBaseResource> getMeasures(FhirContext fhirContext) {
         if (measures.isEmpty()) {
             setupMeasurePaths(fhirContext);
         }
@@ -902,7 +925,7 @@ public class IOUtils {
     }
 
     private static final Set<String> measureReportPaths = new LinkedHashSet<>();
-    public static Set<String> getMeasureReportPaths(FhirContext fhirContext) {
+    public static synchronized Set<String> getMeasureReportPaths(FhirContext fhirContext) {
         if (measureReportPaths.isEmpty()) {
             setupMeasureReportPaths(fhirContext);
         }
@@ -929,21 +952,21 @@ public class IOUtils {
     }
 
     private static final Set<String> planDefinitionPaths = new LinkedHashSet<>();
-    public static Set<String> getPlanDefinitionPaths(FhirContext fhirContext) {
+    public static synchronized Set<String> getPlanDefinitionPaths(FhirContext fhirContext) {
         if (planDefinitionPaths.isEmpty()) {
             setupPlanDefinitionPaths(fhirContext);
         }
         return planDefinitionPaths;
     }
     private static final Map<String, String> planDefinitionPathMap = new LinkedHashMap<>();
-    public static Map<String, String> getPlanDefinitionPathMap(FhirContext fhirContext) {
+    public static synchronized Map<String, String> getPlanDefinitionPathMap(FhirContext fhirContext) {
         if (planDefinitionPathMap.isEmpty()) {
             setupPlanDefinitionPaths(fhirContext);
         }
         return planDefinitionPathMap;
     }
     private static final Map<String, IBaseResource> planDefinitions = new LinkedHashMap<>();
-    public static Map<String, IBaseResource> getPlanDefinitions(FhirContext fhirContext) {
+    public static synchronized Map<String, IBaseResource> getPlanDefinitions(FhirContext fhirContext) {
         if (planDefinitions.isEmpty()) {
             setupPlanDefinitionPaths(fhirContext);
         }
@@ -973,7 +996,7 @@ public class IOUtils {
     }
 
     private static final Set<String> questionnairePaths = new LinkedHashSet<>();
-    public static Set<String> getQuestionnairePaths(FhirContext fhirContext) {
+    public static synchronized Set<String> getQuestionnairePaths(FhirContext fhirContext) {
         if (questionnairePaths.isEmpty()) {
             setupQuestionnairePaths(fhirContext);
         }
@@ -981,7 +1004,7 @@ public class IOUtils {
     }
 
     private static final Map<String, String> questionnairePathMap = new LinkedHashMap<>();
-    public static Map<String, String> getQuestionnairePathMap(FhirContext fhirContext) {
+    public static synchronized Map<String, String> getQuestionnairePathMap(FhirContext fhirContext) {
         if (questionnairePathMap.isEmpty()) {
             setupQuestionnairePaths(fhirContext);
         }
@@ -989,7 +1012,7 @@ public class IOUtils {
     }
 
     private static final Map<String, IBaseResource> questionnaires = new LinkedHashMap<>();
-    public static Map<String, IBaseResource> getQuestionnaires(FhirContext fhirContext) {
+    public static synchronized Map<String, IBaseResource> getQuestionnaires(FhirContext fhirContext) {
         if (questionnaires.isEmpty()) {
             setupQuestionnairePaths(fhirContext);
         }
@@ -1020,7 +1043,7 @@ public class IOUtils {
     }
 
     private static final Map<String, String> activityDefinitionPathMap = new LinkedHashMap<>();
-    public static Map<String, String> getActivityDefinitionPathMap(FhirContext fhirContext) {
+    public static synchronized Map<String, String> getActivityDefinitionPathMap(FhirContext fhirContext) {
         if (activityDefinitionPathMap.isEmpty()) {
             setupQuestionnairePaths(fhirContext);
         }
@@ -1028,7 +1051,7 @@ public class IOUtils {
     }
 
     private static final Map<String, IBaseResource> activityDefinitions = new LinkedHashMap<>();
-    public static Map<String, IBaseResource> getActivityDefinitions(FhirContext fhirContext) {
+    public static synchronized Map<String, IBaseResource> getActivityDefinitions(FhirContext fhirContext) {
         if (activityDefinitions.isEmpty()) {
             setupActivityDefinitionPaths(fhirContext);
         }
@@ -1036,7 +1059,7 @@ public class IOUtils {
     }
 
     private static final Set<String> activityDefinitionPaths = new LinkedHashSet<>();
-    public static Set<String> getActivityDefinitionPaths(FhirContext fhirContext) {
+    public static synchronized Set<String> getActivityDefinitionPaths(FhirContext fhirContext) {
         if (activityDefinitionPaths.isEmpty()) {
             logger.info("Reading activitydefinitions");
             setupActivityDefinitionPaths(fhirContext);
@@ -1070,17 +1093,52 @@ public class IOUtils {
         }
     }
 
+    /**
+     * Writes to a file through an output stream that may throw an IOException.
+     */
+    @FunctionalInterface
+    public interface IOConsumer<T> {
+        void accept(T value) throws IOException;
+    }
+
+    /**
+     * Writes a file through a temporary file in the same directory that replaces it once complete, so concurrent
+     * readers (or runs) never see a partially written file. The move is atomic where the file system supports it.
+     *
+     * @param file   The file to write.
+     * @param writer Writes the content; closing the stream it is given is optional.
+     * @throws IOException If the content can not be written or the file can not be replaced.
+     */
+    public static void writeAtomically(Path file, IOConsumer<OutputStream> writer) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                writer.accept(out);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
     public static void ensurePath(String path) {
         //Creating a File object
         File scopeDir = new File(path);
         //Creating the directory
-        if (!scopeDir.exists() && !scopeDir.mkdirs()) {
+        // Re-checked after mkdirs, another thread may have created the directory in the meantime
+        if (!scopeDir.exists() && !scopeDir.mkdirs() && !scopeDir.isDirectory()) {
             throw new IllegalArgumentException("Could not create directory: " + path);
         }
     }
 
     private static Set<String> devicePaths;
-    public static Set<String> getDevicePaths(FhirContext fhirContext) {
+    public static synchronized Set<String> getDevicePaths(FhirContext fhirContext) {
         if (devicePaths == null) {
             setupDevicePaths(fhirContext);
         }
@@ -1088,7 +1146,7 @@ public class IOUtils {
     }
 
     // TODO: This should not be necessary this is awful... For now it is needed for passing tests in Travis
-    public static void clearDevicePaths() {
+    public static synchronized void clearDevicePaths() {
         devicePaths = null;
     }
 
@@ -1145,12 +1203,20 @@ public class IOUtils {
     }
 
 
+    /**
+     * @return a summary of the hit, miss and eviction counts of the resource and translator caches
+     */
+    public static String getCacheSummary() {
+        return cachedResources.getSummary() + "; " + cachedTranslator.getSummary()
+                + "; " + CqlTranslationService.getInstance().getSummary();
+    }
+
     /**
      * Cleans up cached data to ensure a clean state for subsequent ci tests.
      * Since all variables are final, we use .clear(). This gives a slight performance
      * boost over removing final keyword and initializing new instances.
      */
-    public static void cleanUp(){
+    public static synchronized void cleanUp(){
         alreadyCopied.clear();
         cachedResources.clear();
         cachedFilePaths.clear();
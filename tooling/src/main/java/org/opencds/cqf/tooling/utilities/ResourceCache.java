@@ -0,0 +1,231 @@
+package org.opencds.cqf.tooling.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Thread-safe, weight-bounded LRU cache for values loaded from files (parsed resources, translators, etc.).
+ *
+ * Each entry may record the modification time and size of the file it was loaded from; a lookup for that entry is
+ * treated as a miss (and the entry dropped) once the file on disk no longer matches. When the total weight of the
+ * cached values exceeds the configured maximum, the least recently used entries are evicted.
+ *
+ * Values are loaded by the caller outside of any lock, so a slow parse never blocks readers of other entries.
+ */
+public class ResourceCache<K, V> {
+
+    private final String name;
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Creates a cache holding at most maxEntries values
+     */
+    public ResourceCache(String name, long maxEntries) {
+        this(name, maxEntries, value -> 1);
+    }
+
+    /**
+     * Creates a cache whose values, as measured by the weigher, add up to at most maxWeight
+     */
+    public ResourceCache(String name, long maxWeight, ToLongFunction<V> weigher) {
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException(String.format("Maximum weight of cache %s must be positive", name));
+        }
+        this.name = Objects.requireNonNull(name, "name can not be null");
+        this.maxWeight = maxWeight;
+        this.weigher = Objects.requireNonNull(weigher, "weigher can not be null");
+    }
+
+    /**
+     * @param key the cache key
+     * @param source the file the value was loaded from, or null if the entry is not tied to a file
+     * @return the cached value, or null if there is none or the source file has changed since it was cached
+     */
+    public V get(K key, File source) {
+        FileStamp current = source == null ? null : FileStamp.of(source);
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && entry.stamp != null && !entry.stamp.equals(current)) {
+                remove(key, entry);
+                invalidations.increment();
+                entry = null;
+            }
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.value;
+        }
+    }
+
+    /**
+     * Caches the value, recording the current state of the source file (if given) for later validation
+     */
+    public void put(K key, V value, File source) {
+        Objects.requireNonNull(value, "value can not be null");
+        Entry<V> entry = new Entry<>(value, source == null ? null : FileStamp.of(source), Math.max(1, weigher.applyAsLong(value)));
+        synchronized (entries) {
+            Entry<V> previous = entries.put(key, entry);
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            weight += entry.weight;
+            evict();
+        }
+    }
+
+    /**
+     * Replaces the value for the key if one is cached, e.g. after the value has been written back to its source file
+     * @return true if the key was present
+     */
+    public boolean replaceIfPresent(K key, V value, File source) {
+        synchronized (entries) {
+            if (!entries.containsKey(key)) {
+                return false;
+            }
+            put(key, value, source);
+            return true;
+        }
+    }
+
+    public void invalidate(K key) {
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                remove(key, entry);
+                invalidations.increment();
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            weight = 0;
+        }
+    }
+
+    private void remove(K key, Entry<V> entry) {
+        entries.remove(key);
+        weight -= entry.weight;
+    }
+
+    // Always keeps the most recently added entry, even if it alone exceeds the maximum weight
+    private void evict() {
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (weight > maxWeight && entries.size() > 1 && iterator.hasNext()) {
+            Map.Entry<K, Entry<V>> eldest = iterator.next();
+            weight -= eldest.getValue().weight;
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getWeight() {
+        synchronized (entries) {
+            return weight;
+        }
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    public String getSummary() {
+        return String.format("%s: %d entries (weight %d of %d), %d hits, %d misses, %d evictions, %d invalidations",
+                name, size(), getWeight(), maxWeight, getHits(), getMisses(), getEvictions(), getInvalidations());
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final FileStamp stamp;
+        private final long weight;
+
+        private Entry(V value, FileStamp stamp, long weight) {
+            this.value = value;
+            this.stamp = stamp;
+            this.weight = weight;
+        }
+    }
+
+    private static class FileStamp {
+        private static final FileStamp MISSING = new FileStamp(-1, -1);
+
+        private final long lastModified;
+        private final long size;
+
+        private FileStamp(long lastModified, long size) {
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+
+        private static FileStamp of(File file) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                return new FileStamp(attributes.lastModifiedTime().toMillis(), attributes.size());
+            } catch (IOException e) {
+                return MISSING;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof FileStamp)) {
+                return false;
+            }
+            FileStamp other = (FileStamp) o;
+            return lastModified == other.lastModified && size == other.size;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(lastModified, size);
+        }
+    }
+}
@@ -11,14 +11,9 @@ import ca.uhn.fhir.context.RuntimeResourceDefinition;
 import ca.uhn.fhir.util.TerserUtil;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.Validate;
-import org.cqframework.cql.cql2elm.CqlCompilerException;
 import org.cqframework.cql.cql2elm.CqlTranslator;
 import org.cqframework.cql.cql2elm.CqlTranslatorOptions;
 import org.cqframework.cql.cql2elm.CqlTranslatorOptionsMapper;
-import org.cqframework.cql.cql2elm.DefaultLibrarySourceProvider;
-import org.cqframework.cql.cql2elm.LibraryManager;
-import org.cqframework.cql.cql2elm.ModelManager;
-import org.cqframework.cql.cql2elm.quick.FhirLibrarySourceProvider;
 import org.hl7.elm.r1.IncludeDef;
 import org.hl7.elm.r1.ValueSetDef;
 import org.hl7.elm.r1.VersionedIdentifier;
@@ -30,6 +25,7 @@ import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.ICompositeType;
 import org.hl7.fhir.instance.model.api.IPrimitiveType;
 import org.hl7.fhir.r4.model.CanonicalType;
+import org.opencds.cqf.tooling.cql.CqlTranslationService;
 import org.opencds.cqf.tooling.cql.exception.CqlTranslatorException;
 import org.opencds.cqf.tooling.processor.ValueSetsProcessor;
 import org.opencds.cqf.tooling.utilities.IOUtils.Encoding;
@@ -40,14 +36,11 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -308,129 +301,18 @@ public class ResourceUtils {
    }
 
    public static Map<String, IBaseResource> getDepLibraryResources(IBaseResource resource, FhirContext fhirContext, Boolean includeDependencies, Boolean includeVersion, Set<String> missingDependencies) {
-      Map<String, IBaseResource> libraryResources = new HashMap<>();
-
-      List<String> libraryUrls = getLibraryDependencies(resource, fhirContext);
-
-      for (String libraryUrl : libraryUrls) {
-         IBaseResource library = IOUtils.getLibraryUrlMap(fhirContext).get(libraryUrl);
-         if (library == null) {
-            var id = CanonicalUtils.getId(libraryUrl);
-            var version = CanonicalUtils.getVersion(libraryUrl);
-            library = IOUtils.getLibraries(fhirContext).get(id);
-            if (library != null) {
-               var libraryVersion = ResourceUtils.getVersion(library, fhirContext);
-               if (libraryVersion != null && !libraryVersion.equals(version)) {
-                  logger.warn("Mismatch library version for {}, expected {}, found {}", libraryUrl, version, libraryVersion);
-                  library = null;
-               }
-            }
-         }
-         if (library != null) {
-            libraryResources.putIfAbsent(libraryUrl, library);
-
-            if (includeDependencies) {
-               Map<String, IBaseResource> libraryDependencies = getDepLibraryResources(library, fhirContext, includeDependencies, includeVersion, missingDependencies);
-               for (Entry<String, IBaseResource> entry : libraryDependencies.entrySet()) {
-                  libraryResources.putIfAbsent(entry.getKey(), entry.getValue());
-               }
-            }
-         }
-         else {
-            missingDependencies.add(libraryUrl);
-         }
-      }
-
-      return libraryResources;
+      return ArtifactDependencyGraph.forContext(fhirContext)
+              .getLibraries(resource, Boolean.TRUE.equals(includeDependencies), missingDependencies);
    }
 
    public static Map<String, IBaseResource> getDepValueSetResources(IBaseResource resource, FhirContext fhirContext, Boolean includeDependencies, Set<String> missingDependencies) {
-      Map<String, IBaseResource> valueSetResources = new HashMap<>();
-
-      List<String> valueSetUrls = getTerminologyDependencies(resource, fhirContext);
-
-      for (String valueSetUrl : valueSetUrls) {
-         var cachedVs = ValueSetsProcessor.getCachedValueSets(fhirContext);
-         if (cachedVs.entrySet().stream().filter(
-                 entry -> entry.getKey().equals(valueSetUrl)).findAny().isEmpty()) {
-            missingDependencies.add(valueSetUrl);
-         } else {
-              cachedVs.entrySet().stream().filter(entry -> entry.getKey().equals(valueSetUrl))
-                      .forEach(entry -> valueSetResources.put(entry.getKey(), entry.getValue()));
-         }
-      }
-      Set<String> dependencies = new HashSet<>(valueSetUrls);
-
-      if (includeDependencies) {
-         List<String> libraryUrls = getLibraryDependencies(resource, fhirContext);
-         for (String url : libraryUrls) {
-            IBaseResource library = IOUtils.getLibraryUrlMap(fhirContext).get(url);
-            if (library == null) {
-               var id = CanonicalUtils.getId(url);
-               var version = CanonicalUtils.getVersion(url);
-               library = IOUtils.getLibraries(fhirContext).get(id);
-               if (library != null) {
-                  var libraryVersion = ResourceUtils.getVersion(library, fhirContext);
-                  if (libraryVersion != null && !libraryVersion.equals(version)) {
-                     logger.warn("Mismatch library version for {}, expected {}, found {}", url, version, libraryVersion);
-                     library = null;
-                  }
-               }
-            }
-            if (library != null) {
-               Map<String, IBaseResource> dependencyValueSets = getDepValueSetResources(library, fhirContext, includeDependencies, missingDependencies);
-               dependencies.addAll(dependencyValueSets.keySet());
-               for (Entry<String, IBaseResource> entry : dependencyValueSets.entrySet()) {
-                  valueSetResources.putIfAbsent(entry.getKey(), entry.getValue());
-               }
-            }
-            else {
-               missingDependencies.add(url);
-            }
-         }
-      }
-
-      if (dependencies.size() != valueSetResources.size()) {
-         dependencies.removeAll(valueSetResources.keySet());
-         for (String valueSetUrl : dependencies) {
-            missingDependencies.add(valueSetUrl);
-         }
-      }
-      return valueSetResources;
+      return ArtifactDependencyGraph.forContext(fhirContext)
+              .getValueSets(resource, Boolean.TRUE.equals(includeDependencies), missingDependencies);
    }
 
    public static Map<String, IBaseResource> getDepValueSetResources(String cqlContentPath, String igPath, FhirContext fhirContext, boolean includeDependencies, Boolean includeVersion) throws CqlTranslatorException {
-      Map<String, IBaseResource> valueSetResources = new HashMap<>();
-
-      List<String> valueSetDefIDs = getDepELMValueSetDefIDs(cqlContentPath);
-
-      for (String valueSetUrl : valueSetDefIDs) {
-         ValueSetsProcessor.getCachedValueSets(fhirContext).entrySet().stream()
-                 .filter(entry -> entry.getKey().equals(valueSetUrl))
-                 .forEach(entry -> valueSetResources.put(entry.getKey(), entry.getValue()));
-      }
-      Set<String> dependencies = new HashSet<>(valueSetDefIDs);
-
-      if (includeDependencies) {
-         List<String> dependencyCqlPaths = IOUtils.getDependencyCqlPaths(cqlContentPath, includeVersion);
-         for (String path : dependencyCqlPaths) {
-            Map<String, IBaseResource> dependencyValueSets = getDepValueSetResources(path, igPath, fhirContext, includeDependencies, includeVersion);
-            dependencies.addAll(dependencyValueSets.keySet());
-            for (Entry<String, IBaseResource> entry : dependencyValueSets.entrySet()) {
-               valueSetResources.putIfAbsent(entry.getKey(), entry.getValue());
-            }
-         }
-      }
-
-      if (dependencies.size() != valueSetResources.size()) {
-         List<String> missingValueSets = new ArrayList<>();
-         dependencies.removeAll(valueSetResources.keySet());
-         for (String valueSetUrl : dependencies) {
-            missingValueSets.add(valueSetUrl + " MISSING");
-         }
-         throw new CqlTranslatorException(missingValueSets, CqlCompilerException.ErrorSeverity.Warning);
-      }
-      return valueSetResources;
+      return ArtifactDependencyGraph.forContext(fhirContext)
+              .getCqlValueSets(cqlContentPath, includeDependencies, includeVersion);
    }
 
    public static List<String> getIncludedLibraryNames(String cqlContentPath, Boolean includeVersion) throws CqlTranslatorException {
@@ -491,16 +373,10 @@ public class ResourceUtils {
    }
 
    public static CqlTranslator getCQLCqlTranslator(String cqlContentPath) throws CqlTranslatorException {
-      String folder = IOUtils.getParentDirectoryPath(cqlContentPath);
-      CqlTranslatorOptions options = ResourceUtils.getTranslatorOptions(folder);
-      ModelManager modelManager = new ModelManager();
-      LibraryManager libraryManager = new LibraryManager(modelManager);
-      libraryManager.getLibrarySourceLoader().registerProvider(new FhirLibrarySourceProvider());
-      libraryManager.getLibrarySourceLoader().registerProvider(new DefaultLibrarySourceProvider(Paths.get(folder)));
-      return  IOUtils.translate(new File(cqlContentPath), libraryManager);
+      return CqlTranslationService.getInstance().translate(new File(cqlContentPath));
    }
 
-   private static Map<String, org.hl7.elm.r1.Library> cachedElm = new HashMap<>();
+   private static Map<String, org.hl7.elm.r1.Library> cachedElm = new ConcurrentHashMap<>();
    public static org.hl7.elm.r1.Library getElmFromCql(String cqlContentPath) throws CqlTranslatorException {
       org.hl7.elm.r1.Library elm = cachedElm.get(cqlContentPath);
       if (elm != null) {
@@ -973,7 +849,10 @@ public class ResourceUtils {
 
    public static void cleanUp(){
       outputResourceTracker = new ConcurrentHashMap<>();
-      cachedElm = new HashMap<String, org.hl7.elm.r1.Library>();
+      cachedElm = new ConcurrentHashMap<>();
+      ArtifactDependencyGraph.cleanUp();
+      ValueSetsProcessor.cleanUp();
+      CqlTranslationService.getInstance().clear();
    }
 
    public static String getCqlFromR4Library(org.hl7.fhir.r4.model.Library library) {
@@ -0,0 +1,166 @@
+package org.opencds.cqf.tooling.utilities;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.opencds.cqf.tooling.common.ThreadUtils;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+
+/**
+ * Reads the entry resources of a JSON bundle one at a time, so that memory use is bounded by the largest entry rather
+ * than the whole bundle.
+ * <p>
+ * The file is tokenized incrementally: bundle-level elements are skipped and each {@code entry.resource} is parsed by
+ * the HAPI parser on its own as the iterator advances. Entries without a resource are skipped.
+ */
+public class StreamingBundleReader implements Iterator<IBaseResource>, Closeable {
+
+    private final File file;
+    private final IParser parser;
+    private final JsonReader reader;
+    private boolean inEntries;
+    private boolean finished;
+    private IBaseResource next;
+    private int entryCount;
+
+    /**
+     * @param file        The JSON bundle to read.
+     * @param fhirContext The FHIR context used to parse the entries.
+     */
+    public StreamingBundleReader(File file, FhirContext fhirContext) throws IOException {
+        this.file = file;
+        this.parser = fhirContext.newJsonParser();
+        BufferedReader bufferedReader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+        this.reader = new JsonReader(bufferedReader);
+        try {
+            reader.beginObject();
+        } catch (IOException | IllegalStateException e) {
+            reader.close();
+            throw new IllegalArgumentException(String.format("%s is not a JSON resource", file.getAbsolutePath()), e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !finished) {
+            try {
+                next = readNextResource();
+            } catch (IOException e) {
+                throw new UncheckedIOException(String.format("Error reading bundle %s", file.getAbsolutePath()), e);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public IBaseResource next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        IBaseResource resource = next;
+        next = null;
+        entryCount++;
+        return resource;
+    }
+
+    /**
+     * Runs the action for each remaining entry resource, in parallel on the shared I/O executor. Entries are read
+     * only as fast as the actions complete, so at most a bounded number of parsed entries is held in memory.
+     * Failures of the action are logged and do not stop the remaining entries.
+     *
+     * @param phase  A name for the work, used to report its timing.
+     * @param action The action to run for each entry resource (typically writing it to a file).
+     */
+    public void forEachEntry(String phase, Consumer<IBaseResource> action) {
+        Iterator<Callable<Void>> tasks = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return StreamingBundleReader.this.hasNext();
+            }
+
+            @Override
+            public Callable<Void> next() {
+                IBaseResource resource = StreamingBundleReader.this.next();
+                return () -> {
+                    action.accept(resource);
+                    return null;
+                };
+            }
+        };
+        ThreadUtils.executeIoTasks(phase, tasks);
+    }
+
+    /**
+     * @return the number of entry resources returned so far
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private IBaseResource readNextResource() throws IOException {
+        while (true) {
+            if (inEntries) {
+                if (reader.hasNext()) {
+                    IBaseResource resource = readEntry();
+                    if (resource != null) {
+                        return resource;
+                    }
+                    continue;
+                }
+                reader.endArray();
+                inEntries = false;
+            }
+            if (!reader.hasNext()) {
+                reader.endObject();
+                finished = true;
+                return null;
+            }
+            String name = reader.nextName();
+            if (name.equals("resourceType")) {
+                String resourceType = reader.nextString();
+                if (!resourceType.equals("Bundle")) {
+                    throw new IllegalArgumentException(String.format("%s is a %s, not a Bundle", file.getAbsolutePath(), resourceType));
+                }
+            } else if (name.equals("entry") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                inEntries = true;
+            } else {
+                reader.skipValue();
+            }
+        }
+    }
+
+    private IBaseResource readEntry() throws IOException {
+        JsonElement resource = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("resource")) {
+                resource = JsonParser.parseReader(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return resource == null || !resource.isJsonObject() ? null : parser.parseResource(resource.toString());
+    }
+}
@@ -0,0 +1,153 @@
+package org.opencds.cqf.tooling.utilities;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a (DSTU3 or R4) transaction bundle to a file one entry at a time, so that memory use is bounded by the
+ * largest entry rather than the whole bundle.
+ * <p>
+ * The bundle-level elements (id, type, identifier, timestamp, ...) are taken from a shell bundle without entries, and
+ * each entry is encoded on its own by the HAPI parser and spliced into the output. The result is identical to encoding
+ * the complete bundle in memory.
+ */
+public class StreamingBundleWriter implements Closeable {
+
+    private static final String JSON_ENTRY_START = "\"entry\":[";
+    private static final String PRETTY_JSON_ENTRY_START = "\"entry\": [ ";
+    private static final String XML_BUNDLE_START = "<Bundle xmlns=\"http://hl7.org/fhir\">";
+    private static final String XML_BUNDLE_END = "</Bundle>";
+
+    private final IBaseBundle shell;
+    private final FhirContext fhirContext;
+    private final IOUtils.Encoding encoding;
+    private final boolean prettyPrint;
+    private final IParser parser;
+    private final Writer writer;
+    private int entryCount;
+
+    /**
+     * @param shell       The bundle to write, without entries.
+     * @param outputPath  The file to write (replaced if it exists).
+     * @param encoding    JSON or XML.
+     * @param fhirContext The FHIR context of the bundle (DSTU3 or R4).
+     * @param prettyPrint Whether to pretty print the output.
+     */
+    public StreamingBundleWriter(IBaseBundle shell, String outputPath, IOUtils.Encoding encoding, FhirContext fhirContext,
+                                 boolean prettyPrint) throws IOException {
+        if (encoding != IOUtils.Encoding.JSON && encoding != IOUtils.Encoding.XML) {
+            throw new IllegalArgumentException("Unsupported bundle encoding: " + encoding);
+        }
+        this.shell = shell;
+        this.fhirContext = fhirContext;
+        this.encoding = encoding;
+        this.prettyPrint = prettyPrint;
+        this.parser = IOUtils.getParser(encoding, fhirContext).setPrettyPrint(prettyPrint);
+        FileChannel channel = FileChannel.open(Paths.get(outputPath), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1));
+    }
+
+    /**
+     * Encodes the resource as a PUT entry of the bundle and writes it to the file
+     */
+    public void addEntry(IBaseResource resource) throws IOException {
+        String entry = encodeEntry(resource);
+        if (entryCount == 0) {
+            writer.write(getHeader());
+        } else {
+            writer.write(getSeparator());
+        }
+        writer.write(entry);
+        entryCount++;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (entryCount == 0) {
+                // a bundle without entries has no entry element at all
+                writer.write(parser.encodeResourceToString(shell));
+            } else {
+                writer.write(getFooter());
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    // The encoded shell up to where the first entry starts
+    private String getHeader() {
+        String encodedShell = parser.encodeResourceToString(shell);
+        if (encoding == IOUtils.Encoding.JSON) {
+            String end = prettyPrint ? "\n}" : "}";
+            return strip(encodedShell, "", end) + (prettyPrint ? ",\n  " + PRETTY_JSON_ENTRY_START : "," + JSON_ENTRY_START);
+        }
+        return strip(encodedShell, "", XML_BUNDLE_END);
+    }
+
+    private String getSeparator() {
+        if (encoding == IOUtils.Encoding.JSON) {
+            return prettyPrint ? ", " : ",";
+        }
+        return prettyPrint ? "\n" : "";
+    }
+
+    private String getFooter() {
+        if (encoding == IOUtils.Encoding.JSON) {
+            return prettyPrint ? " ]\n}" : "]}";
+        }
+        return prettyPrint ? "\n" + XML_BUNDLE_END : XML_BUNDLE_END;
+    }
+
+    // Encodes a bundle holding only this entry and keeps just the entry
+    private String encodeEntry(IBaseResource resource) {
+        String encodedWrapper = parser.encodeResourceToString(createSingleEntryBundle(resource));
+        if (encoding == IOUtils.Encoding.JSON) {
+            return prettyPrint
+                    ? strip(encodedWrapper, "{\n  \"resourceType\": \"Bundle\",\n  " + PRETTY_JSON_ENTRY_START, " ]\n}")
+                    : strip(encodedWrapper, "{\"resourceType\":\"Bundle\"," + JSON_ENTRY_START, "]}");
+        }
+        return prettyPrint
+                ? strip(encodedWrapper, XML_BUNDLE_START + "\n", "\n" + XML_BUNDLE_END)
+                : strip(encodedWrapper, XML_BUNDLE_START, XML_BUNDLE_END);
+    }
+
+    private IBaseBundle createSingleEntryBundle(IBaseResource resource) {
+        switch (fhirContext.getVersion().getVersion()) {
+            case DSTU3:
+                org.hl7.fhir.dstu3.model.Bundle stu3Bundle = new org.hl7.fhir.dstu3.model.Bundle();
+                stu3Bundle.addEntry(BundleUtils.createStu3BundleEntry(resource));
+                return stu3Bundle;
+            case R4:
+                org.hl7.fhir.r4.model.Bundle r4Bundle = new org.hl7.fhir.r4.model.Bundle();
+                r4Bundle.addEntry(BundleUtils.createR4BundleEntry(resource));
+                return r4Bundle;
+            default:
+                throw new IllegalArgumentException("Unknown fhir version: " + fhirContext.getVersion().getVersion().getFhirVersionString());
+        }
+    }
+
+    private static String strip(String encoded, String prefix, String suffix) {
+        if (!encoded.startsWith(prefix) || !encoded.endsWith(suffix)) {
+            throw new IllegalStateException("Unexpected bundle encoding, unable to stream entries");
+        }
+        return encoded.substring(prefix.length(), encoded.length() - suffix.length());
+    }
+}
@@ -0,0 +1,112 @@
+package org.opencds.cqf.tooling.common;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ThreadUtilsTest {
+
+    @BeforeMethod
+    public void setUp() {
+        ThreadUtils.configure(2, 2, false);
+        ThreadUtils.resetTimings();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        ThreadUtils.configure(Runtime.getRuntime().availableProcessors(), 1000, false);
+        ThreadUtils.resetTimings();
+    }
+
+    @Test
+    public void testAllTasksRunWithBoundedPool() {
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            tasks.add(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(2);
+                running.decrementAndGet();
+                completed.incrementAndGet();
+                return null;
+            });
+        }
+        ThreadUtils.executeTasks("bounded", tasks);
+
+        assertEquals(completed.get(), 50);
+        // two workers plus the submitting thread once the queue is full
+        assertTrue(maxRunning.get() <= 3, "max running: " + maxRunning.get());
+    }
+
+    @Test
+    public void testNestedTasksDoNotDeadlock() {
+        AtomicInteger completed = new AtomicInteger();
+        List<Callable<Void>> outer = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            outer.add(() -> {
+                List<Callable<Void>> inner = new ArrayList<>();
+                for (int j = 0; j < 4; j++) {
+                    inner.add(() -> {
+                        completed.incrementAndGet();
+                        return null;
+                    });
+                }
+                ThreadUtils.executeTasks("inner", inner);
+                return null;
+            });
+        }
+        ThreadUtils.executeTasks("outer", outer);
+
+        assertEquals(completed.get(), 32);
+    }
+
+    @Test
+    public void testFailedTaskDoesNotStopOthers() {
+        AtomicInteger completed = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int index = i;
+            tasks.add(() -> {
+                if (index == 3) {
+                    throw new IllegalStateException("expected failure");
+                }
+                completed.incrementAndGet();
+                return null;
+            });
+        }
+        ThreadUtils.executeIoTasks("failing", tasks);
+
+        assertEquals(completed.get(), 9);
+    }
+
+    @Test
+    public void testPhaseTimingIsRecorded() {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            tasks.add(() -> {
+                Thread.sleep(5);
+                return null;
+            });
+        }
+        ThreadUtils.executeTasks("timed", tasks);
+        ThreadUtils.executeTasks("timed", tasks);
+
+        ThreadUtils.PhaseTiming timing = ThreadUtils.getPhaseTimings().get(0);
+        assertEquals(timing.getPhase(), "timed");
+        assertEquals(timing.getRuns(), 2);
+        assertEquals(timing.getTasks(), 8);
+        assertTrue(timing.getTaskMillis() >= 40, "task time: " + timing.getTaskMillis());
+        assertTrue(timing.getMaxTaskMillis() >= 5);
+        assertTrue(ThreadUtils.getTimingSummary().contains("timed: 8 task(s) in 2 run(s)"));
+    }
+}
@@ -0,0 +1,92 @@
+package org.opencds.cqf.tooling.cql;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import org.apache.commons.io.FileUtils;
+import org.cqframework.cql.cql2elm.CqlCompilerOptions;
+import org.cqframework.cql.cql2elm.CqlTranslator;
+import org.cqframework.cql.cql2elm.DefaultLibrarySourceProvider;
+import org.cqframework.cql.cql2elm.LibraryManager;
+import org.cqframework.cql.cql2elm.model.CompiledLibrary;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CqlTranslationServiceTest {
+    private final CqlTranslationService service = CqlTranslationService.getInstance();
+    private Path folder;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("cql-translation");
+        write("Common.cql", "library Common version '1.0.0'\n\ndefine One: 1\n");
+        write("Left.cql", "library Left version '1.0.0'\n\ninclude Common version '1.0.0'\n\ndefine Two: Common.One + 1\n");
+        write("Right.cql", "library Right version '1.0.0'\n\ninclude Common version '1.0.0'\n\ndefine Three: Common.One + 2\n");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(folder.toFile());
+    }
+
+    @Test
+    public void testIncludedLibraryIsCompiledOnce() throws IOException {
+        CompiledLibrary fromLeft = translateAndResolveCommon("Left.cql");
+        CompiledLibrary fromRight = translateAndResolveCommon("Right.cql");
+
+        assertSame(fromRight, fromLeft);
+    }
+
+    @Test
+    public void testChangedLibraryIsCompiledAgain() throws IOException {
+        CompiledLibrary before = translateAndResolveCommon("Left.cql");
+        write("Common.cql", "library Common version '1.0.0'\n\ndefine One: 1\n\ndefine Four: 4\n");
+        CompiledLibrary after = translateAndResolveCommon("Right.cql");
+
+        assertNotSame(after, before);
+        assertTrue(after.getLibrary().getStatements().getDef().stream().anyMatch(def -> def.getName().equals("Four")));
+    }
+
+    @Test
+    public void testIncluderIsCompiledAgainWhenAnIncludeChanges() throws IOException {
+        write("Top.cql", "library Top version '1.0.0'\n\ninclude Left version '1.0.0'\n\ndefine Five: Left.Two + 3\n");
+        write("Other.cql", "library Other version '1.0.0'\n\ninclude Left version '1.0.0'\n\ndefine Six: Left.Two + 4\n");
+        CompiledLibrary before = translateAndResolve("Top.cql", "Left");
+        assertSame(translateAndResolve("Other.cql", "Left"), before);
+
+        // Left is unchanged, but was compiled against the previous Common
+        write("Common.cql", "library Common version '1.0.0'\n\ndefine One: 1.0\n");
+        CompiledLibrary after = translateAndResolve("Other.cql", "Left");
+
+        assertNotSame(after, before);
+        assertEquals(after.resolveExpressionRef("Two").getResultType().toString(), "System.Decimal");
+    }
+
+    private CompiledLibrary translateAndResolveCommon(String fileName) throws IOException {
+        return translateAndResolve(fileName, "Common");
+    }
+
+    private CompiledLibrary translateAndResolve(String fileName, String libraryName) throws IOException {
+        LibraryManager libraryManager = service.createLibraryManager(CqlCompilerOptions.defaultOptions(),
+                new DefaultLibrarySourceProvider(folder));
+        CqlTranslator translator = CqlTranslator.fromFile(folder.resolve(fileName).toFile(), libraryManager);
+        assertTrue(translator.getErrors().isEmpty(), translator.getErrors().toString());
+        return libraryManager.resolveLibrary(new VersionedIdentifier().withId(libraryName).withVersion("1.0.0"), new ArrayList<>());
+    }
+
+    private void write(String fileName, String cql) throws IOException {
+        File file = folder.resolve(fileName).toFile();
+        Files.write(file.toPath(), cql.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,68 @@
+package org.opencds.cqf.tooling.dateroller.r4;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.Duration;
+import org.hl7.fhir.r4.model.Extension;
+import org.hl7.fhir.r4.model.MedicationRequest;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Period;
+import org.hl7.fhir.r4.model.Timing;
+import org.testng.annotations.Test;
+
+public class RollDatesR4Test {
+    private static final LocalDate LAST_UPDATED = LocalDate.now().minusDays(10);
+
+    @Test
+    public void testDatePathPlan() {
+        List<String> paths = RollDatesR4.getDatePathPlan(new MedicationRequest()).stream()
+                .map(RollDatesR4.DatePath::toString).collect(Collectors.toList());
+        assertEquals(paths, List.of("authoredOn", "dispenseRequest.validityPeriod"));
+
+        paths = RollDatesR4.getDatePathPlan(new Observation()).stream()
+                .map(RollDatesR4.DatePath::toString).collect(Collectors.toList());
+        assertEquals(paths, List.of("effective", "issued", "value"));
+
+        // The plan is built once per resource type
+        assertSame(RollDatesR4.getDatePathPlan(new Observation()), RollDatesR4.getDatePathPlan(new Observation()));
+    }
+
+    @Test
+    public void testRollDates() {
+        MedicationRequest medicationRequest = withDateRoller(new MedicationRequest());
+        medicationRequest.setAuthoredOnElement(new DateTimeType("2022-04-28"));
+        medicationRequest.getDispenseRequest().setValidityPeriod(new Period().setStartElement(new DateTimeType("2022-04-28")));
+        RollDatesR4.rollDatesInResource(medicationRequest);
+
+        assertEquals(medicationRequest.getAuthoredOnElement().getValueAsString(), "2022-05-08");
+        assertEquals(medicationRequest.getDispenseRequest().getValidityPeriod().getStartElement().getValueAsString(), "2022-05-08");
+
+        Observation observation = withDateRoller(new Observation());
+        Timing timing = new Timing();
+        timing.addEventElement().setValueAsString("2022-04-28");
+        observation.setEffective(timing);
+        observation.setValue(new Period().setStartElement(new DateTimeType("2022-04-01"))
+                .setEndElement(new DateTimeType("2022-04-28")));
+        RollDatesR4.rollDatesInResource(observation);
+
+        assertEquals(observation.getEffectiveTiming().getEvent().get(0).getValueAsString(), "2022-05-08");
+        assertEquals(observation.getValuePeriod().getStartElement().getValueAsString(), "2022-04-11");
+        assertEquals(observation.getValuePeriod().getEndElement().getValueAsString(), "2022-05-08");
+    }
+
+    private static <T extends org.hl7.fhir.r4.model.DomainResource> T withDateRoller(T resource) {
+        resource.setId("date-roller");
+        Extension dateRoller = resource.addExtension().setUrl("http://fhir.org/guides/cdc/opioid-cds/StructureDefinition/dataDateRoller");
+        dateRoller.addExtension("dateLastUpdated", new DateTimeType(LAST_UPDATED.toString()));
+        Duration frequency = new Duration();
+        frequency.setValue(1).setCode("d");
+        dateRoller.addExtension("frequency", frequency);
+        return resource;
+    }
+}
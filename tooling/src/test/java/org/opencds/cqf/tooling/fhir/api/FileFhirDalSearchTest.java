@@ -0,0 +1,144 @@
+package org.opencds.cqf.tooling.fhir.api;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertThrows;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.DateTimeType;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Library;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Reference;
+import org.opencds.cqf.tooling.parameter.FileFhirPlatformParameters;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.IQueryParameterType;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.param.DateParam;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.rest.param.UriParam;
+
+public class FileFhirDalSearchTest {
+  private File resourceDir;
+  private FileFhirPlatformParameters platformParams;
+
+  @BeforeMethod
+  public void setup() throws IOException {
+    resourceDir = Files.createTempDirectory("file-fhir-dal").toFile();
+    platformParams = new FileFhirPlatformParameters();
+    platformParams.fhirContext = FhirContext.forR4Cached();
+    platformParams.encoding = EncodingEnum.JSON;
+    platformParams.resourceDir = resourceDir.getPath();
+
+    FileFhirDal dal = new FileFhirDal(platformParams);
+    dal.create(new Library().setUrl("http://example.org/Library/Common").setVersion("1.0.0").setName("Common")
+            .setStatus(Enumerations.PublicationStatus.ACTIVE).setId("Library/Common"));
+    dal.create(new Library().setUrl("http://example.org/Library/Helpers").setVersion("2.0.0").setName("Helpers")
+            .setStatus(Enumerations.PublicationStatus.DRAFT).setId("Library/Helpers"));
+    dal.create(new Patient().setActive(true).setId("Patient/p1"));
+    Observation observation = new Observation().setSubject(new Reference("Patient/p1"))
+            .setEffective(new DateTimeType("2020-01-15"));
+    observation.getCode().addCoding().setSystem("http://loinc.org").setCode("1234-5");
+    dal.create(observation.setId("Observation/o1"));
+    dal.create(new Observation().setSubject(new Reference("Group/g1")).setEffective(new DateTimeType("2021-06-01"))
+            .setId("Observation/o2"));
+  }
+
+  @AfterMethod
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(resourceDir);
+  }
+
+  @Test
+  public void searchByParameterType() {
+    FileFhirDal dal = new FileFhirPlatform(platformParams).dal();
+
+    assertEquals(ids(dal.search("Library", params("url", new UriParam("http://example.org/Library/Common")))), List.of("Common"));
+    assertEquals(ids(dal.search("Library", params("name", new StringParam("help")))), List.of("Helpers"));
+    assertEquals(ids(dal.search("Library", params("name", new StringParam("elp").setContains(true)))), List.of("Helpers"));
+    assertEquals(ids(dal.search("Library", params("version", new TokenParam("2.0.0")))), List.of("Helpers"));
+    assertEquals(ids(dal.search("Library", params("status", new TokenParam("active"), new TokenParam("draft")))),
+            List.of("Common", "Helpers"));
+    assertEquals(ids(dal.search("Library", params("_id", new TokenParam("Helpers")))), List.of("Helpers"));
+    assertEquals(ids(dal.search("Library", null)), List.of("Common", "Helpers"));
+
+    assertEquals(ids(dal.search("Observation", params("code", new TokenParam("http://loinc.org", "1234-5")))), List.of("o1"));
+    assertEquals(ids(dal.search("Observation", params("subject", new ReferenceParam("Patient/p1")))), List.of("o1"));
+    assertEquals(ids(dal.search("Observation", params("patient", new ReferenceParam("p1")))), List.of("o1"));
+    assertEquals(ids(dal.search("Observation", params("date", new DateParam("2020-01")))), List.of("o1"));
+    assertEquals(ids(dal.search("Observation", params("date", new DateParam("gt2020-12-31")))), List.of("o2"));
+    assertEquals(ids(dal.search("Observation", params("date", new DateParam("le2021")))), List.of("o1", "o2"));
+
+    // parameters are combined with AND
+    Map<String, List<List<IQueryParameterType>>> both = params("date", new DateParam("ge2020"));
+    both.putAll(params("subject", new ReferenceParam("Group/g1")));
+    assertEquals(ids(dal.search("Observation", both)), List.of("o2"));
+
+    assertThrows(IllegalArgumentException.class, () -> dal.search("Library", params("unknown", new StringParam("x"))));
+  }
+
+  @Test
+  public void indexFollowsChanges() {
+    FileFhirDal dal = new FileFhirPlatform(platformParams).dal();
+    assertEquals(ids(dal.search("Library", params("status", new TokenParam("active")))), List.of("Common"));
+
+    dal.update(new Library().setName("Helpers").setStatus(Enumerations.PublicationStatus.ACTIVE).setId("Library/Helpers"));
+    assertEquals(ids(dal.search("Library", params("status", new TokenParam("active")))), List.of("Common", "Helpers"));
+    assertEquals(((Library) dal.read(new IdType("Library/Helpers"))).getStatus(), Enumerations.PublicationStatus.ACTIVE);
+
+    dal.delete(new IdType("Library/Common"));
+    assertEquals(ids(dal.search("Library", params("status", new TokenParam("active")))), List.of("Helpers"));
+
+    dal.create(new Library().setName("Added").setId("Library/Added"));
+    assertEquals(ids(dal.search("Library", params("name", new StringParam("add")))), List.of("Added"));
+  }
+
+  @Test
+  public void persistedIndex() {
+    platformParams.persistIndex = true;
+    FileFhirDal dal = new FileFhirDal(platformParams);
+    dal.reindex();
+    File indexFile = new File(resourceDir, ".cqf-tooling/" + FileFhirIndex.INDEX_FILE);
+    assertTrue(indexFile.exists());
+
+    // a second dal reuses the persisted values
+    FileFhirDal reloaded = new FileFhirDal(platformParams);
+    assertEquals(ids(reloaded.search("Observation", params("code", new TokenParam("1234-5")))), List.of("o1"));
+    assertNotNull(reloaded.read(new IdType("Patient/p1")));
+  }
+
+  private static Map<String, List<List<IQueryParameterType>>> params(String name, IQueryParameterType... values) {
+    Map<String, List<List<IQueryParameterType>>> params = new HashMap<>();
+    params.put(name, List.of(List.of(values)));
+    return params;
+  }
+
+  private static List<String> ids(IBaseBundle bundle) {
+    List<String> ids = new ArrayList<>();
+    for (Bundle.BundleEntryComponent entry : ((Bundle) bundle).getEntry()) {
+      ids.add(entry.getResource().getIdElement().getIdPart());
+    }
+    assertEquals(((Bundle) bundle).getType(), Bundle.BundleType.SEARCHSET);
+    assertEquals(((Bundle) bundle).getTotal(), ids.size());
+    return ids;
+  }
+}
@@ -85,6 +85,16 @@ public class FileFhirDalTest implements SoftwareSystemTest {
     assertFalse(readPatient.getActive());
   }
 
+  @Test(priority = 2) // Read returns a copy of the cached resource
+  public void readReturnsACopy(){
+    logger.info("Running: FileFhirDalTest.readReturnsACopy...");
+
+    Patient readPatient = (Patient) dal.read(this.patient.getIdElement());
+    readPatient.setActive(true);
+
+    assertFalse(((Patient) dal.read(this.patient.getIdElement())).getActive());
+  }
+
   @Test(priority = 3) // Update
   public void update() {
     logger.info("Running: FileFhirDalTest.update...");
@@ -0,0 +1,119 @@
+package org.opencds.cqf.tooling.measure.adapters;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.math.BigDecimal;
+
+import org.cqframework.cql.cql2elm.CqlCompilerOptions;
+import org.hl7.fhir.Parameters;
+import org.hl7.fhir.ParametersParameter;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.MeasureReport;
+import org.hl7.fhir.r4.model.Resource;
+import org.opencds.cqf.tooling.measure.MeasureTestProcessor;
+import org.opencds.cqf.tooling.measure.evaluation.LocalMeasureEvaluator;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class CqlEvaluatorMeasureTestAdapterTest {
+
+    private static final String MEASURE_BUNDLE =
+            "/org/opencds/cqf/tooling/operation/postman-collection.resources/EXM104_FHIR4-8.1.000/EXM104_FHIR4-8.1.000-bundle.json";
+
+    private final FhirContext fhirContext = FhirContext.forR4Cached();
+    // the measure content predates CQL 1.4
+    private final CqlCompilerOptions compilerOptions = CqlCompilerOptions.defaultOptions().withCompatibilityLevel("1.3");
+    private Bundle contentBundle;
+    private Bundle numeratorBundle;
+    private Bundle denominatorBundle;
+
+    // The measure bundle holds both the content and the data and expected reports of two test cases
+    @BeforeClass
+    public void splitMeasureBundle() throws Exception {
+        Bundle measureBundle;
+        try (InputStream stream = CqlEvaluatorMeasureTestAdapterTest.class.getResourceAsStream(MEASURE_BUNDLE)) {
+            measureBundle = (Bundle) fhirContext.newJsonParser().parseResource(stream);
+        }
+
+        contentBundle = new Bundle().setType(Bundle.BundleType.COLLECTION);
+        numeratorBundle = new Bundle().setType(Bundle.BundleType.COLLECTION);
+        denominatorBundle = new Bundle().setType(Bundle.BundleType.COLLECTION);
+        for (Bundle.BundleEntryComponent entry : measureBundle.getEntry()) {
+            Resource resource = entry.getResource();
+            String id = resource.getIdElement().getIdPart();
+            if (id.contains("numer-EXM104")) {
+                numeratorBundle.addEntry().setResource(resource);
+            } else if (id.contains("denom-EXM104")) {
+                denominatorBundle.addEntry().setResource(resource);
+            } else {
+                contentBundle.addEntry().setResource(resource);
+            }
+        }
+    }
+
+    @Test
+    public void TestNumeratorTestCase() {
+        CqlEvaluatorMeasureTestAdapter adapter = new CqlEvaluatorMeasureTestAdapter(fhirContext, numeratorBundle, contentBundle, compilerOptions);
+        IMeasureReportAdapter actual = adapter.getActualMeasureReportAdapter();
+
+        assertEquals(actual.getReportType(), "INDIVIDUAL");
+        assertEquals(actual.getMeasureId(), "measure-EXM104-FHIR4-8.1.000");
+        assertEquals(actual.getPatientId(), "numer-EXM104-FHIR4");
+        assertEquals(actual.getGroupScore("group-1").compareTo(BigDecimal.ONE), 0);
+    }
+
+    @Test
+    public void TestDenominatorTestCase() {
+        CqlEvaluatorMeasureTestAdapter adapter = new CqlEvaluatorMeasureTestAdapter(fhirContext, denominatorBundle, contentBundle, compilerOptions);
+        IMeasureReportAdapter actual = adapter.getActualMeasureReportAdapter();
+
+        assertEquals(actual.getPatientId(), "denom-EXM104-FHIR4");
+        assertEquals(actual.getGroupScore("group-1").compareTo(BigDecimal.ZERO), 0);
+    }
+
+    @Test
+    public void TestPopulationCounts() {
+        LocalMeasureEvaluator evaluator = LocalMeasureEvaluator.forContentBundle(fhirContext, contentBundle, compilerOptions);
+        MeasureReport report = (MeasureReport) evaluator.evaluate("measure-EXM104-FHIR4-8.1.000", "denom-EXM104-FHIR4",
+                null, null, denominatorBundle);
+
+        MeasureReport.MeasureReportGroupComponent group = report.getGroupFirstRep();
+        assertEquals(group.getPopulation().size(), 4);
+        for (MeasureReport.MeasureReportGroupPopulationComponent population : group.getPopulation()) {
+            String code = population.getCode().getCodingFirstRep().getCode();
+            int expected = code.equals("numerator") || code.equals("denominator-exclusion") ? 0 : 1;
+            assertEquals(population.getCount(), expected, code);
+        }
+
+        // A patient outside of the initial population has no score
+        MeasureReport empty = (MeasureReport) evaluator.evaluate("measure-EXM104-FHIR4-8.1.000", "unknown",
+                null, null, denominatorBundle);
+        assertNull(empty.getGroupFirstRep().getMeasureScore().getValue());
+    }
+
+    @Test
+    public void TestEvaluatorIsSharedByContentBundle() {
+        assertSame(LocalMeasureEvaluator.forContentBundle(fhirContext, contentBundle, compilerOptions),
+                LocalMeasureEvaluator.forContentBundle(fhirContext, contentBundle, compilerOptions));
+    }
+
+    @Test
+    public void TestMeasureTestProcessorWithoutServer() {
+        MeasureTestProcessor processor = new MeasureTestProcessor(fhirContext, compilerOptions);
+        Parameters results = processor.executeTest(numeratorBundle, contentBundle, null);
+
+        boolean passed = false;
+        for (ParametersParameter parameter : results.getParameter()) {
+            if (parameter.getName().getValue().contains(MeasureTestProcessor.TestPassedKey)) {
+                passed = parameter.getValueBoolean().isValue();
+            }
+        }
+        assertTrue(passed);
+    }
+}
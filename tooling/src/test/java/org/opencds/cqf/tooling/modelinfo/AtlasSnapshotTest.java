@@ -0,0 +1,171 @@
+package org.opencds.cqf.tooling.modelinfo;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.model.StringType;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+
+public class AtlasSnapshotTest {
+    private final FhirContext fhirContext = FhirContext.forR4Cached();
+    private Path base;
+    private Path snapshotFile;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        base = Files.createTempDirectory("atlas-snapshot");
+        snapshotFile = base.resolve("snapshots").resolve("atlas.bin");
+
+        Path spec = Files.createDirectories(base.resolve("spec"));
+        Path ig = Files.createDirectories(base.resolve("ig"));
+
+        StructureDefinition patient = new StructureDefinition();
+        patient.setId("Patient");
+        patient.setUrl("http://hl7.org/fhir/StructureDefinition/Patient");
+        patient.setName("Patient");
+        patient.setType("Patient");
+        write(spec.resolve("StructureDefinition-Patient.json"), patient);
+
+        CodeSystem codeSystem = new CodeSystem();
+        codeSystem.setId("example");
+        codeSystem.setUrl("http://example.org/CodeSystem/example");
+        codeSystem.setStatus(Enumerations.PublicationStatus.ACTIVE);
+        ValueSet valueSet = new ValueSet();
+        valueSet.setId("example");
+        valueSet.setUrl("http://example.org/ValueSet/example");
+        Bundle bundle = new Bundle().setType(Bundle.BundleType.COLLECTION);
+        bundle.addEntry().setFullUrl(codeSystem.getUrl()).setResource(codeSystem);
+        bundle.addEntry().setFullUrl(valueSet.getUrl()).setResource(valueSet);
+        write(spec.resolve("Bundle-terminology.json"), bundle);
+
+        Parameters parameters = new Parameters();
+        parameters.setId("settings");
+        parameters.addParameter("name", new StringType("value"));
+        write(ig.resolve("Parameters-settings.json"), parameters);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(base.toFile());
+    }
+
+    @Test
+    public void testSnapshotMatchesLoadedResources() {
+        Atlas loaded = new Atlas();
+        loaded.loadPaths(base.toString(), "spec;ig", snapshotFile);
+        assertTrue(Files.isRegularFile(snapshotFile));
+        assertNotNull(ConformanceSnapshot.read(fhirContext, snapshotFile, sources()));
+
+        Atlas reloaded = new Atlas();
+        reloaded.loadPaths(base.toString(), "spec;ig", snapshotFile);
+
+        assertEquals(loaded.getStructureDefinitions().size(), 1);
+        assertSameResources(reloaded.getResources(), loaded.getResources());
+        assertSameResources(reloaded.getStructureDefinitions(), loaded.getStructureDefinitions());
+        assertSameResources(reloaded.getCodeSystems(), loaded.getCodeSystems());
+        assertSameResources(reloaded.getValueSets(), loaded.getValueSets());
+        assertSameResources(reloaded.getParameters(), loaded.getParameters());
+        assertEquals(reloaded.getParameters().keySet(), loaded.getParameters().keySet());
+    }
+
+    @Test
+    public void testChangedSourcesInvalidateSnapshot() throws IOException {
+        new Atlas().loadPaths(base.toString(), "spec;ig", snapshotFile);
+
+        Path source = base.resolve("ig").resolve("Parameters-settings.json");
+        Parameters parameters = (Parameters) fhirContext.newJsonParser()
+                .parseResource(new String(Files.readAllBytes(source), StandardCharsets.UTF_8));
+        parameters.addParameter("other", new StringType("value"));
+        write(source, parameters);
+        Files.setLastModifiedTime(source, FileTime.fromMillis(Files.getLastModifiedTime(source).toMillis() + 2000));
+        assertNull(ConformanceSnapshot.read(fhirContext, snapshotFile, sources()));
+
+        Atlas atlas = new Atlas();
+        atlas.loadPaths(base.toString(), "spec;ig", snapshotFile);
+        assertEquals(atlas.getParameters().values().iterator().next().getParameter().size(), 2);
+        assertNotNull(ConformanceSnapshot.read(fhirContext, snapshotFile, sources()));
+
+        Files.write(base.resolve("ig").resolve("ValueSet-added.json"), "{}".getBytes(StandardCharsets.UTF_8));
+        assertNull(ConformanceSnapshot.read(fhirContext, snapshotFile, sources()));
+    }
+
+    @Test
+    public void testSnapshotsAreOptIn() {
+        String property = System.getProperty(ConformanceSnapshot.SNAPSHOT_PROPERTY);
+        try {
+            System.clearProperty(ConformanceSnapshot.SNAPSHOT_PROPERTY);
+            assertFalse(ConformanceSnapshot.isEnabled());
+            System.setProperty(ConformanceSnapshot.SNAPSHOT_PROPERTY, "true");
+            assertTrue(ConformanceSnapshot.isEnabled());
+        } finally {
+            if (property == null) {
+                System.clearProperty(ConformanceSnapshot.SNAPSHOT_PROPERTY);
+            } else {
+                System.setProperty(ConformanceSnapshot.SNAPSHOT_PROPERTY, property);
+            }
+        }
+    }
+
+    @Test
+    public void testUnreadableSnapshotIsIgnored() throws IOException {
+        Files.createDirectories(snapshotFile.getParent());
+        Files.write(snapshotFile, "not a snapshot".getBytes(StandardCharsets.UTF_8));
+        assertNull(ConformanceSnapshot.read(fhirContext, snapshotFile, sources()));
+
+        Atlas atlas = new Atlas();
+        atlas.loadPaths(base.toString(), "spec;ig", snapshotFile);
+        assertEquals(atlas.getValueSets().size(), 1);
+        assertNotNull(ConformanceSnapshot.read(fhirContext, snapshotFile, sources()));
+    }
+
+    private List<Path> sources() {
+        List<Path> sources = new ArrayList<>();
+        for (String folder : Arrays.asList("spec", "ig")) {
+            for (File file : FileUtils.listFiles(base.resolve(folder).toFile(), new String[] { "json" }, false)) {
+                sources.add(file.toPath());
+            }
+        }
+        return sources;
+    }
+
+    private <T extends Resource> void assertSameResources(Map<String, T> actual, Map<String, T> expected) {
+        IParser parser = fhirContext.newJsonParser();
+        assertEquals(actual.keySet(), expected.keySet());
+        for (Map.Entry<String, T> entry : expected.entrySet()) {
+            T resource = actual.get(entry.getKey());
+            assertEquals(resource.getIdElement().getValue(), entry.getValue().getIdElement().getValue(), entry.getKey());
+            assertEquals(parser.encodeResourceToString(resource), parser.encodeResourceToString(entry.getValue()), entry.getKey());
+        }
+    }
+
+    private void write(Path path, Resource resource) throws IOException {
+        Files.write(path, fhirContext.newJsonParser().encodeResourceToString(resource).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,81 @@
+package org.opencds.cqf.tooling.modelinfo;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hl7.elm_modelinfo.r1.ClassInfo;
+import org.hl7.elm_modelinfo.r1.TypeInfo;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.opencds.cqf.tooling.common.ThreadUtils;
+import org.opencds.cqf.tooling.modelinfo.fhir.FHIRClassInfoBuilder;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class ClassInfoBuilderTest {
+    private Map<String, StructureDefinition> structureDefinitions;
+
+    @BeforeClass
+    public void setUp() throws IOException {
+        structureDefinitions = new HashMap<>();
+        load("/org/hl7/fhir/r4/model/profile/profiles-types.xml");
+        load("/org/hl7/fhir/r4/model/profile/profiles-resources.xml");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        ThreadUtils.configure(Runtime.getRuntime().availableProcessors(), 1000, false);
+    }
+
+    @Test
+    public void testParallelBuildMatchesSerialBuild() {
+        assertSameTypeInfos(false);
+    }
+
+    @Test
+    public void testParallelBuildMatchesSerialBuildWithCqlPrimitives() {
+        assertSameTypeInfos(true);
+    }
+
+    private void assertSameTypeInfos(boolean useCQLPrimitives) {
+        ThreadUtils.configure(1, 1000, false);
+        Map<String, TypeInfo> serial = build(useCQLPrimitives);
+
+        ThreadUtils.configure(4, 1000, false);
+        Map<String, TypeInfo> parallel = build(useCQLPrimitives);
+
+        assertTrue(serial.get("FHIR.Observation") instanceof ClassInfo);
+        assertEquals(parallel.keySet(), serial.keySet());
+        for (Map.Entry<String, TypeInfo> entry : serial.entrySet()) {
+            assertEquals(parallel.get(entry.getKey()), entry.getValue(), entry.getKey());
+        }
+    }
+
+    private Map<String, TypeInfo> build(boolean useCQLPrimitives) {
+        ClassInfoBuilder builder = new FHIRClassInfoBuilder(structureDefinitions);
+        builder.settings.useCQLPrimitives = useCQLPrimitives;
+        Map<String, TypeInfo> typeInfos = builder.build();
+        builder.afterBuild();
+        return typeInfos;
+    }
+
+    private void load(String resource) throws IOException {
+        try (InputStream stream = ClassInfoBuilderTest.class.getResourceAsStream(resource)) {
+            Bundle bundle = (Bundle) FhirContext.forR4Cached().newXmlParser().parseResource(stream);
+            for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+                if (entry.getResource() instanceof StructureDefinition) {
+                    StructureDefinition sd = (StructureDefinition) entry.getResource();
+                    structureDefinitions.putIfAbsent(sd.getUrl().substring(sd.getUrl().lastIndexOf("/") + 1), sd);
+                }
+            }
+        }
+    }
+}
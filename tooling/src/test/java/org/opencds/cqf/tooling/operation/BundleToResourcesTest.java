@@ -4,6 +4,7 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -128,4 +129,27 @@ public class BundleToResourcesTest {
         Assert.assertFalse(tempFile.exists(), "Temporary bundle file was not deleted.");
     }
 
+    @Test
+    public void testExecute_BundleDecomposition_Streaming() throws IOException {
+        String projectPath = System.getProperty("user.dir");
+        String jsonFilePath = projectPath + File.separator + "src/main/resources/libraryevaluationtest-bundle.json";
+        File parsedDir = new File(projectPath + File.separator + "target/test-output/bundleResourcesParsed");
+        File streamedDir = new File(projectPath + File.separator + "target/test-output/bundleResourcesStreamed");
+
+        new BundleToResources().execute(new String[] { "-BundleToResources", PATH_ARGUMENT + jsonFilePath,
+                ENCODING_ARGUMENT + "json", OUTPUT_PATH_ARGUMENT + parsedDir.getAbsolutePath() });
+        new BundleToResources().execute(new String[] { "-BundleToResources", PATH_ARGUMENT + jsonFilePath,
+                ENCODING_ARGUMENT + "json", OUTPUT_PATH_ARGUMENT + streamedDir.getAbsolutePath(), "-s=true" });
+
+        File[] parsedFiles = parsedDir.listFiles((dir, name) -> name.endsWith(".json"));
+        Assert.assertNotNull(parsedFiles, "Bundle resource folder should not be null.");
+        Assert.assertEquals(parsedFiles.length, 5);
+        for (File parsedFile : parsedFiles) {
+            File streamedFile = new File(streamedDir, parsedFile.getName());
+            Assert.assertTrue(streamedFile.exists(), "Expected file not found: " + parsedFile.getName());
+            Assert.assertEquals(Files.readString(streamedFile.toPath()), Files.readString(parsedFile.toPath()));
+        }
+        Assert.assertEquals(streamedDir.listFiles((dir, name) -> name.endsWith(".json")).length, parsedFiles.length);
+    }
+
 }
@@ -12,7 +12,9 @@ import static org.testng.Assert.assertTrue;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 public class StripGeneratedContentOperationTest {
@@ -77,4 +79,26 @@ public class StripGeneratedContentOperationTest {
         File cqlFile = outputPath.resolve("cql").resolve("BreastCancerScreeningFHIR.cql").toFile();
         assertTrue(cqlFile.exists());
     }
+
+    @Test
+    void stripsInParallel() throws URISyntaxException, IOException {
+        String operation = "StripGeneratedContent";
+        var inputFilePath = Path.of(StripGeneratedContentOperationTest.class.getResource("strip-resources").toURI());
+        var serialPath = Path.of("target", "test-output", "strip-generated-content-serial");
+        var parallelPath = Path.of("target", "test-output", "strip-generated-content-parallel");
+
+        new StripGeneratedContentOperation().execute(new String[] { "-" + operation, "-ptr=" + inputFilePath,
+                "-op=" + serialPath, "-cql=" + serialPath.resolve("cql") });
+        new StripGeneratedContentOperation().execute(new String[] { "-" + operation, "-ptr=" + inputFilePath,
+                "-op=" + parallelPath, "-cql=" + parallelPath.resolve("cql"), "-parallel=true" });
+
+        try (var files = Files.walk(serialPath)) {
+            var serialFiles = files.filter(Files::isRegularFile).toArray(Path[]::new);
+            assertTrue(serialFiles.length > 4);
+            for (Path serialFile : serialFiles) {
+                var parallelFile = parallelPath.resolve(serialPath.relativize(serialFile));
+                assertEquals(Files.readString(parallelFile), Files.readString(serialFile), parallelFile.toString());
+            }
+        }
+    }
 }
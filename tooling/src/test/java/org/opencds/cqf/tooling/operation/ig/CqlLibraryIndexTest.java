@@ -0,0 +1,75 @@
+package org.opencds.cqf.tooling.operation.ig;
+
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.opencds.cqf.tooling.processor.CqlProcessor;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class CqlLibraryIndexTest {
+    private static final String BASE = "http://example.org/fhir";
+
+    private final CqlProcessor processor = new CqlProcessor(null, Collections.emptyList(), null, null, null, null, null, false);
+
+    @Test
+    public void testMatchesLibraryNameExactly() {
+        var foo = info(BASE, "Foo", "1.0.0");
+        var myFoo = info(BASE, "MyFoo", "1.0.0");
+        var index = new CqlLibraryIndex(List.of(myFoo, foo), Collections.emptyList());
+
+        assertSame(index.getFileInformation(BASE + "/Library/Foo"), foo);
+        assertSame(index.getFileInformation(BASE + "/Library/MyFoo|1.0.0"), myFoo);
+        assertNull(index.getFileInformation(BASE + "/Library/Bar"));
+    }
+
+    @Test
+    public void testPrefersMatchingVersionAndBase() {
+        var first = info(BASE, "Foo", "1.0.0");
+        var second = info(BASE, "Foo", "2.0.0");
+        var other = info("http://other.org/fhir", "Foo", "2.0.0");
+        var index = new CqlLibraryIndex(List.of(first, other, second), Collections.emptyList());
+
+        assertSame(index.getFileInformation(BASE + "/Library/Foo|2.0.0"), second);
+        assertSame(index.getFileInformation("http://other.org/fhir/Library/Foo|2.0.0"), other);
+        assertSame(index.getFileInformation(BASE + "/Library/Foo|1.0.0"), first);
+    }
+
+    @Test
+    public void testFallsBackToNameWhenNoVersionMatches() {
+        var foo = info(BASE, "Foo", "1.0.0");
+        var index = new CqlLibraryIndex(List.of(foo), Collections.emptyList());
+
+        // a warning is logged and the only library with the name is used
+        assertSame(index.getFileInformation(BASE + "/Library/Foo|3.0.0"), foo);
+
+        var second = info(BASE, "Foo", "2.0.0");
+        var other = info("http://other.org/fhir", "Foo", "2.0.0");
+        index = new CqlLibraryIndex(List.of(other, second), Collections.emptyList());
+
+        // the canonical base still decides between libraries without the version
+        assertSame(index.getFileInformation(BASE + "/Library/Foo|3.0.0"), second);
+    }
+
+    @Test
+    public void testFindsLibraryPackage() {
+        var foo = info(BASE, "Foo", "1.0.0");
+        var myFoo = info(BASE, "MyFoo", "1.0.0");
+        var fooPackage = new LibraryPackage(null, FhirContext.forR4Cached(), foo);
+        var myFooPackage = new LibraryPackage(null, FhirContext.forR4Cached(), myFoo);
+        var index = new CqlLibraryIndex(List.of(foo, myFoo), List.of(myFooPackage, fooPackage));
+
+        assertSame(index.getLibraryPackage(BASE + "/Library/Foo"), fooPackage);
+    }
+
+    private CqlProcessor.CqlSourceFileInformation info(String system, String id, String version) {
+        var info = processor.new CqlSourceFileInformation(id + ".cql");
+        info.setIdentifier(new VersionedIdentifier().withSystem(system).withId(id).withVersion(version));
+        return info;
+    }
+}
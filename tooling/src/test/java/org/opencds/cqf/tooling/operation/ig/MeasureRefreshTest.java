@@ -0,0 +1,105 @@
+package org.opencds.cqf.tooling.operation.ig;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.expectThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.FileUtils;
+import org.opencds.cqf.tooling.processor.CqlProcessor;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class MeasureRefreshTest {
+    private static final String BASE = "http://example.org/fhir";
+
+    private Path igRoot;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        igRoot = Files.createTempDirectory("measure-refresh");
+        write("ig.ini", "[IG]\nig = input/ig.json\n");
+        write("input/ig.json", "{\"resourceType\": \"ImplementationGuide\", \"id\": \"test\", \"url\": \"" + BASE
+                + "/ImplementationGuide/test\", \"packageId\": \"example.test\", \"status\": \"draft\", "
+                + "\"fhirVersion\": [\"4.0.1\"]}");
+        write("input/cql/First.cql", "library First version '1.0.0'\n\ndefine \"Numerator\": 1\n");
+        write("input/cql/Second.cql", "library Second version '1.0.0'\n\ndefine \"Numerator\": 2\n");
+        writeMeasure("First");
+        writeMeasure("Second");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(igRoot.toFile());
+    }
+
+    @Test
+    public void testRefreshesEveryMeasure() {
+        var refresh = measureRefresh();
+        assertEquals(refresh.refresh().size(), 2);
+        assertEquals(refresh.getMeasurePackages().size(), 2);
+    }
+
+    @Test
+    public void testFailsWhenAMeasureFailsToRefresh() {
+        var refresh = measureRefresh();
+        var received = ConcurrentHashMap.<String>newKeySet();
+        refresh.setPackageListener(measurePackage -> {
+            String id = measurePackage.getMeasure().getIdElement().getIdPart();
+            received.add(id);
+            if (id.equals("Second")) {
+                throw new IllegalStateException("Unable to publish " + id);
+            }
+        });
+
+        var failure = expectThrows(IllegalStateException.class, refresh::refresh);
+        assertEquals(failure.getMessage(), "Unable to publish Second");
+        // The other measures are still refreshed before the failure is reported
+        assertEquals(received, Set.of("First", "Second"));
+    }
+
+    @Test
+    public void testFailsWhenLibrariesCanNotBeResolved() throws IOException {
+        // Library managers can not be created for a processor with several CQL paths
+        write("input/other/Third.cql", "library Third version '1.0.0'\n\ndefine \"Numerator\": 3\n");
+        var igInfo = new IGInfo(FhirContext.forR4Cached(), igRoot.toString());
+        var cqlProcessor = new CqlProcessor(null, List.of(igInfo.getCqlBinaryPath(), igRoot.resolve("input/other").toString()),
+                null, new IGLoggingService(LoggerFactory.getLogger(MeasureRefreshTest.class)), null, null, BASE, false);
+        var refresh = new MeasureRefresh(igInfo, cqlProcessor, Collections.emptyList());
+
+        expectThrows(RuntimeException.class, refresh::refresh);
+        assertEquals(refresh.getMeasurePackages().size(), 0);
+    }
+
+    private MeasureRefresh measureRefresh() {
+        var igInfo = new IGInfo(FhirContext.forR4Cached(), igRoot.toString());
+        var cqlProcessor = new CqlProcessor(null, Collections.singletonList(igInfo.getCqlBinaryPath()), null,
+                new IGLoggingService(LoggerFactory.getLogger(MeasureRefreshTest.class)), null, null, BASE, false);
+        return new MeasureRefresh(igInfo, cqlProcessor, Collections.emptyList());
+    }
+
+    private void writeMeasure(String name) throws IOException {
+        write("input/resources/measure/measure-" + name + ".json", "{\"resourceType\": \"Measure\", \"id\": \"" + name
+                + "\", \"url\": \"" + BASE + "/Measure/" + name + "\", \"status\": \"draft\", \"library\": [\"" + BASE
+                + "/Library/" + name + "\"], \"group\": [{\"population\": [{\"code\": {\"coding\": [{\"code\": "
+                + "\"numerator\"}]}, \"criteria\": {\"language\": \"text/cql.identifier\", \"expression\": "
+                + "\"Numerator\"}}]}]}");
+    }
+
+    private void write(String path, String content) throws IOException {
+        Path file = igRoot.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
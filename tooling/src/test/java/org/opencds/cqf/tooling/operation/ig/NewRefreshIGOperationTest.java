@@ -0,0 +1,123 @@
+package org.opencds.cqf.tooling.operation.ig;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.DomainResource;
+import org.hl7.fhir.r4.model.Library;
+import org.hl7.fhir.r4.model.Reference;
+import org.opencds.cqf.tooling.parameter.RefreshIGParameters;
+import org.opencds.cqf.tooling.processor.CqlProcessor;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.opencds.cqf.tooling.utilities.constants.CrmiConstants;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class NewRefreshIGOperationTest {
+    private static final String BASE = "http://example.org/fhir";
+    private static final String[] MEASURES = { "First", "Second", "Third", "Fourth" };
+
+    private final FhirContext fhirContext = FhirContext.forR4Cached();
+    private Path igRoot;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        igRoot = Files.createTempDirectory("new-refresh-ig");
+        write("ig.ini", "[IG]\nig = input/ig.json\n");
+        write("input/ig.json", "{\"resourceType\": \"ImplementationGuide\", \"id\": \"test\", \"url\": \"" + BASE
+                + "/ImplementationGuide/test\", \"packageId\": \"example.test\", \"status\": \"draft\", "
+                + "\"fhirVersion\": [\"4.0.1\"]}");
+        write("input/cql/Common.cql", "library Common version '1.0.0'\n\ndefine \"Numerator\": 1\n");
+        write("input/resources/library/library-Common.json", "{\"resourceType\": \"Library\", \"id\": \"Common\", "
+                + "\"url\": \"" + BASE + "/Library/Common\", \"version\": \"1.0.0\", \"name\": \"Common\", "
+                + "\"status\": \"draft\"}");
+        for (String name : MEASURES) {
+            write("input/resources/measure/measure-" + name + ".json", "{\"resourceType\": \"Measure\", \"id\": \""
+                    + name + "\", \"url\": \"" + BASE + "/Measure/" + name + "\", \"status\": \"draft\", "
+                    + "\"library\": [\"" + BASE + "/Library/Common\"]}");
+        }
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(igRoot.toFile());
+    }
+
+    @Test
+    public void testBundledLibrariesCarryTheSoftwareSystemStamp() throws Exception {
+        var params = new RefreshIGParameters();
+        params.rootDir = igRoot.toString();
+        params.outputEncoding = IOUtils.Encoding.JSON;
+        params.versioned = false;
+        params.shouldApplySoftwareSystemStamp = true;
+        var operation = new NewRefreshIGOperation(params) {
+            // The stamp is only applied when running from a release jar, which has a version
+            @Override
+            synchronized void applySoftwareSystemStamp(FhirContext fhirContext, IBaseResource resource) {
+                if (Boolean.TRUE.equals(params.shouldApplySoftwareSystemStamp)) {
+                    ((DomainResource) resource).addExtension(CrmiConstants.SOFTWARE_SYSTEM_EXT_URL,
+                            new Reference("Device/cqf-tooling"));
+                }
+            }
+        };
+
+        var igInfo = new IGInfo(fhirContext, igRoot.toString());
+        igInfo.setRefreshPlanDefinitions(false);
+        var cqlProcessor = new CqlProcessor(null, Collections.singletonList(igInfo.getCqlBinaryPath()), null,
+                new IGLoggingService(LoggerFactory.getLogger(NewRefreshIGOperationTest.class)), null, null, BASE, false);
+        cqlProcessor.execute();
+        var library = (Library) IOUtils.readResource(
+                igRoot.resolve("input/resources/library/library-Common.json").toString(), fhirContext);
+        var libraryPackages = List.of(new LibraryPackage(library, fhirContext, cqlProcessor.getAllFileInformation().iterator().next()));
+
+        operation.publishLibraries(igInfo, List.of(library));
+        operation.refreshAndPublish(igInfo, new RefreshPipeline(10, 4),
+                new PlanDefinitionRefresh(igInfo, cqlProcessor, libraryPackages),
+                new MeasureRefresh(igInfo, cqlProcessor, libraryPackages));
+
+        for (String name : MEASURES) {
+            List<Library> bundledLibraries = new ArrayList<>();
+            for (var entry : readBundle(igRoot.resolve("bundles/measure").resolve(name)).getEntry()) {
+                if (entry.getResource() instanceof Library) {
+                    bundledLibraries.add((Library) entry.getResource());
+                }
+            }
+            assertEquals(bundledLibraries.size(), 1, name);
+            assertEquals(bundledLibraries.get(0).getExtensionsByUrl(CrmiConstants.SOFTWARE_SYSTEM_EXT_URL).size(), 1, name);
+        }
+    }
+
+    private Bundle readBundle(Path packageFolder) throws IOException {
+        List<Path> bundles;
+        try (Stream<Path> files = Files.list(packageFolder)) {
+            bundles = files.filter(f -> f.getFileName().toString().endsWith("-bundle.json")).collect(Collectors.toList());
+        }
+        assertEquals(bundles.size(), 1, packageFolder.toString());
+        var bundle = IOUtils.readResource(bundles.get(0).toString(), fhirContext);
+        assertTrue(bundle instanceof Bundle);
+        return (Bundle) bundle;
+    }
+
+    private void write(String path, String content) throws IOException {
+        Path file = igRoot.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,110 @@
+package org.opencds.cqf.tooling.operation.ig;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+public class RefreshPipelineTest {
+
+    @Test
+    public void testStagesRunConcurrentlyAndPublishAsTheyGo() throws Exception {
+        RefreshPipeline pipeline = new RefreshPipeline(2, 2);
+        Set<String> published = ConcurrentHashMap.newKeySet();
+        // Each stage waits for the other to start, so the test only completes if they run concurrently
+        CountDownLatch started = new CountDownLatch(2);
+
+        pipeline.startPublishing("publish");
+        Map<String, Callable<Void>> stages = new LinkedHashMap<>();
+        for (String stage : new String[] { "first", "second" }) {
+            stages.put(stage, () -> {
+                started.countDown();
+                assertTrue(started.await(30, TimeUnit.SECONDS), "stages did not run concurrently");
+                for (int i = 0; i < 10; i++) {
+                    String name = stage + i;
+                    pipeline.publish(() -> {
+                        published.add(name);
+                        return null;
+                    });
+                }
+                return null;
+            });
+        }
+        pipeline.concurrently(stages);
+        pipeline.finishPublishing();
+
+        assertEquals(published.size(), 20);
+        String summary = pipeline.getSummary();
+        assertTrue(summary.contains("first:"), summary);
+        assertTrue(summary.contains("second:"), summary);
+        assertTrue(summary.contains("publish:"), summary);
+        assertTrue(summary.contains("20 task(s) published"), summary);
+    }
+
+    @Test
+    public void testPublishFailureDoesNotStopOtherTasks() {
+        RefreshPipeline pipeline = new RefreshPipeline(1, 2);
+        AtomicInteger completed = new AtomicInteger();
+
+        pipeline.startPublishing("publish");
+        for (int i = 0; i < 10; i++) {
+            boolean fails = i % 2 == 0;
+            pipeline.publish(() -> {
+                if (fails) {
+                    throw new IllegalStateException("failed");
+                }
+                completed.incrementAndGet();
+                return null;
+            });
+        }
+        IllegalStateException e = expectThrows(IllegalStateException.class, pipeline::finishPublishing);
+
+        assertEquals(e.getMessage(), "failed");
+        assertEquals(completed.get(), 5);
+    }
+
+    @Test(timeOut = 60000)
+    public void testPublishErrorDoesNotStopThePublishers() {
+        // A single publisher and a single queue slot: if an error killed the publisher, publish would block forever
+        RefreshPipeline pipeline = new RefreshPipeline(1, 1);
+        AtomicInteger completed = new AtomicInteger();
+
+        pipeline.startPublishing("publish");
+        for (int i = 0; i < 5; i++) {
+            boolean fails = i == 0;
+            pipeline.publish(() -> {
+                if (fails) {
+                    throw new StackOverflowError();
+                }
+                completed.incrementAndGet();
+                return null;
+            });
+        }
+
+        expectThrows(StackOverflowError.class, pipeline::finishPublishing);
+        assertEquals(completed.get(), 4);
+    }
+
+    @Test
+    public void testStageFailureIsRethrown() {
+        RefreshPipeline pipeline = new RefreshPipeline(1, 1);
+        Map<String, Callable<Void>> stages = new LinkedHashMap<>();
+        stages.put("succeeds", () -> null);
+        stages.put("fails", () -> {
+            throw new IllegalArgumentException("failed");
+        });
+
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> pipeline.concurrently(stages));
+        assertEquals(e.getMessage(), "failed");
+    }
+}
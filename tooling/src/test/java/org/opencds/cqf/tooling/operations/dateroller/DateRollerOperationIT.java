@@ -11,10 +11,17 @@ import org.hl7.fhir.r4.model.Extension;
 import org.hl7.fhir.r4.model.Observation;
 import org.hl7.fhir.r4.model.Period;
 import org.testng.Assert;
+import org.apache.commons.io.FileUtils;
 import org.testng.annotations.Test;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.util.Date;
 import java.util.TimeZone;
+import java.util.stream.Stream;
 
 public class DateRollerOperationIT {
    private final FhirContext fhirContext = FhirContext.forR4Cached();
@@ -362,6 +369,63 @@ public class DateRollerOperationIT {
       Assert.assertFalse(request.has("prefetch"));
    }
 
+   @Test
+   void testStreamingRollsDueFilesInPlace() throws IOException {
+      Path directory = Files.createTempDirectory("date-roller");
+      try {
+         Path due = directory.resolve("due.json");
+         Files.write(due, CDSHooksWithPrefetchAndNulls.getBytes(StandardCharsets.UTF_8));
+         // rolled 10 days ago with a frequency of 30 days, so still within the interval
+         Path notDue = Files.createDirectories(directory.resolve("nested")).resolve("not-due.json");
+         String notDueRequest = CDSHooksWithPrefetchAndNulls.replace("2022-10-10", LocalDate.now().minusDays(10).toString());
+         Files.write(notDue, notDueRequest.getBytes(StandardCharsets.UTF_8));
+         Files.write(directory.resolve("README.md"), "not a request".getBytes(StandardCharsets.UTF_8));
+
+         RollTestDates dateRoller = new RollTestDates();
+         dateRoller.setFhirContext(fhirContext);
+         RollTestDates.RollStatistics statistics = dateRoller.rollFiles(directory, directory, true);
+         Assert.assertEquals(statistics.getRolled(), 1);
+         Assert.assertEquals(statistics.getSkipped(), 1);
+         Assert.assertEquals(statistics.getFailed(), 0);
+
+         String rolled = new String(Files.readAllBytes(due), StandardCharsets.UTF_8);
+         Assert.assertFalse(rolled.contains("\"2022-10-10\""));
+         Assert.assertTrue(rolled.contains(LocalDate.now().toString()));
+         Assert.assertEquals(new String(Files.readAllBytes(notDue), StandardCharsets.UTF_8), notDueRequest);
+         try (Stream<Path> files = Files.list(directory)) {
+            Assert.assertEquals(files.count(), 3L, "No temporary files are left behind");
+         }
+      } finally {
+         FileUtils.deleteDirectory(directory.toFile());
+      }
+   }
+
+   @Test
+   void testStreamingCopiesFilesWithNothingDueToTheOutputPath() throws IOException {
+      Path input = Files.createTempDirectory("date-roller");
+      Path output = Files.createTempDirectory("date-roller-output");
+      try {
+         Files.write(input.resolve("due.json"), CDSHooksWithPrefetchAndNulls.getBytes(StandardCharsets.UTF_8));
+         String notDueRequest = CDSHooksWithPrefetchAndNulls.replace("2022-10-10", LocalDate.now().minusDays(10).toString());
+         Path notDue = Files.createDirectories(input.resolve("nested")).resolve("not-due.json");
+         Files.write(notDue, notDueRequest.getBytes(StandardCharsets.UTF_8));
+
+         RollTestDates dateRoller = new RollTestDates();
+         dateRoller.setFhirContext(fhirContext);
+         RollTestDates.RollStatistics statistics = dateRoller.rollFiles(input, output, true);
+         Assert.assertEquals(statistics.getRolled(), 1);
+         Assert.assertEquals(statistics.getSkipped(), 1);
+
+         Assert.assertTrue(Files.exists(output.resolve("due.json")));
+         Assert.assertEquals(new String(Files.readAllBytes(output.resolve("nested/not-due.json")), StandardCharsets.UTF_8),
+                 notDueRequest);
+         Assert.assertEquals(new String(Files.readAllBytes(notDue), StandardCharsets.UTF_8), notDueRequest);
+      } finally {
+         FileUtils.deleteDirectory(input.toFile());
+         FileUtils.deleteDirectory(output.toFile());
+      }
+   }
+
    private Extension getDateRollerExtension() {
       Duration frequency = new Duration();
       frequency.setValue(30).setUnit("days");
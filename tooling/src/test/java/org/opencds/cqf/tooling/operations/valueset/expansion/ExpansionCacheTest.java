@@ -0,0 +1,137 @@
+package org.opencds.cqf.tooling.operations.valueset.expansion;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.apache.commons.io.FileUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
+
+public class ExpansionCacheTest {
+   private static final String SERVER = "http://tx.example.org/r4";
+
+   private final FhirContext fhirContext = FhirContext.forR4Cached();
+   private final AtomicInteger expansions = new AtomicInteger();
+   private final Function<IBaseResource, IBaseResource> expander = valueSet -> {
+      expansions.incrementAndGet();
+      ValueSet expanded = ((ValueSet) valueSet).copy();
+      expanded.getExpansion().addContains().setSystem("http://snomed.info/sct").setCode("44054006");
+      return expanded;
+   };
+   private Path directory;
+
+   @BeforeMethod
+   public void setUp() throws IOException {
+      directory = Files.createTempDirectory("tx-cache");
+      expansions.set(0);
+   }
+
+   @AfterMethod
+   public void tearDown() throws IOException {
+      FileUtils.deleteDirectory(directory.toFile());
+   }
+
+   @Test
+   public void testExpansionIsCachedAcrossRuns() {
+      ValueSet valueSet = valueSet("diabetes", "1.0.0");
+      ValueSet expanded = (ValueSet) new ExpansionCache(fhirContext, directory, null, false)
+              .expand(SERVER, valueSet, null, expander);
+      assertEquals(expanded.getExpansion().getContains().size(), 1);
+
+      // A new cache over the same directory, e.g. the next run, does not expand again
+      ValueSet cached = (ValueSet) new ExpansionCache(fhirContext, directory, null, false)
+              .expand(SERVER, valueSet, null, expander);
+      assertEquals(cached.getExpansion().getContainsFirstRep().getCode(), "44054006");
+      assertEquals(expansions.get(), 1);
+   }
+
+   @Test
+   public void testKeyInvalidation() {
+      ExpansionCache cache = new ExpansionCache(fhirContext, directory, null, false);
+      String key = cache.getKey(SERVER, valueSet("diabetes", "1.0.0"), null);
+      assertNotEquals(cache.getKey(SERVER, valueSet("diabetes", "2.0.0"), null), key);
+      assertNotEquals(cache.getKey("http://other.example.org/r4", valueSet("diabetes", "1.0.0"), null), key);
+
+      // The compose is part of the key, but not a stale expansion
+      ValueSet unversioned = valueSet("diabetes", null);
+      String unversionedKey = cache.getKey(SERVER, unversioned, null);
+      unversioned.getExpansion().addContains().setCode("73211009");
+      assertEquals(cache.getKey(SERVER, unversioned, null), unversionedKey);
+      unversioned.getCompose().getIncludeFirstRep().addConcept().setCode("73211009");
+      assertNotEquals(cache.getKey(SERVER, unversioned, null), unversionedKey);
+
+      // also when a versioned ValueSet is edited without changing its version
+      ValueSet edited = valueSet("diabetes", "1.0.0");
+      edited.getCompose().getIncludeFirstRep().addConcept().setCode("73211009");
+      assertNotEquals(cache.getKey(SERVER, edited, null), key);
+   }
+
+   @Test
+   public void testWithoutDirectoryNothingIsCached() throws IOException {
+      ExpansionCache cache = new ExpansionCache(fhirContext, null, null, false);
+      cache.expand(SERVER, valueSet("diabetes", "1.0.0"), null, expander);
+      cache.expand(SERVER, valueSet("diabetes", "1.0.0"), null, expander);
+      assertEquals(expansions.get(), 2);
+      try (var files = Files.list(directory)) {
+         assertEquals(files.count(), 0L);
+      }
+   }
+
+   @Test
+   public void testExpiredExpansionIsExpandedAgain() {
+      ExpansionCache cache = new ExpansionCache(fhirContext, directory, Duration.ofMillis(-1), false);
+      cache.expand(SERVER, valueSet("diabetes", "1.0.0"), null, expander);
+      cache.expand(SERVER, valueSet("diabetes", "1.0.0"), null, expander);
+      assertEquals(expansions.get(), 2);
+   }
+
+   @Test
+   public void testOfflineOnlyUsesCachedExpansions() {
+      new ExpansionCache(fhirContext, directory, null, false).expand(SERVER, valueSet("diabetes", "1.0.0"), null, expander);
+
+      ExpansionCache offline = new ExpansionCache(fhirContext, directory, Duration.ofMillis(-1), true);
+      assertEquals(((ValueSet) offline.expand(SERVER, valueSet("diabetes", "1.0.0"), null, expander))
+              .getExpansion().getContains().size(), 1);
+      assertNull(offline.expand(SERVER, valueSet("hypertension", "1.0.0"), null, expander));
+      assertEquals(expansions.get(), 1);
+   }
+
+   @Test
+   public void testExpandAll() {
+      List<ValueSet> valueSets = new ArrayList<>();
+      for (int i = 0; i < 20; i++) {
+         valueSets.add(valueSet("vs-" + i, "1.0.0"));
+      }
+      ExpansionCache cache = new ExpansionCache(fhirContext, directory, null, false);
+      cache.expand(SERVER, valueSets.get(0), null, expander);
+
+      Map<IBaseResource, IBaseResource> expanded = cache.expandAll(SERVER, valueSets, null, expander);
+      assertEquals(expanded.size(), 20);
+      assertEquals(expansions.get(), 20);
+      assertEquals(((ValueSet) expanded.get(valueSets.get(7))).getUrl(), "http://example.org/ValueSet/vs-7");
+   }
+
+   private static ValueSet valueSet(String id, String version) {
+      ValueSet valueSet = new ValueSet();
+      valueSet.setId(id);
+      valueSet.setUrl("http://example.org/ValueSet/" + id);
+      valueSet.setVersion(version);
+      valueSet.getCompose().addInclude().setSystem("http://snomed.info/sct").addConcept().setCode("44054006");
+      return valueSet;
+   }
+}
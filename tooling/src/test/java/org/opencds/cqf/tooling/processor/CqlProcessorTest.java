@@ -0,0 +1,238 @@
+package org.opencds.cqf.tooling.processor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.hl7.fhir.utilities.validation.ValidationMessage;
+import org.opencds.cqf.tooling.operation.ig.IGLoggingService;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CqlProcessorTest {
+
+    private Path cqlFolder;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        cqlFolder = Files.createTempDirectory("cql-processor");
+        write("Common.cql", "library Common version '1.0.0'\n\ndefine \"One\": 1\n");
+        write("Middle.cql", "library Middle version '1.0.0'\n\n"
+                + "include Common version '1.0.0' called Common\n\n"
+                + "define \"Two\": Common.\"One\" + 1\n");
+        write("Top.cql", "library Top version '1.0.0'\n\n"
+                + "include Common version '1.0.0' called Common\n"
+                + "include Middle version '1.0.0' called Middle\n\n"
+                + "define \"Three\": Middle.\"Two\" + Common.\"One\"\n");
+        write("Other.cql", "library Other version '1.0.0'\n\n"
+                + "include Common version '1.0.0' called Common\n\n"
+                + "define \"Four\": Common.\"One\" * 4\n");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(cqlFolder.toFile());
+    }
+
+    @Test
+    public void testSerialTranslation() {
+        assertTranslated(execute(1));
+    }
+
+    @Test
+    public void testParallelTranslationFollowsIncludes() {
+        assertTranslated(execute(4));
+    }
+
+    @Test
+    public void testParallelTranslationSurfacesCircularIncludes() throws IOException {
+        Path cycleFolder = Files.createTempDirectory("cql-cycle");
+        try {
+            Files.write(cycleFolder.resolve("Ping.cql"), ("library Ping version '1.0.0'\n\n"
+                    + "include Pong version '1.0.0' called Pong\n\n"
+                    + "define \"Ping\": 1\n").getBytes(StandardCharsets.UTF_8));
+            Files.write(cycleFolder.resolve("Pong.cql"), ("library Pong version '1.0.0'\n\n"
+                    + "include Ping version '1.0.0' called Ping\n\n"
+                    + "define \"Pong\": 2\n").getBytes(StandardCharsets.UTF_8));
+
+            // No file can be scheduled by include order, the files must still be handed to the translator, which
+            // deals with the cycle the same way it does when translating serially
+            Throwable serialFailure = translationFailure(cycleFolder, 1);
+            Throwable parallelFailure = translationFailure(cycleFolder, 4);
+            assertNotNull(parallelFailure, "circular includes were not translated");
+            assertNotNull(serialFailure);
+            assertEquals(rootCause(parallelFailure).getClass(), rootCause(serialFailure).getClass());
+        } finally {
+            FileUtils.deleteDirectory(cycleFolder.toFile());
+        }
+    }
+
+    @Test
+    public void testElmCacheRestoresTranslation() throws IOException {
+        var elmCache = new ElmCache(cqlFolder.resolve("elm-cache"));
+        var translated = execute(1, elmCache);
+        var topPath = new File(cqlFolder.toFile(), "Top.cql").getAbsolutePath();
+        var expected = translated.getFileMap().get(topPath);
+        assertEquals(elmCache.getMisses(), 4);
+
+        var restored = execute(1, elmCache);
+        assertEquals(elmCache.getHits(), 4);
+        var actual = restored.getFileMap().get(topPath);
+        assertEquals(actual.getElm(), expected.getElm());
+        assertEquals(actual.getJsonElm(), expected.getJsonElm());
+        assertEquals(actual.getCql(), expected.getCql());
+        assertEquals(actual.getRelatedArtifacts().size(), expected.getRelatedArtifacts().size());
+        assertEquals(actual.getErrors().size(), expected.getErrors().size());
+        assertTranslated(restored);
+    }
+
+    @Test
+    public void testElmCacheMissesWhenAnIncludeChanges() throws IOException {
+        var elmCache = new ElmCache(cqlFolder.resolve("elm-cache"));
+        execute(1, elmCache);
+        write("Middle.cql", "library Middle version '1.0.0'\n\n"
+                + "include Common version '1.0.0' called Common\n\n"
+                + "define \"Two\": Common.\"One\" + Common.\"One\"\n");
+
+        var processor = execute(1, elmCache);
+        // Common and Other are restored, Middle and Top (which includes Middle) are translated again
+        assertEquals(elmCache.getHits(), 2);
+        assertEquals(elmCache.getMisses(), 6);
+        assertTranslated(processor);
+    }
+
+    @Test
+    public void testElmCacheMissesWhenVerboseMessagingChanges() {
+        var elmCache = new ElmCache(cqlFolder.resolve("elm-cache"));
+        execute(cqlFolder, 1, elmCache, false);
+        execute(cqlFolder, 1, elmCache, true);
+        // The status messages of the cached translations depend on verbose messaging
+        assertEquals(elmCache.getHits(), 0);
+        assertEquals(elmCache.getMisses(), 8);
+    }
+
+    @Test
+    public void testElmCachePrunesUnusedEntries() throws IOException {
+        var elmCache = new ElmCache(cqlFolder.resolve("elm-cache"));
+        execute(1, elmCache);
+        Path[] entries;
+        try (var files = Files.list(elmCache.getDirectory())) {
+            entries = files.sorted().toArray(Path[]::new);
+        }
+        assertEquals(entries.length, 4);
+        Files.setLastModifiedTime(entries[0], FileTime.from(Instant.now().minus(Duration.ofDays(31))));
+
+        assertEquals(elmCache.prune(Duration.ofDays(30)), 1);
+        assertFalse(Files.exists(entries[0]));
+        assertTrue(Files.exists(entries[1]));
+    }
+
+    @Test
+    public void testElmCacheIsOptIn() {
+        String property = System.getProperty(ElmCache.ELM_CACHE_PROPERTY);
+        try {
+            System.clearProperty(ElmCache.ELM_CACHE_PROPERTY);
+            assertNull(ElmCache.getDefault(false));
+
+            System.setProperty(ElmCache.ELM_CACHE_PROPERTY, "false");
+            assertNull(ElmCache.getDefault(true));
+
+            System.setProperty(ElmCache.ELM_CACHE_PROPERTY, cqlFolder.resolve("elm-cache").toString());
+            assertEquals(ElmCache.getDefault(false).getDirectory(), cqlFolder.resolve("elm-cache"));
+        } finally {
+            if (property == null) {
+                System.clearProperty(ElmCache.ELM_CACHE_PROPERTY);
+            } else {
+                System.setProperty(ElmCache.ELM_CACHE_PROPERTY, property);
+            }
+        }
+    }
+
+    @Test
+    public void testBuildIdentifiesUnversionedClasses() {
+        // Test classes are loaded from a directory, without an implementation version
+        var build = CqlProcessor.getBuild(CqlProcessorTest.class);
+        assertNotNull(build);
+        assertTrue(build.matches("null\\|\\d+\\|.*"), build);
+    }
+
+    @Test
+    public void testNewLibraryManagersShareCompiledLibraries() {
+        var processor = execute(1);
+        var identifier = new VersionedIdentifier().withId("Common").withVersion("1.0.0");
+        var first = processor.newLibraryManager();
+        var second = processor.newLibraryManager();
+
+        assertNotSame(second, first);
+        assertSame(second.resolveLibrary(identifier, new ArrayList<>()), first.resolveLibrary(identifier, new ArrayList<>()));
+    }
+
+    private CqlProcessor execute(int threads) {
+        return execute(threads, null);
+    }
+
+    private CqlProcessor execute(int threads, ElmCache elmCache) {
+        return execute(cqlFolder, threads, elmCache);
+    }
+
+    private CqlProcessor execute(Path folder, int threads, ElmCache elmCache) {
+        return execute(folder, threads, elmCache, false);
+    }
+
+    private CqlProcessor execute(Path folder, int threads, ElmCache elmCache, boolean verboseMessaging) {
+        var processor = new CqlProcessor(null, Collections.singletonList(folder.toString()), null,
+                new IGLoggingService(LoggerFactory.getLogger(CqlProcessorTest.class)), null, null, null, verboseMessaging);
+        processor.setTranslationThreads(threads);
+        processor.setElmCache(elmCache);
+        processor.execute();
+        return processor;
+    }
+
+    private Throwable translationFailure(Path folder, int threads) {
+        try {
+            execute(folder, threads, null);
+            return null;
+        } catch (Throwable t) {
+            return t;
+        }
+    }
+
+    private Throwable rootCause(Throwable t) {
+        return t.getCause() != null && t.getCause() != t ? rootCause(t.getCause()) : t;
+    }
+
+    private void assertTranslated(CqlProcessor processor) {
+        assertEquals(processor.getAllFileInformation().size(), 4);
+        for (var name : new String[] { "Common", "Middle", "Top", "Other" }) {
+            var info = processor.getFileInformation(new File(cqlFolder.toFile(), name + ".cql").getAbsolutePath());
+            assertNotNull(info, name);
+            assertNotNull(info.getElm(), name);
+            assertEquals(info.getIdentifier().getId(), name);
+            assertTrue(info.getErrors().stream().noneMatch(e -> e.getLevel() == ValidationMessage.IssueSeverity.ERROR),
+                    name + " has errors");
+        }
+    }
+
+    private void write(String fileName, String content) throws IOException {
+        Files.write(cqlFolder.resolve(fileName), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
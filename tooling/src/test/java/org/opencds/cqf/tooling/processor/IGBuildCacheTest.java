@@ -0,0 +1,117 @@
+package org.opencds.cqf.tooling.processor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class IGBuildCacheTest {
+
+    private Path root;
+    private File cqlFolder;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("build-cache");
+        cqlFolder = root.resolve("input/cql").toFile();
+        assertTrue(cqlFolder.mkdirs());
+        write("input/cql/Common.cql", "library Common version '1.0.0'\n\ndefine \"X\": 1\n");
+        write("input/cql/Measure.cql", "library Measure version '1.0.0'\n\n"
+                + "include Common version '1.0.0' called C\n\n"
+                + "valueset \"Diabetes\": 'http://cts.nlm.nih.gov/fhir/ValueSet/2.16.840.1'\n\n"
+                + "define \"Y\": C.\"X\"\n");
+        write("input/vocabulary/valueset/valueset-2.16.840.1.json", "{ \"resourceType\": \"ValueSet\" }");
+        write("input/resources/library/library-Measure.json", "{ \"resourceType\": \"Library\" }");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(root.toFile());
+    }
+
+    @Test
+    public void testUnchangedArtifactIsUpToDateAfterSave() {
+        var cache = newCache("options");
+        var cqlFile = new File(cqlFolder, "Measure.cql");
+        var fingerprint = cache.getCqlFingerprint(cqlFile);
+        assertFalse(cache.isUpToDate(IGBuildCache.CQL, cqlFile.getPath(), fingerprint));
+        cache.record(IGBuildCache.CQL, cqlFile.getPath(), fingerprint,
+                Collections.singletonList(root.resolve("input/resources/library/library-Measure.json").toString()));
+        cache.save();
+
+        var reloaded = newCache("options");
+        assertTrue(reloaded.isUpToDate(IGBuildCache.CQL, cqlFile.getPath(), reloaded.getCqlFingerprint(cqlFile)));
+        assertEquals(reloaded.getHits(IGBuildCache.CQL), 1);
+        assertEquals(reloaded.getMisses(IGBuildCache.CQL), 0);
+    }
+
+    @Test
+    public void testIncludeAndValueSetChangesInvalidateFingerprint() throws IOException {
+        var cqlFile = new File(cqlFolder, "Measure.cql");
+        var original = newCache("options").getCqlFingerprint(cqlFile);
+
+        write("input/cql/Common.cql", "library Common version '1.0.0'\n\ndefine \"X\": 2\n");
+        var includeChanged = newCache("options").getCqlFingerprint(cqlFile);
+        assertNotEquals(includeChanged, original);
+
+        write("input/vocabulary/valueset/valueset-2.16.840.1.json", "{ \"resourceType\": \"ValueSet\", \"id\": \"x\" }");
+        assertNotEquals(newCache("options").getCqlFingerprint(cqlFile), includeChanged);
+    }
+
+    @Test
+    public void testModifiedOutputOrOptionsForceRebuild() throws IOException {
+        var cache = newCache("options");
+        var cqlFile = new File(cqlFolder, "Measure.cql");
+        var output = root.resolve("input/resources/library/library-Measure.json").toString();
+        cache.record(IGBuildCache.CQL, cqlFile.getPath(), cache.getCqlFingerprint(cqlFile), Collections.singletonList(output));
+        cache.save();
+
+        var otherOptions = newCache("other-options");
+        assertFalse(otherOptions.isUpToDate(IGBuildCache.CQL, cqlFile.getPath(), otherOptions.getCqlFingerprint(cqlFile)));
+
+        write("input/resources/library/library-Measure.json", "{ \"resourceType\": \"Library\", \"id\": \"edited\" }");
+        var edited = newCache("options");
+        assertFalse(edited.isUpToDate(IGBuildCache.CQL, cqlFile.getPath(), edited.getCqlFingerprint(cqlFile)));
+        assertEquals(edited.getMisses(IGBuildCache.CQL), 1);
+    }
+
+    @Test
+    public void testCqlSourceHeader() {
+        var header = CqlSourceHeader.parse("// library Commented version '0'\n"
+                + "library hl7.fhir.Example version '2.0'\n"
+                + "using FHIR version '4.0.1'\n"
+                + "include FHIRHelpers version '4.0.1' called FHIRHelpers\n"
+                + "include \"Other Library\"\n"
+                + "valueset \"VS\": 'http://example.org/ValueSet/abc'\n");
+        assertEquals(header.getName(), "Example");
+        assertEquals(header.getVersion(), "2.0");
+        assertEquals(header.getIncludes().size(), 2);
+        assertEquals(header.getIncludes().get(0).toString(), "FHIRHelpers|4.0.1");
+        assertEquals(header.getIncludes().get(1).getName(), "Other Library");
+        assertEquals(header.getValueSetUrls(), Collections.singletonList("http://example.org/ValueSet/abc"));
+    }
+
+    private IGBuildCache newCache(String options) {
+        var cache = IGBuildCache.load(root.toString(), options);
+        cache.indexValueSets(Collections.singletonList(root.resolve("input/vocabulary").toString()));
+        return cache;
+    }
+
+    private void write(String relativePath, String content) throws IOException {
+        var file = root.resolve(relativePath);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
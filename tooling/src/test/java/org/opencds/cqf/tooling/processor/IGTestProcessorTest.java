@@ -0,0 +1,208 @@
+package org.opencds.cqf.tooling.processor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.commons.io.FileUtils;
+import org.hl7.fhir.Parameters;
+import org.hl7.fhir.ParametersParameter;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.DomainResource;
+import org.hl7.fhir.r4.model.Library;
+import org.hl7.fhir.r4.model.Measure;
+import org.opencds.cqf.tooling.common.SoftwareSystem;
+import org.opencds.cqf.tooling.common.ThreadUtils;
+import org.opencds.cqf.tooling.measure.MeasureTestProcessor;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.opencds.cqf.tooling.utilities.constants.CrmiConstants;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class IGTestProcessorTest {
+
+    private Path root;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("ig-test");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(root.toFile());
+    }
+
+    @Test
+    public void testJUnitReport() throws Exception {
+        IGTestProcessor processor = new IGTestProcessor();
+        IGTestProcessor.TestCaseResultSummary passed = result(processor, "EXM104", "numer-EXM104", true, 1500);
+        IGTestProcessor.TestCaseResultSummary failed = result(processor, "EXM104", "denom-EXM104", false, 250);
+        IGTestProcessor.TestCaseResultSummary error = result(processor, "EXM124", "numer-EXM124", false, 10);
+        error.setMessage("Could not resolve library");
+        error.setError(IllegalArgumentException.class.getName());
+
+        File report = root.resolve("output/test-reports/TEST-ig.xml").toFile();
+        processor.writeJUnitReport(Arrays.asList(passed, failed, error), report);
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(report);
+        Element testSuites = document.getDocumentElement();
+        assertEquals(testSuites.getAttribute("tests"), "3");
+        assertEquals(testSuites.getAttribute("failures"), "1");
+        assertEquals(testSuites.getAttribute("errors"), "1");
+        assertEquals(testSuites.getAttribute("time"), "1.760");
+
+        NodeList suites = testSuites.getElementsByTagName("testsuite");
+        assertEquals(suites.getLength(), 2);
+        Element exm104 = (Element) suites.item(0);
+        assertEquals(exm104.getAttribute("name"), "measure.EXM104");
+        assertEquals(exm104.getAttribute("tests"), "2");
+        assertEquals(exm104.getAttribute("failures"), "1");
+
+        // test cases are sorted by name, whatever the order of the results
+        NodeList testCases = exm104.getElementsByTagName("testcase");
+        assertEquals(((Element) testCases.item(0)).getAttribute("name"), "denom-EXM104");
+        assertEquals(((Element) testCases.item(0)).getElementsByTagName("failure").getLength(), 1);
+        assertEquals(((Element) testCases.item(1)).getAttribute("name"), "numer-EXM104");
+        assertEquals(((Element) testCases.item(1)).getAttribute("time"), "1.500");
+        assertEquals(((Element) testCases.item(1)).getChildNodes().getLength(), 0);
+
+        Element exm124 = (Element) suites.item(1);
+        Element errorElement = (Element) exm124.getElementsByTagName("error").item(0);
+        assertEquals(errorElement.getAttribute("message"), "Could not resolve library");
+        assertEquals(errorElement.getAttribute("type"), IllegalArgumentException.class.getName());
+    }
+
+    @Test
+    public void testRunsArtifactsInParallel() throws Exception {
+        FhirContext r4 = FhirContext.forR4Cached();
+        for (String artifact : new String[] { "EXM3", "EXM1", "EXM2" }) {
+            Bundle content = new Bundle().setType(Bundle.BundleType.TRANSACTION);
+            content.setId(artifact + "-bundle");
+            content.addEntry().setResource(new Library().setName(artifact).setId(artifact));
+            content.addEntry().setResource(new Measure().setName(artifact).setId(artifact));
+            write(r4, content, "bundles/measure/" + artifact + "/" + artifact + "-bundle.json");
+            for (String testCase : new String[] { "pass", "fail", "error" }) {
+                Bundle testCaseBundle = new Bundle().setType(Bundle.BundleType.TRANSACTION);
+                testCaseBundle.setId(artifact + "-" + testCase);
+                write(r4, testCaseBundle, "tests/measure/" + artifact + "/" + testCase + "-bundle.json");
+            }
+        }
+
+        int parallelism = ThreadUtils.getParallelism();
+        int queueCapacity = ThreadUtils.getQueueCapacity();
+        ThreadUtils.configure(4, queueCapacity, false);
+        List<IGTestProcessor.TestCaseResultSummary> results;
+        StubTestProcessor testProcessor = new StubTestProcessor();
+        try {
+            IGTestProcessor processor = new IGTestProcessor() {
+                {
+                    this.fhirContext = r4;
+                    this.rootDir = root.toString();
+                }
+
+                @Override
+                protected ITestProcessor getResourceTypeTestProcessor(String resourceTypeName) {
+                    return testProcessor;
+                }
+            };
+            results = processor.runTestCases(root.resolve("tests").toFile(),
+                    Collections.singletonList(new SoftwareSystem("test-system", "1.0.0", "CQFramework")), null);
+        } finally {
+            ThreadUtils.configure(parallelism, queueCapacity, false);
+        }
+
+        assertTrue(testProcessor.threads.size() > 1, "test cases did not run in parallel");
+        assertEquals(results.size(), 9);
+        int i = 0;
+        for (String artifact : new String[] { "EXM1", "EXM2", "EXM3" }) {
+            // sorted by artifact and test case
+            for (String testCase : new String[] { "error", "fail", "pass" }) {
+                IGTestProcessor.TestCaseResultSummary result = results.get(i++);
+                assertEquals(result.getTestArtifactName(), artifact);
+                assertTrue(result.getTestCaseID().endsWith(artifact + "-" + testCase), result.getTestCaseID());
+                assertEquals(result.getTestPassed().booleanValue(), testCase.equals("pass"), result.getTestCaseID());
+                assertEquals(result.getError() != null, testCase.equals("error"), result.getTestCaseID());
+            }
+
+            // the content bundle is stamped once its test cases are done
+            Bundle content = (Bundle) IOUtils.readResource(
+                    root.resolve("bundles/measure/" + artifact + "/" + artifact + "-bundle.json").toString(), r4);
+            assertEquals(content.getEntry().size(), 2);
+            for (Bundle.BundleEntryComponent entry : content.getEntry()) {
+                DomainResource resource = (DomainResource) entry.getResource();
+                assertFalse(resource.getExtensionsByUrl(CrmiConstants.SOFTWARE_SYSTEM_EXT_URL).isEmpty(),
+                        artifact + " " + resource.fhirType() + " is not stamped");
+            }
+        }
+    }
+
+    private void write(FhirContext fhirContext, IBaseResource resource, String path) throws IOException {
+        File file = root.resolve(path).toFile();
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), fhirContext.newJsonParser().encodeResourceToString(resource).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Passes, fails or throws depending on the test case, once at least two test cases run at the same time
+    private static class StubTestProcessor implements ITestProcessor {
+        private final Set<String> threads = ConcurrentHashMap.newKeySet();
+        private final CountDownLatch concurrent = new CountDownLatch(2);
+
+        @Override
+        public Parameters executeTest(String testPath, String contentBundlePath, String fhirServer) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Parameters executeTest(IBaseResource testBundle, IBaseResource contentBundle, String fhirServer) {
+            threads.add(Thread.currentThread().getName());
+            concurrent.countDown();
+            try {
+                concurrent.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            String id = testBundle.getIdElement().getIdPart();
+            if (id.endsWith("error")) {
+                throw new IllegalArgumentException("Could not evaluate " + id);
+            }
+            ParametersParameter parameter = new ParametersParameter();
+            parameter.setName(new org.hl7.fhir.String().withValue(MeasureTestProcessor.TestPassedKey));
+            parameter.setValueBoolean(new org.hl7.fhir.Boolean().withValue(id.endsWith("pass")));
+            Parameters results = new Parameters();
+            results.getParameter().add(parameter);
+            return results;
+        }
+    }
+
+    private static IGTestProcessor.TestCaseResultSummary result(IGTestProcessor processor, String artifact,
+            String testCase, boolean testPassed, long durationMillis) {
+        IGTestProcessor.TestCaseResultSummary result = processor.new TestCaseResultSummary("measure", artifact, testCase);
+        result.setTestPassed(testPassed);
+        result.setDurationMillis(durationMillis);
+        return result;
+    }
+}
@@ -0,0 +1,116 @@
+package org.opencds.cqf.tooling.terminology;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.hl7.fhir.r4.model.ValueSet;
+import org.testng.annotations.Test;
+
+public class BinaryValueSetDbTest {
+    private static final String SNOMED = "http://snomed.info/sct";
+    private static final String ICD10 = "http://hl7.org/fhir/sid/icd-10-cm";
+
+    @Test
+    public void testContains() throws IOException {
+        try (BinaryValueSetDb db = BinaryValueSetDb.wrap(write())) {
+            assertEquals(db.getValueSetCount(), 4);
+            assertTrue(db.contains("http://example.org/ValueSet/diabetes", "1.0.0", SNOMED, "44054006"));
+            assertTrue(db.contains("http://example.org/ValueSet/diabetes", "1.0.0", ICD10, "E11.9"));
+            assertTrue(db.contains("http://example.org/ValueSet/diabetes", "1.0.0", null, "E11.9"));
+            // nested contains
+            assertTrue(db.contains("http://example.org/ValueSet/diabetes", "1.0.0", SNOMED, "46635009"));
+            assertFalse(db.contains("http://example.org/ValueSet/diabetes", "1.0.0", ICD10, "44054006"));
+            assertFalse(db.contains("http://example.org/ValueSet/diabetes", "1.0.0", SNOMED, "38341003"));
+            assertFalse(db.contains("http://example.org/ValueSet/diabetes", "1.0.0", SNOMED, "unknown"));
+
+            // Without a version the highest version is used
+            assertTrue(db.contains("http://example.org/ValueSet/diabetes", null, ICD10, "E10.9"));
+            assertFalse(db.contains("http://example.org/ValueSet/diabetes", "1.0.0", ICD10, "E10.9"));
+
+            assertTrue(db.contains("http://example.org/ValueSet/hypertension", null, SNOMED, "38341003"));
+            assertTrue(db.hasValueSet("http://example.org/ValueSet/hypertension", null));
+            assertFalse(db.hasValueSet("http://example.org/ValueSet/hypertension", "1.0.0"));
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownValueSet() throws IOException {
+        try (BinaryValueSetDb db = BinaryValueSetDb.wrap(write())) {
+            db.contains("http://example.org/ValueSet/asthma", null, SNOMED, "195967001");
+        }
+    }
+
+    @Test
+    public void testMemoryMapped() throws IOException {
+        Path file = Files.createTempFile("valueset-db", ".bin");
+        try {
+            Files.write(file, write());
+            try (BinaryValueSetDb db = BinaryValueSetDb.open(file)) {
+                assertTrue(db.contains("http://example.org/ValueSet/diabetes", "2.0.0", SNOMED, "44054006"));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testUnversionedUrlIsTheLatestVersion() throws IOException {
+        ValueSet nine = valueSet("diabetes", "9.0.0");
+        nine.getExpansion().addContains().setSystem(SNOMED).setCode("44054006");
+        ValueSet ten = valueSet("diabetes", "10.0.0");
+        ten.getExpansion().addContains().setSystem(SNOMED).setCode("46635009");
+
+        for (boolean tenFirst : new boolean[] { true, false }) {
+            BinaryValueSetDb.Writer writer = new BinaryValueSetDb.Writer();
+            if (tenFirst) {
+                writer.addValueSet(ten).addValueSet(nine);
+            } else {
+                writer.addValueSet(nine).addValueSet(ten);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            writer.write(bytes);
+            try (BinaryValueSetDb db = BinaryValueSetDb.wrap(bytes.toByteArray())) {
+                assertTrue(db.contains("http://example.org/ValueSet/diabetes", null, SNOMED, "46635009"));
+                assertFalse(db.contains("http://example.org/ValueSet/diabetes", null, SNOMED, "44054006"));
+            }
+        }
+    }
+
+    @Test
+    public void testCompareVersions() {
+        assertTrue(BinaryValueSetDb.Writer.compareVersions("10.0.0", "9.0.0") > 0);
+        assertTrue(BinaryValueSetDb.Writer.compareVersions("1.10", "1.9.5") > 0);
+        assertTrue(BinaryValueSetDb.Writer.compareVersions("1.0.1", "1.0") > 0);
+        assertTrue(BinaryValueSetDb.Writer.compareVersions("2024-01", "2023-12-15") > 0);
+        assertTrue(BinaryValueSetDb.Writer.compareVersions("20240101", "20231215") > 0);
+        assertEquals(BinaryValueSetDb.Writer.compareVersions("1.01", "1.1"), 0);
+    }
+
+    private static byte[] write() throws IOException {
+        ValueSet diabetes = valueSet("diabetes", "1.0.0");
+        diabetes.getExpansion().addContains().setSystem(SNOMED).setCode("44054006")
+                .addContains().setSystem(SNOMED).setCode("46635009");
+        diabetes.getExpansion().addContains().setSystem(ICD10).setCode("E11.9");
+
+        ValueSet diabetes2 = valueSet("diabetes", "2.0.0");
+        diabetes2.getExpansion().addContains().setSystem(SNOMED).setCode("44054006");
+        diabetes2.getExpansion().addContains().setSystem(ICD10).setCode("E10.9");
+
+        ValueSet hypertension = valueSet("hypertension", null);
+        hypertension.getExpansion().addContains().setSystem(SNOMED).setCode("38341003");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new BinaryValueSetDb.Writer().addValueSet(diabetes2).addValueSet(diabetes).addValueSet(hypertension).write(bytes);
+        return bytes.toByteArray();
+    }
+
+    private static ValueSet valueSet(String id, String version) {
+        return new ValueSet().setUrl("http://example.org/ValueSet/" + id).setVersion(version);
+    }
+}
@@ -0,0 +1,145 @@
+package org.opencds.cqf.tooling.terminology.fhirservice;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+import org.hl7.fhir.r4.model.BooleanType;
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.StringType;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.hl7.fhir.r4.model.codesystems.ConceptSubsumptionOutcome;
+import org.opencds.cqf.tooling.utilities.IOUtils;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class LocalTerminologyServiceTest {
+    private static final String SYSTEM = "http://example.org/CodeSystem/conditions";
+
+    private LocalTerminologyService service;
+
+    // conditions
+    //   metabolic
+    //     diabetes
+    //       type-1 (also a child of autoimmune, through a parent property)
+    //       type-2
+    //   autoimmune
+    @BeforeMethod
+    public void setUp() {
+        CodeSystem codeSystem = new CodeSystem().setUrl(SYSTEM).setVersion("1.0.0").setName("Conditions");
+        CodeSystem.ConceptDefinitionComponent metabolic = codeSystem.addConcept().setCode("metabolic").setDisplay("Metabolic");
+        CodeSystem.ConceptDefinitionComponent diabetes = metabolic.addConcept().setCode("diabetes").setDisplay("Diabetes");
+        diabetes.addConcept().setCode("type-1").setDisplay("Type 1 diabetes")
+                .addProperty().setCode("parent").setValue(new StringType("autoimmune"));
+        diabetes.addConcept().setCode("type-2").setDisplay("Type 2 diabetes");
+        codeSystem.addConcept().setCode("autoimmune").setDisplay("Autoimmune");
+
+        service = new LocalTerminologyService().addCodeSystem(codeSystem)
+                .addValueSet(valueSet("diabetes", filter(ValueSet.FilterOperator.ISA, "diabetes")))
+                .addValueSet(valueSet("diabetes-subtypes", filter(ValueSet.FilterOperator.DESCENDENTOF, "diabetes")))
+                .addValueSet(valueSet("listed", filter(ValueSet.FilterOperator.IN, "type-2,autoimmune,unknown")));
+
+        ValueSet autoimmuneDiabetes = new ValueSet().setUrl("http://example.org/ValueSet/autoimmune-diabetes");
+        autoimmuneDiabetes.getCompose().addInclude().setSystem(SYSTEM).addFilter().setProperty("concept")
+                .setOp(ValueSet.FilterOperator.ISA).setValue("autoimmune");
+        autoimmuneDiabetes.getCompose().getIncludeFirstRep().addValueSet("http://example.org/ValueSet/diabetes");
+        service.addValueSet(autoimmuneDiabetes);
+
+        ValueSet nonAutoimmune = new ValueSet().setUrl("http://example.org/ValueSet/non-autoimmune-diabetes");
+        nonAutoimmune.getCompose().addInclude().addValueSet("http://example.org/ValueSet/diabetes");
+        nonAutoimmune.getCompose().addExclude().addValueSet("http://example.org/ValueSet/autoimmune-diabetes");
+        service.addValueSet(nonAutoimmune);
+    }
+
+    @Test
+    public void testFilters() {
+        assertEquals(codes("diabetes"), Set.of("diabetes", "type-1", "type-2"));
+        assertEquals(codes("diabetes-subtypes"), Set.of("type-1", "type-2"));
+        assertEquals(codes("listed"), Set.of("type-2", "autoimmune"));
+        assertEquals(codes("autoimmune-diabetes"), Set.of("type-1"));
+        assertEquals(codes("non-autoimmune-diabetes"), Set.of("diabetes", "type-2"));
+
+        ValueSet expansion = service.expand("http://example.org/ValueSet/diabetes");
+        assertEquals(expansion.getExpansion().getTotal(), 3);
+        assertEquals(expansion.getExpansion().getContainsFirstRep().getDisplay(), "Diabetes");
+        assertEquals(expansion.getExpansion().getContainsFirstRep().getVersion(), "1.0.0");
+    }
+
+    @Test
+    public void testSubsumes() {
+        assertEquals(service.subsumes("metabolic", "type-1", SYSTEM), ConceptSubsumptionOutcome.SUBSUMES);
+        assertEquals(service.subsumes("type-1", "autoimmune", SYSTEM), ConceptSubsumptionOutcome.SUBSUMEDBY);
+        assertEquals(service.subsumes("type-2", "autoimmune", SYSTEM), ConceptSubsumptionOutcome.NOTSUBSUMED);
+        assertEquals(service.subsumes(new Coding(SYSTEM, "diabetes", null), new Coding(SYSTEM, "diabetes", null)),
+                ConceptSubsumptionOutcome.EQUIVALENT);
+    }
+
+    @Test
+    public void testValidateAndLookup() {
+        assertTrue(result(service.validateCodeInValueSet("http://example.org/ValueSet/diabetes", "type-2", SYSTEM, null)));
+        assertFalse(result(service.validateCodeInValueSet("http://example.org/ValueSet/diabetes", "autoimmune", SYSTEM, null)));
+        assertTrue(result(service.validateCodingInValueSet("http://example.org/ValueSet/listed", new Coding(null, "autoimmune", null))));
+        assertTrue(result(service.validateCodeInCodeSystem(SYSTEM, "type-1", null, null)));
+        assertFalse(result(service.validateCodeInCodeSystem(SYSTEM, "type-3", null, null)));
+
+        Parameters lookup = service.lookup("type-1", SYSTEM);
+        assertEquals(lookup.getParameter("display").getValue().primitiveValue(), "Type 1 diabetes");
+        assertEquals(lookup.getParameter("version").getValue().primitiveValue(), "1.0.0");
+        assertEquals(lookup.getParameter().stream().filter(parameter -> parameter.getName().equals("property")).count(), 2);
+    }
+
+    @Test
+    public void testFromPaths() throws IOException {
+        Path directory = Files.createTempDirectory("vocabulary");
+        try {
+            FhirContext fhirContext = FhirContext.forR4Cached();
+            ValueSet stated = new ValueSet().setUrl("http://example.org/ValueSet/stated");
+            stated.setId("stated");
+            stated.getExpansion().addContains().setSystem("http://snomed.info/sct").setCode("44054006");
+            IOUtils.writeResource(stated, directory.toString(), IOUtils.Encoding.JSON, fhirContext);
+            CodeSystem codeSystem = (CodeSystem) service.getResource(SYSTEM);
+            codeSystem.setId("conditions");
+            IOUtils.writeResource(codeSystem, directory.toString(), IOUtils.Encoding.JSON, fhirContext);
+
+            LocalTerminologyService loaded = LocalTerminologyService.fromPaths(fhirContext, Collections.singletonList(directory.toString()));
+            assertTrue(loaded.hasCodeSystem(SYSTEM));
+            assertTrue(loaded.hasCodeSystem(SYSTEM + "|1.0.0"));
+            assertTrue(result(loaded.validateCodeInValueSet("http://example.org/ValueSet/stated", "44054006", "http://snomed.info/sct", null)));
+            assertSame(loaded.getResource("http://example.org/ValueSet/stated").getClass(), ValueSet.class);
+        } finally {
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    private Set<String> codes(String id) {
+        return service.expand("http://example.org/ValueSet/" + id).getExpansion().getContains().stream()
+                .map(ValueSet.ValueSetExpansionContainsComponent::getCode).collect(Collectors.toSet());
+    }
+
+    private static boolean result(Parameters parameters) {
+        return ((BooleanType) parameters.getParameter("result").getValue()).booleanValue();
+    }
+
+    private static ValueSet.ConceptSetFilterComponent filter(ValueSet.FilterOperator op, String value) {
+        return new ValueSet.ConceptSetFilterComponent().setProperty("concept").setOp(op).setValue(value);
+    }
+
+    private static ValueSet valueSet(String id, ValueSet.ConceptSetFilterComponent filter) {
+        ValueSet valueSet = new ValueSet().setUrl("http://example.org/ValueSet/" + id);
+        valueSet.getCompose().addInclude().setSystem(SYSTEM).addFilter(filter);
+        return valueSet;
+    }
+}
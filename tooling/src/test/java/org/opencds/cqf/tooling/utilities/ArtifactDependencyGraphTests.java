@@ -0,0 +1,140 @@
+package org.opencds.cqf.tooling.utilities;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Library;
+import org.hl7.fhir.r4.model.Measure;
+import org.hl7.fhir.r4.model.RelatedArtifact;
+import org.hl7.fhir.r4.model.Resource;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class ArtifactDependencyGraphTests {
+    private static final String BASE = "http://example.org/fhir/";
+
+    private final FhirContext fhirContext = FhirContext.forR4Cached();
+    private List<String> resourceDirectories;
+    private Path root;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        IOUtils.cleanUp();
+        ResourceUtils.cleanUp();
+        resourceDirectories = IOUtils.resourceDirectories;
+        root = Files.createTempDirectory("dependency-graph");
+        IOUtils.resourceDirectories = new ArrayList<>();
+        IOUtils.resourceDirectories.add(root.toString());
+
+        // Diamond: Main -> (Left, Right) -> Common, Common -> (Missing library, Common ValueSet)
+        write(library("Main", BASE + "Library/Left|1.0.0", BASE + "Library/Right|1.0.0", BASE + "ValueSet/main", BASE + "ValueSet/absent"));
+        write(library("Left", BASE + "Library/Common|1.0.0"));
+        write(library("Right", BASE + "Library/Common|1.0.0", BASE + "ValueSet/right"));
+        write(library("Common", BASE + "Library/Missing|1.0.0", BASE + "ValueSet/common"));
+        write(valueSet("main"));
+        write(valueSet("right"));
+        write(valueSet("common"));
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        IOUtils.resourceDirectories = resourceDirectories;
+        IOUtils.cleanUp();
+        ResourceUtils.cleanUp();
+        FileUtils.deleteDirectory(root.toFile());
+    }
+
+    @Test
+    public void testTransitiveLibraries() {
+        Set<String> missing = new HashSet<>();
+        Map<String, IBaseResource> libraries = ResourceUtils.getDepLibraryResources(
+                measure(BASE + "Library/Main|1.0.0"), fhirContext, true, false, missing);
+
+        assertEquals(libraries.keySet(), Set.of(BASE + "Library/Main|1.0.0", BASE + "Library/Left|1.0.0",
+                BASE + "Library/Right|1.0.0", BASE + "Library/Common|1.0.0"));
+        assertEquals(missing, Set.of(BASE + "Library/Missing|1.0.0"));
+    }
+
+    @Test
+    public void testDirectLibraries() {
+        IBaseResource main = IOUtils.getLibraryUrlMap(fhirContext).get(BASE + "Library/Main|1.0.0");
+        Set<String> missing = new HashSet<>();
+        Map<String, IBaseResource> libraries = ResourceUtils.getDepLibraryResources(main, fhirContext, false, false, missing);
+
+        assertEquals(libraries.keySet(), Set.of(BASE + "Library/Left|1.0.0", BASE + "Library/Right|1.0.0"));
+        assertEquals(missing, Set.of());
+    }
+
+    @Test
+    public void testTransitiveValueSets() {
+        IBaseResource main = IOUtils.getLibraryUrlMap(fhirContext).get(BASE + "Library/Main|1.0.0");
+        Set<String> missing = new HashSet<>();
+        Map<String, IBaseResource> valueSets = ResourceUtils.getDepValueSetResources(main, fhirContext, true, missing);
+
+        assertEquals(valueSets.keySet(), Set.of(BASE + "ValueSet/main", BASE + "ValueSet/right", BASE + "ValueSet/common"));
+        assertEquals(missing, Set.of(BASE + "ValueSet/absent", BASE + "Library/Missing|1.0.0"));
+
+        missing.clear();
+        valueSets = ResourceUtils.getDepValueSetResources(main, fhirContext, false, missing);
+        assertEquals(valueSets.keySet(), Set.of(BASE + "ValueSet/main"));
+        assertEquals(missing, Set.of(BASE + "ValueSet/absent"));
+    }
+
+    @Test
+    public void testSharedLibrariesAreResolvedOnce() {
+        IBaseResource left = IOUtils.getLibraryUrlMap(fhirContext).get(BASE + "Library/Left|1.0.0");
+        IBaseResource right = IOUtils.getLibraryUrlMap(fhirContext).get(BASE + "Library/Right|1.0.0");
+        Map<String, IBaseResource> fromLeft = ResourceUtils.getDepLibraryResources(left, fhirContext, true, false, new HashSet<>());
+        Map<String, IBaseResource> fromRight = ResourceUtils.getDepLibraryResources(right, fhirContext, true, false, new HashSet<>());
+
+        assertSame(fromLeft.get(BASE + "Library/Common|1.0.0"), fromRight.get(BASE + "Library/Common|1.0.0"));
+        assertSame(ArtifactDependencyGraph.forContext(fhirContext), ArtifactDependencyGraph.forContext(fhirContext));
+    }
+
+    private Library library(String name, String... dependencies) {
+        Library library = new Library();
+        library.setId(name);
+        library.setUrl(BASE + "Library/" + name);
+        library.setVersion("1.0.0");
+        library.setName(name);
+        for (String dependency : dependencies) {
+            library.addRelatedArtifact().setType(RelatedArtifact.RelatedArtifactType.DEPENDSON).setResource(dependency);
+        }
+        return library;
+    }
+
+    private Measure measure(String library) {
+        Measure measure = new Measure();
+        measure.setId("Measure");
+        measure.addRelatedArtifact().setType(RelatedArtifact.RelatedArtifactType.DEPENDSON).setResource(library);
+        return measure;
+    }
+
+    private ValueSet valueSet(String id) {
+        ValueSet valueSet = new ValueSet();
+        valueSet.setId(id);
+        valueSet.setUrl(BASE + "ValueSet/" + id);
+        return valueSet;
+    }
+
+    private void write(Resource resource) throws IOException {
+        Path path = root.resolve(resource.fhirType() + "-" + resource.getIdElement().getIdPart() + ".json");
+        Files.write(path, fhirContext.newJsonParser().encodeResourceToString(resource).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,85 @@
+package org.opencds.cqf.tooling.utilities;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertThrows;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.hl7.fhir.r4.model.Encounter;
+import org.hl7.fhir.r4.model.Library;
+import org.hl7.fhir.r4.model.Measure;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class BatchBundleUploaderTests {
+
+    private final FhirContext fhirContext = FhirContext.forR4Cached();
+
+    @Test
+    public void TestDependenciesAreUploadedInEarlierLevels() {
+        BatchBundleUploader uploader = new BatchBundleUploader(fhirContext, IOUtils.Encoding.JSON, "transaction", 10, BatchBundleUploader.DEFAULT_MAX_BYTES);
+        Bundle testData = new Bundle().setType(Bundle.BundleType.COLLECTION);
+        testData.addEntry().setResource(new Observation().setEncounter(new Reference("Encounter/e1")).setId("o1"));
+        testData.addEntry().setResource(new Encounter().setSubject(new Reference("Patient/p1")).setId("e1"));
+        testData.addEntry().setResource(new Patient().setId("p1"));
+        uploader.add(testData);
+        uploader.add(new Measure().setId("m1"));
+        uploader.add(new Library().setId("l1"));
+        uploader.add(new ValueSet().setId("v1"));
+        uploader.add(new CodeSystem().setId("c1"));
+        // a resource found in more than one file is only uploaded once
+        uploader.add(new Patient().setId("p1"));
+
+        assertEquals(uploader.size(), 7);
+        List<List<String>> levels = uploader.getChunks().stream().map(this::getResourceTypes).collect(Collectors.toList());
+        assertEquals(levels, List.of(List.of("CodeSystem"), List.of("ValueSet"), List.of("Library"), List.of("Measure"),
+                List.of("Patient"), List.of("Encounter"), List.of("Observation")));
+    }
+
+    @Test
+    public void TestLevelsAreSplitIntoChunks() {
+        BatchBundleUploader uploader = new BatchBundleUploader(fhirContext, IOUtils.Encoding.JSON, "batch", 2, BatchBundleUploader.DEFAULT_MAX_BYTES);
+        for (int i = 0; i < 5; i++) {
+            uploader.add(new Patient().setId("p" + i));
+        }
+
+        List<List<IBaseBundle>> chunks = uploader.getChunks();
+        assertEquals(chunks.size(), 1);
+        assertEquals(chunks.get(0).stream().map(bundle -> ((Bundle) bundle).getEntry().size()).collect(Collectors.toList()), List.of(2, 2, 1));
+        Bundle first = (Bundle) chunks.get(0).get(0);
+        assertEquals(first.getType(), Bundle.BundleType.BATCH);
+        assertEquals(first.getEntryFirstRep().getRequest().getMethod(), Bundle.HTTPVerb.PUT);
+        assertEquals(first.getEntryFirstRep().getRequest().getUrl(), "Patient/p0");
+    }
+
+    @Test
+    public void TestChunksAreBoundedBySize() {
+        long patientSize = IOUtils.encodeResourceAsString(new Patient().setId("p0"), IOUtils.Encoding.JSON, fhirContext).length();
+        BatchBundleUploader uploader = new BatchBundleUploader(fhirContext, IOUtils.Encoding.JSON, "transaction", 100, patientSize * 2);
+        for (int i = 0; i < 4; i++) {
+            uploader.add(new Patient().setId("p" + i));
+        }
+
+        assertEquals(uploader.getChunks().get(0).size(), 2);
+    }
+
+    @Test
+    public void TestInvalidBundleType() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new BatchBundleUploader(fhirContext, IOUtils.Encoding.JSON, "collection", 10, 10));
+    }
+
+    private List<String> getResourceTypes(List<IBaseBundle> chunks) {
+        return chunks.stream().flatMap(bundle -> ((Bundle) bundle).getEntry().stream())
+                .map(entry -> entry.getResource().fhirType()).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,116 @@
+package org.opencds.cqf.tooling.utilities;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hl7.fhir.r4.model.Library;
+import org.hl7.fhir.r4.model.Patient;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class HttpClientUtilsTests {
+
+    private final FhirContext fhirContext = FhirContext.forR4Cached();
+
+    private HttpServer server;
+    private String fhirUri;
+    private final List<String> requestPaths = new CopyOnWriteArrayList<>();
+    private final Set<String> receivedBodies = ConcurrentHashMap.newKeySet();
+    private boolean rejectFirstAttempt;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        requestPaths.clear();
+        receivedBodies.clear();
+        rejectFirstAttempt = false;
+        maxInFlight.set(0);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/fhir", exchange -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                String requestBody = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                requestPaths.add(exchange.getRequestURI().getPath());
+                Thread.sleep(20);
+                // when enabled, every resource is rejected once with Too Many Requests
+                int status = rejectFirstAttempt && receivedBodies.add(requestBody) ? 429 : 201;
+                if (status == 429) {
+                    exchange.getResponseHeaders().add("Retry-After", "0");
+                }
+                byte[] body = "{}".getBytes();
+                exchange.sendResponseHeaders(status, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        });
+        server.start();
+        fhirUri = "http://localhost:" + server.getAddress().getPort() + "/fhir";
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        server.stop(0);
+        HttpClientUtils.configurePosting(10, 0, 3, false);
+    }
+
+    @Test
+    public void TestConcurrentPostsWithPriorityAndRetry() throws IOException {
+        HttpClientUtils.configurePosting(4, 0, 3, false);
+        rejectFirstAttempt = true;
+        for (int i = 0; i < 4; i++) {
+            HttpClientUtils.post(fhirUri, new Library().setId("library-" + i), IOUtils.Encoding.JSON, fhirContext, null, true);
+        }
+        for (int i = 0; i < 12; i++) {
+            HttpClientUtils.post(fhirUri, new Patient().setId("patient-" + i), IOUtils.Encoding.JSON, fhirContext, null);
+        }
+        HttpClientUtils.postTaskCollection();
+
+        // each resource is posted twice: rejected with 429, then accepted on retry
+        assertEquals(requestPaths.size(), 32);
+        int lastLibrary = requestPaths.lastIndexOf("/fhir/Library");
+        int firstPatient = requestPaths.indexOf("/fhir/Patient");
+        assertTrue(lastLibrary < firstPatient, "priority POST calls must complete first");
+        assertTrue(maxInFlight.get() > 1 && maxInFlight.get() <= 4, "max in flight: " + maxInFlight.get());
+        assertTrue(HttpClientUtils.getLastPostSummary().startsWith("32 request(s) (16 retried)"),
+                HttpClientUtils.getLastPostSummary());
+        assertTrue(!HttpClientUtils.hasPostTasksInQueue());
+    }
+
+    @Test
+    public void TestRateLimit() throws IOException {
+        HttpClientUtils.configurePosting(2, 20, 0, false);
+        for (int i = 0; i < 12; i++) {
+            HttpClientUtils.post(fhirUri, new Patient().setId("patient-" + i), IOUtils.Encoding.JSON, fhirContext, null);
+        }
+        long start = System.nanoTime();
+        HttpClientUtils.postTaskCollection();
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(requestPaths.size(), 12);
+        // two requests may start immediately, the remaining ten are spread at 20 per second
+        assertTrue(elapsedMillis >= 450, "elapsed: " + elapsedMillis);
+    }
+}
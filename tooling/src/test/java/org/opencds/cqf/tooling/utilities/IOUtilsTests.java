@@ -1,9 +1,16 @@
 package org.opencds.cqf.tooling.utilities;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.expectThrows;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
 
+import org.apache.commons.io.FileUtils;
 import org.testng.annotations.Test;
 
 public class IOUtilsTests {
@@ -15,4 +22,27 @@ public class IOUtilsTests {
         String expected = basePath + File.separator + "input" + File.separator + "resources" + File.separator + "library";
         assertEquals(result, expected);
     }
+
+    @Test
+    public void TestWriteAtomically() throws IOException {
+        Path directory = Files.createTempDirectory("io-utils");
+        try {
+            Path file = directory.resolve("nested").resolve("content.txt");
+            IOUtils.writeAtomically(file, out -> out.write("first".getBytes(StandardCharsets.UTF_8)));
+            IOUtils.writeAtomically(file, out -> out.write("second".getBytes(StandardCharsets.UTF_8)));
+            assertEquals(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), "second");
+
+            // A failed write leaves the file as it was, without a temporary file
+            expectThrows(IOException.class, () -> IOUtils.writeAtomically(file, out -> {
+                out.write("partial".getBytes(StandardCharsets.UTF_8));
+                throw new IOException("failed");
+            }));
+            assertEquals(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), "second");
+            try (Stream<Path> files = Files.list(file.getParent())) {
+                assertEquals(files.count(), 1L);
+            }
+        } finally {
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
 }
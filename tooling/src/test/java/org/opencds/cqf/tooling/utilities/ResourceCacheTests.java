@@ -0,0 +1,102 @@
+package org.opencds.cqf.tooling.utilities;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.annotations.Test;
+
+public class ResourceCacheTests {
+
+    @Test
+    public void TestLeastRecentlyUsedEviction() {
+        ResourceCache<String, String> cache = new ResourceCache<>("test", 2);
+        cache.put("a", "A", null);
+        cache.put("b", "B", null);
+        assertEquals(cache.get("a", null), "A");
+        cache.put("c", "C", null);
+
+        assertNull(cache.get("b", null));
+        assertEquals(cache.get("a", null), "A");
+        assertEquals(cache.get("c", null), "C");
+        assertEquals(cache.size(), 2);
+        assertEquals(cache.getEvictions(), 1);
+        assertEquals(cache.getHits(), 3);
+        assertEquals(cache.getMisses(), 1);
+    }
+
+    @Test
+    public void TestWeightBound() {
+        ResourceCache<String, String> cache = new ResourceCache<>("test", 10, String::length);
+        cache.put("a", "aaaa", null);
+        cache.put("b", "bbbb", null);
+        cache.put("c", "cccc", null);
+        assertEquals(cache.size(), 2);
+        assertEquals(cache.getWeight(), 8);
+
+        cache.put("d", "dddddddddddddddd", null);
+        assertEquals(cache.size(), 1);
+        assertEquals(cache.get("d", null), "dddddddddddddddd");
+    }
+
+    @Test
+    public void TestFileChangeInvalidatesEntry() throws IOException {
+        File file = File.createTempFile("resource-cache", ".json");
+        try {
+            Files.write(file.toPath(), "{}".getBytes(StandardCharsets.UTF_8));
+            ResourceCache<String, String> cache = new ResourceCache<>("test", 10);
+            cache.put(file.getPath(), "parsed", file);
+            assertEquals(cache.get(file.getPath(), file), "parsed");
+
+            Files.write(file.toPath(), "{ \"id\": \"changed\" }".getBytes(StandardCharsets.UTF_8));
+            assertNull(cache.get(file.getPath(), file));
+            assertEquals(cache.getInvalidations(), 1);
+
+            cache.put(file.getPath(), "reparsed", file);
+            assertTrue(cache.replaceIfPresent(file.getPath(), "updated", file));
+            assertEquals(cache.get(file.getPath(), file), "updated");
+
+            assertTrue(file.delete());
+            assertNull(cache.get(file.getPath(), file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void TestConcurrentAccess() throws Exception {
+        ResourceCache<Integer, Integer> cache = new ResourceCache<>("test", 100);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        int key = i % 250;
+                        if (cache.get(key, null) == null) {
+                            cache.put(key, key, null);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(cache.size(), 100);
+        assertEquals(cache.getWeight(), 100);
+        assertEquals(cache.getHits() + cache.getMisses(), 80000);
+    }
+}
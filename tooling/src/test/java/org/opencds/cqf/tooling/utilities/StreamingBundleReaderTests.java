@@ -0,0 +1,116 @@
+package org.opencds.cqf.tooling.utilities;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Library;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Quantity;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.util.BundleUtil;
+
+public class StreamingBundleReaderTests {
+
+    private final FhirContext fhirContext = FhirContext.forR4Cached();
+    private Path outputDirectory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        outputDirectory = Files.createTempDirectory("streaming-bundle-reader");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(outputDirectory.toFile());
+    }
+
+    @Test
+    public void TestEntriesMatchFullParse() throws IOException {
+        Bundle bundle = new Bundle().setType(Bundle.BundleType.COLLECTION);
+        bundle.setId("collection");
+        bundle.addEntry().setFullUrl("Patient/p1").setResource(new Patient().setActive(true).setId("p1"));
+        // entries without a resource are skipped
+        bundle.addEntry().setFullUrl("Patient/missing");
+        bundle.addEntry().setResource(new Observation().setValue(new Quantity().setValue(new BigDecimal("1.50"))).setId("o1"));
+        bundle.addEntry().setResource(new Library().setName("Common").setId("Common"));
+        File bundleFile = write(fhirContext.newJsonParser().setPrettyPrint(true).encodeResourceToString(bundle));
+
+        List<String> streamed = new ArrayList<>();
+        try (StreamingBundleReader reader = new StreamingBundleReader(bundleFile, fhirContext)) {
+            reader.forEachRemaining(resource -> streamed.add(encode(resource)));
+            assertEquals(reader.getEntryCount(), 3);
+            assertFalse(reader.hasNext());
+        }
+
+        Bundle parsed = (Bundle) IOUtils.readResource(bundleFile.getPath(), fhirContext);
+        assertEquals(streamed, BundleUtil.toListOfResources(fhirContext, parsed).stream().map(this::encode).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void TestBundleElementsAfterEntries() throws IOException {
+        File bundleFile = write("{\"entry\":[{\"resource\":{\"resourceType\":\"Patient\",\"id\":\"p1\"}}],"
+                + "\"type\":\"collection\",\"resourceType\":\"Bundle\"}");
+
+        try (StreamingBundleReader reader = new StreamingBundleReader(bundleFile, fhirContext)) {
+            assertEquals(reader.next().getIdElement().getIdPart(), "p1");
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    public void TestNotABundle() throws IOException {
+        File patientFile = write(encode(new Patient().setId("p1")));
+
+        try (StreamingBundleReader reader = new StreamingBundleReader(patientFile, fhirContext)) {
+            assertThrows(IllegalArgumentException.class, reader::next);
+        }
+        assertThrows(IllegalArgumentException.class, () -> new StreamingBundleReader(write("[]"), fhirContext));
+    }
+
+    @Test
+    public void TestForEachEntry() throws IOException {
+        Bundle bundle = new Bundle().setType(Bundle.BundleType.COLLECTION);
+        for (int i = 0; i < 100; i++) {
+            bundle.addEntry().setResource(new Patient().setId("p" + i));
+        }
+        File bundleFile = write(encode(bundle));
+
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        try (StreamingBundleReader reader = new StreamingBundleReader(bundleFile, fhirContext)) {
+            reader.forEachEntry("test streaming", resource -> ids.add(resource.getIdElement().getIdPart()));
+            assertEquals(reader.getEntryCount(), 100);
+        }
+        assertEquals(ids.size(), 100);
+    }
+
+    private String encode(IBaseResource resource) {
+        return fhirContext.newJsonParser().encodeResourceToString(resource);
+    }
+
+    private File write(String content) throws IOException {
+        File file = Files.createTempFile(outputDirectory, "bundle", ".json").toFile();
+        FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+}
@@ -0,0 +1,110 @@
+package org.opencds.cqf.tooling.utilities;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Library;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+public class StreamingBundleWriterTests {
+
+    private Path outputDirectory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        outputDirectory = Files.createTempDirectory("streaming-bundle");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(outputDirectory.toFile());
+    }
+
+    @DataProvider
+    public Object[][] encodings() {
+        return new Object[][] {
+                { IOUtils.Encoding.JSON, false }, { IOUtils.Encoding.JSON, true },
+                { IOUtils.Encoding.XML, false }, { IOUtils.Encoding.XML, true }
+        };
+    }
+
+    @Test(dataProvider = "encodings")
+    public void TestR4MatchesInMemoryEncoding(IOUtils.Encoding encoding, boolean prettyPrint) throws IOException {
+        FhirContext fhirContext = FhirContext.forR4Cached();
+        List<IBaseResource> resources = new ArrayList<>();
+        resources.add(new Library().setName("Common").setId("Common"));
+        resources.add(new ValueSet().setUrl("http://example.org/ValueSet/vs").setId("ValueSet/vs"));
+        List<Object> identifiers = List.of(new Identifier().setSystem("http://example.org").setValue("measure"));
+
+        org.hl7.fhir.r4.model.Bundle expected = BundleUtils.bundleR4Artifacts("measure-bundle", resources, identifiers, false);
+        org.hl7.fhir.r4.model.Bundle shell = BundleUtils.createR4BundleShell("measure-bundle",
+                List.of(new Identifier().setSystem("http://example.org").setValue("measure")), false);
+
+        assertEquals(write(shell, resources, fhirContext, encoding, prettyPrint),
+                IOUtils.getParser(encoding, fhirContext).setPrettyPrint(prettyPrint).encodeResourceToString(expected));
+    }
+
+    @Test(dataProvider = "encodings")
+    public void TestStu3MatchesInMemoryEncoding(IOUtils.Encoding encoding, boolean prettyPrint) throws IOException {
+        FhirContext fhirContext = FhirContext.forDstu3Cached();
+        List<IBaseResource> resources = new ArrayList<>();
+        resources.add(new org.hl7.fhir.dstu3.model.Library().setName("Common").setId("Library/Common"));
+        resources.add(new org.hl7.fhir.dstu3.model.ValueSet().setName("vs").setId("ValueSet/vs"));
+
+        org.hl7.fhir.dstu3.model.Bundle expected = BundleUtils.bundleStu3Artifacts("library-bundle", resources);
+
+        assertEquals(write(BundleUtils.createStu3BundleShell("library-bundle"), resources, fhirContext, encoding, prettyPrint),
+                IOUtils.getParser(encoding, fhirContext).setPrettyPrint(prettyPrint).encodeResourceToString(expected));
+    }
+
+    @Test
+    public void TestEmptyBundle() throws IOException {
+        FhirContext fhirContext = FhirContext.forR4Cached();
+        org.hl7.fhir.r4.model.Bundle shell = BundleUtils.createR4BundleShell("empty-bundle", null, false);
+
+        assertEquals(write(shell, List.of(), fhirContext, IOUtils.Encoding.JSON, false),
+                fhirContext.newJsonParser().encodeResourceToString(shell));
+    }
+
+    @Test
+    public void TestWriteBundleArtifacts() throws IOException {
+        FhirContext fhirContext = FhirContext.forR4Cached();
+        List<IBaseResource> resources = List.of(new Library().setName("Common").setId("Common"));
+
+        String outputPath = BundleUtils.writeBundleArtifacts("common", resources, fhirContext, false,
+                outputDirectory.toString(), IOUtils.Encoding.JSON, null);
+
+        // bundle files are named like those written by IOUtils.writeBundle
+        assertEquals(new File(outputPath).getName(), "common-bundle.json");
+        org.hl7.fhir.r4.model.Bundle bundle = (org.hl7.fhir.r4.model.Bundle) IOUtils.readResource(outputPath, fhirContext);
+        assertEquals(bundle.getEntry().size(), 1);
+        assertEquals(bundle.getEntryFirstRep().getRequest().getUrl(), "Library/Common");
+    }
+
+    private String write(org.hl7.fhir.instance.model.api.IBaseBundle shell, List<IBaseResource> resources, FhirContext fhirContext,
+                         IOUtils.Encoding encoding, boolean prettyPrint) throws IOException {
+        File file = outputDirectory.resolve("bundle." + encoding).toFile();
+        try (StreamingBundleWriter writer = new StreamingBundleWriter(shell, file.getPath(), encoding, fhirContext, prettyPrint)) {
+            for (IBaseResource resource : resources) {
+                writer.addEntry(resource);
+            }
+        }
+        return FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+    }
+}